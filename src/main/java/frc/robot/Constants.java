@@ -4,6 +4,9 @@
 
 package frc.robot;
 
+import java.util.Map;
+import java.util.Set;
+
 import org.photonvision.PhotonCamera;
 import org.photonvision.PhotonPoseEstimator;
 import org.photonvision.PhotonPoseEstimator.PoseStrategy;
@@ -15,12 +18,17 @@ import com.revrobotics.CANSparkBase.IdleMode;
 
 import edu.wpi.first.apriltag.AprilTagFieldLayout;
 import edu.wpi.first.apriltag.AprilTagFields;
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.VecBuilder;
 import edu.wpi.first.math.geometry.Rotation3d;
 import edu.wpi.first.math.geometry.Transform3d;
 import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.math.geometry.Translation3d;
 import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N3;
 import edu.wpi.first.math.util.Units;
+import frc.utils.NoteSignatureDetector;
 
 /**
  * The Constants class provides a convenient place for teams to hold robot-wide
@@ -42,6 +50,23 @@ public final class Constants {
 
     public static final double kIntakeMotorSpeed = 0.8;
     public static final double kReverseMotorSpeed = -0.8;
+
+    // Current limits in amps, the power manager lowers them down to the minimum
+    public static final int kCurrentLimit = 40;
+    public static final int kMinCurrentLimit = 20;
+
+    // Note detection from the roller current and speed, both motors together
+    public static final double kSamplePeriod = 0.01; // seconds
+    public static final int kStatusPeriodMs = 10; // current and speed from the SPARKs
+    public static final NoteSignatureDetector.Signature kNoteSignature = new NoteSignatureDetector.Signature(
+        8, // amps above free running
+        0.1, // fraction of the free running speed lost
+        0.02, // seconds
+        0.3, // fraction of the free running speed when jammed
+        0.1, // seconds
+        0.3, // seconds of spin up to ignore
+        0.05); // baseline filter gain per sample
+    public static final double kUnjamTime = 0.25; // seconds to back a jammed note out
   }
 
   public static final class FeederConstants {
@@ -51,12 +76,17 @@ public final class Constants {
     public static final int kBeamBreakDIOId = 1;
 
     public static final double kIntakeSpeed = 0.9;
+    public static final double kSlowIntakeSpeed = 0.5; // once a note touches the intake
     public static final double kReverseSpeed = -0.9;
     public static final double kReverseAlignNoteSpeed = -0.3;
     public static final double kShootSpeed = 1;
 
     // max note pullabck time in seconds
     public static final double kNotePullbackMaxTime = 2;
+
+    // Current limits in amps, the power manager lowers them down to the minimum
+    public static final int kCurrentLimit = 30;
+    public static final int kMinCurrentLimit = 20;
   }
 
   public static final class PivotConstants {
@@ -64,6 +94,11 @@ public final class Constants {
     public static final int kRightPivotMotorCANId = 15;
 
     public static final double kPivotGearRatio = 1.0 / 250; // 250 to 1 from motor to pivot
+
+    // Pivot encoder units per rotation of the pivot
+    public static final double kPivotEncoderFactor = 125;
+    // Pivot encoder position when the shooter is level. Calibrate
+    public static final double kPivotHorizontalPos = 0;
     public static final double kPivotSpeed = 0.5;
 
     // Pivot range is 0-60
@@ -83,6 +118,20 @@ public final class Constants {
     // Distance before pivot is considered ready
     public static final double kPositionDeadzone = 2.0;
 
+    // Pivot travel for planning autos, full output through the gearing and a
+    // measured acceleration in pivot units. Calibrate
+    public static final double kTravelVelocity = NeoMotorConstants.kFreeSpeedRpm / 60 * kPivotGearRatio
+        * kPivotEncoderFactor;
+    public static final double kTravelAcceleration = 150;
+
+    // Lowest position where the amp arm can swing without hitting the robot.
+    // Below it the arm has to be stowed. Calibrate
+    public static final double kAmpArmClearancePos = 14;
+
+    // Current limits in amps, the pivot needs enough to hold against gravity
+    public static final int kCurrentLimit = 40;
+    public static final int kMinCurrentLimit = 30;
+
     public static final class PivotPID {
       public static final double kP = 0.16;
       public static final double kI = 1e-4;
@@ -98,7 +147,6 @@ public final class Constants {
     // Constants for shooter
     public static final int kRightShooterMotorCANId = 11;
     public static final int kLeftShooterMotorCANId = 12;
-    public static final int kAmpShooterMotorCANID = 16;
 
     // Shooting speed 0-1
     public static final double kShootSpeed = 1;
@@ -109,6 +157,107 @@ public final class Constants {
 
     // Shooter bottom multiplier
     public static final double kBottomSpeed = .8;
+
+    // Current limits in amps, the power manager lowers them down to the minimum
+    public static final int kCurrentLimit = 60;
+    public static final int kMinCurrentLimit = 30;
+
+    // Fraction of the target speed below which the flywheels are spinning up
+    public static final double kSpinUpThreshold = 0.9;
+
+    // Flywheel feedforward from the shooter characterization, in volts, volts
+    // per RPM and volts per RPM/s. Calibrate
+    public static final double kS = 0.1;
+    public static final double kV = 12 / NeoMotorConstants.kVortexFreeSpeedRpm;
+    public static final double kA = 0.3 * kV; // about a 0.3 s time constant
+
+    // Seconds to keep feeding after the note passes the beam break
+    public static final double kAmpReleaseTime = 0.3;
+    // Longest the amp sequence waits for the pivot and arm, or for the note to
+    // leave, before going on anyway
+    public static final double kAmpMoveTimeout = 2.0;
+    public static final double kAmpFeedTimeout = 1.0;
+  }
+
+  public static final class AmpArmConstants {
+    public static final int kMotorCANId = 16;
+    public static final int kCurrentLimit = 20;
+
+    public static final double kGearRatio = 25; // motor rotations per arm rotation, calibrate
+    // Arm angles in radians up from the stowed hard stop
+    public static final double kPositionFactor = 2 * Math.PI / kGearRatio;
+    public static final double kStowedAngle = 0.05; // just off the hard stop
+    public static final double kDeployedAngle = 1.9; // calibrate
+    public static final double kMaxAngle = 2.2; // deployed hard stop
+    // Closed loop never pushes past this, in case the gear ratio is off
+    public static final double kSoftLimitAngle = kMaxAngle - 0.1;
+    public static final double kTolerance = 0.08;
+    // Past this the arm is out of the robot and the pivot has to be clear
+    public static final double kClearanceAngle = 0.25;
+
+    // Profile limits, the NEO free speed through the gearing is about 24 rad/s
+    public static final double kMaxVelocity = 16; // rad/s
+    public static final double kMaxAcceleration = 80; // rad/s^2
+    // Seconds from starting to deploy until the arm passes kClearanceAngle,
+    // the pivot has to be past its clearance by then
+    public static final double kClearTime = Math.sqrt(2 * (kClearanceAngle - kStowedAngle) / kMaxAcceleration);
+
+    public static final double kP = 8; // volts per radian
+    public static final double kI = 0;
+    public static final double kD = 0.2;
+    public static final double kS = 0.15; // volts
+    public static final double kV = 12 / (NeoMotorConstants.kFreeSpeedRpm / 60 * 2 * Math.PI / kGearRatio);
+
+    // Homing drives the arm into the stowed hard stop until it stops moving
+    // while drawing current. A NEO stalls at about 13 A at the homing voltage.
+    public static final double kHomingVoltage = -1.5;
+    public static final double kHomingCurrent = 6; // amps
+    public static final double kHomingVelocity = 0.2; // rad/s, slower than this is stopped
+    public static final double kHomingTime = 0.1; // seconds
+    public static final double kHomingTimeout = 2.0; // seconds before zeroing wherever the arm is
+
+    // For simulation
+    public static final double kArmLength = Units.inchesToMeters(10);
+    public static final double kArmMass = 0.5; // kg
+  }
+
+  public static final class BallisticsConstants {
+    // Exit speed of the note from the flywheel surface speed
+    public static final double kShooterWheelDiameter = Units.inchesToMeters(4);
+    public static final double kExitSpeedEfficiency = 0.45; // calibrate
+
+    // Shooter geometry, the note leaves the end of the shooter
+    public static final double kPivotHeight = 0.25; // meters above the carpet
+    public static final double kShooterLength = 0.3; // meters from the pivot to the exit
+    // Launch angle is the pivot position times this plus the offset
+    public static final double kDegreesPerPivotUnit = 360 / PivotConstants.kPivotEncoderFactor;
+    public static final double kLaunchAngleOffset = 0; // degrees, calibrate
+
+    // Aim for the middle of the speaker opening, the opening is 1.98 m to 2.11 m
+    // high and reaches 0.46 m out from the wall
+    public static final double kSpeakerTargetHeight = 2.045; // meters
+    public static final double kSpeakerTargetSetback = 0.23; // meters in front of the target point
+
+    // Quadratic drag on a note, 0.5 * rho * Cd * A / m
+    public static final double kNoteMass = 0.235; // kg
+    public static final double kNoteDragArea = 0.0065; // Cd * A in m^2, calibrate
+    public static final double kAirDensity = 1.2; // kg/m^3
+
+    // Lookup grid
+    public static final double kMinDistance = 0.8; // meters
+    public static final double kMaxDistance = 7.0;
+    public static final double kDistanceStep = 0.1;
+    public static final double kMinExitSpeed = 4; // m/s
+    public static final double kMaxExitSpeed = 24;
+    public static final double kExitSpeedStep = 1;
+    public static final double kSimulationStep = 0.002; // seconds
+
+    // Known good shots at full shooter speed, {distance (m), pivot position}.
+    // Calibrate at comps
+    public static final double[][] kCalibrationShots = {
+        { 1.35, PivotConstants.kSubwooferPos },
+        { 2.95, PivotConstants.kPodiumPos },
+    };
   }
 
   public static final class DriveConstants {
@@ -120,6 +269,20 @@ public final class Constants {
     public static final double kAutoAimMaxAngularSpeed = Units.radiansToDegrees(540.00);
     public static final double kAutoAimMaxAngularAccel = Units.radiansToDegrees(720.00);
 
+    // Heading hold while the driver isn't rotating. The heading is captured once
+    // the robot stops turning, or after the delay if it never quite stops.
+    public static final double kHeadingHoldDelay = 0.25; // seconds
+    public static final double kHeadingHoldCaptureRate = 0.2; // radians per second
+    // Hold is dropped if drive() isn't called for this long, like when disabled
+    public static final double kHeadingHoldTimeout = 0.1; // seconds
+
+    // Teleop obstacle avoidance. Speed toward walls and navgrid obstacles is
+    // limited so the robot can always stop in time.
+    public static final double kBumperHalfWidth = Units.inchesToMeters(33) / 2;
+    public static final double kObstacleMaxDeceleration = 4; // m/s^2
+    public static final double kObstacleReactionTime = 0.06; // seconds before braking starts
+    public static final double kObstacleMargin = 0.05; // meters, the navgrid is already padded for the robot
+
     public static final double kDirectionSlewRate = 1.2; // radians per second
     public static final double kMagnitudeSlewRate = 1.8; // percent per second (1 = 100%)
     public static final double kRotationalSlewRate = 2.0; // percent per second (1 = 100%)
@@ -131,11 +294,13 @@ public final class Constants {
     // Distance from center to furthest wheel (*diagonal*)
     public static final double kCenterToWheel = Units.inchesToMeters(Math.sqrt(121 + 121)); // 11^2 + 11^2 PT
     // Distance between front and back wheels on robot
-    public static final SwerveDriveKinematics kDriveKinematics = new SwerveDriveKinematics(
+    public static final Translation2d[] kModuleTranslations = {
         new Translation2d(kWheelBase / 2, kTrackWidth / 2),
         new Translation2d(kWheelBase / 2, -kTrackWidth / 2),
         new Translation2d(-kWheelBase / 2, kTrackWidth / 2),
-        new Translation2d(-kWheelBase / 2, -kTrackWidth / 2));
+        new Translation2d(-kWheelBase / 2, -kTrackWidth / 2)
+    };
+    public static final SwerveDriveKinematics kDriveKinematics = new SwerveDriveKinematics(kModuleTranslations);
 
     public static final double kDiagonalMeters = Units.inchesToMeters(33.941);
 
@@ -158,8 +323,50 @@ public final class Constants {
     public static final boolean kGyroReversed = true;
     public static final double kGyroAdjustment = 0.0;
 
+    // Gyro fault detection
+    public static final double kGyroReadPeriod = 0.01; // seconds between NavX reads
+    public static final double kGyroStaleTimeout = 0.1; // seconds without a new sample before it's stale
+    public static final double kGyroMaxJump = 0.15; // radians the gyro can disagree with the wheels each loop
+
     public static final PIDConstants kTranslationPID = new PIDConstants(5, 0); // Translation PID constants
     public static final PIDConstants kRotationPID = new PIDConstants(5, 0, 0); // Rotation PID constants
+
+    // Fraction of the max speed allowed while a swerve module has failed
+    public static final double kDegradedSpeedScale = 0.5;
+
+    // Odometry outlier rejection, in meters of module motion per loop
+    public static final double kOdometrySkidScale = 0.01; // residual where a module's weight is halved
+    public static final double kOdometrySkidReject = 0.02; // residual where a module is dropped
+    public static final int kOdometryFitIterations = 2;
+
+    // Number of loops of pose history to keep for latency compensation (~2s)
+    public static final int kPoseHistorySize = 100;
+
+    // Velocity estimator noise, as variances
+    public static final double kVelocityProcessNoise = 50; // (m/s^3)^2 per second of jerk
+    public static final double kOmegaProcessNoise = 20; // (rad/s^2)^2 per second
+    public static final double kWheelVelocityNoise = 0.01; // (m/s)^2 with all modules trusted
+    public static final double kWheelOmegaNoise = 0.05; // (rad/s)^2
+    public static final double kGyroRateNoise = 0.001; // (rad/s)^2
+    public static final double kAccelerometerNoise = 0.25; // (m/s^2)^2
+    // Seconds for the inertial velocity to follow the wheels, longer catches
+    // slower slip but lets more accelerometer bias through
+    public static final double kInertialVelocityTimeConstant = 0.5;
+    public static final double kGravity = 9.80665; // m/s^2 per g
+
+    // Pose estimator trust in the odometry and vision (x, y, theta), WPILib's defaults
+    public static final Matrix<N3, N1> kStateStdDevs = VecBuilder.fill(0.1, 0.1, 0.1);
+    public static final Matrix<N3, N1> kVisionStdDevs = VecBuilder.fill(0.9, 0.9, 0.9);
+
+    // Collision detection from NavX jerk
+    public static final double kCollisionReadPeriod = 0.005; // seconds between NavX reads
+    public static final double kCollisionJerkThreshold = 40; // g per second
+    public static final double kCollisionMaxSampleGap = 0.05; // seconds, longer gaps aren't compared
+    public static final double kCollisionHoldoff = 0.5; // seconds before another collision can be detected
+    // After a hit the odometry can't be trusted, so weight vision heavily for a while
+    public static final Matrix<N3, N1> kCollisionVisionStdDevs = VecBuilder.fill(0.1, 0.1, 0.3);
+    public static final double kCollisionRecoveryTime = 1.5; // seconds
+    public static final int kCollisionVisionFrames = 5; // vision frames to trust before recovering
   }
 
   public static final class ModuleConstants {
@@ -175,8 +382,9 @@ public final class Constants {
     // the steering motor in the MAXSwerve Module.
     public static final boolean kTurningEncoderInverted = true;
 
-    // Calculations required for driving motor conversion factors and feed forward
-    public static final double kDrivingMotorFreeSpeedRps = NeoMotorConstants.kFreeSpeedRpm / 60;
+    // Calculations required for driving motor conversion factors and feed forward.
+    // The driving motors are NEO Vortexes.
+    public static final double kDrivingMotorFreeSpeedRps = NeoMotorConstants.kVortexFreeSpeedRpm / 60;
     public static final double kWheelDiameterMeters = Units.inchesToMeters(3.365 / 1); // 3.365
     public static final double kWheelCircumferenceMeters = kWheelDiameterMeters * Math.PI;
     // 45 teeth on the wheel's bevel gear, 22 teeth on the first-stage spur gear, 15
@@ -184,6 +392,8 @@ public final class Constants {
     public static final double kDrivingMotorReduction = (45.0 * 22) / (kDrivingMotorPinionTeeth * 15);
     public static final double kDriveWheelFreeSpeedMps = (kDrivingMotorFreeSpeedRps * kWheelCircumferenceMeters)
         / kDrivingMotorReduction;
+    // Leave the velocity loop some headroom below free speed
+    public static final double kMaxModuleSpeedMps = kDriveWheelFreeSpeedMps * 0.9;
 
     public static final double kDrivingEncoderPositionFactor = (kWheelDiameterMeters * Math.PI)
         / kDrivingMotorReduction; // meters
@@ -200,6 +410,12 @@ public final class Constants {
     public static final double kDrivingI = 0;
     public static final double kDrivingD = 0;
     public static final double kDrivingFF = 1 / kDriveWheelFreeSpeedMps;
+    // Acceleration feedforward in volts per m/s^2. Estimated for a ~60 kg robot,
+    // replace with kA from the drive characterization.
+    public static final double kDrivingA = 0.5;
+    public static final double kDrivingMaxAcceleration = 8; // m/s^2, clamps the acceleration feedforward
+    public static final double kDrivingFeedforwardTimeout = 0.1; // seconds between path setpoints before they're unrelated
+    public static final double kDrivingAccelerationFilter = 0.04; // seconds, smooths the path acceleration
     public static final double kDrivingMinOutput = -1;
     public static final double kDrivingMaxOutput = 1;
 
@@ -214,28 +430,116 @@ public final class Constants {
     public static final IdleMode kTurningMotorIdleMode = IdleMode.kBrake;
 
     public static final int kDrivingMotorCurrentLimit = 60; // amps
+    public static final int kMinDrivingMotorCurrentLimit = 35; // amps, lowest the power manager goes
     public static final int kTurningMotorCurrentLimit = 20; // amps
+
+    // Module health monitoring
+    public static final double kModuleFaultTime = 0.5; // seconds a fault has to last to fail the module
+    public static final double kModuleRetryTime = 2.0; // seconds a failed module waits before it's tried again
+    public static final double kModuleMinAcceleration = 4.0; // m/s^2 any healthy wheel reaches its speed at
+    public static final double kModuleMaxVelocityError = 1.0; // meters per second
+    public static final double kModuleMaxAngleError = 0.5; // radians
+    public static final double kMaxMotorTemperature = 80; // celsius
+
+    // Traction control
+    public static final double kSlipThreshold = 0.5; // m/s a wheel can outrun the ground before it's slipping
+    public static final double kTractionMaxSlip = 0.3; // m/s a slipping wheel is allowed to outrun the ground
   }
 
   public static final class OIConstants {
     public static final int kDriverControllerPort = 0;
     public static final int kAttatchmentsControllerPort = 1;
     public static final double kDriveDeadband = 0.05;
+
+    // Stick response, 0 is linear and 1 is cubic
+    public static final double kTranslationExpo = 0.5;
+    public static final double kRotationExpo = 0.6;
+    // Speed multiplier while the driver holds precision mode
+    public static final double kPrecisionScale = 0.35;
   }
 
   public static final class AutoConstants {
     // PathFlowerConfig for PathPlanner's AutoBuilder
     public static final HolonomicPathFollowerConfig AutoPathFollowerConfig = new HolonomicPathFollowerConfig(
-        new PIDConstants(5, 0, 0), // Translation PID constants
-        new PIDConstants(5, 0, 0), // Rotation PID constants
-        10.0, // Max module speed, in m/s
+        DriveConstants.kTranslationPID, // Translation PID constants
+        DriveConstants.kRotationPID, // Rotation PID constants
+        ModuleConstants.kMaxModuleSpeedMps, // Max module speed, in m/s
         DriveConstants.kCenterToWheel, // Drive base radius in meters. Distance from robot center to furthest module.
         new ReplanningConfig() // Default path replanning config. See the API for the options here
     );
+
+    // Subsystem names, as the scheduler reports them
+    public static final String kDrive = "DriveSubsystem";
+    public static final String kPivot = "PivotSubsystem";
+    public static final String kAmpArm = "AmpArmSubsystem";
+    public static final String kShooter = "ShooterSubsystem";
+    public static final String kFeeder = "FeederSubsystem";
+    public static final String kIntake = "UTBIntakerSubsystem";
+
+    // What each named command moves. RobotContainer warns at startup if a named
+    // command requires anything not listed, and AutoAnalyzer uses this to find
+    // steps that could run together.
+    public static final Map<String, Set<String>> kNamedCommandMechanisms = Map.ofEntries(
+        Map.entry("zeroGyro", Set.of(kDrive)),
+        Map.entry("setX", Set.of(kDrive)),
+        Map.entry("startAutoAim", Set.of(kDrive)),
+        Map.entry("stopAutoAim", Set.of(kDrive)),
+        Map.entry("enableVision", Set.of()),
+        Map.entry("disableVision", Set.of()),
+        Map.entry("adjustYes", Set.of()),
+        Map.entry("adjustNo", Set.of()),
+        Map.entry("pivotW1", Set.of(kPivot)),
+        Map.entry("pivotW2", Set.of(kPivot)),
+        Map.entry("pivotW3", Set.of(kPivot)),
+        Map.entry("pivotSubwoofer", Set.of(kPivot)),
+        Map.entry("pivotIntake", Set.of(kPivot)),
+        Map.entry("startShooter", Set.of(kShooter)),
+        Map.entry("startFeeders", Set.of(kIntake, kFeeder)),
+        Map.entry("startContinuousFire", Set.of(kIntake, kFeeder, kShooter)),
+        Map.entry("stopContinuousFire", Set.of(kIntake, kFeeder, kShooter, kPivot, kAmpArm)),
+        Map.entry("startIntaker", Set.of(kIntake, kFeeder)),
+        Map.entry("startIntakers", Set.of(kIntake, kFeeder)),
+        Map.entry("stopIntaker", Set.of(kIntake, kFeeder)),
+        Map.entry("stopShooter", Set.of(kIntake, kFeeder, kPivot)),
+        Map.entry("stopFeeders", Set.of(kIntake, kFeeder, kPivot)),
+        Map.entry("beamBreak", Set.of(kFeeder)),
+        Map.entry("intake", Set.of(kIntake, kFeeder)));
+  }
+
+  public static final class PowerConstants {
+    // Priorities for the current budget, lower numbers get current first
+    public static final int kTurningPriority = 0;
+    public static final int kPivotPriority = 1;
+    public static final int kShooterSpinUpPriority = 2;
+    public static final int kDrivingPriority = 3;
+    public static final int kShooterPriority = 4;
+    public static final int kFeederPriority = 5;
+    public static final int kIntakePriority = 6;
+
+    // Keep the battery this far above the roboRIO brownout voltage
+    public static final double kBrownoutMargin = 1.0; // volts
+    // Current drawn by everything that isn't a managed motor
+    public static final double kBaseLoad = 5; // amps
+
+    // Battery and wiring resistance before there is a measurement
+    public static final double kNominalResistance = 0.02; // ohms
+    public static final double kMinResistance = 0.01; // ohms
+    public static final double kMaxResistance = 0.1; // ohms
+    // Smallest change in current that gives a usable resistance measurement
+    public static final double kResistanceMinCurrentStep = 20; // amps
+    // How quickly the resistance estimate follows new measurements, 0-1
+    public static final double kResistanceFilterGain = 0.05;
+
+    // Limits only change in steps this big, raised at most this often
+    public static final int kLimitStep = 5; // amps
+    public static final double kLimitRaisePeriod = 0.25; // seconds
+    // Duty cycle below which a motor is idle and draws no current
+    public static final double kIdleDutyCycle = 0.02;
   }
 
   public static final class NeoMotorConstants {
     public static final double kFreeSpeedRpm = 5676;
+    public static final double kVortexFreeSpeedRpm = 6784;
   }
 
   public static final class VisionConstants {
@@ -4,9 +4,13 @@
 
 package frc.robot;
 
+import edu.wpi.first.wpilibj.DataLogManager;
 import edu.wpi.first.wpilibj.TimedRobot;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import frc.utils.AllianceUtils;
+import frc.utils.CommandTracer;
+import frc.utils.SparkConfigurator;
 
 /**
  * The VM is configured to automatically run this class, and to call the
@@ -23,6 +27,9 @@ public class Robot extends TimedRobot {
 
   private RobotContainer m_robotContainer;
 
+  // Records command timing, written out every time the robot is disabled
+  private CommandTracer m_commandTracer;
+
   /**
    * This function is run when the robot is first started up and should be used
    * for any
@@ -30,10 +37,29 @@ public class Robot extends TimedRobot {
    */
   @Override
   public void robotInit() {
+    // Record NetworkTables and characterization data to the roboRIO
+    DataLogManager.start();
+
     // Instantiate our RobotContainer. This will perform all our button bindings,
     // and put our
     // autonomous chooser on the dashboard.
     m_robotContainer = new RobotContainer();
+    AllianceUtils.refresh();
+
+    // Let the remaining controllers finish configuring before the first loop
+    SparkConfigurator.awaitAll();
+
+    // Created last so it can tell when the subsystems are done each loop
+    m_commandTracer = new CommandTracer();
+  }
+
+  /**
+   * This function is called once when the driver station first connects. The
+   * alliance is usually known from here on.
+   */
+  @Override
+  public void driverStationConnected() {
+    AllianceUtils.refresh();
   }
 
   /**
@@ -59,10 +85,13 @@ public class Robot extends TimedRobot {
   /** This function is called once each time the robot enters Disabled mode. */
   @Override
   public void disabledInit() {
+    m_commandTracer.export();
   }
 
   @Override
   public void disabledPeriodic() {
+    // The FMS can change our alliance any time before the match is enabled
+    AllianceUtils.refresh();
   }
 
   /**
@@ -71,6 +100,7 @@ public class Robot extends TimedRobot {
    */
   @Override
   public void autonomousInit() {
+    AllianceUtils.refresh();
     m_autonomousCommand = m_robotContainer.getAutonomousCommand();
 
     if (m_autonomousCommand != null) {
@@ -85,6 +115,8 @@ public class Robot extends TimedRobot {
 
   @Override
   public void teleopInit() {
+    AllianceUtils.refresh();
+
     // This makes sure that the autonomous stops running when
     // teleop starts running. If you want the autonomous to
     // continue until interrupted by another command, remove
@@ -105,6 +137,12 @@ public class Robot extends TimedRobot {
   public void testInit() {
     // Cancels all running commands at the start of test mode.
     CommandScheduler.getInstance().cancelAll();
+
+    // Run whichever characterization routine is selected on the dashboard
+    Command characterization = m_robotContainer.getCharacterizationCommand();
+    if (characterization != null) {
+      characterization.schedule();
+    }
   }
 
   /** This function is called periodically during test mode. */
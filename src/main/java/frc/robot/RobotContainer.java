@@ -6,6 +6,7 @@ package frc.robot;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 import com.pathplanner.lib.auto.AutoBuilder;
 import com.pathplanner.lib.auto.NamedCommands;
@@ -17,7 +18,6 @@ import com.pathplanner.lib.path.PathPlannerPath;
 import com.pathplanner.lib.util.HolonomicPathFollowerConfig;
 import com.pathplanner.lib.util.ReplanningConfig;
 
-import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.geometry.Rotation3d;
@@ -27,24 +27,35 @@ import edu.wpi.first.math.geometry.Translation3d;
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
 import edu.wpi.first.math.util.Units;
 import edu.wpi.first.wpilibj.DriverStation;
-import edu.wpi.first.wpilibj.DriverStation.Alliance;
 import edu.wpi.first.wpilibj.GenericHID.RumbleType;
+import edu.wpi.first.wpilibj.RobotController;
 import edu.wpi.first.wpilibj.smartdashboard.Field2d;
 import edu.wpi.first.wpilibj.smartdashboard.SendableChooser;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.Commands;
+import edu.wpi.first.wpilibj2.command.Subsystem;
 import edu.wpi.first.wpilibj2.command.button.CommandXboxController;
+import frc.robot.Constants.AutoConstants;
 import frc.robot.Constants.OIConstants;
-import frc.robot.Constants.TargetConstants;
+import frc.robot.Constants.PivotConstants;
 import frc.robot.Constants.VisionConstants;
-import frc.robot.commands.AttachmentCoordinator;
 import frc.robot.subsystems.DriveSubsystem;
+import frc.robot.subsystems.PowerManager;
+import frc.robot.subsystems.attachment.AmpArmSubsystem;
+import frc.robot.subsystems.attachment.AttachmentCoordinator;
 import frc.robot.subsystems.attachment.FeederSubsystem;
 import frc.robot.subsystems.attachment.PivotSubsystem;
 import frc.robot.subsystems.attachment.PivotSubsystem.PivotPosition;
 import frc.robot.subsystems.attachment.ShooterSubsystem;
 import frc.robot.subsystems.attachment.UTBIntakerSubsystem;
+import frc.utils.AllianceUtils;
+import frc.utils.BallisticSolver;
+import frc.utils.CommandTracer;
+import frc.utils.DriverInput;
+import frc.utils.PoseHistory;
+import frc.utils.ShotLogger;
+import frc.utils.ShotLogger.Label;
 
 /*
  * This class is where the bulk of the robot should be declared.  Since Command-based is a
@@ -56,9 +67,11 @@ public class RobotContainer {
   // Autogenerated chooser with all the auto routes
   public final SendableChooser<Command> autoChooser;
 
+  // Characterization routines, run in test mode
+  private final SendableChooser<Command> m_characterizationChooser = new SendableChooser<>();
+
   // Other (tests)
   private boolean m_autoAim = false;
-  private double m_adjust = 0;
   private boolean m_vision = true;
 
   // The robot's subsystems
@@ -70,16 +83,35 @@ public class RobotContainer {
     }
   });
 
+  private final UTBIntakerSubsystem m_intake = new UTBIntakerSubsystem();
+  private final FeederSubsystem m_feeder = new FeederSubsystem();
+  private final ShooterSubsystem m_shooter = new ShooterSubsystem();
+  private final PivotSubsystem m_pivot = new PivotSubsystem();
+  private final AmpArmSubsystem m_ampArm = new AmpArmSubsystem();
+
   public final AttachmentCoordinator m_attatchment = new AttachmentCoordinator(
-      new UTBIntakerSubsystem(),
-      new FeederSubsystem(),
-      new ShooterSubsystem(),
-      new PivotSubsystem());
+      m_intake,
+      m_feeder,
+      m_shooter,
+      m_pivot,
+      m_ampArm);
+
+  // Shares the battery between the motors above
+  private final PowerManager m_power = new PowerManager();
+
+  // Pivot angles and flight times for auto aim
+  private final BallisticSolver m_ballistics = new BallisticSolver();
+
+  // Every shot with a hit or miss label, for refitting the aim
+  private final ShotLogger m_shotLogger = new ShotLogger();
 
   // The driver's controllers
   CommandXboxController m_driverController = new CommandXboxController(OIConstants.kDriverControllerPort);
   CommandXboxController m_attachmentController = new CommandXboxController(OIConstants.kAttatchmentsControllerPort);
 
+  // Shaped driver sticks, shared by every teleop drive command
+  private final DriverInput m_driverInput = new DriverInput(m_driverController.getHID());
+
   // Fields for visualization and testing
   private final Field2d m_field = new Field2d();
   private final Field2d m_estimationField = new Field2d();  
@@ -89,6 +121,13 @@ public class RobotContainer {
   public RobotContainer() {
     registerPathplannerCommands();
 
+    m_robotDrive.registerPower(m_power);
+    m_shooter.registerPower(m_power);
+    m_pivot.registerPower(m_power);
+    m_ampArm.registerPower(m_power);
+    m_feeder.registerPower(m_power);
+    m_intake.registerPower(m_power);
+
     // Build an auto chooser. This will use Commands.none() as the default option.
     autoChooser = AutoBuilder.buildAutoChooser();
     SmartDashboard.putData("Auto Chooser", autoChooser);
@@ -97,6 +136,21 @@ public class RobotContainer {
     SmartDashboard.putData("Calibration Testing", m_calibrationField);
     SmartDashboard.putNumber("Cali X", 0);
     SmartDashboard.putNumber("Cali Y", 0);
+    SmartDashboard.putData("Reset Module Health",
+        Commands.runOnce(m_robotDrive::resetModuleHealth).ignoringDisable(true));
+    SmartDashboard.putData("Burn Drive Flash",
+        Commands.runOnce(m_robotDrive::burnFlash).ignoringDisable(true));
+    SmartDashboard.putData("Burn Pivot Flash",
+        Commands.runOnce(m_pivot::burnFlash).ignoringDisable(true));
+    SmartDashboard.putData("Burn Amp Arm Flash",
+        Commands.runOnce(m_ampArm::burnFlash).ignoringDisable(true));
+
+    m_characterizationChooser.setDefaultOption("None", Commands.none());
+    m_characterizationChooser.addOption("Drive", m_robotDrive.getDriveCharacterizationCommand());
+    m_characterizationChooser.addOption("Steering", m_robotDrive.getTurningCharacterizationCommand());
+    m_characterizationChooser.addOption("Pivot", m_pivot.getCharacterizationCommand());
+    m_characterizationChooser.addOption("Shooter", m_shooter.getCharacterizationCommand());
+    SmartDashboard.putData("Characterization", m_characterizationChooser);
 
 
     // Configure the button bindings
@@ -107,11 +161,14 @@ public class RobotContainer {
         // The left stick controls translation of the robot.
         // Turning is controlled by the X axis of the right stick.
         Commands.run(
-            () -> m_robotDrive.drive(
-                -MathUtil.applyDeadband(invertIfRed(m_driverController.getLeftY()), OIConstants.kDriveDeadband),
-                -MathUtil.applyDeadband(invertIfRed(m_driverController.getLeftX()), OIConstants.kDriveDeadband),
-                -MathUtil.applyDeadband(m_driverController.getRightX(), OIConstants.kDriveDeadband),
-                true, false),
+            () -> {
+              m_robotDrive.drive(
+                  invertIfRed(m_driverInput.getX()),
+                  invertIfRed(m_driverInput.getY()),
+                  m_driverInput.getRotation(),
+                  true, false);
+              SmartDashboard.putNumber("Input Latency (ms)", m_driverInput.getAge() * 1000);
+            },
             m_robotDrive));
 
              new PathfindHolonomic(
@@ -129,75 +186,96 @@ public class RobotContainer {
    * Register named commands used in pathplanner autos
    */
   private void registerPathplannerCommands() {
-    NamedCommands.registerCommand("startContinuousFire", m_attatchment.getStartContinuousFireCommand());
-    NamedCommands.registerCommand("stopContinuousFire", m_attatchment.getStopContinuousFireCommand());
+    registerNamedCommand("startContinuousFire", m_attatchment.getStartContinuousFireCommand());
+    registerNamedCommand("stopContinuousFire", m_attatchment.getStopContinuousFireCommand());
 
     // TODO: maybe find a cleaner way to implement this. also includes running the
     // pivot function constantly during auto
-    NamedCommands.registerCommand("startAutoAim", Commands.runOnce(() -> {
+    registerNamedCommand("startAutoAim", Commands.runOnce(() -> {
       m_autoAim = true;
     }).asProxy());
 
-    NamedCommands.registerCommand("stopAutoAim", Commands.runOnce(() -> {
+    registerNamedCommand("stopAutoAim", Commands.runOnce(() -> {
       m_autoAim = false;
     }).asProxy());
 
     
-    NamedCommands.registerCommand("enableVision", Commands.runOnce(() -> {
+    registerNamedCommand("enableVision", Commands.runOnce(() -> {
       m_vision = true;
     }).asProxy());
 
-    NamedCommands.registerCommand("disableVision", Commands.runOnce(() -> {
+    registerNamedCommand("disableVision", Commands.runOnce(() -> {
       m_vision = false;
     }).asProxy());
 
-    NamedCommands.registerCommand("adjustYes", Commands.runOnce(() -> {
-      m_adjust = 1;
-    }).asProxy());
-
-    NamedCommands.registerCommand("adjustNo", Commands.runOnce(() -> {
-      m_adjust = 0;
-    }).asProxy());
+    // The ballistic solver replaced the red alliance adjustment, these are kept
+    // for the autos that still call them
+    registerNamedCommand("adjustYes", Commands.none());
+    registerNamedCommand("adjustNo", Commands.none());
 
-    NamedCommands.registerCommand("zeroGyro", Commands.runOnce(() -> {
+    registerNamedCommand("zeroGyro", Commands.runOnce(() -> {
       m_robotDrive.resetGyro();
     }).asProxy());
 
-    NamedCommands.registerCommand("setX", Commands.runOnce(() -> {
+    registerNamedCommand("setX", Commands.runOnce(() -> {
       m_robotDrive.setX();
     }).asProxy());
 
-    NamedCommands.registerCommand("pivotW1", Commands.runOnce(() -> {
+    registerNamedCommand("pivotW1", Commands.runOnce(() -> {
       m_attatchment.setCustomPosition(7.7);
     }).asProxy());
 
-    NamedCommands.registerCommand("pivotW2", Commands.runOnce(() -> {
+    registerNamedCommand("pivotW2", Commands.runOnce(() -> {
       m_attatchment.setCustomPosition(9.27);
     }).asProxy());
 
-    NamedCommands.registerCommand("pivotW3", Commands.runOnce(() -> {
+    registerNamedCommand("pivotW3", Commands.runOnce(() -> {
       m_attatchment.setCustomPosition(6.95);
     }).asProxy());
 
-    NamedCommands.registerCommand("beamBreak", m_attatchment.getBeamBreakCommand());
+    registerNamedCommand("beamBreak", m_attatchment.getBeamBreakCommand());
 
-    NamedCommands.registerCommand("pivotSubwoofer",
+    registerNamedCommand("pivotSubwoofer",
         m_attatchment.getSetPivotPositionCommand(PivotPosition.kSubwooferPosition));
-    NamedCommands.registerCommand("pivotIntake",
+    registerNamedCommand("pivotIntake",
         m_attatchment.getSetPivotPositionCommand(PivotPosition.kIntakePosition));
 
-    NamedCommands.registerCommand("startFeeders", m_attatchment.getStartShootCommand());
-    NamedCommands.registerCommand("startShooter", m_attatchment.getSpinShooterAutoCommand());
-    NamedCommands.registerCommand("stopShooter", m_attatchment.getStopShootCommand());
-    NamedCommands.registerCommand("startIntakers", m_attatchment.getIntakeAutoCommand().asProxy());
+    registerNamedCommand("startFeeders", m_attatchment.getStartShootCommand());
+    registerNamedCommand("startShooter", m_attatchment.getSpinShooterAutoCommand());
+    registerNamedCommand("stopShooter", m_attatchment.getStopShootCommand());
+    registerNamedCommand("startIntakers", m_attatchment.getIntakeAutoCommand().asProxy());
 
-    NamedCommands.registerCommand("startIntaker", m_attatchment.getIntakeAutoCommand());
-    NamedCommands.registerCommand("stopIntaker", m_attatchment.getStopIntakeAutoCommand());
+    registerNamedCommand("startIntaker", m_attatchment.getIntakeAutoCommand());
+    registerNamedCommand("stopIntaker", m_attatchment.getStopIntakeAutoCommand());
 
     // will not stop
-    NamedCommands.registerCommand("intake", m_attatchment.getIntakeCommand());
+    registerNamedCommand("intake", m_attatchment.getIntakeCommand());
 
-    NamedCommands.registerCommand("stopFeeders", m_attatchment.getStopShootCommand());
+    registerNamedCommand("stopFeeders", m_attatchment.getStopShootCommand());
+  }
+
+  /**
+   * Register a named command for the autos, traced so its timing shows up
+   * inside the auto's composition. Warns if it requires something
+   * {@link AutoConstants#kNamedCommandMechanisms} doesn't list, so the auto
+   * analyzer's model of it stays right.
+   */
+  private static void registerNamedCommand(String name, Command command) {
+    Set<String> mechanisms = AutoConstants.kNamedCommandMechanisms.get(name);
+    if (mechanisms == null) {
+      DriverStation.reportWarning("Named command " + name + " isn't in kNamedCommandMechanisms", false);
+    } else {
+      for (Subsystem requirement : command.getRequirements()) {
+        if (!mechanisms.contains(requirement.getName())) {
+          DriverStation.reportWarning("Named command " + name + " requires " + requirement.getName()
+              + ", add it to kNamedCommandMechanisms", false);
+        }
+      }
+    }
+
+    Command traced = CommandTracer.trace(command);
+    traced.setName(name);
+    NamedCommands.registerCommand(name, traced);
   }
 
   /**
@@ -217,9 +295,9 @@ public class RobotContainer {
 
     // Auto aiming
     m_attachmentController.rightTrigger().whileTrue(Commands.run(() -> {
-      autoAimDrive(getAimingVector(getTarget()).getAngle());
+      autoAimDrive(getShotVector().getAngle());
       autoAimPivot(0);
-    }));
+    }, m_robotDrive, m_pivot));
     
     // adjusted vision
     /* m_attachmentController.leftTrigger().whileTrue(Commands.run(() -> {
@@ -243,6 +321,15 @@ public class RobotContainer {
 
     m_driverController.leftTrigger().whileTrue(Commands.run(() -> autoAimDrive(Rotation2d.fromDegrees(getFromAlliance(-90, -90))), m_robotDrive));
 
+    // Record each shot, and label the latest one hit, high, or low
+    m_attatchment.onShot(this::logShot);
+    m_attachmentController.start().onTrue(
+        Commands.runOnce(() -> m_shotLogger.label(Label.kHit)).ignoringDisable(true));
+    m_attachmentController.rightStick().onTrue(
+        Commands.runOnce(() -> m_shotLogger.label(Label.kMissedHigh)).ignoringDisable(true));
+    m_attachmentController.leftStick().onTrue(
+        Commands.runOnce(() -> m_shotLogger.label(Label.kMissedLow)).ignoringDisable(true));
+
     // Attatchment controls
 
     // Intake
@@ -299,78 +386,157 @@ public class RobotContainer {
     m_attachmentController.povRight().onTrue(m_attatchment.getSetCustomPivotPositionCommand(17));
   }
 
-  // TODO: try this adjustment if long shots are bad (distance^(1.161))-4
-  public void autoAimPivot(float adjustment) {
-    double angle = 15;
-    double targetDistance = getAimingVector(getTarget()).getNorm();
-    if (isBlueAlliance()) {
-      angle = (35.8266 * Math.pow(.7037, targetDistance));
+  /**
+   * Point the pivot at the speaker using the ballistic solver, or the fitted
+   * curve until the solver matches the calibration shots
+   *
+   * @param adjustment pivot units to add to the solved position
+   */
+  public void autoAimPivot(double adjustment) {
+    double position;
+    if (m_ballistics.isCalibrated()) {
+      double exitSpeed = m_ballistics.getExitSpeed(m_shooter.getShotRpm());
+      position = m_ballistics.getPivotPosition(getShotVector().getNorm(), exitSpeed);
     } else {
-      angle = (35.8266 * Math.pow(.7037, targetDistance));
-      angle += m_adjust;
+      position = getFittedPivotPosition(m_robotDrive.getState().targetDistance());
     }
+    position += adjustment;
 
-    angle -= 4; // adjustment
-    angle += adjustment; // other adjustment
-    
-    /*if (targetDistance >= 4) {
-      angle += Math.pow(targetDistance, 1.05) - 4;
-    }*/
+    // NaN when the shot can't be made or the solver isn't ready
+    if (position < PivotConstants.kGlobalMax && position > PivotConstants.kGlobalMin) {
+      m_attatchment.setCustomPosition(position);
+    }
+  }
+
+  /**
+   * The pivot curve fit to shots before the ballistic solver
+   *
+   * @param distance the distance to the speaker in meters
+   * @return the pivot position
+   */
+  private static double getFittedPivotPosition(double distance) {
+    return 35.8266 * Math.pow(.7037, distance) - 4;
+  }
+
+  /**
+   * Get the vector from the speaker to the robot to aim along. The note keeps
+   * the robot's velocity, so this leads the target by how far the robot moves
+   * while the note is in the air.
+   *
+   * @return the aiming vector in meters
+   */
+  public Translation2d getShotVector() {
+    RobotState state = m_robotDrive.getState();
+    double exitSpeed = m_ballistics.getExitSpeed(m_shooter.getShotRpm());
+    double timeOfFlight = m_ballistics.getTimeOfFlight(state.targetDistance(), exitSpeed);
+    if (Double.isNaN(timeOfFlight)) {
+      return state.aimingVector();
+    }
+
+    Translation2d velocity = m_robotDrive.getVelocityEstimator().getFieldVelocity();
+    return state.aimingVector().plus(velocity.times(timeOfFlight));
+  }
 
-    if (angle < 30 && angle > 2) {
-      m_attatchment.setCustomPosition(angle);
+  /**
+   * Record the state of the robot as a note leaves the shooter. The pose is
+   * looked up at the moment the note cleared the beam break rather than when
+   * the loop noticed.
+   */
+  private void logShot() {
+    RobotState state = m_robotDrive.getState();
+    double[] sample = new double[PoseHistory.kSampleSize];
+    if (!m_robotDrive.getPoseHistory().sample(m_feeder.getReleaseTime(), sample)) {
+      Translation2d velocity = m_robotDrive.getVelocityEstimator().getFieldVelocity();
+      sample[PoseHistory.kX] = state.pose().getX();
+      sample[PoseHistory.kY] = state.pose().getY();
+      sample[PoseHistory.kTheta] = state.heading().getRadians();
+      sample[PoseHistory.kVx] = velocity.getX();
+      sample[PoseHistory.kVy] = velocity.getY();
+      sample[PoseHistory.kOmega] = m_robotDrive.getVelocityEstimator().getOmega();
     }
+    double distance = AllianceUtils.getSpeakerTarget()
+        .getDistance(new Translation2d(sample[PoseHistory.kX], sample[PoseHistory.kY]));
+
+    m_shotLogger.logShot(new ShotLogger.Shot(
+        (float) DriverStation.getMatchTime(),
+        (float) sample[PoseHistory.kX],
+        (float) sample[PoseHistory.kY],
+        (float) sample[PoseHistory.kTheta],
+        (float) sample[PoseHistory.kVx],
+        (float) sample[PoseHistory.kVy],
+        (float) sample[PoseHistory.kOmega],
+        (float) distance,
+        (float) getShotVector().getNorm(),
+        (float) m_pivot.getSetpoint(),
+        (float) m_pivot.getActualPosition(),
+        (float) m_shooter.getFlywheelRpm(),
+        (float) m_shooter.getTargetRpm(),
+        (float) m_ballistics.getExitSpeed(m_shooter.getShotRpm()),
+        (float) RobotController.getBatteryVoltage()),
+        state.isBlueAlliance(),
+        DriverStation.isAutonomous());
+    SmartDashboard.putNumber("Shots Logged", m_shotLogger.getShotCount());
   }
 
   public void autoAimDrive(Rotation2d angle) {
     // Auto aiming left-right (offset is 5 degrees for alignment)
     m_robotDrive.driveWithHeading(
-        -MathUtil.applyDeadband(invertIfRed(m_driverController.getLeftY()), OIConstants.kDriveDeadband),
-        -MathUtil.applyDeadband(invertIfRed(m_driverController.getLeftX()), OIConstants.kDriveDeadband),
+        invertIfRed(m_driverInput.getX()),
+        invertIfRed(m_driverInput.getY()),
         angle,
         true, false);
+    SmartDashboard.putNumber("Input Latency (ms)", m_driverInput.getAge() * 1000);
   }
 
   public boolean isBlueAlliance() {
-    return DriverStation.getAlliance().orElse(Alliance.Blue) == Alliance.Blue;
+    return AllianceUtils.isBlueAlliance();
   }
 
   public <T> T getFromAlliance(T blueVal, T redVal) {
-    return isBlueAlliance() ? blueVal : redVal;
+    return AllianceUtils.select(blueVal, redVal);
+  }
+
+  public double getFromAlliance(double blueVal, double redVal) {
+    return AllianceUtils.select(blueVal, redVal);
   }
 
   public double invertIfRed(double num) {
-     return num * getFromAlliance(1, -1);
+     return num * AllianceUtils.getDriverSign();
   }
 
   public Translation2d getTarget() {
-    return TargetConstants.AimingTarget.kSpeaker.getTarget(isBlueAlliance());
+    return AllianceUtils.getSpeakerTarget();
   }
 
   public Translation2d getAimingVector(Translation2d target) {
-    return m_robotDrive.getPose().getTranslation().minus(target);
+    return m_robotDrive.getState().pose().getTranslation().minus(target);
   }
 
   public Translation2d getTargetVector() {
     if (m_autoAim) {
       autoAimPivot(0);
     }
-    return getAimingVector(getTarget());
+    return getShotVector();
   }
 
   public void periodic() {
-    SmartDashboard.putNumber("Auto Aim Distance", getAimingVector(getTarget()).getNorm());
-    SmartDashboard.putNumber("Bumper to Sub (In)", Units.metersToInches(getAimingVector(getTarget()).getNorm()) - 35.25 - (33/2));
+    // Commands have run, send the attachment goals they set
+    m_attatchment.applyOutputs();
+
+    RobotState state = m_robotDrive.getState();
+
+    SmartDashboard.putNumber("Auto Aim Distance", state.targetDistance());
+    SmartDashboard.putNumber("Bumper to Sub (In)", Units.metersToInches(state.targetDistance()) - 35.25 - (33/2));
 
     SmartDashboard.putBoolean("Beam Break", m_attatchment.getBeamBreakState());
     SmartDashboard.putBoolean("Vision", VisionConstants.rearCam.isConnected());
 
-    m_field.setRobotPose(m_robotDrive.getPose());
+    m_field.setRobotPose(state.pose());
 
     var pose = VisionConstants.rearCamPoseEstimator.update();
 
-    SmartDashboard.putNumber("x", m_robotDrive.getPose().getX());
-        SmartDashboard.putNumber("y", m_robotDrive.getPose().getY());
+    SmartDashboard.putNumber("x", state.pose().getX());
+        SmartDashboard.putNumber("y", state.pose().getY());
 
 
     if (pose.isPresent() && m_vision) {
@@ -420,6 +586,15 @@ public class RobotContainer {
       SmartDashboard.putNumber("Cali Y", 0);
   }
 
+  /**
+   * Get the characterization routine selected on the dashboard, run in test mode
+   *
+   * @return the command to run in test mode
+   */
+  public Command getCharacterizationCommand() {
+    return m_characterizationChooser.getSelected();
+  }
+
   /**
    * Use this to pass the autonomous command to the main {@link Robot} class.
    *
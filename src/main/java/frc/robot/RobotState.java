@@ -0,0 +1,35 @@
+package frc.robot;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.wpilibj.DriverStation.Alliance;
+
+/**
+ * Immutable snapshot of the robot, built once per loop by the
+ * {@link frc.robot.subsystems.DriveSubsystem} right after odometry updates.
+ * Everything that runs later in the same loop reads from this so decisions
+ * stay consistent with each other.
+ *
+ * @param timestamp      FPGA time the snapshot was built at, in seconds
+ * @param pose           the estimated field pose
+ * @param velocity       the robot relative chassis speeds
+ * @param heading        the estimated field heading
+ * @param alliance       the alliance the robot is on
+ * @param aimingVector   vector from the speaker target to the robot
+ * @param targetDistance distance from the speaker target in meters
+ */
+public record RobotState(
+    double timestamp,
+    Pose2d pose,
+    ChassisSpeeds velocity,
+    Rotation2d heading,
+    Alliance alliance,
+    Translation2d aimingVector,
+    double targetDistance) {
+
+  public boolean isBlueAlliance() {
+    return alliance == Alliance.Blue;
+  }
+}
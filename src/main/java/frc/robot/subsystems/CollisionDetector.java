@@ -0,0 +1,164 @@
+package frc.robot.subsystems;
+
+import java.util.OptionalDouble;
+
+import com.kauailabs.navx.frc.AHRS;
+
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj.Timer;
+import frc.robot.Constants.DriveConstants;
+
+/**
+ * Detects hits from other robots and walls from the jerk of the NavX linear
+ * acceleration. Driving changes acceleration smoothly, while a collision
+ * changes it almost instantly, so a large change between two samples means the
+ * robot was hit. The NavX is sampled on a background notifier so short spikes
+ * between main loops aren't missed. The jerk is measured over the NavX's own
+ * sample times, since the notifier picks each sample up anywhere within its
+ * period.
+ */
+public class CollisionDetector {
+    private final AHRS m_gyro;
+    private final Notifier m_notifier;
+
+    // Previous sample, in g and seconds of sensor time
+    private double m_lastUpdateCount = -1;
+    private double m_lastX = 0;
+    private double m_lastY = 0;
+    private double m_lastSampleTime = Double.NaN;
+
+    // Latest collision that hasn't been polled yet
+    private double m_collisionTime = Double.NaN;
+    private double m_lastCollisionTime = Double.NEGATIVE_INFINITY;
+    private double m_collisionJerk = 0;
+    private int m_collisionCount = 0;
+
+    /**
+     * Create a new collision detector and start sampling the NavX
+     *
+     * @param gyro the NavX to read
+     */
+    public CollisionDetector(AHRS gyro) {
+        m_gyro = gyro;
+
+        m_notifier = new Notifier(this::readAccelerometer);
+        m_notifier.setName("CollisionDetector");
+        m_notifier.startPeriodic(DriveConstants.kCollisionReadPeriod);
+    }
+
+    /**
+     * Create a collision detector that only checks the samples passed to
+     * {@link #addSample(double, double, double)}, for replaying recorded
+     * acceleration traces
+     */
+    public CollisionDetector() {
+        m_gyro = null;
+        m_notifier = null;
+    }
+
+    // Runs on the notifier thread
+    private void readAccelerometer() {
+        if (!m_gyro.isConnected()) {
+            return;
+        }
+
+        // Only a new sample from the NavX counts
+        double updateCount = m_gyro.getUpdateCount();
+        if (updateCount == m_lastUpdateCount) {
+            return;
+        }
+        m_lastUpdateCount = updateCount;
+
+        double sampleTime = m_gyro.getLastSensorTimestamp() / 1000.0;
+        if (sampleTime <= 0) {
+            // Not timestamped by the NavX, count samples at its update rate
+            int updateRate = m_gyro.getActualUpdateRate();
+            if (updateRate <= 0) {
+                return;
+            }
+            sampleTime = updateCount / updateRate;
+        }
+
+        addSample(Timer.getFPGATimestamp(), sampleTime, m_gyro.getWorldLinearAccelX(),
+                m_gyro.getWorldLinearAccelY());
+    }
+
+    /**
+     * Check an acceleration sample for a collision. Called with each new NavX
+     * sample, and can be used to replay recorded acceleration traces.
+     *
+     * @param timestamp     the time of the sample in seconds
+     * @param accelerationX the linear acceleration along x in g
+     * @param accelerationY the linear acceleration along y in g
+     * @return true if this sample started a new collision
+     */
+    public boolean addSample(double timestamp, double accelerationX, double accelerationY) {
+        return addSample(timestamp, timestamp, accelerationX, accelerationY);
+    }
+
+    /**
+     * Check an acceleration sample for a collision, with the jerk measured over
+     * the time the sensor took the samples rather than when they were read
+     *
+     * @param timestamp     the FPGA time the sample was read in seconds
+     * @param sampleTime    the time the sensor took the sample in seconds, on
+     *                      any clock
+     * @param accelerationX the linear acceleration along x in g
+     * @param accelerationY the linear acceleration along y in g
+     * @return true if this sample started a new collision
+     */
+    public synchronized boolean addSample(double timestamp, double sampleTime, double accelerationX,
+            double accelerationY) {
+        double dt = sampleTime - m_lastSampleTime;
+        double jerkX = (accelerationX - m_lastX) / dt;
+        double jerkY = (accelerationY - m_lastY) / dt;
+        m_lastSampleTime = sampleTime;
+        m_lastX = accelerationX;
+        m_lastY = accelerationY;
+
+        // The first sample and samples after a gap have nothing to compare to
+        if (Double.isNaN(dt) || dt <= 0 || dt > DriveConstants.kCollisionMaxSampleGap) {
+            return false;
+        }
+
+        double jerk = Math.hypot(jerkX, jerkY);
+        if (jerk < DriveConstants.kCollisionJerkThreshold
+                || timestamp - m_lastCollisionTime < DriveConstants.kCollisionHoldoff) {
+            return false;
+        }
+
+        m_lastCollisionTime = timestamp;
+        m_collisionTime = timestamp;
+        m_collisionJerk = jerk;
+        m_collisionCount++;
+        return true;
+    }
+
+    /**
+     * Get the time of the latest collision if there was one since the last call
+     *
+     * @return the FPGA timestamp of the collision, or empty if there wasn't one
+     */
+    public synchronized OptionalDouble pollCollision() {
+        if (Double.isNaN(m_collisionTime)) {
+            return OptionalDouble.empty();
+        }
+
+        double time = m_collisionTime;
+        m_collisionTime = Double.NaN;
+        return OptionalDouble.of(time);
+    }
+
+    /**
+     * Get the jerk of the latest collision
+     *
+     * @return the jerk in g per second
+     */
+    public synchronized double getCollisionJerk() {
+        return m_collisionJerk;
+    }
+
+    public synchronized int getCollisionCount() {
+        return m_collisionCount;
+    }
+}
@@ -4,60 +4,103 @@
 
 package frc.robot.subsystems;
 
+import static edu.wpi.first.units.MutableMeasure.mutable;
+import static edu.wpi.first.units.Units.Meters;
+import static edu.wpi.first.units.Units.MetersPerSecond;
+import static edu.wpi.first.units.Units.Radians;
+import static edu.wpi.first.units.Units.RadiansPerSecond;
+import static edu.wpi.first.units.Units.Volts;
+
+import java.util.Arrays;
 import java.util.Optional;
 import java.util.function.Supplier;
 
 import com.kauailabs.navx.frc.AHRS;
 import com.pathplanner.lib.auto.AutoBuilder;
 import com.pathplanner.lib.controllers.PPHolonomicDriveController;
+import com.pathplanner.lib.util.PathPlannerLogging;
 
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.controller.PIDController;
 import edu.wpi.first.math.controller.ProfiledPIDController;
 import edu.wpi.first.math.estimator.SwerveDrivePoseEstimator;
+import edu.wpi.first.math.filter.LinearFilter;
 import edu.wpi.first.math.filter.SlewRateLimiter;
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Transform2d;
 import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
 import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
 import edu.wpi.first.math.kinematics.SwerveModulePosition;
 import edu.wpi.first.math.kinematics.SwerveModuleState;
 import edu.wpi.first.math.trajectory.TrapezoidProfile;
+import edu.wpi.first.units.Angle;
+import edu.wpi.first.units.Distance;
+import edu.wpi.first.units.MutableMeasure;
+import edu.wpi.first.units.Velocity;
+import edu.wpi.first.units.Voltage;
 import edu.wpi.first.util.WPIUtilJNI;
+import edu.wpi.first.wpilibj.DataLogManager;
 import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.DriverStation.Alliance;
 import edu.wpi.first.wpilibj.I2C;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import frc.robot.Constants.AutoConstants;
 import frc.robot.Constants.DriveConstants;
-import frc.robot.Constants.TargetConstants;
+import frc.robot.Constants.ModuleConstants;
+import frc.robot.Constants.PowerConstants;
+import frc.robot.RobotState;
+import frc.utils.AllianceUtils;
+import frc.utils.FeedforwardCharacterizer;
+import frc.utils.PoseHistory;
+import frc.utils.TunableGains;
 import frc.utils.SwerveUtils;
+import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import edu.wpi.first.wpilibj2.command.sysid.SysIdRoutine;
+import edu.wpi.first.wpilibj2.command.sysid.SysIdRoutineLog;
 
 public class DriveSubsystem extends SubsystemBase {
-  // Create MAXSwerveModules
-  private final MAXSwerveModule m_frontLeft = new MAXSwerveModule(
-      DriveConstants.kFrontLeftDrivingCanId,
-      DriveConstants.kFrontLeftTurningCanId,
-      DriveConstants.kFrontLeftChassisAngularOffset);
-
-  private final MAXSwerveModule m_frontRight = new MAXSwerveModule(
-      DriveConstants.kFrontRightDrivingCanId,
-      DriveConstants.kFrontRightTurningCanId,
-      DriveConstants.kFrontRightChassisAngularOffset);
-
-  private final MAXSwerveModule m_rearLeft = new MAXSwerveModule(
-      DriveConstants.kRearLeftDrivingCanId,
-      DriveConstants.kRearLeftTurningCanId,
-      DriveConstants.kBackLeftChassisAngularOffset);
-
-  private final MAXSwerveModule m_rearRight = new MAXSwerveModule(
-      DriveConstants.kRearRightDrivingCanId,
-      DriveConstants.kRearRightTurningCanId,
-      DriveConstants.kBackRightChassisAngularOffset);
+  // Create MAXSwerveModules, all in the same order as the kinematics
+  private static final String[] kModuleNames = { "Front Left", "Front Right", "Rear Left", "Rear Right" };
+  private final MAXSwerveModule[] m_modules = createModules();
+
+  private final MAXSwerveModule m_frontLeft = m_modules[0];
+  private final MAXSwerveModule m_frontRight = m_modules[1];
+  private final MAXSwerveModule m_rearLeft = m_modules[2];
+  private final MAXSwerveModule m_rearRight = m_modules[3];
+
+  // Whether a module has failed and the drive is running on the rest. Only one
+  // module is ever taken out of use, -1 when none is.
+  private boolean m_degraded = false;
+  private int m_failedModule = -1;
+
+  // Measured module states and which modules are out of use, updated each loop
+  private final SwerveModuleState[] m_moduleStates = new SwerveModuleState[4];
+  private final boolean[] m_failedModules = new boolean[4];
+
+  // Detects and limits wheel slip
+  private final TractionControl m_tractionControl = new TractionControl(DriveConstants.kModuleTranslations);
+
+  // How much to trust each module's odometry this loop
+  private final double[] m_odometryWeights = { 1, 1, 1, 1 };
+
+  // Filters out untrusted module motion before it reaches the pose estimator
+  private final OdometryFilter m_odometryFilter = new OdometryFilter(
+      DriveConstants.kModuleTranslations,
+      getModulePositions());
 
   // The gyro sensor
   private final AHRS m_gyro = new AHRS(I2C.Port.kMXP);
 
+  // Odometry heading, from the gyro when it's healthy and the wheels otherwise
+  private final HeadingEstimator m_headingEstimator = new HeadingEstimator(
+      m_gyro,
+      DriveConstants.kDriveKinematics,
+      m_odometryFilter.getPositions());
+
   // Slew rate filter variables for controlling lateral acceleration
   private double m_currentRotation = 0.0;
   private double m_currentTranslationDir = 0.0;
@@ -67,19 +110,125 @@ public class DriveSubsystem extends SubsystemBase {
   private SlewRateLimiter m_rotLimiter = new SlewRateLimiter(DriveConstants.kRotationalSlewRate);
   private double m_prevTime = WPIUtilJNI.now() * 1e-6;
 
+  // The path's planned field relative velocity last loop, to feed forward its
+  // acceleration. The follower's translation feedback is mirrored here so it
+  // can be taken back out of the speeds it outputs.
+  private final PIDController m_pathXFeedback = new PIDController(
+      DriveConstants.kTranslationPID.kP, DriveConstants.kTranslationPID.kI, DriveConstants.kTranslationPID.kD);
+  private final PIDController m_pathYFeedback = new PIDController(
+      DriveConstants.kTranslationPID.kP, DriveConstants.kTranslationPID.kI, DriveConstants.kTranslationPID.kD);
+  private final LinearFilter m_pathAxFilter = LinearFilter.singlePoleIIR(
+      ModuleConstants.kDrivingAccelerationFilter, 0.02);
+  private final LinearFilter m_pathAyFilter = LinearFilter.singlePoleIIR(
+      ModuleConstants.kDrivingAccelerationFilter, 0.02);
+  private double m_lastPathVx = 0;
+  private double m_lastPathVy = 0;
+  private double m_lastPathTime = Double.NaN;
+  private final double[] m_pathAccelerations = new double[4];
+  private final double[] m_noAcceleration = new double[4];
+
+  // Filtered velocity from the wheels, gyro, and accelerometer
+  private final VelocityEstimator m_velocityEstimator = new VelocityEstimator(DriveConstants.kModuleTranslations);
+
   // Odometry class for tracking robot pose
   private final SwerveDrivePoseEstimator m_odometry = new SwerveDrivePoseEstimator(
       DriveConstants.kDriveKinematics,
       getHeadingOdometry(),
-      getModulePositions(),
-      new Pose2d());
+      m_odometryFilter.getPositions(),
+      new Pose2d(),
+      DriveConstants.kStateStdDevs,
+      DriveConstants.kVisionStdDevs);
+
+  // Watches for hits, after one vision is trusted over odometry until it recovers
+  private final CollisionDetector m_collisionDetector = new CollisionDetector(m_gyro);
+  private double m_collisionTime = Double.NaN;
+  private int m_collisionVisionFrames = 0;
+  private final double[] m_collisionSample = new double[PoseHistory.kSampleSize];
 
   private final ProfiledPIDController m_rotationPID;
 
+  // Keeps teleop from driving into walls and field elements
+  private final FieldDistanceMap m_fieldMap = new FieldDistanceMap();
+
+  // Heading held while the driver isn't rotating, NaN when not holding
+  private double m_heldHeading = Double.NaN;
+  private double m_rotationReleaseTime = Double.NEGATIVE_INFINITY;
+  private double m_lastDriveTime = Double.NEGATIVE_INFINITY;
+
+  // Gains that can be tuned from the dashboard
+  private final TunableGains m_drivingGains = new TunableGains("Driving",
+      ModuleConstants.kDrivingP, ModuleConstants.kDrivingI, ModuleConstants.kDrivingD, ModuleConstants.kDrivingFF);
+  private final TunableGains m_turningGains = new TunableGains("Turning",
+      ModuleConstants.kTurningP, ModuleConstants.kTurningI, ModuleConstants.kTurningD, ModuleConstants.kTurningFF);
+  private final TunableGains m_rotationGains = new TunableGains("Rotation",
+      DriveConstants.kRotationPID.kP, DriveConstants.kRotationPID.kI, DriveConstants.kRotationPID.kD, 0);
+
+  // Snapshot of the robot for this loop, rebuilt after every odometry update
+  private RobotState m_state;
+
+  // Where the path being followed wants the robot, null when not following one
+  private volatile Pose2d m_pathTarget = null;
+  private double m_maxTrackingError = 0;
+
+  // Past robot states for looking up where the robot was at a timestamp
+  private final PoseHistory m_poseHistory = new PoseHistory(DriveConstants.kPoseHistorySize);
+
+  // Characterization routines for the driving and turning motors
+  private final SysIdRoutine m_driveRoutine;
+  private final SysIdRoutine m_turningRoutine;
+  private final FeedforwardCharacterizer m_driveCharacterizer = new FeedforwardCharacterizer("Drive", false);
+  private final FeedforwardCharacterizer m_turningCharacterizer = new FeedforwardCharacterizer("Steering", false);
+  private double m_sysIdVolts = 0;
+
+  // Reused measurements for the characterization logs
+  private final MutableMeasure<Voltage> m_sysIdVoltage = mutable(Volts.of(0));
+  private final MutableMeasure<Distance> m_sysIdDistance = mutable(Meters.of(0));
+  private final MutableMeasure<Velocity<Distance>> m_sysIdVelocity = mutable(MetersPerSecond.of(0));
+  private final MutableMeasure<Angle> m_sysIdAngle = mutable(Radians.of(0));
+  private final MutableMeasure<Velocity<Angle>> m_sysIdAngularVelocity = mutable(RadiansPerSecond.of(0));
+
+  /**
+   * Create the swerve modules. Their controllers are configured in parallel,
+   * which is much faster than one module after another.
+   */
+  static MAXSwerveModule[] createModules() {
+    MAXSwerveModule[] modules = {
+        new MAXSwerveModule(
+            kModuleNames[0],
+            DriveConstants.kFrontLeftDrivingCanId,
+            DriveConstants.kFrontLeftTurningCanId,
+            DriveConstants.kFrontLeftChassisAngularOffset),
+        new MAXSwerveModule(
+            kModuleNames[1],
+            DriveConstants.kFrontRightDrivingCanId,
+            DriveConstants.kFrontRightTurningCanId,
+            DriveConstants.kFrontRightChassisAngularOffset),
+        new MAXSwerveModule(
+            kModuleNames[2],
+            DriveConstants.kRearLeftDrivingCanId,
+            DriveConstants.kRearLeftTurningCanId,
+            DriveConstants.kBackLeftChassisAngularOffset),
+        new MAXSwerveModule(
+            kModuleNames[3],
+            DriveConstants.kRearRightDrivingCanId,
+            DriveConstants.kRearRightTurningCanId,
+            DriveConstants.kBackRightChassisAngularOffset)
+    };
+
+    for (MAXSwerveModule module : modules) {
+      module.awaitConfiguration();
+    }
+
+    return modules;
+  }
+
   /** Creates a new DriveSubsystem. */
   public DriveSubsystem(Supplier<Optional<Rotation2d>> rotationOverrideSupplier) {
     // Reset and calibrate
+    updateState();
     resetGyro();
+
+    SmartDashboard.putBoolean("Obstacle Avoidance", true);
     
     // m_gyro.setAngleAdjustment(180);
     AutoBuilder.configureHolonomic(
@@ -93,17 +242,27 @@ public class DriveSubsystem extends SubsystemBase {
           // alliance
           // This will flip the path being followed to the red side of the field.
           // THE ORIGIN WILL REMAIN ON THE BLUE SIDE
-
-          var alliance = DriverStation.getAlliance();
-          if (alliance.isPresent()) {
-            return alliance.get() == DriverStation.Alliance.Red;
-          }
-          return false;
+          return AllianceUtils.isRedAlliance();
         },
         this // Reference to this subsystem to set requirements
     );
     PPHolonomicDriveController.setRotationTargetOverride(rotationOverrideSupplier);
 
+    // Follow along with the path to report tracking error
+    PathPlannerLogging.setLogTargetPoseCallback(pose -> m_pathTarget = pose);
+    PathPlannerLogging.setLogActivePathCallback(poses -> {
+      if (poses == null || poses.isEmpty()) {
+        m_pathTarget = null;
+      } else {
+        m_maxTrackingError = 0;
+      }
+
+      // The follower resets its controllers for each path
+      m_pathXFeedback.reset();
+      m_pathYFeedback.reset();
+      m_lastPathTime = Double.NaN;
+    });
+
     m_rotationPID = new ProfiledPIDController(
         DriveConstants.kRotationPID.kP, DriveConstants.kRotationPID.kI, DriveConstants.kRotationPID.kD,
         new TrapezoidProfile.Constraints(
@@ -113,6 +272,83 @@ public class DriveSubsystem extends SubsystemBase {
 
     m_rotationPID.setIntegratorRange(-DriveConstants.kRotationPID.iZone, DriveConstants.kRotationPID.iZone);
     m_rotationPID.enableContinuousInput(-Math.PI, Math.PI);
+
+    // Drive straight forward with all wheels locked at 0 degrees
+    m_driveRoutine = new SysIdRoutine(
+        new SysIdRoutine.Config(),
+        new SysIdRoutine.Mechanism(
+            volts -> {
+              m_sysIdVolts = volts.in(Volts);
+              for (MAXSwerveModule module : m_modules) {
+                module.setDriveVoltage(m_sysIdVolts, new Rotation2d());
+              }
+            },
+            this::logDriveCharacterization,
+            this));
+
+    // Spin the wheels in place
+    m_turningRoutine = new SysIdRoutine(
+        new SysIdRoutine.Config(),
+        new SysIdRoutine.Mechanism(
+            volts -> {
+              m_sysIdVolts = volts.in(Volts);
+              for (MAXSwerveModule module : m_modules) {
+                module.setTurningVoltage(m_sysIdVolts);
+              }
+            },
+            this::logTurningCharacterization,
+            this));
+  }
+
+  private void logDriveCharacterization(SysIdRoutineLog log) {
+    double position = 0;
+    double velocity = 0;
+    for (MAXSwerveModule module : m_modules) {
+      position += module.getDrivePosition() / m_modules.length;
+      velocity += module.getDriveVelocity() / m_modules.length;
+    }
+
+    log.motor("drive")
+        .voltage(m_sysIdVoltage.mut_replace(m_sysIdVolts, Volts))
+        .linearPosition(m_sysIdDistance.mut_replace(position, Meters))
+        .linearVelocity(m_sysIdVelocity.mut_replace(velocity, MetersPerSecond));
+
+    m_driveCharacterizer.addSample(Timer.getFPGATimestamp(), m_sysIdVolts, velocity, 0);
+  }
+
+  private void logTurningCharacterization(SysIdRoutineLog log) {
+    double position = 0;
+    double velocity = 0;
+    for (MAXSwerveModule module : m_modules) {
+      position += module.getTurningPosition() / m_modules.length;
+      velocity += module.getTurningVelocity() / m_modules.length;
+    }
+
+    log.motor("steering")
+        .voltage(m_sysIdVoltage.mut_replace(m_sysIdVolts, Volts))
+        .angularPosition(m_sysIdAngle.mut_replace(position, Radians))
+        .angularVelocity(m_sysIdAngularVelocity.mut_replace(velocity, RadiansPerSecond));
+
+    m_turningCharacterizer.addSample(Timer.getFPGATimestamp(), m_sysIdVolts, velocity, 0);
+  }
+
+  /**
+   * Characterize the driving motors. The robot drives forward and backward in a
+   * straight line, so it needs several meters of space.
+   *
+   * @return a command that runs all the tests and publishes the gains
+   */
+  public Command getDriveCharacterizationCommand() {
+    return m_driveCharacterizer.getCommand(m_driveRoutine);
+  }
+
+  /**
+   * Characterize the turning motors by spinning the wheels in place
+   *
+   * @return a command that runs all the tests and publishes the gains
+   */
+  public Command getTurningCharacterizationCommand() {
+    return m_turningCharacterizer.getCommand(m_turningRoutine);
   }
 
   public void turnTo(double degrees) {
@@ -130,19 +366,200 @@ public class DriveSubsystem extends SubsystemBase {
 
   @Override
   public void periodic() {
-    SmartDashboard.putNumber("robot heading", getHeading().getDegrees());
+    updateGains();
+    updateModuleHealth();
+    updateTraction();
+    updateOdometry();
+    updateCollision();
+    updateVelocity();
+    updateState();
+    m_poseHistory.addSample(m_state.timestamp(), m_state.pose(), m_state.velocity());
+    updateTrackingError();
 
-    SmartDashboard.putNumber("Velocity (RPM)", m_frontLeft.m_drivingSparkMax.getEncoder().getVelocity());
+    SmartDashboard.putNumber("robot heading", m_state.heading().getDegrees());
+    SmartDashboard.putBoolean("Heading Hold", isHoldingHeading());
+    SmartDashboard.putString("Gyro Health", m_headingEstimator.getHealth().name());
+    SmartDashboard.putNumber("Gyro Latency (ms)", m_headingEstimator.getLatency() * 1000);
+    SmartDashboard.putNumber("Gyro Faults", m_headingEstimator.getFaultCount());
+    SmartDashboard.putNumber("Odometry Skid", m_odometryFilter.getSkid());
 
-    updateOdometry();
+    SmartDashboard.putNumber("Velocity (RPM)", m_frontLeft.m_drivingEncoder.getVelocity());
+  }
+
+  /**
+   * Report how far the robot is from where the path it's following wants it
+   */
+  private void updateTrackingError() {
+    Pose2d target = m_pathTarget;
+    if (target == null) {
+      return;
+    }
+
+    Transform2d error = target.minus(m_state.pose());
+    double trackingError = error.getTranslation().getNorm();
+    m_maxTrackingError = Math.max(m_maxTrackingError, trackingError);
+
+    SmartDashboard.putNumber("Path Tracking Error", trackingError);
+    SmartDashboard.putNumber("Path Max Tracking Error", m_maxTrackingError);
+    SmartDashboard.putNumber("Path Heading Error", error.getRotation().getDegrees());
+  }
+
+  /**
+   * Push any gains changed on the dashboard to the controllers
+   */
+  private void updateGains() {
+    if (m_drivingGains.hasChanged()) {
+      for (MAXSwerveModule module : m_modules) {
+        m_drivingGains.apply(module.m_drivingSparkMax, module.m_drivingPIDController);
+      }
+    }
+
+    if (m_turningGains.hasChanged()) {
+      for (MAXSwerveModule module : m_modules) {
+        m_turningGains.apply(module.m_turningSparkMax, module.m_turningPIDController);
+      }
+    }
+
+    if (m_rotationGains.hasChanged()) {
+      m_rotationGains.apply(m_rotationPID);
+    }
+  }
+
+  /**
+   * Save the module configurations, including tuned gains, to the SPARKs' flash.
+   * Only allowed while disabled since the SPARKs stop responding while they
+   * write.
+   */
+  public void burnFlash() {
+    if (!DriverStation.isDisabled()) {
+      DriverStation.reportWarning("Not burning the swerve SPARKs' flash while enabled", false);
+      return;
+    }
+
+    for (MAXSwerveModule module : m_modules) {
+      module.burnFlash();
+    }
+  }
+
+  /**
+   * Let the power manager lower the module current limits when the battery is
+   * low. The turning motors keep their full limit.
+   *
+   * @param power the power manager
+   */
+  public void registerPower(PowerManager power) {
+    for (int i = 0; i < m_modules.length; i++) {
+      power.register(kModuleNames[i] + " Driving", m_modules[i].m_drivingSparkMax,
+          ModuleConstants.kDrivingMotorCurrentLimit, ModuleConstants.kMinDrivingMotorCurrentLimit,
+          PowerConstants.kDrivingPriority);
+      power.register(kModuleNames[i] + " Turning", m_modules[i].m_turningSparkMax,
+          ModuleConstants.kTurningMotorCurrentLimit, ModuleConstants.kTurningMotorCurrentLimit,
+          PowerConstants.kTurningPriority);
+    }
+  }
+
+  /**
+   * Check each module for faults and switch in or out of degraded mode
+   */
+  private void updateModuleHealth() {
+    m_failedModule = updateFailedModule(m_modules, m_failedModule, Timer.getFPGATimestamp(),
+        DriverStation.isEnabled());
+
+    for (int i = 0; i < m_modules.length; i++) {
+      m_failedModules[i] = i == m_failedModule;
+
+      SmartDashboard.putNumber(kModuleNames[i] + " Faults", m_modules[i].getFaultCount());
+      SmartDashboard.putString(kModuleNames[i] + " Last Fault", m_modules[i].getLastFault());
+      SmartDashboard.putString(kModuleNames[i] + " Warning", m_modules[i].getWarning());
+    }
+
+    m_degraded = m_failedModule >= 0;
+    SmartDashboard.putBoolean("Swerve Degraded", m_degraded);
+  }
+
+  /**
+   * Update the health of the modules and pick the one to take out of use. The
+   * robot can't drive on two wheels, so at most one module is taken out of use,
+   * and it goes back into use once its fault clears. Tracking errors on more
+   * than one module at once mean the robot is being pushed or driven hard, so
+   * they don't fail a module.
+   *
+   * @param modules      the modules to check
+   * @param failedModule the index of the module out of use, or -1
+   * @param timestamp    the current time in seconds
+   * @param enabled      whether the robot is enabled
+   * @return the index of the module out of use now, or -1
+   */
+  static int updateFailedModule(MAXSwerveModule[] modules, int failedModule, double timestamp, boolean enabled) {
+    int trackingFaults = 0;
+    for (MAXSwerveModule module : modules) {
+      module.updateHealth(timestamp, enabled);
+      if (module.isTrackingFault()) {
+        trackingFaults++;
+      }
+    }
+
+    if (failedModule >= 0 && !modules[failedModule].isFaulted()) {
+      modules[failedModule].setFailed(false);
+      DataLogManager.log("[swerve] " + kModuleNames[failedModule] + " module back in use");
+      failedModule = -1;
+    }
+
+    if (failedModule < 0) {
+      for (int i = 0; i < modules.length; i++) {
+        MAXSwerveModule module = modules[i];
+        if (module.isFaulted() && (!module.isTrackingFault() || trackingFaults == 1)) {
+          module.setFailed(true);
+          DataLogManager.log("[swerve] " + kModuleNames[i] + " module failed: " + module.getLastFault());
+          return i;
+        }
+      }
+    }
+
+    return failedModule;
+  }
+
+  /**
+   * Check the modules for wheel slip. Slipping and failed modules are left out
+   * of odometry for this loop.
+   */
+  private void updateTraction() {
+    for (int i = 0; i < m_modules.length; i++) {
+      m_moduleStates[i] = m_modules[i].getState();
+    }
+
+    // Trust the gyro for rotation when we can, the wheels are what we're checking
+    double omega = m_headingEstimator.isGyroHealthy()
+        ? Math.toRadians(getTurnRate())
+        : DriveConstants.kDriveKinematics.toChassisSpeeds(m_moduleStates).omegaRadiansPerSecond;
+
+    // Last loop's inertial velocity, which follows the accelerometer when every
+    // wheel slips at once
+    m_tractionControl.update(m_moduleStates, omega, m_failedModules, m_velocityEstimator.getInertialSpeeds());
+
+    for (int i = 0; i < m_modules.length; i++) {
+      boolean slipping = m_tractionControl.isSlipping(i);
+      m_odometryWeights[i] = m_failedModules[i] || slipping ? 0 : 1;
+
+      SmartDashboard.putNumber(kModuleNames[i] + " Slip", m_tractionControl.getSlip(i));
+    }
+  }
+
+  /**
+   * Clear module faults and bring any failed modules back into use
+   */
+  public void resetModuleHealth() {
+    for (MAXSwerveModule module : m_modules) {
+      module.resetHealth();
+    }
+    m_failedModule = -1;
   }
 
   /**
    * Reset the forward direction of the robot
    */
   public void resetGyro() {
-    Alliance alliance = DriverStation.getAlliance().orElse(Alliance.Blue);
-    Pose2d newPose = new Pose2d(getPose().getTranslation(), Rotation2d.fromDegrees(alliance == Alliance.Blue ? 0 : 180));
+    Pose2d newPose = new Pose2d(m_state.pose().getTranslation(), AllianceUtils.getForwardHeading());
     resetPose(newPose);
   }
 
@@ -150,14 +567,160 @@ public class DriveSubsystem extends SubsystemBase {
    * Update the odometry with an estimation from the vision system
    */
   public void updateOdometryWithVision(Pose2d pose, double timestamp) {
+    // Only frames taken after the hit can correct it
+    if (!Double.isNaN(m_collisionTime) && timestamp >= m_collisionTime) {
+      if (m_collisionVisionFrames == 0) {
+        acceptVisionTranslation(pose, timestamp);
+      }
+      m_collisionVisionFrames++;
+    }
+
     m_odometry.addVisionMeasurement(pose, timestamp);
   }
 
+  /**
+   * Move the pose estimate onto a vision pose outright, keeping the heading.
+   * The frame is from the past, so the odometry's motion since then is added
+   * on.
+   */
+  private void acceptVisionTranslation(Pose2d pose, double timestamp) {
+    Pose2d current = m_odometry.getEstimatedPosition();
+    Translation2d translation = pose.getTranslation();
+    if (m_poseHistory.sample(timestamp, m_collisionSample)) {
+      translation = translation.plus(new Translation2d(
+          current.getX() - m_collisionSample[PoseHistory.kX],
+          current.getY() - m_collisionSample[PoseHistory.kY]));
+    }
+
+    m_odometry.resetPosition(
+        getHeadingOdometry(),
+        m_odometryFilter.getPositions(),
+        new Pose2d(translation, current.getRotation()));
+    // The history is in the old frame now
+    m_poseHistory.clear();
+    updateState();
+    DataLogManager.log(String.format("[drive] reset to vision after collision, moved %.2f m",
+        translation.getDistance(current.getTranslation())));
+  }
+
   private void updateOdometry() {
+    SwerveModulePosition[] positions = m_odometryFilter.update(getModulePositions(), m_odometryWeights);
+    m_headingEstimator.update(positions);
+
     // Update the odometry in the periodic block
     m_odometry.update(
         getHeadingOdometry(),
-        getModulePositions());
+        positions);
+  }
+
+  /**
+   * Check for a collision and trust vision more until the pose has recovered.
+   * The first vision frame after the hit is taken outright, since the wheels
+   * may have slid any distance.
+   */
+  private void updateCollision() {
+    var collision = m_collisionDetector.pollCollision();
+    if (collision.isPresent()) {
+      m_collisionTime = collision.getAsDouble();
+      m_collisionVisionFrames = 0;
+      m_odometry.setVisionMeasurementStdDevs(DriveConstants.kCollisionVisionStdDevs);
+
+      Pose2d pose = m_odometry.getEstimatedPosition();
+      DataLogManager.log(String.format("[drive] collision at %.3f s, jerk %.1f g/s, pose (%.2f, %.2f)",
+          m_collisionTime, m_collisionDetector.getCollisionJerk(), pose.getX(), pose.getY()));
+    }
+
+    if (!Double.isNaN(m_collisionTime)
+        && (m_collisionVisionFrames >= DriveConstants.kCollisionVisionFrames
+            || Timer.getFPGATimestamp() - m_collisionTime > DriveConstants.kCollisionRecoveryTime)) {
+      m_collisionTime = Double.NaN;
+      m_odometry.setVisionMeasurementStdDevs(DriveConstants.kVisionStdDevs);
+    }
+
+    SmartDashboard.putBoolean("Collision Recovery", !Double.isNaN(m_collisionTime));
+    SmartDashboard.putNumber("Collisions", m_collisionDetector.getCollisionCount());
+  }
+
+  /**
+   * Update the velocity estimate with the module states from this loop
+   */
+  private void updateVelocity() {
+    double gyroRate = m_headingEstimator.isGyroHealthy() ? Math.toRadians(getTurnRate()) : Double.NaN;
+
+    // The NavX reports acceleration in its own world frame with gravity removed,
+    // rotate it back into the robot frame. Assumes the NavX X axis faces forward.
+    double accelerationX = Double.NaN;
+    double accelerationY = Double.NaN;
+    if (m_gyro.isConnected()) {
+      double yaw = Math.toRadians(m_gyro.getYaw() * (DriveConstants.kGyroReversed ? -1.0 : 1.0));
+      double worldX = m_gyro.getWorldLinearAccelX() * DriveConstants.kGravity;
+      double worldY = m_gyro.getWorldLinearAccelY() * DriveConstants.kGravity;
+      accelerationX = worldX * Math.cos(yaw) + worldY * Math.sin(yaw);
+      accelerationY = -worldX * Math.sin(yaw) + worldY * Math.cos(yaw);
+    }
+
+    m_velocityEstimator.update(
+        Timer.getFPGATimestamp(),
+        m_moduleStates,
+        m_odometryWeights,
+        m_odometry.getEstimatedPosition().getRotation(),
+        gyroRate,
+        accelerationX,
+        accelerationY);
+
+    Translation2d velocity = m_velocityEstimator.getFieldVelocity();
+    SmartDashboard.putNumber("Field Velocity X", velocity.getX());
+    SmartDashboard.putNumber("Field Velocity Y", velocity.getY());
+    SmartDashboard.putNumber("Velocity StdDev",
+        Math.sqrt(m_velocityEstimator.getVelocityVarianceX() + m_velocityEstimator.getVelocityVarianceY()));
+  }
+
+  /**
+   * Returns the filtered velocity estimator, for the field relative velocity,
+   * acceleration, and their uncertainty.
+   *
+   * @return The velocity estimator.
+   */
+  public VelocityEstimator getVelocityEstimator() {
+    return m_velocityEstimator;
+  }
+
+  /**
+   * Rebuild the robot state snapshot from the pose estimator and modules.
+   * Called once per loop after odometry updates, and after pose resets.
+   */
+  private void updateState() {
+    Pose2d pose = m_odometry.getEstimatedPosition();
+    Alliance alliance = AllianceUtils.getAlliance();
+    Translation2d aimingVector = pose.getTranslation().minus(AllianceUtils.getSpeakerTarget());
+
+    m_state = new RobotState(
+        Timer.getFPGATimestamp(),
+        pose,
+        m_velocityEstimator.getRobotRelativeSpeeds(),
+        pose.getRotation(),
+        alliance,
+        aimingVector,
+        aimingVector.getNorm());
+  }
+
+  /**
+   * Returns the robot state snapshot for this loop.
+   *
+   * @return The robot state.
+   */
+  public RobotState getState() {
+    return m_state;
+  }
+
+  /**
+   * Returns the pose history, for looking up where the robot was at a past
+   * timestamp.
+   *
+   * @return The pose history.
+   */
+  public PoseHistory getPoseHistory() {
+    return m_poseHistory;
   }
 
   /**
@@ -166,7 +729,7 @@ public class DriveSubsystem extends SubsystemBase {
    * @return The pose.
    */
   public Pose2d getPose() {
-    return m_odometry.getEstimatedPosition();
+    return m_state.pose();
   }
 
   /**
@@ -177,8 +740,13 @@ public class DriveSubsystem extends SubsystemBase {
   public void resetPose(Pose2d pose) {
     m_odometry.resetPosition(
         getHeadingOdometry(),
-        getModulePositions(),
+        m_odometryFilter.getPositions(),
         pose);
+    // The old history, velocity and held heading are in a different frame now
+    m_velocityEstimator.reset();
+    releaseHeadingHold();
+    updateState();
+    m_poseHistory.clear();
   }
 
   /**
@@ -186,12 +754,17 @@ public class DriveSubsystem extends SubsystemBase {
    *
    * @param xSpeed        Speed of the robot in the x direction (forward).
    * @param ySpeed        Speed of the robot in the y direction (sideways).
-   * @param rotSpeed      Angular rate of the robot.
+   * @param rotSpeed      Angular rate of the robot. When field relative, zero
+   *                      holds the current heading.
    * @param fieldRelative Whether the provided x and y speeds are relative to the
    *                      field.
    * @param rateLimit     Whether to enable rate limiting for smoother control.
    */
   public void drive(double xSpeed, double ySpeed, double rotSpeed, boolean fieldRelative, boolean rateLimit) {
+    if (fieldRelative) {
+      rotSpeed = holdHeading(rotSpeed);
+    }
+
     double xSpeedCommanded;
     double ySpeedCommanded;
     double rotSpeedCommanded;
@@ -213,9 +786,87 @@ public class DriveSubsystem extends SubsystemBase {
     double ySpeedDelivered = ySpeedCommanded * DriveConstants.kMaxSpeedMetersPerSecond;
     double rotSpeedDelivered = rotSpeedCommanded * DriveConstants.kMaxAngularSpeed;
 
+    if (fieldRelative) {
+      Translation2d limited = limitForObstacles(xSpeedDelivered, ySpeedDelivered);
+      xSpeedDelivered = limited.getX();
+      ySpeedDelivered = limited.getY();
+    }
+
     setSwerveSpeeds(xSpeedDelivered, ySpeedDelivered, rotSpeedDelivered, fieldRelative);
   }
 
+  /**
+   * Slow down driver commands that would hit a wall or field element. Can be
+   * turned off from the dashboard if the pose is wrong.
+   *
+   * @param xSpeed field relative x speed in m/s
+   * @param ySpeed field relative y speed in m/s
+   * @return the limited field relative speed in m/s
+   */
+  private Translation2d limitForObstacles(double xSpeed, double ySpeed) {
+    Translation2d requested = new Translation2d(xSpeed, ySpeed);
+    if (!SmartDashboard.getBoolean("Obstacle Avoidance", true)) {
+      return requested;
+    }
+
+    Translation2d limited = m_fieldMap.limitVelocity(m_state.pose().getTranslation(), requested);
+    SmartDashboard.putNumber("Obstacle Speed Limited", requested.getNorm() - limited.getNorm());
+    return limited;
+  }
+
+  /**
+   * Keep the robot pointed the same way while the driver isn't rotating, so
+   * module mismatch doesn't slowly turn it
+   *
+   * @param rotSpeed the rotation input, -1 to 1
+   * @return the rotation to command, -1 to 1
+   */
+  private double holdHeading(double rotSpeed) {
+    double now = Timer.getFPGATimestamp();
+    if (now - m_lastDriveTime > DriveConstants.kHeadingHoldTimeout) {
+      // Something else was driving, the old heading doesn't mean anything
+      releaseHeadingHold();
+    }
+    m_lastDriveTime = now;
+
+    if (rotSpeed != 0) {
+      m_heldHeading = Double.NaN;
+      m_rotationReleaseTime = now;
+      return rotSpeed;
+    }
+
+    double heading = getHeading().getRadians();
+    double omega = m_velocityEstimator.getOmega();
+    if (Double.isNaN(m_heldHeading)) {
+      // Let the robot finish turning so it doesn't snap back to where the stick
+      // was released
+      if (now - m_rotationReleaseTime < DriveConstants.kHeadingHoldDelay
+          && Math.abs(omega) > DriveConstants.kHeadingHoldCaptureRate) {
+        return 0;
+      }
+      m_heldHeading = heading;
+      m_rotationPID.reset(heading, omega);
+    }
+
+    double output = m_rotationPID.calculate(heading, new TrapezoidProfile.State(m_heldHeading, 0));
+    return MathUtil.clamp(output / DriveConstants.kMaxAngularSpeed, -1, 1);
+  }
+
+  /** Stop holding the current heading until the driver releases rotation again. */
+  private void releaseHeadingHold() {
+    m_heldHeading = Double.NaN;
+    m_rotationReleaseTime = Timer.getFPGATimestamp();
+  }
+
+  /**
+   * Check if the drive is holding a heading for the driver
+   *
+   * @return true if the heading is being held
+   */
+  public boolean isHoldingHeading() {
+    return !Double.isNaN(m_heldHeading);
+  }
+
   /**
    * Method to drive the robot using joystick info.
    *
@@ -228,6 +879,8 @@ public class DriveSubsystem extends SubsystemBase {
    */
   public void driveWithHeading(double xSpeed, double ySpeed, Rotation2d targetRotation, boolean fieldRelative,
       boolean rateLimit) {
+    releaseHeadingHold();
+
     double rotSpeed = m_rotationPID.calculate(
         getHeading().getRadians(),
         new TrapezoidProfile.State(targetRotation.getRadians(), 0));
@@ -253,6 +906,12 @@ public class DriveSubsystem extends SubsystemBase {
     double ySpeedDelivered = ySpeedCommanded * DriveConstants.kMaxSpeedMetersPerSecond;
     double rotSpeedDelivered = rotSpeedCommanded;
 
+    if (fieldRelative) {
+      Translation2d limited = limitForObstacles(xSpeedDelivered, ySpeedDelivered);
+      xSpeedDelivered = limited.getX();
+      ySpeedDelivered = limited.getY();
+    }
+
     setSwerveSpeeds(xSpeedDelivered, ySpeedDelivered, rotSpeedDelivered, fieldRelative);
   }
 
@@ -339,12 +998,67 @@ public class DriveSubsystem extends SubsystemBase {
     var swerveModuleStates = DriveConstants.kDriveKinematics.toSwerveModuleStates(speeds);
     SwerveDriveKinematics.desaturateWheelSpeeds(
         swerveModuleStates, DriveConstants.kMaxSpeedMetersPerSecond);
-    setModuleStates(swerveModuleStates);
+    setModuleStates(swerveModuleStates, getPathAccelerations(speeds, swerveModuleStates));
+  }
+
+  /**
+   * Get the acceleration the path expects of each module. The follower outputs
+   * the path's planned velocity plus its feedback toward the path's target
+   * pose, so the feedback is taken back out and only the planned velocity is
+   * differentiated. The rotation is left out, it is all feedback toward the
+   * rotation target or its override.
+   *
+   * @param speeds the path follower's robot relative speeds
+   * @param states the module states for those speeds
+   * @return each module's acceleration along its state in m/s^2
+   */
+  private double[] getPathAccelerations(ChassisSpeeds speeds, SwerveModuleState[] states) {
+    Arrays.fill(m_pathAccelerations, 0);
+
+    Pose2d target = m_pathTarget;
+    if (target == null) {
+      m_lastPathTime = Double.NaN;
+      return m_pathAccelerations;
+    }
+
+    // The follower works from the same pose, so its feedback can be repeated
+    Pose2d pose = getPose();
+    double cos = pose.getRotation().getCos();
+    double sin = pose.getRotation().getSin();
+    double fieldVx = speeds.vxMetersPerSecond * cos - speeds.vyMetersPerSecond * sin;
+    double fieldVy = speeds.vxMetersPerSecond * sin + speeds.vyMetersPerSecond * cos;
+    double plannedVx = fieldVx - m_pathXFeedback.calculate(pose.getX(), target.getX());
+    double plannedVy = fieldVy - m_pathYFeedback.calculate(pose.getY(), target.getY());
+
+    double now = Timer.getFPGATimestamp();
+    double dt = now - m_lastPathTime;
+    double lastVx = m_lastPathVx;
+    double lastVy = m_lastPathVy;
+    m_lastPathVx = plannedVx;
+    m_lastPathVy = plannedVy;
+    m_lastPathTime = now;
+
+    if (!(dt > 0 && dt < ModuleConstants.kDrivingFeedforwardTimeout)) {
+      // A new path, or paths that aren't being followed continuously
+      m_pathAxFilter.reset();
+      m_pathAyFilter.reset();
+      return m_pathAccelerations;
+    }
+
+    // Smooth out loop timing jitter, then rotate into the robot frame
+    double ax = m_pathAxFilter.calculate((plannedVx - lastVx) / dt);
+    double ay = m_pathAyFilter.calculate((plannedVy - lastVy) / dt);
+    double robotAx = ax * cos + ay * sin;
+    double robotAy = -ax * sin + ay * cos;
+
+    for (int i = 0; i < states.length; i++) {
+      m_pathAccelerations[i] = robotAx * states[i].angle.getCos() + robotAy * states[i].angle.getSin();
+    }
+    return m_pathAccelerations;
   }
 
   public Translation2d getTarget() {
-    return DriverStation.getAlliance().orElse(Alliance.Blue) == Alliance.Blue ? TargetConstants.kBlueSpeakerTarget
-        : TargetConstants.kRedSpeakerTarget;
+    return AllianceUtils.getSpeakerTarget();
   }
 
   private SwerveModulePosition[] getModulePositions() {
@@ -362,27 +1076,24 @@ public class DriveSubsystem extends SubsystemBase {
    * @return The robot relative ChasisSpeeds
    */
   private ChassisSpeeds getRobotRelativeSpeeds() {
-    return DriveConstants.kDriveKinematics.toChassisSpeeds(
-        m_frontLeft.getState(),
-        m_frontRight.getState(),
-        m_rearLeft.getState(),
-        m_rearRight.getState());
+    return m_state.velocity();
   }
 
   // Get heading for odometry
   private Rotation2d getHeadingOdometry() {
-    return Rotation2d.fromDegrees(Math.IEEEremainder(
-        m_gyro.getAngle() * (DriveConstants.kGyroReversed ? -1.0 : 1.0) - DriveConstants.kGyroAdjustment, 360));
+    return m_headingEstimator.getHeading();
   }
 
   /**
    * Sets the wheels into an X formation to prevent movement.
    */
   public void setX() {
-    m_frontLeft.setDesiredState(new SwerveModuleState(0, Rotation2d.fromDegrees(45)));
-    m_frontRight.setDesiredState(new SwerveModuleState(0, Rotation2d.fromDegrees(-45)));
-    m_rearLeft.setDesiredState(new SwerveModuleState(0, Rotation2d.fromDegrees(-45)));
-    m_rearRight.setDesiredState(new SwerveModuleState(0, Rotation2d.fromDegrees(45)));
+    setModuleStates(new SwerveModuleState[] {
+        new SwerveModuleState(0, Rotation2d.fromDegrees(45)),
+        new SwerveModuleState(0, Rotation2d.fromDegrees(-45)),
+        new SwerveModuleState(0, Rotation2d.fromDegrees(-45)),
+        new SwerveModuleState(0, Rotation2d.fromDegrees(45))
+    });
   }
 
   /**
@@ -391,12 +1102,37 @@ public class DriveSubsystem extends SubsystemBase {
    * @param desiredStates The desired SwerveModule states.
    */
   private void setModuleStates(SwerveModuleState[] desiredStates) {
-    SwerveDriveKinematics.desaturateWheelSpeeds(
-        desiredStates, DriveConstants.kMaxSpeedMetersPerSecond);
-    m_frontLeft.setDesiredState(desiredStates[0]);
-    m_frontRight.setDesiredState(desiredStates[1]);
-    m_rearLeft.setDesiredState(desiredStates[2]);
-    m_rearRight.setDesiredState(desiredStates[3]);
+    setModuleStates(desiredStates, m_noAcceleration);
+  }
+
+  /**
+   * Sets the swerve ModuleStates with planned accelerations.
+   *
+   * @param desiredStates The desired SwerveModule states.
+   * @param accelerations Each module's acceleration along its state in m/s^2.
+   */
+  private void setModuleStates(SwerveModuleState[] desiredStates, double[] accelerations) {
+    // Each module's state only depends on its own position, so the remaining
+    // modules can keep driving normally if one fails. Slow down so the robot
+    // stays controllable with the dead wheel.
+    double maxSpeed = DriveConstants.kMaxSpeedMetersPerSecond;
+    if (m_degraded) {
+      maxSpeed *= DriveConstants.kDegradedSpeedScale;
+    }
+
+    SwerveDriveKinematics.desaturateWheelSpeeds(desiredStates, maxSpeed);
+
+    for (int i = 0; i < m_modules.length; i++) {
+      if (m_modules[i].isFailed()) {
+        m_modules[i].stop();
+      } else {
+        desiredStates[i].speedMetersPerSecond = m_tractionControl.limit(i,
+            desiredStates[i].speedMetersPerSecond);
+        // Don't push a slipping wheel to accelerate
+        double acceleration = m_tractionControl.isSlipping(i) ? 0 : accelerations[i];
+        m_modules[i].setDesiredState(desiredStates[i], acceleration);
+      }
+    }
   }
 
   /** Resets the drive encoders to currently read a position of 0. */
@@ -413,7 +1149,7 @@ public class DriveSubsystem extends SubsystemBase {
    * @return the robot's heading in degrees, from -180 to 180
    */
   public Rotation2d getHeading() {
-    return getPose().getRotation();
+    return m_state.heading();
   }
 
   /**
@@ -422,7 +1158,7 @@ public class DriveSubsystem extends SubsystemBase {
    * @return the robot's translation
    */
   public Translation2d getTranslation() {
-    return getPose().getTranslation();
+    return m_state.pose().getTranslation();
   }
 
   /**
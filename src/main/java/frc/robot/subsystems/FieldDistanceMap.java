@@ -0,0 +1,442 @@
+package frc.robot.subsystems;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Filesystem;
+import frc.robot.Constants.DriveConstants;
+import frc.robot.Constants.VisionConstants;
+
+/**
+ * Keeps teleop from driving into the field at full speed. The obstacles come
+ * from the PathPlanner navgrid, which is already padded for the robot. The
+ * navgrid also blocks a band around the field perimeter, but the walls are
+ * checked exactly from the size of the AprilTag field layout and the bumpers,
+ * so only the field elements inside that band are used.
+ *
+ * <p>
+ * Speed is limited toward every wall and every nearby obstacle node that is
+ * the closest part of its obstacle, so a corner can't be squeezed through by
+ * sliding off one side of it. A distance field to the nearest obstacle is
+ * built once at startup so the nodes only have to be searched when one is
+ * close enough to matter, and then only in the ring between the nearest one
+ * and the stopping distance. It is built on a background thread, and until it is
+ * ready only the walls are checked.
+ */
+public class FieldDistanceMap {
+    // Distance field cells per navgrid node
+    private static final int kSubdivisions = 3;
+
+    // Most walls and obstacles limited at once, the farthest are dropped
+    private static final int kMaxConstraints = 64;
+
+    // Rounds of sliding off the walls and obstacles, and how far over their
+    // limit is left after them before the whole velocity is scaled down
+    private static final int kProjectionPasses = 4;
+    private static final double kSpeedTolerance = 0.01; // m/s
+
+    private final double m_fieldLength;
+    private final double m_fieldWidth;
+
+    // Field elements at navgrid resolution, row major from the blue origin
+    private volatile boolean m_ready = false;
+    private boolean[] m_obstacles;
+    private int m_nodeColumns;
+    private int m_nodeRows;
+    private double m_nodeSize;
+
+    // Distance field at kSubdivisions times the navgrid resolution
+    private int m_columns;
+    private int m_rows;
+    private double m_cellSize;
+    private float[] m_distance; // meters, 0 inside an obstacle
+
+    // Directions toward the walls and obstacles being limited, and the distance
+    // to each. Reused every call, so only use from one thread.
+    private final double[] m_constraintX = new double[kMaxConstraints];
+    private final double[] m_constraintY = new double[kMaxConstraints];
+    private final double[] m_constraintDistance = new double[kMaxConstraints];
+    private int m_constraintCount;
+
+    /** Create the map and start building the distance field from the navgrid. */
+    public FieldDistanceMap() {
+        m_fieldLength = VisionConstants.aprilTagLayout.getFieldLength();
+        m_fieldWidth = VisionConstants.aprilTagLayout.getFieldWidth();
+
+        Thread builder = new Thread(this::build, "FieldDistanceMap");
+        builder.setDaemon(true);
+        builder.start();
+    }
+
+    private void build() {
+        File file = new File(Filesystem.getDeployDirectory(), "pathplanner/navgrid.json");
+        JsonNode navgrid;
+        try {
+            navgrid = new ObjectMapper().readTree(file);
+        } catch (IOException e) {
+            DriverStation.reportWarning("Couldn't load the navgrid, only avoiding walls: " + e.getMessage(), false);
+            return;
+        }
+
+        JsonNode grid = navgrid.get("grid");
+        int nodeRows = grid.size();
+        int nodeColumns = grid.get(0).size();
+        boolean[] obstacles = new boolean[nodeColumns * nodeRows];
+        for (int y = 0; y < nodeRows; y++) {
+            for (int x = 0; x < nodeColumns; x++) {
+                obstacles[y * nodeColumns + x] = grid.get(y).get(x).asBoolean();
+            }
+        }
+        removePerimeter(obstacles, nodeColumns, nodeRows);
+
+        int columns = nodeColumns * kSubdivisions;
+        int rows = nodeRows * kSubdivisions;
+        double cellSize = navgrid.get("nodeSizeMeters").asDouble() / kSubdivisions;
+
+        // Nearest obstacle cell of every cell, -1 if none found yet
+        int[] nearestX = new int[columns * rows];
+        int[] nearestY = new int[columns * rows];
+        for (int y = 0; y < rows; y++) {
+            for (int x = 0; x < columns; x++) {
+                boolean obstacle = obstacles[(y / kSubdivisions) * nodeColumns + x / kSubdivisions];
+                nearestX[y * columns + x] = obstacle ? x : -1;
+                nearestY[y * columns + x] = obstacle ? y : -1;
+            }
+        }
+
+        // Two pass propagation of the nearest obstacle (8SSEDT)
+        for (int y = 0; y < rows; y++) {
+            for (int x = 0; x < columns; x++) {
+                propagate(nearestX, nearestY, columns, rows, x, y, -1, 0);
+                propagate(nearestX, nearestY, columns, rows, x, y, -1, -1);
+                propagate(nearestX, nearestY, columns, rows, x, y, 0, -1);
+                propagate(nearestX, nearestY, columns, rows, x, y, 1, -1);
+            }
+            for (int x = columns - 1; x >= 0; x--) {
+                propagate(nearestX, nearestY, columns, rows, x, y, 1, 0);
+            }
+        }
+        for (int y = rows - 1; y >= 0; y--) {
+            for (int x = columns - 1; x >= 0; x--) {
+                propagate(nearestX, nearestY, columns, rows, x, y, 1, 0);
+                propagate(nearestX, nearestY, columns, rows, x, y, 1, 1);
+                propagate(nearestX, nearestY, columns, rows, x, y, 0, 1);
+                propagate(nearestX, nearestY, columns, rows, x, y, -1, 1);
+            }
+            for (int x = 0; x < columns; x++) {
+                propagate(nearestX, nearestY, columns, rows, x, y, -1, 0);
+            }
+        }
+
+        float[] distance = new float[columns * rows];
+        for (int i = 0; i < columns * rows; i++) {
+            if (nearestX[i] < 0) {
+                // No obstacles at all
+                distance[i] = Float.POSITIVE_INFINITY;
+                continue;
+            }
+
+            double cells = Math.hypot(nearestX[i] - i % columns, nearestY[i] - i / columns);
+            // Measured to the near edge of the obstacle cell
+            distance[i] = (float) (Math.max(cells - 0.5, 0) * cellSize);
+        }
+
+        m_obstacles = obstacles;
+        m_nodeColumns = nodeColumns;
+        m_nodeRows = nodeRows;
+        m_nodeSize = cellSize * kSubdivisions;
+        m_columns = columns;
+        m_rows = rows;
+        m_cellSize = cellSize;
+        m_distance = distance;
+        m_ready = true;
+    }
+
+    /**
+     * Clear the band of fully blocked rows and columns along each edge of the
+     * navgrid. It is the padding for the walls, which are checked on their own.
+     */
+    private static void removePerimeter(boolean[] obstacles, int columns, int rows) {
+        int bottom = 0;
+        while (bottom < rows && isRowBlocked(obstacles, columns, bottom)) {
+            bottom++;
+        }
+        int top = rows - 1;
+        while (top > bottom && isRowBlocked(obstacles, columns, top)) {
+            top--;
+        }
+        int left = 0;
+        while (left < columns && isColumnBlocked(obstacles, columns, rows, left)) {
+            left++;
+        }
+        int right = columns - 1;
+        while (right > left && isColumnBlocked(obstacles, columns, rows, right)) {
+            right--;
+        }
+
+        for (int y = 0; y < rows; y++) {
+            for (int x = 0; x < columns; x++) {
+                if (y < bottom || y > top || x < left || x > right) {
+                    obstacles[y * columns + x] = false;
+                }
+            }
+        }
+    }
+
+    private static boolean isRowBlocked(boolean[] obstacles, int columns, int row) {
+        for (int x = 0; x < columns; x++) {
+            if (!obstacles[row * columns + x]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isColumnBlocked(boolean[] obstacles, int columns, int rows, int column) {
+        for (int y = 0; y < rows; y++) {
+            if (!obstacles[y * columns + column]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Take the neighbor's nearest obstacle if it is closer than this cell's
+    private static void propagate(int[] nearestX, int[] nearestY, int columns, int rows, int x, int y,
+            int offsetX, int offsetY) {
+        int neighborX = x + offsetX;
+        int neighborY = y + offsetY;
+        if (neighborX < 0 || neighborX >= columns || neighborY < 0 || neighborY >= rows) {
+            return;
+        }
+
+        int neighbor = neighborY * columns + neighborX;
+        if (nearestX[neighbor] < 0) {
+            return;
+        }
+
+        int cell = y * columns + x;
+        long candidate = distanceSquared(x, y, nearestX[neighbor], nearestY[neighbor]);
+        if (nearestX[cell] < 0 || candidate < distanceSquared(x, y, nearestX[cell], nearestY[cell])) {
+            nearestX[cell] = nearestX[neighbor];
+            nearestY[cell] = nearestY[neighbor];
+        }
+    }
+
+    private static long distanceSquared(int x1, int y1, int x2, int y2) {
+        long dx = x2 - x1;
+        long dy = y2 - y1;
+        return dx * dx + dy * dy;
+    }
+
+    /**
+     * Get the fastest the robot can move toward something and still stop before
+     * reaching it
+     *
+     * @param distance the distance left in meters
+     * @return the speed in m/s
+     */
+    private static double getSafeSpeed(double distance) {
+        double deceleration = DriveConstants.kObstacleMaxDeceleration;
+        double reaction = DriveConstants.kObstacleReactionTime;
+        if (distance <= 0) {
+            return 0;
+        }
+
+        // Travel during the reaction time plus the braking distance fits in the gap
+        double brakingSpeed = deceleration * reaction;
+        return Math.sqrt(brakingSpeed * brakingSpeed + 2 * deceleration * distance) - brakingSpeed;
+    }
+
+    /**
+     * Get how far the robot travels before it stops, the inverse of
+     * {@link #getSafeSpeed(double)}
+     *
+     * @param speed the speed in m/s
+     * @return the distance in meters
+     */
+    private static double getStoppingDistance(double speed) {
+        return speed * DriveConstants.kObstacleReactionTime
+                + speed * speed / (2 * DriveConstants.kObstacleMaxDeceleration);
+    }
+
+    /**
+     * Get the distance to the nearest field element, not counting the walls
+     *
+     * @param position the position of the robot on the field
+     * @return the distance in meters, 0 inside an obstacle, or infinity if the
+     *         distance field isn't ready
+     */
+    public double getObstacleDistance(Translation2d position) {
+        if (!m_ready) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return m_distance[getCell(position.getX(), position.getY())];
+    }
+
+    private int getCell(double x, double y) {
+        int column = Math.min(Math.max((int) (x / m_cellSize), 0), m_columns - 1);
+        int row = Math.min(Math.max((int) (y / m_cellSize), 0), m_rows - 1);
+        return row * m_columns + column;
+    }
+
+    private boolean isObstacle(int column, int row) {
+        return column >= 0 && column < m_nodeColumns && row >= 0 && row < m_nodeRows
+                && m_obstacles[row * m_nodeColumns + column];
+    }
+
+    /**
+     * Slow down the parts of a velocity that head toward the walls or nearby
+     * obstacles too fast to stop in time. Moving away or alongside is never
+     * limited. Inside an obstacle the robot is let drive out.
+     *
+     * @param position the position of the robot on the field
+     * @param velocity the commanded field relative velocity in m/s
+     * @return the limited velocity
+     */
+    public Translation2d limitVelocity(Translation2d position, Translation2d velocity) {
+        double x = position.getX();
+        double y = position.getY();
+
+        // Walls, measured from the bumpers
+        double halfWidth = DriveConstants.kBumperHalfWidth;
+        m_constraintCount = 0;
+        addConstraint(-1, 0, x - halfWidth);
+        addConstraint(1, 0, m_fieldLength - halfWidth - x);
+        addConstraint(0, -1, y - halfWidth);
+        addConstraint(0, 1, m_fieldWidth - halfWidth - y);
+
+        if (m_ready) {
+            addObstacles(x, y, velocity.getNorm());
+        }
+
+        // Take away the speed toward each one in turn, which slides along them.
+        // Taking it away from one can add speed toward another, so go around a
+        // few times and then scale down whatever is still too fast.
+        double vx = velocity.getX();
+        double vy = velocity.getY();
+        for (int pass = 0; pass < kProjectionPasses; pass++) {
+            for (int i = 0; i < m_constraintCount; i++) {
+                double excess = vx * m_constraintX[i] + vy * m_constraintY[i]
+                        - getSafeSpeed(m_constraintDistance[i]);
+                if (excess > 0) {
+                    vx -= excess * m_constraintX[i];
+                    vy -= excess * m_constraintY[i];
+                }
+            }
+        }
+
+        double scale = 1;
+        for (int i = 0; i < m_constraintCount; i++) {
+            double toward = vx * m_constraintX[i] + vy * m_constraintY[i];
+            double maxSpeed = getSafeSpeed(m_constraintDistance[i]);
+            if (toward > maxSpeed + kSpeedTolerance) {
+                scale = Math.min(scale, maxSpeed / toward);
+            }
+        }
+
+        return new Translation2d(vx * scale, vy * scale);
+    }
+
+    /**
+     * Add every obstacle node within stopping distance whose closest point to
+     * the robot isn't shared with a closer obstacle node. On a straight edge
+     * that is just the node across from the robot, so driving alongside isn't
+     * slowed by the nodes further along.
+     */
+    private void addObstacles(double x, double y, double speed) {
+        double distance = m_distance[getCell(x, y)];
+        double range = getStoppingDistance(speed) + DriveConstants.kObstacleMargin + m_cellSize;
+        if (distance <= 0 || distance > range) {
+            return;
+        }
+
+        // Nothing is closer than the nearest obstacle, less a cell for measuring
+        // it from the cell instead of the robot
+        double clear = Math.max(distance - m_cellSize, 0);
+
+        int minRow = (int) Math.floor((y - range) / m_nodeSize);
+        int maxRow = (int) Math.floor((y + range) / m_nodeSize);
+        for (int row = minRow; row <= maxRow; row++) {
+            // Only the columns of this row that are in the ring can be in range
+            double gapY = Math.max(Math.max(row * m_nodeSize - y, y - (row + 1) * m_nodeSize), 0);
+            if (gapY > range) {
+                continue;
+            }
+            double outer = Math.sqrt(range * range - gapY * gapY);
+            int minColumn = (int) Math.floor((x - outer) / m_nodeSize);
+            int maxColumn = (int) Math.floor((x + outer) / m_nodeSize);
+
+            // Nodes closer than the nearest obstacle can't be obstacles, skip
+            // the columns that are certainly inside that circle
+            int skipStart = maxColumn + 1;
+            int skipEnd = maxColumn;
+            if (gapY < clear) {
+                double inner = Math.sqrt(clear * clear - gapY * gapY);
+                skipStart = Math.max((int) Math.floor((x - inner) / m_nodeSize) + 1, minColumn);
+                skipEnd = Math.max((int) Math.ceil((x + inner) / m_nodeSize) - 2, skipStart - 1);
+            }
+
+            for (int column = minColumn; column < skipStart; column++) {
+                addObstacle(x, y, column, row, range);
+            }
+            for (int column = skipEnd + 1; column <= maxColumn; column++) {
+                addObstacle(x, y, column, row, range);
+            }
+        }
+    }
+
+    // Add a node if it is in range and the closest part of its obstacle
+    private void addObstacle(double x, double y, int column, int row, double range) {
+        if (!isObstacle(column, row)) {
+            return;
+        }
+
+        // Closest point of the node and which side of it the robot is on
+        double minX = column * m_nodeSize;
+        double minY = row * m_nodeSize;
+        double nearestX = Math.min(Math.max(x, minX), minX + m_nodeSize);
+        double nearestY = Math.min(Math.max(y, minY), minY + m_nodeSize);
+        int sideX = x < minX ? -1 : x > minX + m_nodeSize ? 1 : 0;
+        int sideY = y < minY ? -1 : y > minY + m_nodeSize ? 1 : 0;
+        if ((sideX != 0 && isObstacle(column + sideX, row))
+                || (sideY != 0 && isObstacle(column, row + sideY))
+                || (sideX != 0 && sideY != 0 && isObstacle(column + sideX, row + sideY))) {
+            return;
+        }
+
+        double dx = nearestX - x;
+        double dy = nearestY - y;
+        double nodeDistance = Math.hypot(dx, dy);
+        if (nodeDistance > 0 && nodeDistance <= range) {
+            addConstraint(dx / nodeDistance, dy / nodeDistance, nodeDistance - DriveConstants.kObstacleMargin);
+        }
+    }
+
+    // Add a constraint, replacing the farthest one if there are already too many
+    private void addConstraint(double directionX, double directionY, double distance) {
+        int index = m_constraintCount;
+        if (index < kMaxConstraints) {
+            m_constraintCount++;
+        } else {
+            index = 0;
+            for (int i = 1; i < kMaxConstraints; i++) {
+                if (m_constraintDistance[i] > m_constraintDistance[index]) {
+                    index = i;
+                }
+            }
+            if (m_constraintDistance[index] <= distance) {
+                return;
+            }
+        }
+
+        m_constraintX[index] = directionX;
+        m_constraintY[index] = directionY;
+        m_constraintDistance[index] = distance;
+    }
+}
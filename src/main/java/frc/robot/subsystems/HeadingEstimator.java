@@ -0,0 +1,220 @@
+package frc.robot.subsystems;
+
+import com.kauailabs.navx.frc.AHRS;
+
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModulePosition;
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj.Timer;
+import frc.robot.Constants.DriveConstants;
+
+/**
+ * Tracks the heading used for odometry. The NavX is read on a background
+ * notifier so a slow I2C transaction can't stall the main loop, and every loop
+ * the gyro change is checked against the rotation measured by the wheels. If
+ * the gyro is disconnected, stops updating, or jumps away from the wheels, the
+ * heading is carried forward with the wheel rotation until it recovers.
+ */
+public class HeadingEstimator {
+    public enum GyroHealth {
+        kHealthy,
+        kDisconnected,
+        kStale,
+        kJumped
+    }
+
+    /**
+     * Where gyro samples come from. On the robot this is the NavX, tests
+     * provide their own to inject faults.
+     */
+    interface GyroSource {
+        boolean isConnected();
+
+        /** @return a count that changes with every new sample */
+        double getUpdateCount();
+
+        /** @return the angle in degrees, as the NavX reports it */
+        double getAngle();
+    }
+
+    private final GyroSource m_gyro;
+    private final SwerveDriveKinematics m_kinematics;
+    private final Notifier m_notifier;
+
+    // Latest gyro sample, written by the notifier thread
+    private double m_sampleAngle = 0;
+    private double m_sampleTimestamp = 0;
+    private double m_sampleUpdateCount = -1;
+    private boolean m_sampleConnected = false;
+
+    // Heading state, only touched by the main loop
+    private double m_heading = 0; // radians, continuous
+    private double m_lastGyroAngle; // radians
+    private final double[] m_lastDistances;
+    private final SwerveModulePosition[] m_deltas;
+    private GyroHealth m_health = GyroHealth.kDisconnected;
+    private double m_latency = 0;
+    private int m_faultCount = 0;
+
+    /**
+     * Create a new heading estimator and start reading the gyro
+     *
+     * @param gyro       the NavX to read
+     * @param kinematics the kinematics of the drivetrain, to get wheel rotation
+     * @param positions  the current module positions
+     */
+    public HeadingEstimator(AHRS gyro, SwerveDriveKinematics kinematics, SwerveModulePosition[] positions) {
+        this(new GyroSource() {
+            @Override
+            public boolean isConnected() {
+                return gyro.isConnected();
+            }
+
+            @Override
+            public double getUpdateCount() {
+                return gyro.getUpdateCount();
+            }
+
+            @Override
+            public double getAngle() {
+                return gyro.getAngle();
+            }
+        }, kinematics, positions, true);
+    }
+
+    /**
+     * Create a new heading estimator
+     *
+     * @param gyro       where to read gyro samples from
+     * @param kinematics the kinematics of the drivetrain, to get wheel rotation
+     * @param positions  the current module positions
+     * @param background true to read the gyro on a notifier, false to only read
+     *                   it when {@link #readGyro()} is called
+     */
+    HeadingEstimator(GyroSource gyro, SwerveDriveKinematics kinematics, SwerveModulePosition[] positions,
+            boolean background) {
+        m_gyro = gyro;
+        m_kinematics = kinematics;
+        m_lastDistances = new double[positions.length];
+        m_deltas = new SwerveModulePosition[positions.length];
+        for (int i = 0; i < m_deltas.length; i++) {
+            m_lastDistances[i] = positions[i].distanceMeters;
+            m_deltas[i] = new SwerveModulePosition();
+        }
+
+        // Measure the first update's rotation from where the gyro starts
+        readGyro();
+        m_lastGyroAngle = m_sampleAngle;
+
+        if (background) {
+            m_notifier = new Notifier(this::readGyro);
+            m_notifier.setName("GyroReader");
+            m_notifier.startPeriodic(DriveConstants.kGyroReadPeriod);
+        } else {
+            m_notifier = null;
+        }
+    }
+
+    // Runs on the notifier thread, or from tests when there isn't one
+    void readGyro() {
+        boolean connected = m_gyro.isConnected();
+        double updateCount = m_gyro.getUpdateCount();
+        double angle = Math.toRadians(
+                m_gyro.getAngle() * (DriveConstants.kGyroReversed ? -1.0 : 1.0) - DriveConstants.kGyroAdjustment);
+
+        synchronized (this) {
+            m_sampleConnected = connected;
+
+            // Only a new sample from the NavX counts as fresh
+            if (updateCount != m_sampleUpdateCount) {
+                m_sampleUpdateCount = updateCount;
+                m_sampleAngle = angle;
+                m_sampleTimestamp = Timer.getFPGATimestamp();
+            }
+        }
+    }
+
+    /**
+     * Update the heading. Call once per odometry update.
+     *
+     * @param positions the current module positions
+     */
+    public void update(SwerveModulePosition[] positions) {
+        double angle;
+        double timestamp;
+        boolean connected;
+        synchronized (this) {
+            angle = m_sampleAngle;
+            timestamp = m_sampleTimestamp;
+            connected = m_sampleConnected;
+        }
+
+        // Rotation since last update as measured by the wheels
+        for (int i = 0; i < positions.length; i++) {
+            m_deltas[i].distanceMeters = positions[i].distanceMeters - m_lastDistances[i];
+            m_deltas[i].angle = positions[i].angle;
+            m_lastDistances[i] = positions[i].distanceMeters;
+        }
+        double wheelDelta = m_kinematics.toTwist2d(m_deltas).dtheta;
+
+        m_latency = Timer.getFPGATimestamp() - timestamp;
+
+        double gyroDelta = angle - m_lastGyroAngle;
+        m_lastGyroAngle = angle;
+
+        GyroHealth health;
+        if (!connected) {
+            health = GyroHealth.kDisconnected;
+        } else if (m_latency > DriveConstants.kGyroStaleTimeout) {
+            health = GyroHealth.kStale;
+        } else if (Math.abs(gyroDelta - wheelDelta) > DriveConstants.kGyroMaxJump) {
+            health = GyroHealth.kJumped;
+        } else {
+            health = GyroHealth.kHealthy;
+        }
+
+        if (health != GyroHealth.kHealthy && m_health == GyroHealth.kHealthy) {
+            m_faultCount++;
+        }
+        m_health = health;
+
+        m_heading += health == GyroHealth.kHealthy ? gyroDelta : wheelDelta;
+    }
+
+    /**
+     * Get the heading for odometry. This is continuous and only meaningful
+     * relative to itself, the pose estimator tracks the field heading.
+     *
+     * @return the heading
+     */
+    public Rotation2d getHeading() {
+        return new Rotation2d(m_heading);
+    }
+
+    public GyroHealth getHealth() {
+        return m_health;
+    }
+
+    public boolean isGyroHealthy() {
+        return m_health == GyroHealth.kHealthy;
+    }
+
+    /**
+     * Get the age of the latest gyro sample at the last update
+     *
+     * @return the latency in seconds
+     */
+    public double getLatency() {
+        return m_latency;
+    }
+
+    /**
+     * Get the number of times the gyro went from healthy to faulted
+     *
+     * @return the number of faults
+     */
+    public int getFaultCount() {
+        return m_faultCount;
+    }
+}
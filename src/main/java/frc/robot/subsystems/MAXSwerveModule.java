@@ -4,21 +4,33 @@
 
 package frc.robot.subsystems;
 
+import java.util.List;
+import java.util.concurrent.Future;
+
+import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.kinematics.SwerveModulePosition;
 import edu.wpi.first.math.kinematics.SwerveModuleState;
+import edu.wpi.first.wpilibj.DataLogManager;
 
 import com.revrobotics.CANSparkMax;
 import com.revrobotics.AbsoluteEncoder;
 import com.revrobotics.CANSparkFlex;
 import com.revrobotics.RelativeEncoder;
 import com.revrobotics.SparkPIDController;
+import com.revrobotics.SparkPIDController.ArbFFUnits;
+import com.revrobotics.CANSparkBase;
+import com.revrobotics.CANSparkBase.FaultID;
+import com.revrobotics.CANSparkBase.IdleMode;
 import com.revrobotics.CANSparkLowLevel.MotorType;
 import com.revrobotics.SparkAbsoluteEncoder.Type;
 
 import frc.robot.Constants.ModuleConstants;
+import frc.utils.SparkConfigurator;
 
 public class MAXSwerveModule {
+  private final String m_name;
+
   public final CANSparkFlex m_drivingSparkMax;
   public final CANSparkMax m_turningSparkMax;
 
@@ -31,83 +43,113 @@ public class MAXSwerveModule {
   private double m_chassisAngularOffset = 0;
   private SwerveModuleState m_desiredState = new SwerveModuleState(0.0, new Rotation2d());
 
+  // What was last sent to the controllers, for health monitoring
+  private double m_commandedSpeed = 0;
+  private double m_commandedAngle = 0;
+
+  // Health monitoring state
+  private double m_referenceSpeed = 0; // the commanded speed limited to what the wheel can reach
+  private double m_healthTime = Double.NaN;
+  private double m_faultStartTime = Double.NaN;
+  private double m_lastFaultTime = Double.NaN;
+  private boolean m_faulted = false;
+  private boolean m_trackingFault = false;
+  private boolean m_failed = false;
+  private int m_faultCount = 0;
+  private String m_fault = "";
+  private String m_warning = "";
+
+  // Fault forced by tests, reported in place of what the hardware says
+  private String m_injectedFault = null;
+  private boolean m_injectedTracking = false;
+
+  // Configuration of each controller, running in the background until awaited
+  private final Future<Double> m_drivingConfiguration;
+  private final Future<Double> m_turningConfiguration;
+
   /**
-   * Constructs a MAXSwerveModule and configures the driving and turning motor,
-   * encoder, and PID controller. This configuration is specific to the REV
+   * Constructs a MAXSwerveModule and starts configuring the driving and turning
+   * motor, encoder, and PID controller. This configuration is specific to the REV
    * MAXSwerve Module built with NEOs, SPARKS MAX, and a Through Bore
-   * Encoder.
+   * Encoder. The configuration runs in the background so all the modules are
+   * configured at once, call {@link #awaitConfiguration()} before using the
+   * module.
    */
-  public MAXSwerveModule(int drivingCANId, int turningCANId, double chassisAngularOffset) {
+  public MAXSwerveModule(String name, int drivingCANId, int turningCANId, double chassisAngularOffset) {
+    m_name = name;
     m_drivingSparkMax = new CANSparkFlex(drivingCANId, MotorType.kBrushless);
     m_turningSparkMax = new CANSparkMax(turningCANId, MotorType.kBrushless);
 
-    // Factory reset, so we get the SPARKS MAX to a known state before configuring
-    // them. This is useful in case a SPARK MAX is swapped out.
-    //m_drivingSparkMax.restoreFactoryDefaults();
-    //m_turningSparkMax.restoreFactoryDefaults();
-
     // Setup encoders and PID controllers for the driving and turning SPARKS MAX.
     m_drivingEncoder = m_drivingSparkMax.getEncoder();
     m_turningEncoder = m_turningSparkMax.getAbsoluteEncoder(Type.kDutyCycle);
     m_drivingPIDController = m_drivingSparkMax.getPIDController();
     m_turningPIDController = m_turningSparkMax.getPIDController();
-    m_drivingPIDController.setFeedbackDevice(m_drivingEncoder);
-    m_turningPIDController.setFeedbackDevice(m_turningEncoder);
-
-    // Apply position and velocity conversion factors for the driving encoder. The
-    // native units for position and velocity are rotations and RPM, respectively,
-    // but we want meters and meters per second to use with WPILib's swerve APIs.
-    m_drivingEncoder.setPositionConversionFactor(ModuleConstants.kDrivingEncoderPositionFactor);
-    m_drivingEncoder.setVelocityConversionFactor(ModuleConstants.kDrivingEncoderVelocityFactor);
-
-    // Apply position and velocity conversion factors for the turning encoder. We
-    // want these in radians and radians per second to use with WPILib's swerve
-    // APIs.
-    m_turningEncoder.setPositionConversionFactor(ModuleConstants.kTurningEncoderPositionFactor);
-    m_turningEncoder.setVelocityConversionFactor(ModuleConstants.kTurningEncoderVelocityFactor);
-
-    // Invert the turning encoder, since the output shaft rotates in the opposite direction of
-    // the steering motor in the MAXSwerve Module.
-    //m_turningEncoder.setInverted(ModuleConstants.kTurningEncoderInverted);
-
-    // Enable PID wrap around for the turning motor. This will allow the PID
-    // controller to go through 0 to get to the setpoint i.e. going from 350 degrees
-    // to 10 degrees will go through 0 rather than the other direction which is a
-    // longer route.
-    m_turningPIDController.setPositionPIDWrappingEnabled(true);
-    m_turningPIDController.setPositionPIDWrappingMinInput(ModuleConstants.kTurningEncoderPositionPIDMinInput);
-    m_turningPIDController.setPositionPIDWrappingMaxInput(ModuleConstants.kTurningEncoderPositionPIDMaxInput);
-
-    // Set the PID gains for the driving motor. Note these are example gains, and you
-    // may need to tune them for your own robot!
-    m_drivingPIDController.setP(ModuleConstants.kDrivingP);
-    m_drivingPIDController.setI(ModuleConstants.kDrivingI);
-    m_drivingPIDController.setD(ModuleConstants.kDrivingD);
-    m_drivingPIDController.setFF(ModuleConstants.kDrivingFF);
-    m_drivingPIDController.setOutputRange(ModuleConstants.kDrivingMinOutput,
-        ModuleConstants.kDrivingMaxOutput);
-
-    // Set the PID gains for the turning motor. Note these are example gains, and you
-    // may need to tune them for your own robot!
-    m_turningPIDController.setP(ModuleConstants.kTurningP);
-    m_turningPIDController.setI(ModuleConstants.kTurningI);
-    m_turningPIDController.setD(ModuleConstants.kTurningD);
-    m_turningPIDController.setFF(ModuleConstants.kTurningFF);
-    m_turningPIDController.setOutputRange(ModuleConstants.kTurningMinOutput,
-        ModuleConstants.kTurningMaxOutput);
-
-    m_drivingSparkMax.setIdleMode(ModuleConstants.kDrivingMotorIdleMode);
-    m_turningSparkMax.setIdleMode(ModuleConstants.kTurningMotorIdleMode);
-    
-    m_drivingSparkMax.setSmartCurrentLimit(ModuleConstants.kDrivingMotorCurrentLimit);
-    m_turningSparkMax.setSmartCurrentLimit(ModuleConstants.kTurningMotorCurrentLimit);
-
-    // Save the SPARK MAX configurations. If a SPARK MAX browns out during
-    // operation, it will maintain the above configurations.
-    m_drivingSparkMax.burnFlash();
-    m_turningSparkMax.burnFlash();
+
+    // The controllers aren't factory reset, every setting that matters is listed
+    // here and only the ones that differ from what's on the controller are sent.
+    // The configuration is applied on every boot, so it is only saved to flash
+    // on request with burnFlash() instead of wearing the flash each startup.
+    m_drivingConfiguration = new SparkConfigurator(name + " Driving", m_drivingSparkMax)
+        .always("Feedback Device", () -> m_drivingPIDController.setFeedbackDevice(m_drivingEncoder))
+        // Apply position and velocity conversion factors for the driving encoder. The
+        // native units for position and velocity are rotations and RPM, respectively,
+        // but we want meters and meters per second to use with WPILib's swerve APIs.
+        .set("Position Factor", ModuleConstants.kDrivingEncoderPositionFactor,
+            m_drivingEncoder::getPositionConversionFactor, m_drivingEncoder::setPositionConversionFactor)
+        .set("Velocity Factor", ModuleConstants.kDrivingEncoderVelocityFactor,
+            m_drivingEncoder::getVelocityConversionFactor, m_drivingEncoder::setVelocityConversionFactor)
+        // Note these are example gains, and you may need to tune them for your own robot!
+        .pid(m_drivingPIDController, ModuleConstants.kDrivingP, ModuleConstants.kDrivingI,
+            ModuleConstants.kDrivingD, ModuleConstants.kDrivingFF,
+            ModuleConstants.kDrivingMinOutput, ModuleConstants.kDrivingMaxOutput)
+        .idleMode(ModuleConstants.kDrivingMotorIdleMode)
+        .smartCurrentLimit(ModuleConstants.kDrivingMotorCurrentLimit)
+        // Clear the faults from power on so only new faults are reported
+        .always("Clear Faults", m_drivingSparkMax::clearFaults)
+        .start();
+
+    m_turningConfiguration = new SparkConfigurator(name + " Turning", m_turningSparkMax)
+        .always("Feedback Device", () -> m_turningPIDController.setFeedbackDevice(m_turningEncoder))
+        // Apply position and velocity conversion factors for the turning encoder. We
+        // want these in radians and radians per second to use with WPILib's swerve
+        // APIs.
+        .set("Position Factor", ModuleConstants.kTurningEncoderPositionFactor,
+            m_turningEncoder::getPositionConversionFactor, m_turningEncoder::setPositionConversionFactor)
+        .set("Velocity Factor", ModuleConstants.kTurningEncoderVelocityFactor,
+            m_turningEncoder::getVelocityConversionFactor, m_turningEncoder::setVelocityConversionFactor)
+        // Enable PID wrap around for the turning motor. This will allow the PID
+        // controller to go through 0 to get to the setpoint i.e. going from 350 degrees
+        // to 10 degrees will go through 0 rather than the other direction which is a
+        // longer route.
+        .set("PID Wrapping", true,
+            m_turningPIDController::getPositionPIDWrappingEnabled,
+            value -> m_turningPIDController.setPositionPIDWrappingEnabled(value > 0.5))
+        .set("PID Wrapping Min", ModuleConstants.kTurningEncoderPositionPIDMinInput,
+            m_turningPIDController::getPositionPIDWrappingMinInput,
+            m_turningPIDController::setPositionPIDWrappingMinInput)
+        .set("PID Wrapping Max", ModuleConstants.kTurningEncoderPositionPIDMaxInput,
+            m_turningPIDController::getPositionPIDWrappingMaxInput,
+            m_turningPIDController::setPositionPIDWrappingMaxInput)
+        // Note these are example gains, and you may need to tune them for your own robot!
+        .pid(m_turningPIDController, ModuleConstants.kTurningP, ModuleConstants.kTurningI,
+            ModuleConstants.kTurningD, ModuleConstants.kTurningFF,
+            ModuleConstants.kTurningMinOutput, ModuleConstants.kTurningMaxOutput)
+        .idleMode(ModuleConstants.kTurningMotorIdleMode)
+        .smartCurrentLimit(ModuleConstants.kTurningMotorCurrentLimit)
+        .always("Clear Faults", m_turningSparkMax::clearFaults)
+        .start();
 
     m_chassisAngularOffset = chassisAngularOffset;
+  }
+
+  /**
+   * Wait for the controllers to finish configuring and reset the module. Must be
+   * called before the module is used.
+   */
+  public void awaitConfiguration() {
+    SparkConfigurator.await(List.of(m_drivingConfiguration, m_turningConfiguration));
+
     m_desiredState.angle = new Rotation2d(m_turningEncoder.getPosition());
     m_drivingEncoder.setPosition(0);
   }
@@ -143,6 +185,18 @@ public class MAXSwerveModule {
    * @param desiredState Desired state with speed and angle.
    */
   public void setDesiredState(SwerveModuleState desiredState) {
+    setDesiredState(desiredState, 0);
+  }
+
+  /**
+   * Sets the desired state for the module with a feedforward for the
+   * acceleration a trajectory expects.
+   *
+   * @param desiredState Desired state with speed and angle.
+   * @param acceleration Acceleration along the desired state's direction in
+   *                     m/s^2, 0 when nothing plans it.
+   */
+  public void setDesiredState(SwerveModuleState desiredState, double acceleration) {
     // Apply chassis angular offset to the desired state.
     SwerveModuleState correctedDesiredState = new SwerveModuleState();
     correctedDesiredState.speedMetersPerSecond = desiredState.speedMetersPerSecond;
@@ -152,14 +206,339 @@ public class MAXSwerveModule {
     SwerveModuleState optimizedDesiredState = SwerveModuleState.optimize(correctedDesiredState,
         new Rotation2d(m_turningEncoder.getPosition()));
 
+    // The velocity loop only pushes harder once the wheel falls behind, so feed
+    // forward the voltage for the planned acceleration. It flips with the wheel.
+    if (Math.abs(optimizedDesiredState.angle.minus(correctedDesiredState.angle).getRadians()) > Math.PI / 2) {
+      acceleration = -acceleration;
+    }
+    acceleration = MathUtil.clamp(acceleration,
+        -ModuleConstants.kDrivingMaxAcceleration, ModuleConstants.kDrivingMaxAcceleration);
+
     // Command driving and turning SPARKS MAX towards their respective setpoints.
-    m_drivingPIDController.setReference(optimizedDesiredState.speedMetersPerSecond, CANSparkMax.ControlType.kVelocity);
+    m_drivingPIDController.setReference(optimizedDesiredState.speedMetersPerSecond, CANSparkMax.ControlType.kVelocity,
+        0, ModuleConstants.kDrivingA * acceleration, ArbFFUnits.kVoltage);
     // m_drivingPIDController.setReference((optimizedDesiredState.speedMetersPerSecond/Constants.ModuleConstants.kDriveWheelFreeSpeedMps) * 12.0, CANSparkMax.ControlType.kVoltage);
     m_turningPIDController.setReference(optimizedDesiredState.angle.getRadians(), CANSparkMax.ControlType.kPosition);
 
+    m_commandedSpeed = optimizedDesiredState.speedMetersPerSecond;
+    m_commandedAngle = optimizedDesiredState.angle.getRadians();
     m_desiredState = desiredState;
   }
 
+  /**
+   * Drive the module with a raw voltage while holding the wheel at an angle.
+   * Used for characterization.
+   *
+   * @param volts The voltage to apply to the driving motor.
+   * @param angle The angle to hold the wheel at, relative to the chassis.
+   */
+  public void setDriveVoltage(double volts, Rotation2d angle) {
+    m_turningPIDController.setReference(
+        MathUtil.inputModulus(angle.getRadians() + m_chassisAngularOffset, 0, 2 * Math.PI),
+        CANSparkMax.ControlType.kPosition);
+    m_drivingSparkMax.setVoltage(volts);
+
+    m_commandedSpeed = m_drivingEncoder.getVelocity();
+  }
+
+  /**
+   * Spin the wheel in place with a raw voltage on the turning motor. Used for
+   * characterization.
+   *
+   * @param volts The voltage to apply to the turning motor.
+   */
+  public void setTurningVoltage(double volts) {
+    m_drivingSparkMax.stopMotor();
+    m_turningSparkMax.setVoltage(volts);
+
+    m_commandedSpeed = 0;
+  }
+
+  /**
+   * Returns the distance driven by the wheel.
+   *
+   * @return The distance in meters.
+   */
+  public double getDrivePosition() {
+    return m_drivingEncoder.getPosition();
+  }
+
+  /**
+   * Returns the speed of the wheel.
+   *
+   * @return The speed in meters per second.
+   */
+  public double getDriveVelocity() {
+    return m_drivingEncoder.getVelocity();
+  }
+
+  /**
+   * Returns the angle of the wheel, without the chassis offset.
+   *
+   * @return The angle in radians.
+   */
+  public double getTurningPosition() {
+    return m_turningEncoder.getPosition();
+  }
+
+  /**
+   * Returns the rotation speed of the wheel.
+   *
+   * @return The speed in radians per second.
+   */
+  public double getTurningVelocity() {
+    return m_turningEncoder.getVelocity();
+  }
+
+  /** Stop both motors, used when the module has failed. */
+  public void stop() {
+    m_drivingSparkMax.stopMotor();
+    m_turningSparkMax.stopMotor();
+
+    m_commandedSpeed = 0;
+  }
+
+  /**
+   * Check the module for faults. A fault has to last for
+   * {@link ModuleConstants#kModuleFaultTime} before the module is faulted, and
+   * the module stops being faulted once the fault clears. Brownouts and
+   * temperature are only warnings since they hit every module at once.
+   *
+   * @param timestamp the current time in seconds
+   * @param enabled   whether the robot is enabled, tracking errors are only
+   *                  checked when the module is being driven
+   */
+  public void updateHealth(double timestamp, boolean enabled) {
+    double dt = Double.isNaN(m_healthTime) ? 0 : timestamp - m_healthTime;
+    m_healthTime = timestamp;
+
+    boolean driven = enabled && !m_failed;
+    updateReferenceSpeed(dt, driven);
+
+    String warning = checkWarnings();
+    if (warning != null && !warning.equals(m_warning)) {
+      DataLogManager.log("[swerve] module " + m_drivingSparkMax.getDeviceId() + " warning: " + warning);
+    }
+    m_warning = warning == null ? "" : warning;
+
+    String fault = m_injectedFault != null && !m_injectedTracking ? m_injectedFault : checkHardwareFaults();
+    m_trackingFault = false;
+    if (fault == null && driven) {
+      fault = m_injectedFault != null && m_injectedTracking ? m_injectedFault : checkTracking();
+      m_trackingFault = fault != null;
+    }
+
+    if (fault == null) {
+      m_faultStartTime = Double.NaN;
+
+      // A failed module isn't driven, so its tracking can't be checked. It goes
+      // back into use once the hardware has been clear for a while, and fails
+      // again if the fault is still there.
+      double clearTime = m_failed ? ModuleConstants.kModuleRetryTime : 0;
+      if (m_faulted && timestamp - m_lastFaultTime >= clearTime) {
+        m_faulted = false;
+      }
+      return;
+    }
+
+    m_lastFaultTime = timestamp;
+    if (Double.isNaN(m_faultStartTime)) {
+      m_faultStartTime = timestamp;
+      m_faultCount++;
+      m_fault = fault;
+    }
+
+    if (!m_faulted && timestamp - m_faultStartTime >= ModuleConstants.kModuleFaultTime) {
+      m_faulted = true;
+      DataLogManager.log("[swerve] module " + m_drivingSparkMax.getDeviceId() + " faulted: " + fault);
+    }
+  }
+
+  /**
+   * Force a fault to test health monitoring in sim, where the SPARKs never
+   * report any. Like real ones, tracking faults are only seen while the module
+   * is driven.
+   *
+   * @param fault    the description of the fault, or null to clear it
+   * @param tracking true for a tracking error, false for a hardware fault
+   */
+  void injectFault(String fault, boolean tracking) {
+    m_injectedFault = fault;
+    m_injectedTracking = tracking;
+  }
+
+  // Move the reference toward the commanded speed no faster than any healthy
+  // wheel can accelerate. A wheel that gets there sooner pulls the reference
+  // along, so only a wheel falling behind builds up error.
+  private void updateReferenceSpeed(double dt, boolean driven) {
+    double speed = m_drivingEncoder.getVelocity();
+    if (!driven) {
+      m_referenceSpeed = speed;
+      return;
+    }
+
+    double step = ModuleConstants.kModuleMinAcceleration * dt;
+    m_referenceSpeed += MathUtil.clamp(m_commandedSpeed - m_referenceSpeed, -step, step);
+
+    boolean ahead = m_commandedSpeed >= m_referenceSpeed
+        ? speed > m_referenceSpeed && speed <= m_commandedSpeed
+        : speed < m_referenceSpeed && speed >= m_commandedSpeed;
+    if (ahead) {
+      m_referenceSpeed = speed;
+    }
+  }
+
+  // Returns a description of a hardware fault, or null if there isn't one
+  private String checkHardwareFaults() {
+    if (hasCANFault(m_drivingSparkMax) || hasCANFault(m_turningSparkMax)) {
+      return "CAN";
+    }
+
+    if (m_turningSparkMax.getFault(FaultID.kSensorFault)) {
+      return "Encoder";
+    }
+
+    return null;
+  }
+
+  // Returns a description of a condition worth reporting that doesn't mean the
+  // module is broken, or null if there isn't one
+  private String checkWarnings() {
+    if (m_drivingSparkMax.getFault(FaultID.kBrownout) || m_turningSparkMax.getFault(FaultID.kBrownout)) {
+      return "Brownout";
+    }
+
+    if (m_drivingSparkMax.getMotorTemperature() > ModuleConstants.kMaxMotorTemperature
+        || m_turningSparkMax.getMotorTemperature() > ModuleConstants.kMaxMotorTemperature) {
+      return "Temperature";
+    }
+
+    return null;
+  }
+
+  // Returns a description of the module not following its commands, or null
+  private String checkTracking() {
+    double speed = m_drivingEncoder.getVelocity();
+    if (Math.abs(m_referenceSpeed) > ModuleConstants.kModuleMaxVelocityError
+        && Math.abs(speed) < ModuleConstants.kModuleMaxVelocityError
+        && m_drivingSparkMax.getOutputCurrent() >= ModuleConstants.kDrivingMotorCurrentLimit * 0.9) {
+      return "Stalled";
+    }
+
+    if (Math.abs(m_referenceSpeed - speed) > ModuleConstants.kModuleMaxVelocityError) {
+      return "Velocity error";
+    }
+
+    // The angle only matters while the wheel is moving
+    if (Math.abs(m_commandedSpeed) > 0.1
+        && Math.abs(MathUtil.angleModulus(m_commandedAngle - m_turningEncoder.getPosition()))
+            > ModuleConstants.kModuleMaxAngleError) {
+      return "Angle error";
+    }
+
+    return null;
+  }
+
+  private static boolean hasCANFault(CANSparkBase spark) {
+    return spark.getFault(FaultID.kCANRX) || spark.getFault(FaultID.kCANTX);
+  }
+
+  /**
+   * Take the module out of use or put it back. A failed module is stopped and
+   * its wheel coasts so it doesn't drag the robot.
+   *
+   * @param failed whether the module has failed
+   */
+  public void setFailed(boolean failed) {
+    if (failed == m_failed) {
+      return;
+    }
+
+    m_failed = failed;
+    if (failed) {
+      stop();
+    }
+    m_drivingSparkMax.setIdleMode(failed ? IdleMode.kCoast : ModuleConstants.kDrivingMotorIdleMode);
+  }
+
+  /** Clear any faults and bring a failed module back into use. */
+  public void resetHealth() {
+    setFailed(false);
+
+    m_drivingSparkMax.clearFaults();
+    m_turningSparkMax.clearFaults();
+    m_faultStartTime = Double.NaN;
+    m_faulted = false;
+    m_trackingFault = false;
+    m_fault = "";
+  }
+
+  /**
+   * Returns whether a fault has lasted long enough to take the module out of
+   * use.
+   *
+   * @return true if the module is faulted.
+   */
+  public boolean isFaulted() {
+    return m_faulted;
+  }
+
+  /**
+   * Returns whether the module isn't following its commands this loop. When
+   * several modules do this at once the robot is being pushed or driven hard,
+   * not broken.
+   *
+   * @return true if the current fault is a tracking error.
+   */
+  public boolean isTrackingFault() {
+    return m_trackingFault;
+  }
+
+  /**
+   * Returns whether the module has failed and should not be driven.
+   *
+   * @return true if the module has failed.
+   */
+  public boolean isFailed() {
+    return m_failed;
+  }
+
+  /**
+   * Returns the number of times a fault was detected on this module.
+   *
+   * @return The fault count.
+   */
+  public int getFaultCount() {
+    return m_faultCount;
+  }
+
+  /**
+   * Returns a description of the last fault detected on this module.
+   *
+   * @return The fault, or an empty string if there hasn't been one.
+   */
+  public String getLastFault() {
+    return m_fault;
+  }
+
+  /**
+   * Returns a description of the current warning, like a brownout or a hot
+   * motor.
+   *
+   * @return The warning, or an empty string if there isn't one.
+   */
+  public String getWarning() {
+    return m_warning;
+  }
+
+  /**
+   * Save the current SPARK configurations. If a SPARK browns out during
+   * operation, it will come back with the saved configuration.
+   */
+  public void burnFlash() {
+    SparkConfigurator.burnFlash(m_name, m_drivingSparkMax, m_turningSparkMax);
+  }
+
   /** Zeroes all the SwerveModule encoders. */
   public void resetEncoders() {
     m_drivingEncoder.setPosition(0);
@@ -0,0 +1,263 @@
+package frc.robot.subsystems;
+
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.SwerveModulePosition;
+import frc.robot.Constants.DriveConstants;
+
+/**
+ * Sits between the swerve modules and the pose estimator. Each update the
+ * module deltas are fit to a rigid body motion of the chassis, weighted per
+ * module. Modules that disagree with the fit are down-weighted and refit, and
+ * any that still don't match are rejected. Rejected modules and ones given a
+ * weight of zero (failed, slipping, etc.) have their delta replaced with the
+ * one the rest of the robot implies, so the pose estimator only sees motion
+ * consistent with the trusted wheels.
+ */
+public class OdometryFilter {
+    private final int m_moduleCount;
+    private final double[] m_moduleX;
+    private final double[] m_moduleY;
+
+    // Raw positions from the last update
+    private final double[] m_lastDistances;
+
+    // Filtered positions handed to the pose estimator
+    private final SwerveModulePosition[] m_positions;
+
+    // Per module motion this update, along the wheel and in the chassis frame
+    private final double[] m_delta;
+    private final double[] m_deltaX;
+    private final double[] m_deltaY;
+
+    // Weights after outlier rejection
+    private final double[] m_weights;
+
+    // Largest disagreement between a trusted module and the fit last update
+    private double m_skid = 0;
+
+    // Rigid body fit of the last update
+    private double m_fitX = 0;
+    private double m_fitY = 0;
+    private double m_fitTheta = 0;
+
+    /**
+     * Create a new odometry filter
+     *
+     * @param moduleTranslations the location of each module relative to the
+     *                           center of the robot
+     * @param positions          the current module positions
+     */
+    public OdometryFilter(Translation2d[] moduleTranslations, SwerveModulePosition[] positions) {
+        m_moduleCount = moduleTranslations.length;
+        m_moduleX = new double[m_moduleCount];
+        m_moduleY = new double[m_moduleCount];
+        m_lastDistances = new double[m_moduleCount];
+        m_positions = new SwerveModulePosition[m_moduleCount];
+        m_delta = new double[m_moduleCount];
+        m_deltaX = new double[m_moduleCount];
+        m_deltaY = new double[m_moduleCount];
+        m_weights = new double[m_moduleCount];
+
+        for (int i = 0; i < m_moduleCount; i++) {
+            m_moduleX[i] = moduleTranslations[i].getX();
+            m_moduleY[i] = moduleTranslations[i].getY();
+            m_lastDistances[i] = positions[i].distanceMeters;
+            m_positions[i] = new SwerveModulePosition(positions[i].distanceMeters, positions[i].angle);
+        }
+    }
+
+    /**
+     * Update the filtered module positions
+     *
+     * @param positions the current raw module positions
+     * @param weights   how much to trust each module this update, 0 to ignore it
+     * @return the filtered module positions
+     */
+    public SwerveModulePosition[] update(SwerveModulePosition[] positions, double[] weights) {
+        for (int i = 0; i < m_moduleCount; i++) {
+            m_delta[i] = positions[i].distanceMeters - m_lastDistances[i];
+            m_lastDistances[i] = positions[i].distanceMeters;
+
+            m_deltaX[i] = m_delta[i] * positions[i].angle.getCos();
+            m_deltaY[i] = m_delta[i] * positions[i].angle.getSin();
+        }
+
+        System.arraycopy(weights, 0, m_weights, 0, m_moduleCount);
+
+        if (!fit(m_weights)) {
+            // Not enough trusted modules to say anything, pass everything through
+            for (int i = 0; i < m_moduleCount; i++) {
+                acceptRaw(i, positions[i]);
+            }
+            m_skid = 0;
+            return m_positions;
+        }
+
+        rejectOutliers(weights);
+
+        for (int i = 0; i < m_moduleCount; i++) {
+            if (m_weights[i] > 0) {
+                acceptRaw(i, positions[i]);
+            } else {
+                acceptFit(i);
+            }
+        }
+
+        return m_positions;
+    }
+
+    /**
+     * Down-weight modules that disagree with the fit so a single skidding wheel
+     * can't drag it, then drop the worst module if it still doesn't match. At
+     * least two modules are always kept.
+     */
+    private void rejectOutliers(double[] weights) {
+        int trusted = 0;
+        for (int i = 0; i < m_moduleCount; i++) {
+            if (weights[i] > 0) {
+                trusted++;
+            }
+        }
+
+        if (trusted >= 3) {
+            for (int iteration = 0; iteration < DriveConstants.kOdometryFitIterations; iteration++) {
+                for (int i = 0; i < m_moduleCount; i++) {
+                    if (weights[i] > 0) {
+                        double r = getResidual(i) / DriveConstants.kOdometrySkidScale;
+                        m_weights[i] = weights[i] / (1 + r * r);
+                    }
+                }
+                fit(m_weights);
+            }
+
+            int worst = -1;
+            double worstResidual = DriveConstants.kOdometrySkidReject;
+            for (int i = 0; i < m_moduleCount; i++) {
+                if (weights[i] > 0 && getResidual(i) > worstResidual) {
+                    worst = i;
+                    worstResidual = getResidual(i);
+                }
+            }
+
+            if (worst >= 0) {
+                m_weights[worst] = 0;
+                fit(m_weights);
+            }
+        }
+
+        m_skid = 0;
+        for (int i = 0; i < m_moduleCount; i++) {
+            if (weights[i] > 0) {
+                m_skid = Math.max(m_skid, getResidual(i));
+            }
+        }
+    }
+
+    /**
+     * Get how badly the trusted modules disagreed with each other last update.
+     * This is near zero when driving normally and jumps when a wheel skids or
+     * the robot gets hit.
+     *
+     * @return the largest module residual in meters
+     */
+    public double getSkid() {
+        return m_skid;
+    }
+
+    /**
+     * Get whether a module's motion was used last update
+     *
+     * @param module the index of the module
+     * @return true if the module was rejected or untrusted
+     */
+    public boolean isRejected(int module) {
+        return m_weights[module] <= 0;
+    }
+
+    /**
+     * Get the filtered module positions from the last update
+     *
+     * @return the filtered module positions
+     */
+    public SwerveModulePosition[] getPositions() {
+        return m_positions;
+    }
+
+    /**
+     * Get how far a module moved last update beyond what the rigid body fit
+     * predicts for it
+     *
+     * @param module the index of the module
+     * @return the residual in meters
+     */
+    public double getResidual(int module) {
+        double dx = m_deltaX[module] - (m_fitX - m_fitTheta * m_moduleY[module]);
+        double dy = m_deltaY[module] - (m_fitY + m_fitTheta * m_moduleX[module]);
+        return Math.hypot(dx, dy);
+    }
+
+    private void acceptRaw(int module, SwerveModulePosition position) {
+        m_positions[module].distanceMeters += m_delta[module];
+        m_positions[module].angle = position.angle;
+    }
+
+    private void acceptFit(int module) {
+        double dx = m_fitX - m_fitTheta * m_moduleY[module];
+        double dy = m_fitY + m_fitTheta * m_moduleX[module];
+        double distance = Math.hypot(dx, dy);
+
+        if (distance > 1e-9) {
+            m_positions[module].distanceMeters += distance;
+            m_positions[module].angle = new Rotation2d(dx, dy);
+        }
+    }
+
+    /**
+     * Weighted least squares fit of (dx, dy, dtheta) to the module deltas
+     *
+     * @return false if too few modules are trusted to fit
+     */
+    private boolean fit(double[] weights) {
+        // Normal equations, symmetric 3x3
+        double n00 = 0, n02 = 0, n11 = 0, n12 = 0, n22 = 0;
+        double b0 = 0, b1 = 0, b2 = 0;
+        int trusted = 0;
+
+        for (int i = 0; i < m_moduleCount; i++) {
+            double w = weights[i];
+            if (w <= 0) {
+                continue;
+            }
+            trusted++;
+
+            double x = m_moduleX[i];
+            double y = m_moduleY[i];
+
+            n00 += w;
+            n11 += w;
+            n02 -= w * y;
+            n12 += w * x;
+            n22 += w * (x * x + y * y);
+
+            b0 += w * m_deltaX[i];
+            b1 += w * m_deltaY[i];
+            b2 += w * (x * m_deltaY[i] - y * m_deltaX[i]);
+        }
+
+        if (trusted < 2) {
+            return false;
+        }
+
+        // Solve by Cramer's rule, n01 is always zero
+        double det = n00 * (n11 * n22 - n12 * n12) + n02 * (-n11 * n02);
+        if (Math.abs(det) < 1e-12) {
+            return false;
+        }
+
+        m_fitX = (b0 * (n11 * n22 - n12 * n12) + n02 * (b1 * n12 - n11 * b2)) / det;
+        m_fitY = (n00 * (b1 * n22 - n12 * b2) + n02 * (b0 * n12 - n02 * b1)) / det;
+        m_fitTheta = (n00 * (n11 * b2 - b1 * n12) + n02 * (-n11 * b0)) / det;
+        return true;
+    }
+}
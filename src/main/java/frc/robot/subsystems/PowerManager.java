@@ -0,0 +1,303 @@
+package frc.robot.subsystems;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.DoubleSupplier;
+import java.util.function.IntConsumer;
+import java.util.function.IntSupplier;
+
+import com.revrobotics.CANSparkBase;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.simulation.BatterySim;
+import edu.wpi.first.wpilibj.simulation.RoboRioSim;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.robot.Constants.PowerConstants;
+import frc.utils.SparkConfigurator;
+
+/**
+ * Shares the battery between the motors so a heavy load sags the voltage less
+ * instead of browning out the robot. The battery is modeled as an open circuit
+ * voltage behind a resistance, both measured from how the voltage moves with
+ * the total current. That gives the most current the robot can draw before the
+ * voltage drops near brownout, and the current limits of the registered motors
+ * are lowered in reverse priority order to stay within it. Limits are only sent
+ * to a SPARK when they change, on {@link SparkConfigurator}'s thread since each
+ * write waits on the SPARK.
+ *
+ * <p>
+ * In simulation the motors are assumed to run at their current limit and the
+ * battery voltage comes from {@link BatterySim}.
+ */
+public class PowerManager extends SubsystemBase {
+    private static class Consumer {
+        final String name;
+        final DoubleSupplier currentSource; // null to assume the motor runs at its limit
+        final DoubleSupplier dutyCycleSource;
+        final IntConsumer limitWriter;
+        final int maxLimit;
+        final int minLimit;
+        final IntSupplier priority;
+
+        int appliedLimit;
+        double lastRaiseTime = Double.NEGATIVE_INFINITY;
+
+        // Updated every loop
+        int currentPriority;
+        double dutyCycle;
+        double current;
+        int allocatedLimit;
+
+        Consumer(String name, DoubleSupplier currentSource, DoubleSupplier dutyCycleSource, IntConsumer limitWriter,
+                int maxLimit, int minLimit, IntSupplier priority) {
+            this.name = name;
+            this.currentSource = currentSource;
+            this.dutyCycleSource = dutyCycleSource;
+            this.limitWriter = limitWriter;
+            this.maxLimit = maxLimit;
+            this.minLimit = minLimit;
+            this.priority = priority;
+            appliedLimit = maxLimit;
+        }
+    }
+
+    private final List<Consumer> m_consumers = new ArrayList<>();
+    // Allocation order, sorted in place every loop
+    private final List<Consumer> m_byPriority = new ArrayList<>();
+
+    // Battery model
+    private double m_resistance = PowerConstants.kNominalResistance;
+    private double m_openCircuitVoltage = 12.5;
+    private double m_lastVoltage = Double.NaN;
+    private double m_lastCurrent = Double.NaN;
+
+    private double m_voltage = 12.5;
+    private double m_totalCurrent = 0;
+    private double m_budget = 0;
+    private double m_predictedVoltage = 12.5;
+    private int m_brownouts = 0;
+    private boolean m_brownedOut = false;
+
+    /**
+     * Manage the current limit of a motor with a fixed priority
+     *
+     * @param name     the name of the motor, used in telemetry
+     * @param spark    the motor controller
+     * @param maxLimit the normal current limit in amps
+     * @param minLimit the lowest the current limit can be lowered to in amps
+     * @param priority lower numbers get current first
+     */
+    public void register(String name, CANSparkBase spark, int maxLimit, int minLimit, int priority) {
+        register(name, spark, maxLimit, minLimit, () -> priority);
+    }
+
+    /**
+     * Manage the current limit of a motor whose priority changes, like a shooter
+     * that needs current most while it spins up
+     *
+     * @param name     the name of the motor, used in telemetry
+     * @param spark    the motor controller
+     * @param maxLimit the normal current limit in amps
+     * @param minLimit the lowest the current limit can be lowered to in amps
+     * @param priority lower numbers get current first, read every loop
+     */
+    public void register(String name, CANSparkBase spark, int maxLimit, int minLimit, IntSupplier priority) {
+        // SPARKs don't simulate their current, so in simulation they're assumed
+        // to run at their limit
+        register(name, RobotBase.isSimulation() ? null : spark::getOutputCurrent, spark::getAppliedOutput,
+                limit -> new SparkConfigurator(name, spark).smartCurrentLimit(limit).submit(),
+                maxLimit, minLimit, priority);
+    }
+
+    /**
+     * Manage the current limit of any load, used to test against a simulated
+     * battery
+     *
+     * @param name            the name of the load, used in telemetry
+     * @param currentSource   measures the load's current in amps, or null to
+     *                        assume it runs at its limit
+     * @param dutyCycleSource measures the fraction of the battery voltage the
+     *                        load is driven with
+     * @param limitWriter     sends a new current limit to the load
+     * @param maxLimit        the normal current limit in amps
+     * @param minLimit        the lowest the current limit can be lowered to in
+     *                        amps
+     * @param priority        lower numbers get current first, read every loop
+     */
+    void register(String name, DoubleSupplier currentSource, DoubleSupplier dutyCycleSource,
+            IntConsumer limitWriter, int maxLimit, int minLimit, IntSupplier priority) {
+        Consumer consumer = new Consumer(name, currentSource, dutyCycleSource, limitWriter, maxLimit, minLimit,
+                priority);
+        m_consumers.add(consumer);
+        m_byPriority.add(consumer);
+    }
+
+    @Override
+    public void periodic() {
+        m_voltage = RobotController.getBatteryVoltage();
+
+        // Supply current is the motor current scaled by the duty cycle
+        m_totalCurrent = PowerConstants.kBaseLoad;
+        for (Consumer consumer : m_consumers) {
+            consumer.currentPriority = consumer.priority.getAsInt();
+            consumer.dutyCycle = Math.abs(consumer.dutyCycleSource.getAsDouble());
+            consumer.current = consumer.currentSource == null
+                    ? consumer.appliedLimit
+                    : consumer.currentSource.getAsDouble();
+            m_totalCurrent += consumer.current * consumer.dutyCycle;
+        }
+
+        if (RobotController.isBrownedOut() && !m_brownedOut) {
+            m_brownouts++;
+        }
+        m_brownedOut = RobotController.isBrownedOut();
+
+        updateBatteryModel();
+        allocate();
+        applyLimits(Timer.getFPGATimestamp());
+        updateTelemetry();
+    }
+
+    @Override
+    public void simulationPeriodic() {
+        RoboRioSim.setVInVoltage(BatterySim.calculateDefaultBatteryLoadedVoltage(m_totalCurrent));
+    }
+
+    private void updateBatteryModel() {
+        // A big enough step in current shows how much the voltage sags per amp
+        double currentStep = m_totalCurrent - m_lastCurrent;
+        if (Math.abs(currentStep) > PowerConstants.kResistanceMinCurrentStep) {
+            double measured = -(m_voltage - m_lastVoltage) / currentStep;
+            measured = MathUtil.clamp(measured, PowerConstants.kMinResistance, PowerConstants.kMaxResistance);
+            m_resistance += PowerConstants.kResistanceFilterGain * (measured - m_resistance);
+        }
+        m_lastVoltage = m_voltage;
+        m_lastCurrent = m_totalCurrent;
+
+        m_openCircuitVoltage = m_voltage + m_totalCurrent * m_resistance;
+    }
+
+    private void allocate() {
+        double minVoltage = RobotController.getBrownoutVoltage() + PowerConstants.kBrownoutMargin;
+        m_budget = Math.max(0, (m_openCircuitVoltage - minVoltage) / m_resistance - PowerConstants.kBaseLoad);
+
+        // Voltage if every motor pulled its full limit at its current duty cycle
+        double fullCurrent = PowerConstants.kBaseLoad;
+        for (Consumer consumer : m_consumers) {
+            fullCurrent += consumer.maxLimit * consumer.dutyCycle;
+        }
+        m_predictedVoltage = m_openCircuitVoltage - fullCurrent * m_resistance;
+
+        // Every running motor gets its minimum, then the rest goes in priority order
+        double remaining = m_budget;
+        for (Consumer consumer : m_consumers) {
+            remaining -= consumer.minLimit * consumer.dutyCycle;
+        }
+
+        m_byPriority.sort((a, b) -> Integer.compare(a.currentPriority, b.currentPriority));
+        for (Consumer consumer : m_byPriority) {
+            // Idle motors don't draw anything, so they can keep their full limit
+            if (consumer.dutyCycle < PowerConstants.kIdleDutyCycle) {
+                consumer.allocatedLimit = consumer.maxLimit;
+                continue;
+            }
+
+            double extra = (consumer.maxLimit - consumer.minLimit) * consumer.dutyCycle;
+            if (extra <= remaining) {
+                consumer.allocatedLimit = consumer.maxLimit;
+                remaining -= extra;
+            } else {
+                double granted = Math.max(0, remaining) / consumer.dutyCycle;
+                consumer.allocatedLimit = consumer.minLimit + (int) granted;
+                remaining = 0;
+            }
+        }
+    }
+
+    private void applyLimits(double timestamp) {
+        for (Consumer consumer : m_consumers) {
+            // Round down to a step so small changes in load don't resend the limit
+            int limit = consumer.allocatedLimit < consumer.maxLimit
+                    ? consumer.allocatedLimit / PowerConstants.kLimitStep * PowerConstants.kLimitStep
+                    : consumer.maxLimit;
+            limit = Math.max(limit, consumer.minLimit);
+
+            if (limit == consumer.appliedLimit) {
+                continue;
+            }
+            // Lower limits right away, but raise them slowly so they don't oscillate
+            if (limit > consumer.appliedLimit) {
+                if (timestamp - consumer.lastRaiseTime < PowerConstants.kLimitRaisePeriod) {
+                    continue;
+                }
+                consumer.lastRaiseTime = timestamp;
+            }
+
+            consumer.limitWriter.accept(limit);
+            consumer.appliedLimit = limit;
+        }
+    }
+
+    private void updateTelemetry() {
+        SmartDashboard.putNumber("Power/Battery Voltage", m_voltage);
+        SmartDashboard.putNumber("Power/Open Circuit Voltage", m_openCircuitVoltage);
+        SmartDashboard.putNumber("Power/Resistance (mOhm)", m_resistance * 1000);
+        SmartDashboard.putNumber("Power/Total Current", m_totalCurrent);
+        SmartDashboard.putNumber("Power/Budget", m_budget);
+        SmartDashboard.putNumber("Power/Predicted Voltage", m_predictedVoltage);
+        SmartDashboard.putBoolean("Power/Brownout Risk", isBrownoutPredicted());
+        SmartDashboard.putNumber("Power/Brownouts", m_brownouts);
+
+        for (Consumer consumer : m_consumers) {
+            SmartDashboard.putNumber("Power/" + consumer.name + "/Current", consumer.current);
+            SmartDashboard.putNumber("Power/" + consumer.name + "/Limit", consumer.appliedLimit);
+        }
+    }
+
+    /**
+     * Check if the motors would brown out the robot without the lowered limits
+     *
+     * @return true if full current at the current duty cycles would drop the
+     *         battery below the brownout margin
+     */
+    public boolean isBrownoutPredicted() {
+        return m_predictedVoltage < RobotController.getBrownoutVoltage() + PowerConstants.kBrownoutMargin;
+    }
+
+    /**
+     * Get how much more current the motors can draw before the battery drops to
+     * the brownout margin
+     *
+     * @return the budget in amps, not counting the base load
+     */
+    public double getBudget() {
+        return m_budget;
+    }
+
+    /**
+     * Get the current limit last sent to a load
+     *
+     * @param name the name the load was registered with
+     * @return the limit in amps, or 0 if there is no load with that name
+     */
+    int getAppliedLimit(String name) {
+        for (Consumer consumer : m_consumers) {
+            if (consumer.name.equals(name)) {
+                return consumer.appliedLimit;
+            }
+        }
+        return 0;
+    }
+
+    public double getResistance() {
+        return m_resistance;
+    }
+
+    public double getTotalCurrent() {
+        return m_totalCurrent;
+    }
+}
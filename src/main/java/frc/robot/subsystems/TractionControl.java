@@ -0,0 +1,154 @@
+package frc.robot.subsystems;
+
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import frc.robot.Constants.ModuleConstants;
+
+/**
+ * Detects wheel slip by comparing each module's measured speed with the ground
+ * speed under it. The ground speed comes two ways: fit from the other modules
+ * using the gyro's rotation rate, so one spinning wheel can't hide itself, and
+ * from the inertial velocity of the {@link VelocityEstimator}, which follows
+ * the accelerometer and catches every wheel slipping at once under hard
+ * acceleration. The larger slip counts.
+ * While a module slips, its commanded speed is capped to a little over its
+ * ground speed so it regains traction.
+ */
+public class TractionControl {
+    private final int m_moduleCount;
+    private final double[] m_moduleX;
+    private final double[] m_moduleY;
+
+    // Per module measured velocity in the chassis frame
+    private final double[] m_vx;
+    private final double[] m_vy;
+
+    private final double[] m_groundSpeed;
+    private final double[] m_slip;
+    private final boolean[] m_slipping;
+
+    /**
+     * Create a new traction controller
+     *
+     * @param moduleTranslations the location of each module relative to the
+     *                           center of the robot
+     */
+    public TractionControl(Translation2d[] moduleTranslations) {
+        m_moduleCount = moduleTranslations.length;
+        m_moduleX = new double[m_moduleCount];
+        m_moduleY = new double[m_moduleCount];
+        m_vx = new double[m_moduleCount];
+        m_vy = new double[m_moduleCount];
+        m_groundSpeed = new double[m_moduleCount];
+        m_slip = new double[m_moduleCount];
+        m_slipping = new boolean[m_moduleCount];
+
+        for (int i = 0; i < m_moduleCount; i++) {
+            m_moduleX[i] = moduleTranslations[i].getX();
+            m_moduleY[i] = moduleTranslations[i].getY();
+        }
+    }
+
+    /**
+     * Update slip detection from the latest measurements
+     *
+     * @param states         the measured module states
+     * @param omega          the measured rotation rate of the robot in rad/s
+     * @param excluded       modules to leave out of the fit, like failed modules
+     * @param groundVelocity the robot relative inertial velocity from the
+     *                       velocity estimator, or null if there isn't one
+     */
+    public void update(SwerveModuleState[] states, double omega, boolean[] excluded, ChassisSpeeds groundVelocity) {
+        for (int i = 0; i < m_moduleCount; i++) {
+            m_vx[i] = states[i].speedMetersPerSecond * states[i].angle.getCos();
+            m_vy[i] = states[i].speedMetersPerSecond * states[i].angle.getSin();
+        }
+
+        for (int i = 0; i < m_moduleCount; i++) {
+            if (excluded[i]) {
+                m_slipping[i] = false;
+                m_slip[i] = 0;
+                continue;
+            }
+
+            // Fit the chassis velocity from every other module
+            double chassisX = 0;
+            double chassisY = 0;
+            int count = 0;
+            for (int j = 0; j < m_moduleCount; j++) {
+                if (j == i || excluded[j]) {
+                    continue;
+                }
+                chassisX += m_vx[j] + omega * m_moduleY[j];
+                chassisY += m_vy[j] - omega * m_moduleX[j];
+                count++;
+            }
+
+            // Positive when the wheel is spinning faster than the ground under it
+            double wheelSpeed = Math.abs(states[i].speedMetersPerSecond);
+            m_slip[i] = Double.NEGATIVE_INFINITY;
+            if (count > 0) {
+                chassisX /= count;
+                chassisY /= count;
+                m_groundSpeed[i] = Math.hypot(chassisX - omega * m_moduleY[i], chassisY + omega * m_moduleX[i]);
+                m_slip[i] = wheelSpeed - m_groundSpeed[i];
+            }
+
+            // The inertial velocity doesn't depend on the wheels agreeing with
+            // each other
+            if (groundVelocity != null) {
+                double groundSpeed = Math.hypot(
+                        groundVelocity.vxMetersPerSecond - omega * m_moduleY[i],
+                        groundVelocity.vyMetersPerSecond + omega * m_moduleX[i]);
+                double slip = wheelSpeed - groundSpeed;
+                if (slip > m_slip[i]) {
+                    m_slip[i] = slip;
+                    m_groundSpeed[i] = groundSpeed;
+                }
+            }
+
+            if (m_slip[i] == Double.NEGATIVE_INFINITY) {
+                m_slipping[i] = false;
+                m_slip[i] = 0;
+                continue;
+            }
+
+            if (m_slip[i] > ModuleConstants.kSlipThreshold) {
+                m_slipping[i] = true;
+            } else if (m_slip[i] < ModuleConstants.kSlipThreshold / 2) {
+                m_slipping[i] = false;
+            }
+        }
+    }
+
+    /**
+     * Cap a module's commanded speed if it is slipping
+     *
+     * @param module the index of the module
+     * @param speed  the desired speed of the module in m/s
+     * @return the speed to command in m/s
+     */
+    public double limit(int module, double speed) {
+        if (!m_slipping[module]) {
+            return speed;
+        }
+
+        double max = m_groundSpeed[module] + ModuleConstants.kTractionMaxSlip;
+        return Math.copySign(Math.min(Math.abs(speed), max), speed);
+    }
+
+    public boolean isSlipping(int module) {
+        return m_slipping[module];
+    }
+
+    /**
+     * Get how much faster a module's wheel is spinning than the ground under it
+     *
+     * @param module the index of the module
+     * @return the slip in m/s
+     */
+    public double getSlip(int module) {
+        return m_slip[module];
+    }
+}
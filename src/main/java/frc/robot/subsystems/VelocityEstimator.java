@@ -0,0 +1,323 @@
+package frc.robot.subsystems;
+
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import frc.robot.Constants.DriveConstants;
+
+/**
+ * Estimates the field relative velocity and acceleration of the robot with a
+ * Kalman filter. Each field axis tracks velocity and acceleration under a
+ * constant acceleration model, corrected by the chassis velocity from the
+ * trusted wheels and the acceleration from the NavX. The rotation rate is
+ * filtered separately from the NavX rate and the wheels. Slipping wheels are
+ * left out of the wheel measurement, and the accelerometer carries the
+ * estimate through when no wheels can be trusted.
+ *
+ * <p>
+ * The filter trusts the wheels much more than the accelerometer, so it follows
+ * every wheel slipping at once. For catching that there is also an inertial
+ * velocity that integrates the accelerometer and is only pulled slowly toward
+ * the trusted wheels, so its bias can't build up.
+ */
+public class VelocityEstimator {
+    /** Kalman filter for one axis with state [velocity, acceleration]. */
+    private static class AxisFilter {
+        private double m_velocity = 0;
+        private double m_acceleration = 0;
+
+        // Covariance, symmetric
+        private double m_p00 = 1;
+        private double m_p01 = 0;
+        private double m_p11 = 1;
+
+        /**
+         * Advance the state with white noise jerk
+         *
+         * @param dt the time step in seconds
+         * @param q  the jerk spectral density
+         */
+        void predict(double dt, double q) {
+            m_velocity += m_acceleration * dt;
+
+            // P = F P F' + Q with F = [1 dt; 0 1]
+            double p00 = m_p00 + 2 * dt * m_p01 + dt * dt * m_p11;
+            double p01 = m_p01 + dt * m_p11;
+            m_p00 = p00 + q * dt * dt * dt / 3;
+            m_p01 = p01 + q * dt * dt / 2;
+            m_p11 = m_p11 + q * dt;
+        }
+
+        void measureVelocity(double velocity, double variance) {
+            double s = m_p00 + variance;
+            double k0 = m_p00 / s;
+            double k1 = m_p01 / s;
+            double innovation = velocity - m_velocity;
+
+            m_velocity += k0 * innovation;
+            m_acceleration += k1 * innovation;
+
+            double p00 = (1 - k0) * m_p00;
+            double p01 = (1 - k0) * m_p01;
+            m_p11 = m_p11 - k1 * m_p01;
+            m_p00 = p00;
+            m_p01 = p01;
+        }
+
+        void measureAcceleration(double acceleration, double variance) {
+            double s = m_p11 + variance;
+            double k0 = m_p01 / s;
+            double k1 = m_p11 / s;
+            double innovation = acceleration - m_acceleration;
+
+            m_velocity += k0 * innovation;
+            m_acceleration += k1 * innovation;
+
+            double p00 = m_p00 - k0 * m_p01;
+            double p01 = (1 - k1) * m_p01;
+            m_p11 = (1 - k1) * m_p11;
+            m_p00 = p00;
+            m_p01 = p01;
+        }
+
+        void reset() {
+            m_velocity = 0;
+            m_acceleration = 0;
+            m_p00 = 1;
+            m_p01 = 0;
+            m_p11 = 1;
+        }
+    }
+
+    private final AxisFilter m_x = new AxisFilter();
+    private final AxisFilter m_y = new AxisFilter();
+
+    private final double[] m_moduleX;
+    private final double[] m_moduleY;
+
+    private double m_omega = 0;
+    private double m_omegaVariance = 1;
+
+    private double m_heading = 0;
+    private double m_lastTimestamp = Double.NaN;
+
+    // Field velocity from the accelerometer, NaN until the wheels start it
+    private double m_inertialX = Double.NaN;
+    private double m_inertialY = Double.NaN;
+
+    /**
+     * Create a new velocity estimator
+     *
+     * @param moduleTranslations the location of each module relative to the
+     *                           center of the robot
+     */
+    public VelocityEstimator(Translation2d[] moduleTranslations) {
+        m_moduleX = new double[moduleTranslations.length];
+        m_moduleY = new double[moduleTranslations.length];
+        for (int i = 0; i < moduleTranslations.length; i++) {
+            m_moduleX[i] = moduleTranslations[i].getX();
+            m_moduleY[i] = moduleTranslations[i].getY();
+        }
+    }
+
+    /**
+     * Update the estimate. Call once per odometry update.
+     *
+     * @param timestamp     the time of the measurements in seconds
+     * @param states        the measured module states
+     * @param weights       how much to trust each module, 0 to leave it out
+     * @param heading       the field heading of the robot
+     * @param gyroRate      the rotation rate from the gyro in rad/s
+     *                      counterclockwise, or NaN if the gyro isn't healthy
+     * @param accelerationX the robot relative forward acceleration from the
+     *                      accelerometer in m/s^2, or NaN if unavailable
+     * @param accelerationY the robot relative left acceleration from the
+     *                      accelerometer in m/s^2, or NaN if unavailable
+     */
+    public void update(double timestamp, SwerveModuleState[] states, double[] weights, Rotation2d heading,
+            double gyroRate, double accelerationX, double accelerationY) {
+        double dt = Double.isNaN(m_lastTimestamp) ? 0 : timestamp - m_lastTimestamp;
+        m_lastTimestamp = timestamp;
+        m_heading = heading.getRadians();
+
+        if (dt > 0) {
+            m_x.predict(dt, DriveConstants.kVelocityProcessNoise);
+            m_y.predict(dt, DriveConstants.kVelocityProcessNoise);
+            m_omegaVariance += DriveConstants.kOmegaProcessNoise * dt;
+        }
+
+        // Rotation rate from the gyro and from the wheels
+        double wheelOmega = 0;
+        double totalWeight = 0;
+        for (int i = 0; i < states.length; i++) {
+            if (weights[i] <= 0) {
+                continue;
+            }
+            // Tangential component of the module velocity around the center
+            double vx = states[i].speedMetersPerSecond * states[i].angle.getCos();
+            double vy = states[i].speedMetersPerSecond * states[i].angle.getSin();
+            double radiusSquared = m_moduleX[i] * m_moduleX[i] + m_moduleY[i] * m_moduleY[i];
+            wheelOmega += weights[i] * (m_moduleX[i] * vy - m_moduleY[i] * vx) / radiusSquared;
+            totalWeight += weights[i];
+        }
+
+        if (!Double.isNaN(gyroRate)) {
+            measureOmega(gyroRate, DriveConstants.kGyroRateNoise);
+        }
+        if (totalWeight > 0) {
+            // Translation cancels out of the average tangential speed across the modules
+            measureOmega(wheelOmega / totalWeight, DriveConstants.kWheelOmegaNoise);
+        }
+
+        double cos = Math.cos(m_heading);
+        double sin = Math.sin(m_heading);
+
+        // Chassis velocity from each trusted module after removing its rotation
+        if (totalWeight > 0) {
+            double chassisX = 0;
+            double chassisY = 0;
+            for (int i = 0; i < states.length; i++) {
+                if (weights[i] <= 0) {
+                    continue;
+                }
+                double vx = states[i].speedMetersPerSecond * states[i].angle.getCos();
+                double vy = states[i].speedMetersPerSecond * states[i].angle.getSin();
+                chassisX += weights[i] * (vx + m_omega * m_moduleY[i]);
+                chassisY += weights[i] * (vy - m_omega * m_moduleX[i]);
+            }
+            chassisX /= totalWeight;
+            chassisY /= totalWeight;
+
+            // Fewer trusted modules is a noisier average
+            double variance = DriveConstants.kWheelVelocityNoise * states.length / totalWeight;
+            m_x.measureVelocity(chassisX * cos - chassisY * sin, variance);
+            m_y.measureVelocity(chassisX * sin + chassisY * cos, variance);
+        }
+
+        boolean accelerometer = !Double.isNaN(accelerationX) && !Double.isNaN(accelerationY);
+        if (accelerometer) {
+            double fieldAccelerationX = accelerationX * cos - accelerationY * sin;
+            double fieldAccelerationY = accelerationX * sin + accelerationY * cos;
+            m_x.measureAcceleration(fieldAccelerationX, DriveConstants.kAccelerometerNoise);
+            m_y.measureAcceleration(fieldAccelerationY, DriveConstants.kAccelerometerNoise);
+
+            m_inertialX += fieldAccelerationX * dt;
+            m_inertialY += fieldAccelerationY * dt;
+        }
+
+        // Without the accelerometer the inertial velocity is just the wheels
+        if (!accelerometer || Double.isNaN(m_inertialX)) {
+            if (totalWeight > 0) {
+                m_inertialX = m_x.m_velocity;
+                m_inertialY = m_y.m_velocity;
+            }
+        } else if (totalWeight > 0) {
+            double gain = Math.min(dt / DriveConstants.kInertialVelocityTimeConstant, 1);
+            m_inertialX += (m_x.m_velocity - m_inertialX) * gain;
+            m_inertialY += (m_y.m_velocity - m_inertialY) * gain;
+        } else {
+            // Every wheel is slipping, still follow all of them so accelerometer
+            // bias can't keep them marked as slipping forever
+            double wheelX = 0;
+            double wheelY = 0;
+            for (SwerveModuleState state : states) {
+                wheelX += state.speedMetersPerSecond * state.angle.getCos() / states.length;
+                wheelY += state.speedMetersPerSecond * state.angle.getSin() / states.length;
+            }
+            double gain = Math.min(dt / DriveConstants.kInertialVelocityTimeConstant, 1);
+            m_inertialX += (wheelX * cos - wheelY * sin - m_inertialX) * gain;
+            m_inertialY += (wheelX * sin + wheelY * cos - m_inertialY) * gain;
+        }
+    }
+
+    private void measureOmega(double omega, double variance) {
+        double k = m_omegaVariance / (m_omegaVariance + variance);
+        m_omega += k * (omega - m_omega);
+        m_omegaVariance *= 1 - k;
+    }
+
+    /** Reset the estimate to a stopped robot. */
+    public void reset() {
+        m_x.reset();
+        m_y.reset();
+        m_omega = 0;
+        m_omegaVariance = 1;
+        m_lastTimestamp = Double.NaN;
+        m_inertialX = Double.NaN;
+        m_inertialY = Double.NaN;
+    }
+
+    /**
+     * Get the field relative velocity
+     *
+     * @return the velocity in m/s
+     */
+    public Translation2d getFieldVelocity() {
+        return new Translation2d(m_x.m_velocity, m_y.m_velocity);
+    }
+
+    /**
+     * Get the field relative acceleration
+     *
+     * @return the acceleration in m/s^2
+     */
+    public Translation2d getFieldAcceleration() {
+        return new Translation2d(m_x.m_acceleration, m_y.m_acceleration);
+    }
+
+    /**
+     * Get the variance of the field relative velocity along the field x axis
+     *
+     * @return the variance in (m/s)^2
+     */
+    public double getVelocityVarianceX() {
+        return m_x.m_p00;
+    }
+
+    /**
+     * Get the variance of the field relative velocity along the field y axis
+     *
+     * @return the variance in (m/s)^2
+     */
+    public double getVelocityVarianceY() {
+        return m_y.m_p00;
+    }
+
+    public double getOmega() {
+        return m_omega;
+    }
+
+    public double getOmegaVariance() {
+        return m_omegaVariance;
+    }
+
+    /**
+     * Get the estimated speeds relative to the robot
+     *
+     * @return the robot relative speeds
+     */
+    public ChassisSpeeds getRobotRelativeSpeeds() {
+        return toRobotRelative(m_x.m_velocity, m_y.m_velocity);
+    }
+
+    /**
+     * Get the inertial velocity relative to the robot. Over a short time it only
+     * depends on the accelerometer, so it keeps the real ground speed while
+     * every wheel slips.
+     *
+     * @return the robot relative speeds, or null before the first wheel update
+     */
+    public ChassisSpeeds getInertialSpeeds() {
+        if (Double.isNaN(m_inertialX)) {
+            return null;
+        }
+        return toRobotRelative(m_inertialX, m_inertialY);
+    }
+
+    private ChassisSpeeds toRobotRelative(double fieldX, double fieldY) {
+        double cos = Math.cos(m_heading);
+        double sin = Math.sin(m_heading);
+        return new ChassisSpeeds(fieldX * cos + fieldY * sin, -fieldX * sin + fieldY * cos, m_omega);
+    }
+}
@@ -0,0 +1,234 @@
+package frc.robot.subsystems.attachment;
+
+import com.revrobotics.CANSparkBase.IdleMode;
+import com.revrobotics.CANSparkLowLevel.MotorType;
+import com.revrobotics.CANSparkMax;
+import com.revrobotics.RelativeEncoder;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.controller.ProfiledPIDController;
+import edu.wpi.first.math.controller.SimpleMotorFeedforward;
+import edu.wpi.first.math.filter.Debouncer;
+import edu.wpi.first.math.system.plant.DCMotor;
+import edu.wpi.first.math.trajectory.TrapezoidProfile;
+import edu.wpi.first.wpilibj.DataLogManager;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.simulation.SingleJointedArmSim;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.robot.Constants.AmpArmConstants;
+import frc.robot.Constants.PowerConstants;
+import frc.robot.subsystems.PowerManager;
+import frc.utils.SparkConfigurator;
+import frc.utils.TunableGains;
+
+/**
+ * The arm on the shooter that guides notes into the amp. It runs a motion
+ * profile to named positions on the roboRIO from the NEO's own encoder, so it
+ * moves the same way at any battery voltage. The encoder is relative, so the
+ * first time the robot is enabled the arm is driven gently into the stowed
+ * hard stop and zeroed there. Until then it only homes. Closed loop stops
+ * short of the deployed hard stop at {@link AmpArmConstants#kSoftLimitAngle}.
+ */
+public class AmpArmSubsystem extends SubsystemBase {
+    public enum AmpArmPosition {
+        kStowed(AmpArmConstants.kStowedAngle),
+        kDeployed(AmpArmConstants.kDeployedAngle);
+
+        public final double angle;
+
+        AmpArmPosition(double angle) {
+            this.angle = angle;
+        }
+    }
+
+    private final CANSparkMax m_motor;
+    private final RelativeEncoder m_encoder;
+
+    private final ProfiledPIDController m_controller = new ProfiledPIDController(
+            AmpArmConstants.kP, AmpArmConstants.kI, AmpArmConstants.kD,
+            new TrapezoidProfile.Constraints(AmpArmConstants.kMaxVelocity, AmpArmConstants.kMaxAcceleration));
+    private final SimpleMotorFeedforward m_feedforward = new SimpleMotorFeedforward(
+            AmpArmConstants.kS, AmpArmConstants.kV);
+    private final TunableGains m_gains = new TunableGains("Amp Arm",
+            AmpArmConstants.kP, AmpArmConstants.kI, AmpArmConstants.kD, 0);
+
+    private AmpArmPosition m_goal = AmpArmPosition.kStowed;
+    private boolean m_homed = false;
+    private double m_zero = 0; // raw angle of the hard stop
+    private final Debouncer m_stallDebouncer = new Debouncer(AmpArmConstants.kHomingTime);
+    private double m_homingStart = Double.NaN;
+    private double m_voltage = 0;
+
+    // Starts on the stowed hard stop, like the robot
+    private final SingleJointedArmSim m_sim = new SingleJointedArmSim(DCMotor.getNEO(1), AmpArmConstants.kGearRatio,
+            SingleJointedArmSim.estimateMOI(AmpArmConstants.kArmLength, AmpArmConstants.kArmMass),
+            AmpArmConstants.kArmLength, 0, AmpArmConstants.kMaxAngle, false, 0);
+
+    public AmpArmSubsystem() {
+        m_motor = new CANSparkMax(AmpArmConstants.kMotorCANId, MotorType.kBrushless);
+        m_encoder = m_motor.getEncoder();
+
+        // Positive deploys the arm
+        new SparkConfigurator("Amp Arm", m_motor)
+                .idleMode(IdleMode.kBrake)
+                .inverted(true)
+                .smartCurrentLimit(AmpArmConstants.kCurrentLimit)
+                .set("Position Factor", AmpArmConstants.kPositionFactor,
+                        m_encoder::getPositionConversionFactor, m_encoder::setPositionConversionFactor)
+                .set("Velocity Factor", AmpArmConstants.kPositionFactor / 60,
+                        m_encoder::getVelocityConversionFactor, m_encoder::setVelocityConversionFactor)
+                .start();
+
+        m_controller.setTolerance(AmpArmConstants.kTolerance);
+    }
+
+    /**
+     * Let the power manager see the arm. It moves with the pivot and gets the
+     * same priority.
+     *
+     * @param power the power manager
+     */
+    public void registerPower(PowerManager power) {
+        power.register("Amp Arm", m_motor, AmpArmConstants.kCurrentLimit, AmpArmConstants.kCurrentLimit,
+                PowerConstants.kPivotPriority);
+    }
+
+    /**
+     * Save the arm SPARK's configuration to flash. The gains run on the roboRIO,
+     * copy tuned ones into Constants. Only allowed while disabled since the
+     * SPARK stops responding while it writes.
+     */
+    public void burnFlash() {
+        if (!DriverStation.isDisabled()) {
+            DriverStation.reportWarning("Not burning the amp arm SPARK's flash while enabled", false);
+            return;
+        }
+
+        SparkConfigurator.burnFlash("Amp Arm", m_motor);
+    }
+
+    @Override
+    public void periodic() {
+        if (m_gains.hasChanged()) {
+            m_gains.apply(m_controller);
+        }
+
+        if (DriverStation.isDisabled()) {
+            // Start the next profile from wherever the arm is left
+            m_controller.reset(getAngle());
+            m_homingStart = Double.NaN;
+            setVoltage(0);
+        } else if (!m_homed) {
+            home();
+        } else {
+            double goal = Math.min(m_goal.angle, AmpArmConstants.kSoftLimitAngle);
+            double feedback = m_controller.calculate(getAngle(), goal);
+            double volts = feedback + m_feedforward.calculate(m_controller.getSetpoint().velocity);
+
+            // Soft limit, never push further out past it
+            if (getAngle() >= AmpArmConstants.kSoftLimitAngle) {
+                volts = Math.min(volts, 0);
+            }
+            setVoltage(volts);
+        }
+
+        SmartDashboard.putNumber("Amp Arm Angle", getAngle());
+        SmartDashboard.putNumber("Amp Arm Setpoint", m_controller.getSetpoint().position);
+        SmartDashboard.putString("Amp Arm Goal", m_goal.name());
+        SmartDashboard.putBoolean("Amp Arm Homed", m_homed);
+        SmartDashboard.putBoolean("Amp Arm At Goal", atGoal());
+    }
+
+    // Push into the stowed hard stop until the arm stops while drawing current,
+    // then zero there. If it never does, zero wherever it ended up.
+    private void home() {
+        double now = Timer.getFPGATimestamp();
+        if (Double.isNaN(m_homingStart)) {
+            m_homingStart = now;
+        }
+
+        boolean stalled = Math.abs(getVelocity()) < AmpArmConstants.kHomingVelocity
+                && Math.abs(getCurrent()) > AmpArmConstants.kHomingCurrent;
+        boolean timedOut = now - m_homingStart > AmpArmConstants.kHomingTimeout;
+        if (m_stallDebouncer.calculate(stalled) || timedOut) {
+            m_zero = getRawAngle();
+            m_homed = true;
+            m_controller.reset(getAngle());
+            setVoltage(0);
+
+            if (timedOut) {
+                DriverStation.reportWarning("Amp arm didn't stall while homing, zeroed where it stopped", false);
+            } else {
+                DataLogManager.log("[amp arm] homed");
+            }
+        } else {
+            setVoltage(AmpArmConstants.kHomingVoltage);
+        }
+    }
+
+    private void setVoltage(double volts) {
+        m_voltage = volts;
+        m_motor.setVoltage(volts);
+    }
+
+    @Override
+    public void simulationPeriodic() {
+        double battery = RobotController.getBatteryVoltage();
+        m_sim.setInputVoltage(MathUtil.clamp(m_voltage, -battery, battery));
+        m_sim.update(0.02);
+    }
+
+    private double getRawAngle() {
+        return RobotBase.isSimulation() ? m_sim.getAngleRads() : m_encoder.getPosition();
+    }
+
+    private double getVelocity() {
+        return RobotBase.isSimulation() ? m_sim.getVelocityRadPerSec() : m_encoder.getVelocity();
+    }
+
+    private double getCurrent() {
+        return RobotBase.isSimulation() ? m_sim.getCurrentDrawAmps() : m_motor.getOutputCurrent();
+    }
+
+    /**
+     * Get the measured angle of the arm. Before homing this is measured from
+     * where the arm was at startup, which should be stowed.
+     *
+     * @return the angle in radians up from the stowed hard stop
+     */
+    public double getAngle() {
+        return getRawAngle() - m_zero;
+    }
+
+    /**
+     * Send the arm to a position
+     *
+     * @param goal the named position
+     */
+    public void setGoal(AmpArmPosition goal) {
+        m_goal = goal;
+    }
+
+    public AmpArmPosition getGoal() {
+        return m_goal;
+    }
+
+    public boolean isHomed() {
+        return m_homed;
+    }
+
+    /**
+     * Check if the arm has finished moving to its goal
+     *
+     * @return true if homed, the profile is done and the arm is within tolerance
+     */
+    public boolean atGoal() {
+        return m_homed
+                && m_controller.getGoal().position == Math.min(m_goal.angle, AmpArmConstants.kSoftLimitAngle)
+                && m_controller.atGoal();
+    }
+}
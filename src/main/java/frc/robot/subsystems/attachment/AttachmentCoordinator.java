@@ -0,0 +1,498 @@
+package frc.robot.subsystems.attachment;
+
+import edu.wpi.first.wpilibj.GenericHID.RumbleType;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.Commands;
+import edu.wpi.first.wpilibj2.command.InstantCommand;
+import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import edu.wpi.first.wpilibj2.command.button.CommandXboxController;
+import edu.wpi.first.wpilibj2.command.button.Trigger;
+import frc.robot.Constants.FeederConstants;
+import frc.robot.Constants.ShooterConstants;
+import frc.robot.Constants.UTBIntakerConstants;
+import frc.robot.Constants.TargetConstants.AimingTarget;
+import frc.robot.subsystems.attachment.AmpArmSubsystem.AmpArmPosition;
+import frc.robot.subsystems.attachment.PivotSubsystem.PivotPosition;
+import frc.robot.subsystems.attachment.ShooterSubsystem.ShooterState;
+import frc.robot.subsystems.attachment.FeederSubsystem.FeederState;
+import frc.robot.subsystems.attachment.Intaker.IntakerState;
+
+/**
+ * Superstructure over the intake, feeder, shooter and pivot. Commands and
+ * callers only set goals here, and {@link #applyOutputs()} sends each changed
+ * goal to its mechanism once per loop after the commands have run, so the
+ * mechanisms don't get several conflicting writes in one loop. Commands
+ * require the mechanisms whose goals they set, so the scheduler keeps two
+ * commands from fighting over one mechanism while still letting, say, the
+ * shooter spin up while the intake runs. The pivot and the amp arm are moved
+ * together through a {@link SuperstructurePlanner} so the arm stays clear of
+ * the robot.
+ */
+public class AttachmentCoordinator extends SubsystemBase {
+    public enum AttatchmentState {
+        kAiming,
+        kShooting,
+        kContinuousFire;
+    }
+
+    private final UTBIntakerSubsystem m_UTBIntaker;
+    private final FeederSubsystem m_feeder;
+    private final ShooterSubsystem m_shooter;
+    private final PivotSubsystem m_pivot;
+    private final AmpArmSubsystem m_ampArm;
+    private final Trigger m_beamBreak;
+
+    // state variables
+    private AttatchmentState m_state = AttatchmentState.kAiming;
+    private AimingTarget m_target = AimingTarget.kSpeaker;
+
+    // Goals for the mechanisms, applied once per loop
+    private IntakerState m_intakeGoal = IntakerState.kStopped;
+    private FeederState m_feederGoal = FeederState.kStopped;
+    private ShooterState m_shooterGoal = ShooterState.kStopped;
+    private PivotPosition m_pivotGoal = PivotPosition.kIntakePosition;
+    private double m_pivotSetpointGoal = Double.NaN; // NaN to keep the current setpoint
+    private AmpArmPosition m_ampArmGoal = AmpArmPosition.kStowed;
+
+    // Set when a note touches the intake, until intaking stops
+    private boolean m_slowFeed = false;
+    private int m_lastContactCount = 0;
+
+    private final SuperstructurePlanner m_planner = new SuperstructurePlanner();
+
+    public AttachmentCoordinator(UTBIntakerSubsystem utbIntaker, FeederSubsystem feeder, ShooterSubsystem shooter,
+            PivotSubsystem pivot, AmpArmSubsystem ampArm) {
+        m_UTBIntaker = utbIntaker;
+        m_feeder = feeder;
+        m_shooter = shooter;
+        m_pivot = pivot;
+        m_ampArm = ampArm;
+
+        m_beamBreak = new Trigger(m_feeder::getBeamBreakState).negate();
+    }
+
+    /**
+     * Send the goals set this loop to the mechanisms. Call once per loop after
+     * the command scheduler has run. Only goals that changed are written.
+     */
+    public void applyOutputs() {
+        if (m_UTBIntaker.getMotorState() != m_intakeGoal) {
+            m_UTBIntaker.setState(m_intakeGoal);
+        }
+        // Slow the feeder as soon as a note touches the intake so the note
+        // stops cleanly at the beam break
+        int contactCount = m_UTBIntaker.getContactCount();
+        if (m_feederGoal != FeederState.kIntaking) {
+            m_slowFeed = false;
+        } else if (contactCount != m_lastContactCount) {
+            m_slowFeed = true;
+        }
+        m_lastContactCount = contactCount;
+
+        FeederState feederState = m_slowFeed ? FeederState.kSlowIntaking : m_feederGoal;
+        if (m_feeder.getState() != feederState) {
+            m_feeder.setState(feederState);
+        }
+        if (m_shooter.getState() != m_shooterGoal) {
+            m_shooter.setState(m_shooterGoal);
+        }
+        if (m_pivot.getPosition() != m_pivotGoal) {
+            m_pivot.setPosition(m_pivotGoal);
+        }
+        if (!Double.isNaN(m_pivotSetpointGoal)) {
+            m_pivot.setPrecisePosition(m_pivotSetpointGoal);
+            m_pivotSetpointGoal = Double.NaN;
+        }
+
+        // Move the pivot and amp arm without the arm hitting anything
+        m_planner.update(m_pivot.getActualPosition(), m_pivot.getActualVelocity(), m_ampArm.getAngle(),
+                m_ampArmGoal);
+        m_pivot.setMinimumPosition(m_planner.getPivotMinimum());
+        if (m_ampArm.getGoal() != m_planner.getArmGoal()) {
+            m_ampArm.setGoal(m_planner.getArmGoal());
+        }
+    }
+
+    /**
+     * Check if the pivot and amp arm have reached their goals
+     * 
+     * @return true if both are there
+     */
+    public boolean atGoal() {
+        return m_pivot.atSetpoint() && m_ampArm.getGoal() == m_ampArmGoal && m_ampArm.atGoal();
+    }
+
+    @Override
+    public void periodic() {
+        SmartDashboard.putString("Attachment State", m_state.name());
+        SmartDashboard.putString("Intake Goal", m_intakeGoal.name());
+        SmartDashboard.putString("Feeder Goal", m_feederGoal.name());
+        SmartDashboard.putString("Shooter Goal", m_shooterGoal.name());
+        SmartDashboard.putString("Pivot Goal", m_pivotGoal.name());
+        SmartDashboard.putString("Amp Arm Target", m_ampArmGoal.name());
+        SmartDashboard.putBoolean("Superstructure At Goal", atGoal());
+    }
+
+    // Starts the beam break trigger for teleop
+    public void bindControllerRumble(CommandXboxController driveController) {
+        // Rumble on intake (this mess makes it so it doesn't rumble while shooting and
+        // only for intaking)
+        m_beamBreak.onTrue(
+                Commands.parallel(
+                        Commands.either(
+                                Commands.sequence(
+                                        Commands.runOnce(() -> {
+                                            driveController.getHID().setRumble(RumbleType.kBothRumble, 1);
+                                        }),
+                                        Commands.waitSeconds(1),
+                                        Commands.runOnce(() -> {
+                                            driveController.getHID().setRumble(RumbleType.kBothRumble, 0);
+                                        })),
+                                Commands.none(), () -> m_state == AttatchmentState.kAiming)));
+    }
+
+    /**
+     * Run an action each time a note leaves through the shooter for the speaker.
+     * This is the falling edge of the beam break while feeding into a spinning
+     * shooter, amp shots and pulling a note back don't count.
+     * 
+     * @param action the action to run at release
+     */
+    public void onShot(Runnable action) {
+        m_beamBreak.onFalse(Commands.runOnce(() -> {
+            ShooterState shooterState = m_shooter.getState();
+            if (m_feeder.getState() == FeederState.kShooting
+                    && (shooterState == ShooterState.kSpinning || shooterState == ShooterState.kShooting)) {
+                action.run();
+            }
+        }).ignoringDisable(true));
+    }
+
+    private void setState(AttatchmentState state) {
+        if (m_state == state) {
+            return;
+        }
+
+        m_state = state;
+
+        switch (m_state) {
+            // do nothing
+            case kAiming, kShooting -> {
+            }
+            // do nothing again
+            case kContinuousFire -> {
+            }
+        }
+    }
+
+    private void setIntakeGoal(IntakerState state) {
+        m_intakeGoal = state;
+    }
+
+    private void setFeederGoal(FeederState state) {
+        m_feederGoal = state;
+    }
+
+    private void setShooterGoal(ShooterState state) {
+        m_shooterGoal = state;
+    }
+
+    private void setPivotGoal(PivotPosition position) {
+        m_pivotGoal = position;
+    }
+
+    private void setPivotSetpointGoal(double setpoint) {
+        m_pivotSetpointGoal = setpoint;
+    }
+
+    private void setAmpArmGoal(AmpArmPosition position) {
+        m_ampArmGoal = position;
+    }
+
+    public AttatchmentState getState() {
+        return this.m_state;
+    }
+
+    public boolean getBeamBreakState() {
+        return m_beamBreak.getAsBoolean();
+    }
+
+    /**
+     * Intake if in intake mode
+     */
+    private void startIntaking() {
+        setPivotGoal(PivotPosition.kIntakePosition);
+        setIntakeGoal(IntakerState.kIntaking);
+        setFeederGoal(FeederState.kIntaking);
+    }
+
+    /**
+     * Reverse intakers if not shooting
+     * Acts as an unjam feature
+     */
+    private void unjamIntakers() {
+        setPivotGoal(PivotPosition.kIntakePosition);
+        setIntakeGoal(IntakerState.kReversed);
+        setFeederGoal(FeederState.kReversed);
+    }
+
+    /**
+     * Stop intaking, but not shooting
+     */
+    private void stopIntaking() {
+        setIntakeGoal(IntakerState.kStopped);
+        softSetFeederState(FeederState.kStopped);
+    }
+
+    /**
+     * Set the feeder state only if it woukd not interupt shooting
+     */
+    private void softSetFeederState(FeederState state) {
+        if (m_state != AttatchmentState.kShooting) {
+            setFeederGoal(state);
+        }
+    }
+
+    /**
+     * Set the shooter state
+     */
+    private void softSetShooterState(ShooterState state) {
+        setShooterGoal(state);
+    }
+
+    /**
+     * Set the target for auto aiming This should be the same target that the
+     * drivebase is targeting
+     * 
+     * @param target the target to aim for
+     */
+    public void setTarget(AimingTarget target) {
+        m_target = target;
+        if (m_pivotGoal != PivotPosition.kIntakePosition) {
+            setPivotGoal(switch (m_target) {
+                case kSpeaker -> PivotPosition.kCustomSpeakerPosition;
+                case kAmp -> PivotPosition.kAmpPosition;
+            });
+        }
+    }
+
+    /**
+     * Intake until the returned command is canceled
+     * 
+     * @return a command to intake
+     */
+    public Command getIntakeCommand() {
+        return Commands.sequence(
+                Commands.runOnce(() -> startIntaking(), m_UTBIntaker, m_feeder),
+                Commands.waitUntil(m_beamBreak).deadlineWith(getClearJamsCommand()),
+                new InstantCommand(() -> {
+                    setIntakeGoal(IntakerState.kReversed);
+                }),
+                Commands.runOnce(() -> {
+                    setFeederGoal(FeederState.kAlignReverse);
+                }, m_UTBIntaker, m_feeder),
+                Commands.race(Commands.waitUntil(m_beamBreak.negate()),
+                        Commands.waitSeconds(FeederConstants.kNotePullbackMaxTime)),
+                Commands.runOnce(() -> {
+                    setFeederGoal(FeederState.kStopped);
+                }, m_UTBIntaker, m_feeder)).finallyDo(() -> stopIntaking());
+    }
+
+    // Back a jammed note out and try again, as often as it jams
+    private Command getClearJamsCommand() {
+        return Commands.repeatingSequence(
+                Commands.waitUntil(m_UTBIntaker::isJammed),
+                Commands.runOnce(() -> unjamIntakers()),
+                Commands.waitSeconds(UTBIntakerConstants.kUnjamTime),
+                Commands.runOnce(() -> startIntaking()));
+    }
+
+    public Command getBeamBreakCommand() {
+        return Commands.waitUntil(m_beamBreak);
+    }
+
+    public Command getIntakeAutoCommand() {
+        return Commands.runOnce(() -> startIntaking(), m_UTBIntaker, m_feeder);
+    }
+
+    public Command getStopIntakeAutoCommand() {
+        return Commands.runOnce(() -> stopIntaking(), m_UTBIntaker, m_feeder);
+    }
+
+    /**
+     * Reverse the intakers to unjam, until the command is cancelled
+     * 
+     * @return a command to unjam
+     */
+    public Command getUnjamIntakersCommand() {
+        return Commands.startEnd(() -> unjamIntakers(), () -> stopIntaking(), m_UTBIntaker, m_feeder);
+    }
+
+    /**
+     * Spin the shooter until the command is cancelled
+     * 
+     * @return a command to spin the shooter
+     */
+    public Command getSpinShooterCommand() {
+        return Commands.startEnd(() -> softSetShooterState(ShooterState.kSpinning),
+                () -> softSetShooterState(ShooterState.kStopped), m_shooter);
+    }
+
+    public Command getSpinShooterAutoCommand() {
+        return Commands.runOnce(() -> softSetShooterState(ShooterState.kSpinning), m_shooter);
+    }
+
+    // Starts shooting and stops when the command ends
+    public Command getShootCommand() {
+        return Commands.startEnd(() -> {
+            setState(AttatchmentState.kShooting);
+            setFeederGoal(FeederState.kShooting);
+        },
+                () -> {
+                    setState(AttatchmentState.kAiming);
+                    setFeederGoal(FeederState.kStopped);
+                    setPivotGoal(PivotPosition.kIntakePosition);
+                }, m_feeder, m_pivot);
+    }
+
+    // Starts shooting without stopping
+    public Command getStartShootCommand() {
+        return Commands.runOnce(() -> {
+            setState(AttatchmentState.kShooting);
+            setFeederGoal(FeederState.kShooting);
+            setIntakeGoal(IntakerState.kIntaking);
+        }, m_UTBIntaker, m_feeder);
+    }
+
+    // Stops shooting
+    public Command getStopShootCommand() {
+        return Commands.sequence(
+                Commands.waitSeconds(0.2),
+                Commands.runOnce(() -> {
+                    setState(AttatchmentState.kAiming);
+                    setIntakeGoal(IntakerState.kStopped);
+                    setFeederGoal(FeederState.kStopped);
+                    if (m_pivotGoal != PivotPosition.kAmpPosition) {
+                        setPivotGoal(PivotPosition.kIntakePosition);
+                    }
+                }, m_UTBIntaker, m_feeder, m_pivot));
+    }
+
+    // Starts continuous fire without stopping
+    public Command getStartContinuousFireCommand() {
+        return Commands.runOnce(() -> {
+            setState(AttatchmentState.kContinuousFire);
+            setIntakeGoal(IntakerState.kIntaking);
+            setFeederGoal(FeederState.kShooting);
+            setShooterGoal(ShooterState.kShooting);
+        }, m_UTBIntaker, m_feeder, m_shooter);
+    }
+
+    public void stopContinuousFire() {
+        setState(AttatchmentState.kAiming);
+        setPivotGoal(PivotPosition.kIntakePosition);
+        setShooterGoal(ShooterState.kStopped);
+        setFeederGoal(FeederState.kStopped);
+        setIntakeGoal(IntakerState.kStopped);
+        setAmpArmGoal(AmpArmPosition.kStowed);
+    }
+
+    // Stops continuous fire
+    public Command getStopContinuousFireCommand() {
+        return Commands.runOnce(() -> {
+            stopContinuousFire();
+        }, m_UTBIntaker, m_feeder, m_shooter, m_pivot, m_ampArm);
+    }
+
+    /**
+     * Set the position of the pivot
+     * 
+     * @param position the pivot position
+     * @return a command to set the pivot position
+     */
+    public Command getSetPivotPositionCommand(PivotPosition position) {
+        return Commands.runOnce(() -> {
+            setPivotGoal(position);
+        }, m_pivot);
+    }
+
+    /**
+     * Set the roattion of the pivot to a custom value
+     * 
+     * @param rotations the pivot angle in rotations of the neo motor
+     * @return a command to set the pivot angle
+     */
+    public Command getSetCustomPivotPositionCommand(double rotations) {
+        return Commands.runOnce(() -> {
+            setPivotGoal(PivotPosition.kCustomSpeakerPosition);
+            setPivotSetpointGoal(rotations);
+        }, m_pivot);
+    }
+
+    /**
+     * Set the pivot to a custom speaker position, for callers that already
+     * require the pivot
+     * 
+     * @param rotations the pivot angle in rotations of the neo motor
+     */
+    public void setCustomPosition(double rotations) {
+        setPivotGoal(PivotPosition.kCustomSpeakerPosition);
+        setPivotSetpointGoal(rotations);
+    }
+
+    // Wait for the pivot and amp arm to reach their goals, or go on anyway if
+    // they take too long so the sequence can't hang
+    private Command waitForGoal() {
+        return Commands.race(Commands.waitUntil(this::atGoal),
+                Commands.waitSeconds(ShooterConstants.kAmpMoveTimeout));
+    }
+
+    public Command getCancelAmpCommand() {
+        return Commands.sequence(
+                Commands.runOnce(() -> {
+                    setShooterGoal(ShooterState.kPostAmp);
+                    setFeederGoal(FeederState.kStopped);
+                    setAmpArmGoal(AmpArmPosition.kStowed);
+                }),
+                waitForGoal(),
+                Commands.runOnce(() -> {
+                    setShooterGoal(ShooterState.kStopped);
+                }, m_shooter, m_feeder, m_ampArm));
+    }
+
+    /**
+     * Score in the amp. The pivot and arm move together as far as the planner
+     * allows, the note is fed once both are in place, and the arm stows once the
+     * note is out.
+     * 
+     * @return a command to score in the amp
+     */
+    public Command getAmpCommand() {
+        return Commands.sequence(
+                Commands.runOnce(() -> {
+                    setPivotGoal(PivotPosition.kAmpPosition);
+                    setShooterGoal(ShooterState.kAmp);
+                    setAmpArmGoal(AmpArmPosition.kDeployed);
+                }),
+                waitForGoal(),
+                Commands.runOnce(() -> setFeederGoal(FeederState.kShooting)),
+                Commands.race(Commands.waitUntil(m_beamBreak.negate()),
+                        Commands.waitSeconds(ShooterConstants.kAmpFeedTimeout)),
+                Commands.waitSeconds(ShooterConstants.kAmpReleaseTime),
+                Commands.runOnce(() -> {
+                    setShooterGoal(ShooterState.kPostAmp);
+                    setAmpArmGoal(AmpArmPosition.kStowed);
+                }),
+                waitForGoal(),
+                Commands.runOnce(() -> {
+                    setShooterGoal(ShooterState.kStopped);
+                    setFeederGoal(FeederState.kStopped);
+                }, m_pivot, m_shooter, m_feeder, m_ampArm)).finallyDo(() -> {
+                    setShooterGoal(ShooterState.kStopped);
+                    setFeederGoal(FeederState.kStopped);
+                    setAmpArmGoal(AmpArmPosition.kStowed);
+                });
+    }
+
+}
@@ -5,9 +5,16 @@ import com.revrobotics.CANSparkLowLevel.MotorType;
 import com.revrobotics.CANSparkMax;
 import com.revrobotics.CANSparkBase.IdleMode;
 
+import edu.wpi.first.util.datalog.BooleanLogEntry;
+import edu.wpi.first.wpilibj.AsynchronousInterrupt;
+import edu.wpi.first.wpilibj.DataLogManager;
 import edu.wpi.first.wpilibj.DigitalInput;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import frc.robot.Constants.FeederConstants;
+import frc.robot.Constants.PowerConstants;
+import frc.robot.subsystems.PowerManager;
+import frc.utils.SparkConfigurator;
 
 public class FeederSubsystem extends SubsystemBase {
 
@@ -16,6 +23,7 @@ public class FeederSubsystem extends SubsystemBase {
         kReversed,
         kStopped,
         kIntaking,
+        kSlowIntaking,
         kShooting;
     }
 
@@ -24,6 +32,14 @@ public class FeederSubsystem extends SubsystemBase {
 
     private FeederState m_state = FeederState.kStopped;
 
+    // Note in the feeder, logged on change to line up with the intake traces
+    private final BooleanLogEntry m_noteLog = new BooleanLogEntry(DataLogManager.getLog(), "Feeder/Note");
+    private boolean m_lastNote = false;
+
+    // When the last note cleared the beam break, stamped by the FPGA on the edge
+    private final AsynchronousInterrupt m_releaseInterrupt;
+    private volatile double m_releaseTime = Double.NaN;
+
     /**
      * Create a new feeder subsystem
      */
@@ -32,8 +48,43 @@ public class FeederSubsystem extends SubsystemBase {
 
         m_beamBreakSensor = new DigitalInput(FeederConstants.kBeamBreakDIOId);
 
-        m_feederMotor.restoreFactoryDefaults();
-        m_feederMotor.setIdleMode(IdleMode.kBrake);
+        // The sensor goes high when the beam is no longer broken
+        m_releaseInterrupt = new AsynchronousInterrupt(m_beamBreakSensor, this::onBeamBreakEdge);
+        m_releaseInterrupt.setInterruptEdges(true, false);
+        m_releaseInterrupt.enable();
+
+        new SparkConfigurator("Feeder", m_feederMotor)
+                .idleMode(IdleMode.kBrake)
+                .smartCurrentLimit(FeederConstants.kCurrentLimit)
+                .start();
+    }
+
+    // Runs on the interrupt thread, which only starts once the interrupt is
+    // assigned and enabled
+    private void onBeamBreakEdge(boolean rising, boolean falling) {
+        if (rising) {
+            m_releaseTime = m_releaseInterrupt.getRisingTimestamp();
+        }
+    }
+
+    /**
+     * Let the power manager lower the feeder current limit when the battery is
+     * low
+     * 
+     * @param power the power manager
+     */
+    public void registerPower(PowerManager power) {
+        power.register("Feeder", m_feederMotor, FeederConstants.kCurrentLimit, FeederConstants.kMinCurrentLimit,
+                PowerConstants.kFeederPriority);
+    }
+
+    @Override
+    public void periodic() {
+        boolean note = !getBeamBreakState();
+        if (note != m_lastNote) {
+            m_noteLog.append(note);
+            m_lastNote = note;
+        }
     }
 
     /**
@@ -49,6 +100,7 @@ public class FeederSubsystem extends SubsystemBase {
             case kReversed -> FeederConstants.kReverseSpeed;
             case kStopped -> 0;
             case kIntaking -> FeederConstants.kIntakeSpeed;
+            case kSlowIntaking -> FeederConstants.kSlowIntakeSpeed;
             case kShooting -> FeederConstants.kShootSpeed;
         };
 
@@ -64,6 +116,18 @@ public class FeederSubsystem extends SubsystemBase {
         return m_beamBreakSensor.get();
     }
 
+    /**
+     * Get when the last note cleared the beam break. This is more exact than
+     * the loop that sees the change, which can be up to a loop later.
+     *
+     * @return the FPGA timestamp in seconds, or now if the interrupt hasn't
+     *         seen a note clear
+     */
+    public double getReleaseTime() {
+        double time = m_releaseTime;
+        return Double.isNaN(time) ? Timer.getFPGATimestamp() : time;
+    }
+
     /*
      * Get the current state of the feeder
      */
@@ -1,14 +1,34 @@
 package frc.robot.subsystems.attachment;
 
+import static edu.wpi.first.units.MutableMeasure.mutable;
+import static edu.wpi.first.units.Units.Rotations;
+import static edu.wpi.first.units.Units.RotationsPerSecond;
+import static edu.wpi.first.units.Units.Seconds;
+import static edu.wpi.first.units.Units.Volts;
+
 import com.revrobotics.CANSparkBase.IdleMode;
 import com.revrobotics.CANSparkLowLevel.MotorType;
 import com.revrobotics.AbsoluteEncoder;
 import com.revrobotics.CANSparkMax;
 import com.revrobotics.SparkPIDController;
 
+import edu.wpi.first.units.Angle;
+import edu.wpi.first.units.MutableMeasure;
+import edu.wpi.first.units.Velocity;
+import edu.wpi.first.units.Voltage;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import edu.wpi.first.wpilibj2.command.sysid.SysIdRoutine;
+import edu.wpi.first.wpilibj2.command.sysid.SysIdRoutineLog;
 import frc.robot.Constants.PivotConstants;
+import frc.robot.Constants.PowerConstants;
+import frc.robot.subsystems.PowerManager;
+import frc.utils.FeedforwardCharacterizer;
+import frc.utils.SparkConfigurator;
+import frc.utils.TunableGains;
 
 public class PivotSubsystem extends SubsystemBase {
     public enum PivotPosition {
@@ -36,44 +56,110 @@ public class PivotSubsystem extends SubsystemBase {
     private final SparkPIDController m_pivotPID;
     private final AbsoluteEncoder m_pivotEncoder;
 
+    private final TunableGains m_gains = new TunableGains("Pivot",
+            PivotConstants.PivotPID.kP, PivotConstants.PivotPID.kI, PivotConstants.PivotPID.kD,
+            PivotConstants.PivotPID.kFF);
+
     private PivotPosition m_position = PivotPosition.kIntakePosition;
     private double m_setpoint = PivotConstants.kIntakePos;
+    private double m_minimumPosition = PivotConstants.kGlobalMin; // raised to keep clear of the amp arm
+
+    // Characterization, position control is paused while it runs
+    private final SysIdRoutine m_sysIdRoutine;
+    private final FeedforwardCharacterizer m_characterizer = new FeedforwardCharacterizer("Pivot", true);
+    private boolean m_characterizing = false;
+    private double m_sysIdVolts = 0;
+    private final MutableMeasure<Voltage> m_sysIdVoltage = mutable(Volts.of(0));
+    private final MutableMeasure<Angle> m_sysIdAngle = mutable(Rotations.of(0));
+    private final MutableMeasure<Velocity<Angle>> m_sysIdVelocity = mutable(RotationsPerSecond.of(0));
 
     public PivotSubsystem() {
         m_leftPivotMotor = new CANSparkMax(PivotConstants.kLeftPivotMotorCANId, MotorType.kBrushless);
         m_rightPivotMotor = new CANSparkMax(PivotConstants.kRightPivotMotorCANId, MotorType.kBrushless);
 
-        m_leftPivotMotor.restoreFactoryDefaults();
-        m_leftPivotMotor.setIdleMode(IdleMode.kBrake);
-        m_rightPivotMotor.restoreFactoryDefaults();
-        m_rightPivotMotor.setIdleMode(IdleMode.kBrake);
-        m_rightPivotMotor.follow(m_leftPivotMotor, true);
-
         m_pivotPID = m_leftPivotMotor.getPIDController();
-
         m_pivotEncoder = m_leftPivotMotor.getAbsoluteEncoder();
-        m_pivotEncoder.setPositionConversionFactor(125);
-        m_pivotEncoder.setVelocityConversionFactor(125);
-        m_pivotPID.setFeedbackDevice(m_pivotEncoder);
 
-        m_pivotPID.setPositionPIDWrappingMaxInput(125);
-        m_pivotPID.setPositionPIDWrappingMinInput(0);
-        m_pivotPID.setPositionPIDWrappingEnabled(true);
+        new SparkConfigurator("Left Pivot", m_leftPivotMotor)
+                .idleMode(IdleMode.kBrake)
+                .smartCurrentLimit(PivotConstants.kCurrentLimit)
+                .always("Feedback Device", () -> m_pivotPID.setFeedbackDevice(m_pivotEncoder))
+                .set("Position Factor", PivotConstants.kPivotEncoderFactor,
+                        m_pivotEncoder::getPositionConversionFactor, m_pivotEncoder::setPositionConversionFactor)
+                .set("Velocity Factor", PivotConstants.kPivotEncoderFactor,
+                        m_pivotEncoder::getVelocityConversionFactor, m_pivotEncoder::setVelocityConversionFactor)
+                .set("PID Wrapping Max", PivotConstants.kPivotEncoderFactor,
+                        m_pivotPID::getPositionPIDWrappingMaxInput, m_pivotPID::setPositionPIDWrappingMaxInput)
+                .set("PID Wrapping Min", 0,
+                        m_pivotPID::getPositionPIDWrappingMinInput, m_pivotPID::setPositionPIDWrappingMinInput)
+                .set("PID Wrapping", true,
+                        m_pivotPID::getPositionPIDWrappingEnabled,
+                        value -> m_pivotPID.setPositionPIDWrappingEnabled(value > 0.5))
+                // set pivot PID coefficients
+                .pid(m_pivotPID, PivotConstants.PivotPID.kP, PivotConstants.PivotPID.kI,
+                        PivotConstants.PivotPID.kD, PivotConstants.PivotPID.kFF,
+                        PivotConstants.PivotPID.kMinOutput, PivotConstants.PivotPID.kMaxOutput)
+                .set("IZone", PivotConstants.PivotPID.kIz, m_pivotPID::getIZone, m_pivotPID::setIZone)
+                .start();
+
+        new SparkConfigurator("Right Pivot", m_rightPivotMotor)
+                .idleMode(IdleMode.kBrake)
+                .smartCurrentLimit(PivotConstants.kCurrentLimit)
+                .always("Follow", () -> m_rightPivotMotor.follow(m_leftPivotMotor, true))
+                .start();
+
+        // Slow ramps and small steps, the pivot doesn't have much travel
+        m_sysIdRoutine = new SysIdRoutine(
+                new SysIdRoutine.Config(Volts.of(0.5).per(Seconds.of(1)), Volts.of(2), Seconds.of(5)),
+                new SysIdRoutine.Mechanism(
+                        volts -> {
+                            m_characterizing = true;
+                            m_sysIdVolts = volts.in(Volts);
+                            m_leftPivotMotor.setVoltage(m_sysIdVolts);
+                        },
+                        this::logCharacterization,
+                        this));
+    }
+
+    /**
+     * Save the pivot configurations, including tuned gains, to the SPARKs'
+     * flash. Only allowed while disabled since the SPARKs stop responding while
+     * they write.
+     */
+    public void burnFlash() {
+        if (!DriverStation.isDisabled()) {
+            DriverStation.reportWarning("Not burning the pivot SPARKs' flash while enabled", false);
+            return;
+        }
+
+        SparkConfigurator.burnFlash("Pivot", m_leftPivotMotor, m_rightPivotMotor);
+    }
 
-        // set pivot PID coefficients
-        m_pivotPID.setP(PivotConstants.PivotPID.kP);
-        m_pivotPID.setI(PivotConstants.PivotPID.kI);
-        m_pivotPID.setD(PivotConstants.PivotPID.kD);
-        m_pivotPID.setIZone(PivotConstants.PivotPID.kIz);
-        m_pivotPID.setFF(PivotConstants.PivotPID.kFF);
-        m_pivotPID.setOutputRange(PivotConstants.PivotPID.kMinOutput, PivotConstants.PivotPID.kMaxOutput);
+    /**
+     * Let the power manager lower the pivot current limits when the battery is
+     * low
+     * 
+     * @param power the power manager
+     */
+    public void registerPower(PowerManager power) {
+        power.register("Left Pivot", m_leftPivotMotor, PivotConstants.kCurrentLimit,
+                PivotConstants.kMinCurrentLimit, PowerConstants.kPivotPriority);
+        power.register("Right Pivot", m_rightPivotMotor, PivotConstants.kCurrentLimit,
+                PivotConstants.kMinCurrentLimit, PowerConstants.kPivotPriority);
     }
 
     @Override
     public void periodic() {
-        m_pivotPID.setReference(m_setpoint, CANSparkMax.ControlType.kPosition);
+        if (m_gains.hasChanged()) {
+            m_gains.apply(m_leftPivotMotor, m_pivotPID);
+        }
+
+        if (!m_characterizing) {
+            m_pivotPID.setReference(getReference(), CANSparkMax.ControlType.kPosition);
+        }
 
         SmartDashboard.putNumber("Pivot Setpoint", m_setpoint);
+        SmartDashboard.putNumber("Pivot Minimum", m_minimumPosition);
         SmartDashboard.putNumber("Pivot Position", m_pivotEncoder.getPosition());
     }
 
@@ -112,4 +198,89 @@ public class PivotSubsystem extends SubsystemBase {
     public double getPrecisePosition() {
         return m_setpoint;
     }
+
+    /**
+     * Keep the pivot at or above a position regardless of the setpoint, for
+     * clearance. The setpoint is kept and used again once the minimum is
+     * lowered.
+     * 
+     * @param minimum the lowest position to allow in encoder units
+     */
+    public void setMinimumPosition(double minimum) {
+        m_minimumPosition = Math.max(minimum, PivotConstants.kGlobalMin);
+    }
+
+    /**
+     * Get the position the pivot is being driven to, the setpoint raised to the
+     * minimum position
+     * 
+     * @return the position in encoder units
+     */
+    public double getReference() {
+        return Math.max(m_setpoint, m_minimumPosition);
+    }
+
+    /**
+     * Check if the pivot has reached the position it is being driven to
+     * 
+     * @return true if the pivot is within the deadzone of the reference
+     */
+    public boolean atSetpoint() {
+        return Math.abs(getActualPosition() - getReference()) < PivotConstants.kPositionDeadzone;
+    }
+
+    /**
+     * Get the measured position of the pivot
+     * 
+     * @return the position in encoder units
+     */
+    public double getActualPosition() {
+        return m_pivotEncoder.getPosition();
+    }
+
+    /**
+     * Get the measured velocity of the pivot
+     * 
+     * @return the velocity in encoder units per second
+     */
+    public double getActualVelocity() {
+        // Velocity is in units per minute
+        return m_pivotEncoder.getVelocity() / 60;
+    }
+
+    /**
+     * Get the angle of the pivot from horizontal
+     * 
+     * @return the angle in radians
+     */
+    public double getAngleRadians() {
+        return (m_pivotEncoder.getPosition() - PivotConstants.kPivotHorizontalPos)
+                / PivotConstants.kPivotEncoderFactor * 2 * Math.PI;
+    }
+
+    private void logCharacterization(SysIdRoutineLog log) {
+        double rotations = m_pivotEncoder.getPosition() / PivotConstants.kPivotEncoderFactor;
+        // Velocity is in units per minute
+        double rotationsPerSecond = m_pivotEncoder.getVelocity() / PivotConstants.kPivotEncoderFactor / 60;
+
+        log.motor("pivot")
+                .voltage(m_sysIdVoltage.mut_replace(m_sysIdVolts, Volts))
+                .angularPosition(m_sysIdAngle.mut_replace(rotations, Rotations))
+                .angularVelocity(m_sysIdVelocity.mut_replace(rotationsPerSecond, RotationsPerSecond));
+
+        m_characterizer.addSample(Timer.getFPGATimestamp(), m_sysIdVolts, rotationsPerSecond, getAngleRadians());
+    }
+
+    /**
+     * Characterize the pivot. Each test stops early at the ends of the pivot's
+     * range, and position control resumes at the old setpoint afterwards.
+     * 
+     * @return a command that runs all the tests and publishes the gains
+     */
+    public Command getCharacterizationCommand() {
+        return m_characterizer.getCommand(m_sysIdRoutine,
+                () -> m_pivotEncoder.getPosition() >= PivotConstants.kGlobalMax,
+                () -> m_pivotEncoder.getPosition() <= PivotConstants.kGlobalMin)
+                .finallyDo(() -> m_characterizing = false);
+    }
 }
@@ -1,45 +1,160 @@
 package frc.robot.subsystems.attachment;
 
+import static edu.wpi.first.units.MutableMeasure.mutable;
+import static edu.wpi.first.units.Units.Rotations;
+import static edu.wpi.first.units.Units.RotationsPerSecond;
+import static edu.wpi.first.units.Units.Volts;
+
+import java.util.function.IntSupplier;
+
 import com.revrobotics.CANSparkLowLevel.MotorType;
 
 import com.revrobotics.CANSparkFlex;
-import com.revrobotics.CANSparkMax;
 import com.revrobotics.CANSparkBase.IdleMode;
 
+import edu.wpi.first.units.Angle;
+import edu.wpi.first.units.MutableMeasure;
+import edu.wpi.first.units.Velocity;
+import edu.wpi.first.units.Voltage;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import edu.wpi.first.wpilibj2.command.sysid.SysIdRoutine;
+import edu.wpi.first.wpilibj2.command.sysid.SysIdRoutineLog;
+import frc.robot.Constants.NeoMotorConstants;
+import frc.robot.Constants.PowerConstants;
 import frc.robot.Constants.ShooterConstants;
+import frc.robot.subsystems.PowerManager;
+import frc.utils.FeedforwardCharacterizer;
+import frc.utils.SparkConfigurator;
 
 public class ShooterSubsystem extends SubsystemBase {
     public enum ShooterState {
         kStopped,
         kSpinning,
         kShooting,
-        kPreAmp,
         kAmp,
         kPostAmp
     }
 
     private CANSparkFlex m_motor1;
     private CANSparkFlex m_motor2;
-    private CANSparkMax m_ampArmMotor;
     private ShooterState m_state = ShooterState.kStopped;
     private double m_speed = ShooterConstants.kShootSpeed;
 
+    // Characterization of the flywheels
+    private final SysIdRoutine m_sysIdRoutine;
+    private final FeedforwardCharacterizer m_characterizer = new FeedforwardCharacterizer("Shooter", false);
+    private double m_sysIdVolts = 0;
+    private final MutableMeasure<Voltage> m_sysIdVoltage = mutable(Volts.of(0));
+    private final MutableMeasure<Angle> m_sysIdAngle = mutable(Rotations.of(0));
+    private final MutableMeasure<Velocity<Angle>> m_sysIdVelocity = mutable(RotationsPerSecond.of(0));
+
     public ShooterSubsystem() {
         m_motor1 = new CANSparkFlex(ShooterConstants.kRightShooterMotorCANId, MotorType.kBrushless);
         m_motor2 = new CANSparkFlex(ShooterConstants.kLeftShooterMotorCANId, MotorType.kBrushless);
-        m_ampArmMotor = new CANSparkMax(ShooterConstants.kAmpShooterMotorCANID, MotorType.kBrushless);
 
-        m_motor1.restoreFactoryDefaults();
-        m_motor2.restoreFactoryDefaults();
+        new SparkConfigurator("Shooter 1", m_motor1)
+                .idleMode(IdleMode.kBrake)
+                .smartCurrentLimit(ShooterConstants.kCurrentLimit)
+                .start();
+        new SparkConfigurator("Shooter 2", m_motor2)
+                .idleMode(IdleMode.kBrake)
+                .smartCurrentLimit(ShooterConstants.kCurrentLimit)
+                .start();
+
+        m_sysIdRoutine = new SysIdRoutine(
+                new SysIdRoutine.Config(),
+                new SysIdRoutine.Mechanism(
+                        volts -> {
+                            m_sysIdVolts = volts.in(Volts);
+                            m_motor1.setVoltage(m_sysIdVolts);
+                            m_motor2.setVoltage(m_sysIdVolts);
+                        },
+                        this::logCharacterization,
+                        this));
+    }
+
+    private void logCharacterization(SysIdRoutineLog log) {
+        double rotations = m_motor1.getEncoder().getPosition();
+        double rotationsPerSecond = m_motor1.getEncoder().getVelocity() / 60;
+
+        log.motor("shooter")
+                .voltage(m_sysIdVoltage.mut_replace(m_sysIdVolts, Volts))
+                .angularPosition(m_sysIdAngle.mut_replace(rotations, Rotations))
+                .angularVelocity(m_sysIdVelocity.mut_replace(rotationsPerSecond, RotationsPerSecond));
+
+        m_characterizer.addSample(Timer.getFPGATimestamp(), m_sysIdVolts, rotationsPerSecond, 0);
+    }
+
+    /**
+     * Characterize the shooter flywheels. Make sure there is no note loaded.
+     * 
+     * @return a command that runs all the tests and publishes the gains
+     */
+    public Command getCharacterizationCommand() {
+        return m_characterizer.getCommand(m_sysIdRoutine).finallyDo(() -> setState(ShooterState.kStopped));
+    }
+
+    /**
+     * Let the power manager lower the flywheel current limits when the battery
+     * is low. Spinning up comes before driving, holding speed comes after it.
+     *
+     * @param power the power manager
+     */
+    public void registerPower(PowerManager power) {
+        IntSupplier priority = () -> isSpinningUp()
+                ? PowerConstants.kShooterSpinUpPriority
+                : PowerConstants.kShooterPriority;
+        power.register("Shooter 1", m_motor1, ShooterConstants.kCurrentLimit, ShooterConstants.kMinCurrentLimit,
+                priority);
+        power.register("Shooter 2", m_motor2, ShooterConstants.kCurrentLimit, ShooterConstants.kMinCurrentLimit,
+                priority);
+    }
+
+    /**
+     * Check if the flywheels are still getting up to speed for a shot
+     *
+     * @return true if the shooter is on and below its target speed
+     */
+    public boolean isSpinningUp() {
+        if (m_state != ShooterState.kSpinning && m_state != ShooterState.kShooting) {
+            return false;
+        }
+
+        double targetRpm = m_speed * NeoMotorConstants.kVortexFreeSpeedRpm;
+        return Math.abs(m_motor1.getEncoder().getVelocity()) < Math.abs(targetRpm) * ShooterConstants.kSpinUpThreshold;
+    }
+
+    /**
+     * Get the flywheel speed a shot would leave at. While the flywheels are still
+     * getting up to speed this is the speed they are heading for.
+     *
+     * @return the flywheel speed in RPM
+     */
+    public double getShotRpm() {
+        if (m_state == ShooterState.kStopped || isSpinningUp()) {
+            return getTargetRpm();
+        }
+        return getFlywheelRpm();
+    }
 
-        // set coast mode to prevent damage
-        m_motor1.setIdleMode(IdleMode.kBrake);
-        m_motor2.setIdleMode(IdleMode.kBrake);
+    /**
+     * Get the measured flywheel speed
+     *
+     * @return the speed in RPM
+     */
+    public double getFlywheelRpm() {
+        return Math.abs(m_motor1.getEncoder().getVelocity());
     }
 
-    public double getAmpSpeed() {
-        return m_ampArmMotor.get();
+    /**
+     * Get the flywheel speed the shooter is set to when shooting
+     *
+     * @return the speed in RPM
+     */
+    public double getTargetRpm() {
+        return Math.abs(m_speed * NeoMotorConstants.kVortexFreeSpeedRpm);
     }
 
     /**
@@ -49,15 +164,6 @@ public class ShooterSubsystem extends SubsystemBase {
     public void setState(ShooterState state) {
         m_state = state;
 
-        double armSpeed = switch(m_state) {
-            case kPreAmp -> -1;
-            case kAmp -> -0.2;
-            case kPostAmp -> 0.3;
-            default -> 0;
-        };
-
-        m_ampArmMotor.set(armSpeed);
-
         setSpeed(m_speed);
     }
 
@@ -67,7 +173,7 @@ public class ShooterSubsystem extends SubsystemBase {
         double actualSpeed = switch(m_state) {
             case kStopped -> 0;
             case kSpinning, kShooting -> m_speed;
-            case kAmp, kPreAmp, kPostAmp  -> ShooterConstants.kAmpShotSpeed;
+            case kAmp, kPostAmp  -> ShooterConstants.kAmpShotSpeed;
         };
 
         m_motor1.set(actualSpeed);
@@ -0,0 +1,72 @@
+package frc.robot.subsystems.attachment;
+
+import frc.robot.Constants.AmpArmConstants;
+import frc.robot.Constants.PivotConstants;
+import frc.robot.subsystems.attachment.AmpArmSubsystem.AmpArmPosition;
+
+/**
+ * Plans how the pivot and the amp arm get to their goals without the arm
+ * hitting the robot. The arm can only be past
+ * {@link AmpArmConstants#kClearanceAngle} while the pivot is at or above
+ * {@link PivotConstants#kAmpArmClearancePos}, so the only ordering needed is
+ * around that line and everything else moves at once.
+ *
+ * <p>
+ * Going up to deploy the arm, the arm starts as soon as the pivot will be past
+ * the clearance by the time the arm leaves the robot, so both move together for
+ * most of the way. Going down with the arm out, the pivot is held at the
+ * clearance until the arm is back in, and asking for the arm with the pivot
+ * below the clearance raises the pivot to it first. The results are stored in
+ * fields so planning doesn't allocate.
+ */
+public class SuperstructurePlanner {
+    // Outputs of the last plan
+    private double m_pivotMinimum = PivotConstants.kGlobalMin;
+    private AmpArmPosition m_armGoal = AmpArmPosition.kStowed;
+
+    /**
+     * Plan the next step toward the goals
+     *
+     * @param pivotPosition the measured pivot position in encoder units
+     * @param pivotVelocity the measured pivot velocity in encoder units per second
+     * @param armAngle      the measured amp arm angle in radians
+     * @param armGoal       where the amp arm should end up
+     */
+    public void update(double pivotPosition, double pivotVelocity, double armAngle, AmpArmPosition armGoal) {
+        double clearance = PivotConstants.kAmpArmClearancePos;
+        boolean armIn = armAngle <= AmpArmConstants.kClearanceAngle;
+        boolean armOut = armGoal.angle > AmpArmConstants.kClearanceAngle;
+
+        // The pivot can't go below the clearance while the arm is out or about
+        // to come out
+        m_pivotMinimum = armOut || !armIn ? clearance : PivotConstants.kGlobalMin;
+
+        if (armOut && armIn) {
+            // Where the pivot will be when the arm leaves the robot if it starts
+            // now. The minimum keeps the pivot from turning back below the
+            // clearance.
+            double lead = pivotPosition + Math.max(pivotVelocity, 0) * AmpArmConstants.kClearTime;
+            m_armGoal = lead >= clearance ? armGoal : AmpArmPosition.kStowed;
+        } else {
+            m_armGoal = armGoal;
+        }
+    }
+
+    /**
+     * Get the lowest the pivot may go right now
+     *
+     * @return the position in encoder units
+     */
+    public double getPivotMinimum() {
+        return m_pivotMinimum;
+    }
+
+    /**
+     * Get where the amp arm may go right now
+     *
+     * @return the arm position
+     */
+    public AmpArmPosition getArmGoal() {
+        return m_armGoal;
+    }
+}
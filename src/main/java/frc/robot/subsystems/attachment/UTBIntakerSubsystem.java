@@ -1,28 +1,126 @@
 package frc.robot.subsystems.attachment;
 
 import com.revrobotics.CANSparkMax;
+import com.revrobotics.RelativeEncoder;
 import com.revrobotics.CANSparkBase.IdleMode;
 import com.revrobotics.CANSparkLowLevel.MotorType;
+import com.revrobotics.CANSparkLowLevel.PeriodicFrame;
 
+import edu.wpi.first.util.datalog.DoubleArrayLogEntry;
+import edu.wpi.first.wpilibj.DataLogManager;
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import frc.robot.Constants.PowerConstants;
 import frc.robot.Constants.UTBIntakerConstants;
+import frc.robot.subsystems.PowerManager;
+import frc.utils.NoteSignatureDetector;
+import frc.utils.NoteSignatureDetector.Event;
+import frc.utils.SparkConfigurator;
 
 public class UTBIntakerSubsystem extends Intaker {
     
     private final CANSparkMax m_intakeMotor1;
     private final CANSparkMax m_intakeMotor2;
+    private final RelativeEncoder m_intakeEncoder1;
+    private final RelativeEncoder m_intakeEncoder2;
 
     private IntakerState m_state = IntakerState.kStopped;
 
+    // Note contact and jams from the roller current, sampled faster than the
+    // main loop. Samples while intaking are logged as duty, amps, RPM for
+    // replaying offline.
+    private final NoteSignatureDetector m_detector = new NoteSignatureDetector(UTBIntakerConstants.kNoteSignature);
+    private final Notifier m_notifier;
+    private final DoubleArrayLogEntry m_traceLog = new DoubleArrayLogEntry(DataLogManager.getLog(),
+            "Intake/Trace");
+    private final double[] m_trace = new double[3];
+    private volatile double m_output = 0;
+
     public UTBIntakerSubsystem() {
         m_intakeMotor1 = new CANSparkMax(UTBIntakerConstants.kIntakeMotor1CANId, MotorType.kBrushless);
         m_intakeMotor2 = new CANSparkMax(UTBIntakerConstants.kIntakeMotor2CANId, MotorType.kBrushless);
 
-        m_intakeMotor1.restoreFactoryDefaults();
-        m_intakeMotor2.restoreFactoryDefaults();
+        m_intakeEncoder1 = m_intakeMotor1.getEncoder();
+        m_intakeEncoder2 = m_intakeMotor2.getEncoder();
 
         // set coast mode to prevent damage
-        m_intakeMotor1.setIdleMode(IdleMode.kCoast);
-        m_intakeMotor2.setIdleMode(IdleMode.kCoast);
+        new SparkConfigurator("Intake 1", m_intakeMotor1)
+                .idleMode(IdleMode.kCoast)
+                .smartCurrentLimit(UTBIntakerConstants.kCurrentLimit)
+                .always("Status 1 Period", () -> m_intakeMotor1.setPeriodicFramePeriod(PeriodicFrame.kStatus1,
+                        UTBIntakerConstants.kStatusPeriodMs))
+                .start();
+        new SparkConfigurator("Intake 2", m_intakeMotor2)
+                .idleMode(IdleMode.kCoast)
+                .smartCurrentLimit(UTBIntakerConstants.kCurrentLimit)
+                .always("Status 1 Period", () -> m_intakeMotor2.setPeriodicFramePeriod(PeriodicFrame.kStatus1,
+                        UTBIntakerConstants.kStatusPeriodMs))
+                .start();
+
+        m_notifier = new Notifier(this::sample);
+        m_notifier.setName("NoteSignature");
+        m_notifier.startPeriodic(UTBIntakerConstants.kSamplePeriod);
+    }
+
+    // Runs on the notifier thread
+    private void sample() {
+        double timestamp = RobotController.getFPGATime() / 1e6;
+        double output = m_output;
+        double current = m_intakeMotor1.getOutputCurrent() + m_intakeMotor2.getOutputCurrent();
+        double speed = (Math.abs(m_intakeEncoder1.getVelocity()) + Math.abs(m_intakeEncoder2.getVelocity())) / 2;
+
+        if (output != 0) {
+            m_trace[0] = output;
+            m_trace[1] = current;
+            m_trace[2] = speed;
+            m_traceLog.append(m_trace, (long) (timestamp * 1e6));
+        }
+
+        Event event = m_detector.addSample(timestamp, output, current, speed);
+        if (event == Event.kJam) {
+            DataLogManager.log(String.format("[intake] jam at %.3f s, %.1f A, %.0f RPM", timestamp, current, speed));
+        }
+    }
+
+    /**
+     * Let the power manager lower the intake current limits when the battery is
+     * low
+     * 
+     * @param power the power manager
+     */
+    public void registerPower(PowerManager power) {
+        power.register("Intake 1", m_intakeMotor1, UTBIntakerConstants.kCurrentLimit,
+                UTBIntakerConstants.kMinCurrentLimit, PowerConstants.kIntakePriority);
+        power.register("Intake 2", m_intakeMotor2, UTBIntakerConstants.kCurrentLimit,
+                UTBIntakerConstants.kMinCurrentLimit, PowerConstants.kIntakePriority);
+    }
+
+    @Override
+    public void periodic() {
+        SmartDashboard.putBoolean("Intake Note Contact", m_detector.isContact());
+        SmartDashboard.putBoolean("Intake Jammed", m_detector.isJammed());
+        SmartDashboard.putNumber("Intake Jams", m_detector.getJamCount());
+        SmartDashboard.putNumber("Intake Baseline Current", m_detector.getBaselineCurrent());
+    }
+
+    /**
+     * Get how many times a note has touched the rollers. A change between two
+     * loops means a note arrived, even if the contact was shorter than a loop.
+     * 
+     * @return the number of contacts since startup
+     */
+    public int getContactCount() {
+        return m_detector.getContactCount();
+    }
+
+    /**
+     * Check if a note is jammed in the rollers
+     * 
+     * @return true until the rollers are stopped or reversed
+     */
+    public boolean isJammed() {
+        return m_detector.isJammed();
     }
 
     @Override
@@ -51,6 +149,7 @@ public class UTBIntakerSubsystem extends Intaker {
             case kIntaking -> UTBIntakerConstants.kIntakeMotorSpeed;
         };
 
+        m_output = speed;
         m_intakeMotor1.set(speed);
         m_intakeMotor2.set(speed);
     }
@@ -0,0 +1,157 @@
+package frc.utils;
+
+import java.util.Optional;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.DriverStation.Alliance;
+import frc.robot.Constants.TargetConstants.AimingTarget;
+import frc.robot.Constants.VisionConstants;
+
+/**
+ * Caches the robot's alliance so it doesn't have to be queried from the driver
+ * station every time it is needed. The cache is refreshed from the robot on
+ * driver station connection and while disabled, which is the only time the
+ * alliance can actually change during a match.
+ */
+public final class AllianceUtils {
+    private static final double kFieldLength = VisionConstants.aprilTagLayout.getFieldLength();
+
+    private static volatile Alliance m_alliance = Alliance.Blue;
+    private static volatile boolean m_isBlue = true;
+
+    // Values precomputed for the current alliance
+    private static volatile Translation2d m_speakerTarget = AimingTarget.kSpeaker.getTarget(true);
+    private static volatile Translation2d m_ampTarget = AimingTarget.kAmp.getTarget(true);
+    private static volatile Rotation2d m_forwardHeading = new Rotation2d();
+
+    private AllianceUtils() {
+    }
+
+    /**
+     * Read the alliance from the driver station and update the cached values if it
+     * changed. Defaults to blue if the driver station hasn't reported one yet.
+     *
+     * @return true if the alliance changed
+     */
+    public static boolean refresh() {
+        Optional<Alliance> reported = DriverStation.getAlliance();
+        Alliance alliance = reported.isPresent() ? reported.get() : Alliance.Blue;
+
+        if (alliance == m_alliance) {
+            return false;
+        }
+
+        setAlliance(alliance);
+        return true;
+    }
+
+    /**
+     * Overwrite the cached alliance, recomputing all alliance dependent values
+     *
+     * @param alliance the new alliance
+     */
+    public static synchronized void setAlliance(Alliance alliance) {
+        boolean isBlue = alliance == Alliance.Blue;
+
+        m_speakerTarget = AimingTarget.kSpeaker.getTarget(isBlue);
+        m_ampTarget = AimingTarget.kAmp.getTarget(isBlue);
+        m_forwardHeading = Rotation2d.fromDegrees(isBlue ? 0 : 180);
+        m_isBlue = isBlue;
+        m_alliance = alliance;
+    }
+
+    public static Alliance getAlliance() {
+        return m_alliance;
+    }
+
+    public static boolean isBlueAlliance() {
+        return m_isBlue;
+    }
+
+    public static boolean isRedAlliance() {
+        return !m_isBlue;
+    }
+
+    /**
+     * Pick a value based on the alliance
+     *
+     * @param blueVal the value for the blue alliance
+     * @param redVal  the value for the red alliance
+     * @return the value for the current alliance
+     */
+    public static <T> T select(T blueVal, T redVal) {
+        return m_isBlue ? blueVal : redVal;
+    }
+
+    /**
+     * Pick a primitive value based on the alliance, without boxing
+     */
+    public static double select(double blueVal, double redVal) {
+        return m_isBlue ? blueVal : redVal;
+    }
+
+    /**
+     * Get the sign to apply to field relative driver inputs. The field origin
+     * stays on the blue side, so red drivers are looking at it backwards.
+     *
+     * @return 1 on blue, -1 on red
+     */
+    public static double getDriverSign() {
+        return m_isBlue ? 1 : -1;
+    }
+
+    /**
+     * Get the target for the current alliance
+     *
+     * @param target the target to aim at
+     * @return the position of the target on the field
+     */
+    public static Translation2d getTarget(AimingTarget target) {
+        return switch (target) {
+            case kSpeaker -> m_speakerTarget;
+            case kAmp -> m_ampTarget;
+        };
+    }
+
+    public static Translation2d getSpeakerTarget() {
+        return m_speakerTarget;
+    }
+
+    public static Translation2d getAmpTarget() {
+        return m_ampTarget;
+    }
+
+    /**
+     * The heading that faces away from the alliance wall
+     *
+     * @return 0 degrees on blue, 180 degrees on red
+     */
+    public static Rotation2d getForwardHeading() {
+        return m_forwardHeading;
+    }
+
+    /**
+     * Mirror a translation to the other side of the field
+     */
+    public static Translation2d flip(Translation2d translation) {
+        return new Translation2d(kFieldLength - translation.getX(), translation.getY());
+    }
+
+    /**
+     * Mirror a pose to the other side of the field
+     */
+    public static Pose2d flip(Pose2d pose) {
+        return new Pose2d(flip(pose.getTranslation()),
+                new Rotation2d(-pose.getRotation().getCos(), pose.getRotation().getSin()));
+    }
+
+    /**
+     * Mirror a blue alliance pose if we are on the red alliance
+     */
+    public static Pose2d flipIfRed(Pose2d pose) {
+        return m_isBlue ? pose : flip(pose);
+    }
+}
@@ -0,0 +1,292 @@
+package frc.utils;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import frc.robot.Constants.BallisticsConstants;
+import frc.robot.Constants.NeoMotorConstants;
+import frc.robot.Constants.PivotConstants;
+
+/**
+ * Finds the pivot position that puts a note in the speaker from the distance
+ * and the exit speed of the note. The flight is simulated with gravity and
+ * quadratic drag, starting from where the note leaves the shooter at that
+ * angle, and the flattest angle that reaches the middle of the speaker opening
+ * is found by bisection. That is too slow for the main loop, so a background
+ * thread solves a grid over distance and exit speed and the loop interpolates
+ * in it. The grid is rebuilt when the tunable drag or angle offset changes,
+ * and checked against the calibration shots each time. It only counts as
+ * calibrated while every shot is within the pivot deadzone.
+ */
+public class BallisticSolver {
+    private static final double kGravity = 9.81;
+    private static final int kBisections = 30;
+    private static final double kRebuildPeriod = 0.5; // seconds between checks for tuning changes
+
+    /** A solved grid, replaced as a whole so readers never see half of one. */
+    private record Grid(float[] positions, float[] times, int speeds) {
+    }
+
+    private final TunableNumber m_dragArea = new TunableNumber("Ballistics/Drag Area",
+            BallisticsConstants.kNoteDragArea);
+    private final TunableNumber m_angleOffset = new TunableNumber("Ballistics/Launch Angle Offset",
+            BallisticsConstants.kLaunchAngleOffset);
+    private final TunableNumber m_efficiency = new TunableNumber("Ballistics/Exit Speed Efficiency",
+            BallisticsConstants.kExitSpeedEfficiency);
+
+    private volatile Grid m_grid = null;
+    private volatile boolean m_calibrated = false;
+
+    /** Create the solver and start building the grid in the background. */
+    public BallisticSolver() {
+        Thread solver = new Thread(this::run, "BallisticSolver");
+        solver.setDaemon(true);
+        solver.setPriority(Thread.MIN_PRIORITY);
+        solver.start();
+    }
+
+    private void run() {
+        boolean first = true;
+        while (!Thread.currentThread().isInterrupted()) {
+            // Each hasChanged has to run to keep the last values current
+            boolean dragChanged = m_dragArea.hasChanged();
+            boolean offsetChanged = m_angleOffset.hasChanged();
+            boolean efficiencyChanged = m_efficiency.hasChanged();
+            if (first || dragChanged || offsetChanged) {
+                build(m_dragArea.get(), m_angleOffset.get());
+                checkCalibration();
+            } else if (efficiencyChanged) {
+                checkCalibration();
+            }
+            first = false;
+
+            try {
+                Thread.sleep((long) (kRebuildPeriod * 1000));
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void build(double dragArea, double angleOffset) {
+        double drag = 0.5 * BallisticsConstants.kAirDensity * dragArea / BallisticsConstants.kNoteMass;
+        int distances = getDistanceCount();
+        int speeds = (int) Math.round((BallisticsConstants.kMaxExitSpeed - BallisticsConstants.kMinExitSpeed)
+                / BallisticsConstants.kExitSpeedStep) + 1;
+
+        float[] positions = new float[distances * speeds];
+        float[] times = new float[distances * speeds];
+        double[] solution = new double[2];
+        for (int i = 0; i < distances; i++) {
+            double distance = BallisticsConstants.kMinDistance + i * BallisticsConstants.kDistanceStep;
+            for (int j = 0; j < speeds; j++) {
+                double speed = BallisticsConstants.kMinExitSpeed + j * BallisticsConstants.kExitSpeedStep;
+                solve(distance, speed, drag, solution);
+                positions[i * speeds + j] = (float) toPivotPosition(solution[0], angleOffset);
+                times[i * speeds + j] = (float) solution[1];
+            }
+        }
+
+        m_grid = new Grid(positions, times, speeds);
+    }
+
+    private static int getDistanceCount() {
+        return (int) Math.round((BallisticsConstants.kMaxDistance - BallisticsConstants.kMinDistance)
+                / BallisticsConstants.kDistanceStep) + 1;
+    }
+
+    /**
+     * Convert a launch angle to a pivot position
+     *
+     * @param launchAngle the launch angle in radians
+     * @param angleOffset how far the launch angle is above the pivot angle, in
+     *                    degrees
+     * @return the pivot position in pivot units
+     */
+    public static double toPivotPosition(double launchAngle, double angleOffset) {
+        return PivotConstants.kPivotHorizontalPos
+                + (Math.toDegrees(launchAngle) - angleOffset) / BallisticsConstants.kDegreesPerPivotUnit;
+    }
+
+    /**
+     * Find the flattest launch angle that reaches the speaker
+     *
+     * @param distance  the distance from the robot to the speaker target point in
+     *                  meters
+     * @param exitSpeed the speed of the note leaving the shooter in m/s
+     * @param drag      the drag constant, 0.5 * rho * Cd * A / m
+     * @param solution  filled with the launch angle in radians and the time of
+     *                  flight in seconds, both NaN if the shot can't be made
+     */
+    public static void solve(double distance, double exitSpeed, double drag, double[] solution) {
+        double horizontal = distance - BallisticsConstants.kSpeakerTargetSetback;
+        double target = BallisticsConstants.kSpeakerTargetHeight;
+
+        // Height at the speaker rises with angle up to the lob, find where it
+        // first gets high enough
+        double low = Math.toRadians(0);
+        double high = Double.NaN;
+        for (double angle = Math.toRadians(5); angle <= Math.toRadians(85); angle += Math.toRadians(5)) {
+            if (simulate(angle, exitSpeed, horizontal, drag, solution) >= target) {
+                high = angle;
+                break;
+            }
+            low = angle;
+        }
+        if (Double.isNaN(high)) {
+            solution[0] = Double.NaN;
+            solution[1] = Double.NaN;
+            return;
+        }
+
+        for (int i = 0; i < kBisections; i++) {
+            double middle = (low + high) / 2;
+            if (simulate(middle, exitSpeed, horizontal, drag, solution) >= target) {
+                high = middle;
+            } else {
+                low = middle;
+            }
+        }
+
+        simulate(high, exitSpeed, horizontal, drag, solution);
+        solution[0] = high;
+    }
+
+    /**
+     * Fly a note until it reaches the speaker
+     *
+     * @return the height when the note reaches the distance, or negative
+     *         infinity if it falls short. The time of flight is put in
+     *         solution[1].
+     */
+    private static double simulate(double angle, double exitSpeed, double horizontal, double drag,
+            double[] solution) {
+        double dt = BallisticsConstants.kSimulationStep;
+        double x = BallisticsConstants.kShooterLength * Math.cos(angle);
+        double y = BallisticsConstants.kPivotHeight + BallisticsConstants.kShooterLength * Math.sin(angle);
+        double vx = exitSpeed * Math.cos(angle);
+        double vy = exitSpeed * Math.sin(angle);
+        double t = 0;
+
+        while (x < horizontal) {
+            if (vx <= 0 || y < 0) {
+                return Double.NEGATIVE_INFINITY;
+            }
+
+            double speed = Math.hypot(vx, vy);
+            double lastX = x;
+            double lastY = y;
+            x += vx * dt;
+            y += vy * dt;
+            vx -= drag * speed * vx * dt;
+            vy -= (kGravity + drag * speed * vy) * dt;
+            t += dt;
+
+            if (x >= horizontal) {
+                // Interpolate back to the exact distance
+                double fraction = (horizontal - lastX) / (x - lastX);
+                solution[1] = t - dt + fraction * dt;
+                return lastY + fraction * (y - lastY);
+            }
+        }
+
+        // Already past the target when the note leaves the shooter
+        solution[1] = 0;
+        return y;
+    }
+
+    /**
+     * Get the exit speed of the note for a flywheel speed
+     *
+     * @param flywheelRpm the speed of the flywheel
+     * @return the exit speed in m/s
+     */
+    public double getExitSpeed(double flywheelRpm) {
+        return getExitSpeed(flywheelRpm, m_efficiency.get());
+    }
+
+    /**
+     * Get the exit speed of the note for a flywheel speed
+     *
+     * @param flywheelRpm the speed of the flywheel
+     * @param efficiency  the exit speed as a fraction of the flywheel surface
+     *                    speed
+     * @return the exit speed in m/s
+     */
+    public static double getExitSpeed(double flywheelRpm, double efficiency) {
+        return Math.abs(flywheelRpm) / 60 * Math.PI * BallisticsConstants.kShooterWheelDiameter * efficiency;
+    }
+
+    /**
+     * Get the pivot position for a shot
+     *
+     * @param distance  the distance from the robot to the speaker target point in
+     *                  meters
+     * @param exitSpeed the exit speed of the note in m/s
+     * @return the pivot position, or NaN if the grid isn't ready or the shot
+     *         can't be made
+     */
+    public double getPivotPosition(double distance, double exitSpeed) {
+        Grid grid = m_grid;
+        return grid == null ? Double.NaN : interpolate(grid, grid.positions(), distance, exitSpeed);
+    }
+
+    /**
+     * Get how long a note takes to reach the speaker
+     *
+     * @param distance  the distance from the robot to the speaker target point in
+     *                  meters
+     * @param exitSpeed the exit speed of the note in m/s
+     * @return the time of flight in seconds, or NaN if the grid isn't ready or
+     *         the shot can't be made
+     */
+    public double getTimeOfFlight(double distance, double exitSpeed) {
+        Grid grid = m_grid;
+        return grid == null ? Double.NaN : interpolate(grid, grid.times(), distance, exitSpeed);
+    }
+
+    private static double interpolate(Grid grid, float[] values, double distance, double exitSpeed) {
+        double i = (distance - BallisticsConstants.kMinDistance) / BallisticsConstants.kDistanceStep;
+        double j = (exitSpeed - BallisticsConstants.kMinExitSpeed) / BallisticsConstants.kExitSpeedStep;
+        i = Math.min(Math.max(i, 0), getDistanceCount() - 1);
+        j = Math.min(Math.max(j, 0), grid.speeds() - 1);
+
+        int i0 = Math.min((int) i, getDistanceCount() - 2);
+        int j0 = Math.min((int) j, grid.speeds() - 2);
+        double di = i - i0;
+        double dj = j - j0;
+        int speeds = grid.speeds();
+
+        // NaN corners make the result NaN, so unreachable shots stay unreachable
+        double near = values[i0 * speeds + j0] * (1 - dj) + values[i0 * speeds + j0 + 1] * dj;
+        double far = values[(i0 + 1) * speeds + j0] * (1 - dj) + values[(i0 + 1) * speeds + j0 + 1] * dj;
+        return near * (1 - di) + far * di;
+    }
+
+    /**
+     * Check if the grid hits the calibration shots. Until it does the solver
+     * shouldn't be trusted to aim.
+     *
+     * @return true if every calibration shot is within the pivot deadzone
+     */
+    public boolean isCalibrated() {
+        return m_calibrated;
+    }
+
+    // Compare the grid with the shots known to go in
+    private void checkCalibration() {
+        double exitSpeed = getExitSpeed(NeoMotorConstants.kVortexFreeSpeedRpm);
+        double worst = 0;
+        for (double[] shot : BallisticsConstants.kCalibrationShots) {
+            double error = getPivotPosition(shot[0], exitSpeed) - shot[1];
+            worst = Double.isNaN(error) ? Double.POSITIVE_INFINITY : Math.max(worst, Math.abs(error));
+        }
+
+        m_calibrated = worst <= PivotConstants.kPositionDeadzone;
+        SmartDashboard.putNumber("Ballistics/Calibration Error", worst);
+        SmartDashboard.putBoolean("Ballistics/Calibrated", m_calibrated);
+        if (!m_calibrated) {
+            DriverStation.reportWarning("Ballistic solver is " + worst
+                    + " pivot units off a calibration shot, check the ballistics constants", false);
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package frc.utils;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Path;
+
+import edu.wpi.first.wpilibj.DataLogManager;
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import edu.wpi.first.wpilibj2.command.Subsystem;
+import edu.wpi.first.wpilibj2.command.WrapperCommand;
+
+/**
+ * Records when every scheduled command starts, runs, and ends, for looking at
+ * the real timing of autos and button sequences after a match. Events go into a
+ * preallocated ring buffer so tracing doesn't allocate in the main loop, and
+ * {@link #export()} writes them out as Chrome trace event JSON that can be
+ * opened in chrome://tracing or Perfetto.
+ *
+ * <p>
+ * The scheduler only calls back after a command's execute, so each execute is
+ * timed from the previous traced event in the same loop. The tracer registers a
+ * subsystem of its own after all the others to mark where the subsystem
+ * periodics end, so construct it after the rest of the robot.
+ *
+ * <p>
+ * The scheduler only sees top level commands. Commands that run inside a
+ * composition, like the named commands of an auto, are traced by wrapping them
+ * with {@link #trace(Command)}, which times them directly.
+ */
+public class CommandTracer {
+    private static final int kCapacity = 16384;
+
+    private static final byte kInitialize = 0;
+    private static final byte kExecute = 1;
+    private static final byte kFinish = 2;
+    private static final byte kInterrupt = 3;
+
+    // Event ring buffer
+    private final long[] m_timestamps = new long[kCapacity]; // microseconds
+    private final int[] m_durations = new int[kCapacity]; // microseconds
+    private final byte[] m_types = new byte[kCapacity];
+    private final Command[] m_commands = new Command[kCapacity];
+    private int m_head = 0;
+    private int m_size = 0;
+
+    // When the last top level event in this loop happened, the start of the next
+    // execute
+    private long m_lastEventTime = 0;
+
+    // The running tracer, for commands wrapped with trace()
+    private static CommandTracer s_instance;
+
+    /** Create a tracer and hook it into the command scheduler. */
+    public CommandTracer() {
+        CommandScheduler scheduler = CommandScheduler.getInstance();
+        scheduler.onCommandInitialize(command -> recordScheduled(kInitialize, command));
+        scheduler.onCommandExecute(command -> recordScheduled(kExecute, command));
+        scheduler.onCommandFinish(command -> recordScheduled(kFinish, command));
+        scheduler.onCommandInterrupt(command -> recordScheduled(kInterrupt, command));
+
+        // Subsystem periodics run in registration order, so this runs just before
+        // the commands execute
+        scheduler.registerSubsystem(new Subsystem() {
+            @Override
+            public void periodic() {
+                m_lastEventTime = RobotController.getFPGATime();
+            }
+        });
+
+        s_instance = this;
+    }
+
+    /**
+     * Wrap a command so it is traced even when it runs inside a composition. The
+     * wrapper has the same requirements as the command and starts with its name.
+     *
+     * @param command the command to trace
+     * @return the traced command
+     */
+    public static Command trace(Command command) {
+        return new TracedCommand(command);
+    }
+
+    // Events from the scheduler, each execute runs from the previous event
+    private void recordScheduled(byte type, Command command) {
+        long now = RobotController.getFPGATime();
+        record(type, command, now, type == kExecute ? now - m_lastEventTime : 0);
+        m_lastEventTime = now;
+    }
+
+    private void record(byte type, Command command, long timestamp, long duration) {
+        int index;
+        if (m_size < kCapacity) {
+            index = (m_head + m_size) % kCapacity;
+            m_size++;
+        } else {
+            // Overwrite the oldest event
+            index = m_head;
+            m_head = (m_head + 1) % kCapacity;
+        }
+
+        m_timestamps[index] = timestamp;
+        m_durations[index] = (int) duration;
+        m_types[index] = type;
+        m_commands[index] = command;
+    }
+
+    /**
+     * Records its command's events itself. When it is scheduled on its own the
+     * scheduler already records them, so it only records while inside a
+     * composition. Nested events don't move the start of the next top level
+     * execute, so the composition's execute still covers its children.
+     */
+    private static class TracedCommand extends WrapperCommand {
+        TracedCommand(Command command) {
+            super(command);
+        }
+
+        private void record(byte type, long start) {
+            CommandTracer tracer = s_instance;
+            if (tracer != null && !CommandScheduler.getInstance().isScheduled(this)) {
+                long now = RobotController.getFPGATime();
+                tracer.record(type, this, type == kExecute ? now : start, type == kExecute ? now - start : 0);
+            }
+        }
+
+        @Override
+        public void initialize() {
+            m_command.initialize();
+            record(kInitialize, RobotController.getFPGATime());
+        }
+
+        @Override
+        public void execute() {
+            long start = RobotController.getFPGATime();
+            m_command.execute();
+            record(kExecute, start);
+        }
+
+        @Override
+        public void end(boolean interrupted) {
+            m_command.end(interrupted);
+            record(interrupted ? kInterrupt : kFinish, RobotController.getFPGATime());
+        }
+    }
+
+    /**
+     * Write the recorded events to a trace file in the log directory and clear
+     * them. The events are copied and written on a background thread, call this
+     * when the robot is disabled.
+     */
+    public void export() {
+        if (m_size == 0) {
+            return;
+        }
+
+        int size = m_size;
+        long[] timestamps = new long[size];
+        int[] durations = new int[size];
+        byte[] types = new byte[size];
+        Command[] commands = new Command[size];
+        for (int i = 0; i < size; i++) {
+            int index = (m_head + i) % kCapacity;
+            timestamps[i] = m_timestamps[index];
+            durations[i] = m_durations[index];
+            types[i] = m_types[index];
+            commands[i] = m_commands[index];
+            m_commands[index] = null;
+        }
+        m_head = 0;
+        m_size = 0;
+
+        Path file = Path.of(DataLogManager.getLogDir(), "commands_" + timestamps[0] + ".json");
+        Thread writer = new Thread(() -> write(file, timestamps, durations, types, commands), "CommandTraceWriter");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    private static void write(Path file, long[] timestamps, int[] durations, byte[] types, Command[] commands) {
+        try (BufferedWriter out = new BufferedWriter(new FileWriter(file.toFile()))) {
+            out.write("{\"traceEvents\":[\n");
+            for (int i = 0; i < timestamps.length; i++) {
+                Command command = commands[i];
+                String name = command.getName().replace("\\", "\\\\").replace("\"", "\\\"");
+                int id = System.identityHashCode(command);
+
+                // Each command's lifetime is an async span, executes are slices inside
+                // the loop
+                String event = switch (types[i]) {
+                    case kInitialize -> String.format(
+                            "{\"name\":\"%s\",\"cat\":\"command\",\"ph\":\"b\",\"id\":%d,\"ts\":%d,\"pid\":1,\"tid\":1}",
+                            name, id, timestamps[i]);
+                    case kExecute -> String.format(
+                            "{\"name\":\"%s\",\"cat\":\"execute\",\"ph\":\"X\",\"ts\":%d,\"dur\":%d,\"pid\":1,\"tid\":1}",
+                            name, timestamps[i] - durations[i], durations[i]);
+                    default -> String.format(
+                            "{\"name\":\"%s\",\"cat\":\"command\",\"ph\":\"e\",\"id\":%d,\"ts\":%d,\"pid\":1,\"tid\":1,"
+                                    + "\"args\":{\"interrupted\":%b}}",
+                            name, id, timestamps[i], types[i] == kInterrupt);
+                };
+
+                out.write(event);
+                out.write(i < timestamps.length - 1 ? ",\n" : "\n");
+            }
+            out.write("]}\n");
+            DataLogManager.log("[trace] wrote " + timestamps.length + " command events to " + file);
+        } catch (IOException e) {
+            DataLogManager.log("[trace] failed to write " + file + ": " + e.getMessage());
+        }
+    }
+}
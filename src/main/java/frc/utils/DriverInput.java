@@ -0,0 +1,168 @@
+package frc.utils;
+
+import edu.wpi.first.hal.DriverStationJNI;
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.util.WPIUtilJNI;
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.XboxController;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import edu.wpi.first.wpilibj2.command.Subsystem;
+import frc.robot.Constants.OIConstants;
+
+/**
+ * Shapes the driver's sticks into drive commands. The sticks are read once per
+ * loop, before any command runs, so every drive command sees the same values.
+ * The translation stick gets a radial deadband so diagonals aren't snapped to
+ * the axes, both sticks get an exponential curve for finer control near
+ * center, and holding the left bumper scales everything down for lining up.
+ * The results are stored in fields so reading them doesn't allocate. The input
+ * is stamped with when its driver station packet arrived, so its age includes
+ * the wait for the loop.
+ */
+public class DriverInput {
+    private final XboxController m_controller;
+
+    // Curves can be tuned from the dashboard
+    private final TunableNumber m_translationExpo = new TunableNumber("Input/Translation Expo",
+            OIConstants.kTranslationExpo);
+    private final TunableNumber m_rotationExpo = new TunableNumber("Input/Rotation Expo",
+            OIConstants.kRotationExpo);
+    private final TunableNumber m_precisionScale = new TunableNumber("Input/Precision Scale",
+            OIConstants.kPrecisionScale);
+
+    // Shaped output, -1 to 1, x forward and y left from the driver's view
+    private double m_x = 0;
+    private double m_y = 0;
+    private double m_rotation = 0;
+    private boolean m_precision = false;
+    private long m_timestamp = 0; // microseconds
+    private volatile long m_packetTime = -1; // microseconds, when the last DS packet arrived
+
+    /**
+     * Create a new input pipeline and start sampling the controller each loop
+     *
+     * @param controller the driver's controller
+     */
+    public DriverInput(XboxController controller) {
+        m_controller = controller;
+
+        // Subsystem periodics run before commands, so the input is fresh for them
+        CommandScheduler.getInstance().registerSubsystem(new Subsystem() {
+            @Override
+            public void periodic() {
+                update();
+            }
+        });
+
+        Thread packets = new Thread(this::stampPackets, "DriverInputPackets");
+        packets.setDaemon(true);
+        packets.start();
+    }
+
+    // Note the time each driver station packet arrives, the main loop only
+    // sees it once it gets around to reading it
+    private void stampPackets() {
+        int event = WPIUtilJNI.createEvent(false, false);
+        DriverStationJNI.provideNewDataEventHandle(event);
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WPIUtilJNI.waitForObject(event);
+                m_packetTime = RobotController.getFPGATime();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            DriverStationJNI.removeNewDataEventHandle(event);
+            WPIUtilJNI.destroyEvent(event);
+        }
+    }
+
+    private void update() {
+        long packetTime = m_packetTime;
+        m_timestamp = packetTime >= 0 ? packetTime : RobotController.getFPGATime();
+
+        // Stick forward and left are negative on the controller
+        double x = -m_controller.getLeftY();
+        double y = -m_controller.getLeftX();
+        double rotation = -m_controller.getRightX();
+        m_precision = m_controller.getLeftBumper();
+
+        // Deadband and shape the stick magnitude so the direction is kept
+        double magnitude = Math.hypot(x, y);
+        double shaped = expo(MathUtil.applyDeadband(Math.min(magnitude, 1), OIConstants.kDriveDeadband),
+                m_translationExpo.get());
+        double scale = magnitude > 0 ? shaped / magnitude : 0;
+        m_x = x * scale;
+        m_y = y * scale;
+
+        m_rotation = expo(MathUtil.applyDeadband(rotation, OIConstants.kDriveDeadband), m_rotationExpo.get());
+
+        if (m_precision) {
+            double precision = m_precisionScale.get();
+            m_x *= precision;
+            m_y *= precision;
+            m_rotation *= precision;
+        }
+    }
+
+    /**
+     * Blend between a linear and a cubic response
+     *
+     * @param value the input, -1 to 1
+     * @param expo  0 for linear, 1 for fully cubic
+     * @return the shaped value, -1 to 1
+     */
+    private static double expo(double value, double expo) {
+        return (1 - expo) * value + expo * value * value * value;
+    }
+
+    /**
+     * Get the forward speed the driver wants
+     *
+     * @return the speed from -1 to 1, forward from the driver's view
+     */
+    public double getX() {
+        return m_x;
+    }
+
+    /**
+     * Get the sideways speed the driver wants
+     *
+     * @return the speed from -1 to 1, left from the driver's view
+     */
+    public double getY() {
+        return m_y;
+    }
+
+    /**
+     * Get the rotation speed the driver wants
+     *
+     * @return the speed from -1 to 1, counterclockwise positive
+     */
+    public double getRotation() {
+        return m_rotation;
+    }
+
+    public boolean isPrecisionMode() {
+        return m_precision;
+    }
+
+    /**
+     * Get when the driver station packet with these sticks arrived
+     *
+     * @return the FPGA time in seconds
+     */
+    public double getTimestamp() {
+        return m_timestamp / 1e6;
+    }
+
+    /**
+     * Get how long ago the packet with the sticks arrived, call after the drive
+     * command is sent to measure the input latency on the robot
+     *
+     * @return the age of the input in seconds
+     */
+    public double getAge() {
+        return (RobotController.getFPGATime() - m_timestamp) / 1e6;
+    }
+}
@@ -0,0 +1,200 @@
+package frc.utils;
+
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.Commands;
+import edu.wpi.first.wpilibj2.command.sysid.SysIdRoutine;
+import edu.wpi.first.wpilibj2.command.sysid.SysIdRoutine.Direction;
+
+/**
+ * Solves for feedforward gains on the robot while a SysId routine runs. Each
+ * logged sample is added to a least squares fit of
+ * {@code V = kS * sign(v) + kV * v + kA * a (+ kG * cos(position))}, and the
+ * gains are published to the dashboard when the routine finishes. The full
+ * data is still in the robot's data log for the SysId tool.
+ */
+public class FeedforwardCharacterizer {
+    // Samples slower than this can't tell which way kS points
+    private static final double kMinVelocity = 1e-3;
+    // A gap longer than this between samples means a new test started
+    private static final double kMaxSampleGap = 0.1;
+
+    private final String m_name;
+    private final int m_size;
+
+    // Normal equations for [kS, kV, kA, kG]
+    private final double[][] m_ata;
+    private final double[] m_atb;
+    private final double[] m_row;
+    private int m_samples = 0;
+
+    private double m_lastTimestamp = Double.NaN;
+    private double m_lastVelocity = 0;
+
+    /**
+     * Create a new characterizer
+     *
+     * @param name    the name of the mechanism, used for the dashboard
+     * @param gravity whether to solve for kG, for arms
+     */
+    public FeedforwardCharacterizer(String name, boolean gravity) {
+        m_name = name;
+        m_size = gravity ? 4 : 3;
+        m_ata = new double[m_size][m_size];
+        m_atb = new double[m_size];
+        m_row = new double[m_size];
+    }
+
+    /**
+     * Add a sample to the fit
+     *
+     * @param timestamp the time of the sample in seconds
+     * @param voltage   the voltage applied to the mechanism
+     * @param velocity  the velocity of the mechanism
+     * @param angle     the angle of the mechanism from horizontal in radians, only
+     *                  used for kG
+     */
+    public void addSample(double timestamp, double voltage, double velocity, double angle) {
+        double dt = timestamp - m_lastTimestamp;
+        double lastVelocity = m_lastVelocity;
+        m_lastTimestamp = timestamp;
+        m_lastVelocity = velocity;
+
+        // Need two samples in a row from the same test to get an acceleration
+        if (Double.isNaN(dt) || dt <= 0 || dt > kMaxSampleGap || Math.abs(velocity) < kMinVelocity) {
+            return;
+        }
+
+        m_row[0] = Math.signum(velocity);
+        m_row[1] = velocity;
+        m_row[2] = (velocity - lastVelocity) / dt;
+        if (m_size > 3) {
+            m_row[3] = Math.cos(angle);
+        }
+
+        for (int i = 0; i < m_size; i++) {
+            for (int j = 0; j < m_size; j++) {
+                m_ata[i][j] += m_row[i] * m_row[j];
+            }
+            m_atb[i] += m_row[i] * voltage;
+        }
+        m_samples++;
+    }
+
+    /** Throw away all samples. */
+    public void reset() {
+        for (int i = 0; i < m_size; i++) {
+            Arrays.fill(m_ata[i], 0);
+        }
+        Arrays.fill(m_atb, 0);
+        m_samples = 0;
+        m_lastTimestamp = Double.NaN;
+    }
+
+    /**
+     * Solve for the gains from the samples so far
+     *
+     * @return the gains as [kS, kV, kA, (kG)], or null if there isn't enough data
+     */
+    public double[] solve() {
+        if (m_samples < m_size) {
+            return null;
+        }
+
+        // Gaussian elimination with partial pivoting on a copy
+        double[][] a = new double[m_size][m_size + 1];
+        for (int i = 0; i < m_size; i++) {
+            System.arraycopy(m_ata[i], 0, a[i], 0, m_size);
+            a[i][m_size] = m_atb[i];
+        }
+
+        for (int col = 0; col < m_size; col++) {
+            int pivot = col;
+            for (int row = col + 1; row < m_size; row++) {
+                if (Math.abs(a[row][col]) > Math.abs(a[pivot][col])) {
+                    pivot = row;
+                }
+            }
+            if (Math.abs(a[pivot][col]) < 1e-12) {
+                return null;
+            }
+
+            double[] temp = a[col];
+            a[col] = a[pivot];
+            a[pivot] = temp;
+
+            for (int row = col + 1; row < m_size; row++) {
+                double factor = a[row][col] / a[col][col];
+                for (int k = col; k <= m_size; k++) {
+                    a[row][k] -= factor * a[col][k];
+                }
+            }
+        }
+
+        double[] gains = new double[m_size];
+        for (int row = m_size - 1; row >= 0; row--) {
+            double sum = a[row][m_size];
+            for (int k = row + 1; k < m_size; k++) {
+                sum -= a[row][k] * gains[k];
+            }
+            gains[row] = sum / a[row][row];
+        }
+
+        return gains;
+    }
+
+    /** Solve and put the gains on the dashboard. */
+    public void publish() {
+        double[] gains = solve();
+        if (gains == null) {
+            DriverStation.reportWarning("Not enough data to characterize " + m_name, false);
+            return;
+        }
+
+        SmartDashboard.putNumber("SysId/" + m_name + "/kS", gains[0]);
+        SmartDashboard.putNumber("SysId/" + m_name + "/kV", gains[1]);
+        SmartDashboard.putNumber("SysId/" + m_name + "/kA", gains[2]);
+        if (m_size > 3) {
+            SmartDashboard.putNumber("SysId/" + m_name + "/kG", gains[3]);
+        }
+        SmartDashboard.putNumber("SysId/" + m_name + "/Samples", m_samples);
+    }
+
+    /**
+     * Build a command that runs all four SysId tests and then publishes the
+     * gains
+     *
+     * @param routine      the routine to run
+     * @param forwardLimit stops a forward test early when true, to protect
+     *                     mechanisms with limited travel
+     * @param reverseLimit stops a reverse test early when true
+     * @return the characterization command
+     */
+    public Command getCommand(SysIdRoutine routine, BooleanSupplier forwardLimit, BooleanSupplier reverseLimit) {
+        return Commands.sequence(
+                Commands.runOnce(this::reset),
+                routine.quasistatic(Direction.kForward).until(forwardLimit),
+                Commands.waitSeconds(1),
+                routine.quasistatic(Direction.kReverse).until(reverseLimit),
+                Commands.waitSeconds(1),
+                routine.dynamic(Direction.kForward).until(forwardLimit),
+                Commands.waitSeconds(1),
+                routine.dynamic(Direction.kReverse).until(reverseLimit))
+                .finallyDo(this::publish);
+    }
+
+    /**
+     * Build a command that runs all four SysId tests and then publishes the
+     * gains
+     *
+     * @param routine the routine to run
+     * @return the characterization command
+     */
+    public Command getCommand(SysIdRoutine routine) {
+        return getCommand(routine, () -> false, () -> false);
+    }
+}
@@ -0,0 +1,173 @@
+package frc.utils;
+
+/**
+ * Recognizes a note touching the intake rollers from their current and speed.
+ * Free running rollers draw a steady current at a steady speed, and both are
+ * learned as a baseline while nothing is in the intake. A note being grabbed
+ * pushes the current up and the speed down at the same time, and that has to
+ * hold for a moment to count as contact. If the speed then nearly stalls under
+ * load the note is jammed.
+ *
+ * <p>
+ * The detector only does math on the samples it is given, so it can run on a
+ * fast notifier on the robot and replay recorded traces offline with
+ * {@code frc.tools.IntakeTraceReplay}.
+ */
+public class NoteSignatureDetector {
+    /**
+     * The thresholds that make up a note signature
+     *
+     * @param currentRise  amps above the baseline current for contact
+     * @param speedDrop    fraction of the baseline speed lost for contact
+     * @param contactTime  seconds both have to hold for contact
+     * @param jamSpeed     fraction of the baseline speed below which a loaded
+     *                     roller is jammed
+     * @param jamTime      seconds the roller has to stay that slow for a jam
+     * @param spinUpTime   seconds after starting before samples are used, to skip
+     *                     the inrush
+     * @param baselineGain how fast the baseline follows free running samples,
+     *                     0 to 1 per sample
+     */
+    public record Signature(double currentRise, double speedDrop, double contactTime, double jamSpeed,
+            double jamTime, double spinUpTime, double baselineGain) {
+    }
+
+    public enum Event {
+        kNone,
+        kContact,
+        kJam
+    }
+
+    private final Signature m_signature;
+
+    // Free running baseline
+    private double m_baselineCurrent = Double.NaN;
+    private double m_baselineSpeed = Double.NaN;
+
+    private double m_runStart = Double.NaN; // when the rollers started intaking
+    private double m_signatureStart = Double.NaN;
+    private double m_jamStart = Double.NaN;
+    private boolean m_contact = false;
+    private boolean m_jammed = false;
+    private int m_contactCount = 0;
+    private int m_jamCount = 0;
+
+    /**
+     * Create a new detector
+     *
+     * @param signature the thresholds to detect with
+     */
+    public NoteSignatureDetector(Signature signature) {
+        m_signature = signature;
+    }
+
+    /**
+     * Check a sample of the intake rollers. Called with each new sample, and can
+     * be used to replay recorded traces.
+     *
+     * @param timestamp the time of the sample in seconds
+     * @param output    the commanded duty cycle, positive intakes
+     * @param current   the roller current in amps
+     * @param speed     the roller speed in RPM
+     * @return the event this sample started, if any
+     */
+    public synchronized Event addSample(double timestamp, double output, double current, double speed) {
+        if (output <= 0) {
+            // Stopped or reversed, start over when intaking again
+            m_runStart = Double.NaN;
+            m_signatureStart = Double.NaN;
+            m_jamStart = Double.NaN;
+            m_contact = false;
+            m_jammed = false;
+            return Event.kNone;
+        }
+
+        if (Double.isNaN(m_runStart)) {
+            m_runStart = timestamp;
+        }
+        if (timestamp - m_runStart < m_signature.spinUpTime()) {
+            return Event.kNone;
+        }
+        if (Double.isNaN(m_baselineCurrent)) {
+            m_baselineCurrent = current;
+            m_baselineSpeed = speed;
+            return Event.kNone;
+        }
+
+        double rise = current - m_baselineCurrent;
+        double drop = m_baselineSpeed > 0 ? 1 - speed / m_baselineSpeed : 0;
+        boolean loaded = rise >= m_signature.currentRise();
+        Event event = Event.kNone;
+
+        if (loaded && drop >= m_signature.speedDrop()) {
+            if (Double.isNaN(m_signatureStart)) {
+                m_signatureStart = timestamp;
+            }
+            if (!m_contact && timestamp - m_signatureStart >= m_signature.contactTime()) {
+                m_contact = true;
+                m_contactCount++;
+                event = Event.kContact;
+            }
+        } else {
+            m_signatureStart = Double.NaN;
+            if (rise < m_signature.currentRise() / 2) {
+                // The note has passed, or there never was one
+                m_contact = false;
+            }
+            if (!m_contact && !loaded) {
+                m_baselineCurrent += (current - m_baselineCurrent) * m_signature.baselineGain();
+                m_baselineSpeed += (speed - m_baselineSpeed) * m_signature.baselineGain();
+            }
+        }
+
+        if (loaded && speed < m_baselineSpeed * m_signature.jamSpeed()) {
+            if (Double.isNaN(m_jamStart)) {
+                m_jamStart = timestamp;
+            }
+            if (!m_jammed && timestamp - m_jamStart >= m_signature.jamTime()) {
+                m_jammed = true;
+                m_jamCount++;
+                event = Event.kJam;
+            }
+        } else {
+            m_jamStart = Double.NaN;
+        }
+
+        return event;
+    }
+
+    /**
+     * Check if a note is touching the rollers right now
+     *
+     * @return true from contact until the current falls back toward the baseline
+     */
+    public synchronized boolean isContact() {
+        return m_contact;
+    }
+
+    /**
+     * Check if the rollers are jammed. A jam stays until the rollers are stopped
+     * or reversed.
+     *
+     * @return true if jammed
+     */
+    public synchronized boolean isJammed() {
+        return m_jammed;
+    }
+
+    public synchronized int getContactCount() {
+        return m_contactCount;
+    }
+
+    public synchronized int getJamCount() {
+        return m_jamCount;
+    }
+
+    public synchronized double getBaselineCurrent() {
+        return m_baselineCurrent;
+    }
+
+    public synchronized double getBaselineSpeed() {
+        return m_baselineSpeed;
+    }
+}
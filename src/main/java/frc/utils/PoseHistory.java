@@ -0,0 +1,206 @@
+package frc.utils;
+
+import java.util.Optional;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+
+/**
+ * A fixed size history of robot poses and field relative velocities keyed by
+ * FPGA timestamp. Samples are stored in primitive ring buffers so recording and
+ * looking up a sample doesn't allocate. Lookups binary search the buffer and
+ * linearly interpolate between the two surrounding samples.
+ */
+public class PoseHistory {
+    // Indices into the sample array filled by sample()
+    public static final int kX = 0;
+    public static final int kY = 1;
+    public static final int kTheta = 2;
+    public static final int kVx = 3;
+    public static final int kVy = 4;
+    public static final int kOmega = 5;
+    public static final int kSampleSize = 6;
+
+    private final int m_capacity;
+
+    private final double[] m_timestamps;
+    private final double[] m_x;
+    private final double[] m_y;
+    private final double[] m_theta;
+    private final double[] m_vx;
+    private final double[] m_vy;
+    private final double[] m_omega;
+
+    // Index of the oldest sample and the number of samples stored
+    private int m_head = 0;
+    private int m_size = 0;
+
+    /**
+     * Create a new pose history
+     *
+     * @param capacity the number of samples to keep
+     */
+    public PoseHistory(int capacity) {
+        m_capacity = capacity;
+
+        m_timestamps = new double[capacity];
+        m_x = new double[capacity];
+        m_y = new double[capacity];
+        m_theta = new double[capacity];
+        m_vx = new double[capacity];
+        m_vy = new double[capacity];
+        m_omega = new double[capacity];
+    }
+
+    /**
+     * Record a sample. Samples must be added in increasing timestamp order, older
+     * ones are ignored.
+     *
+     * @param timestamp the FPGA timestamp of the sample in seconds
+     * @param pose      the field pose of the robot
+     * @param speeds    the robot relative speeds of the robot
+     */
+    public void addSample(double timestamp, Pose2d pose, ChassisSpeeds speeds) {
+        Rotation2d heading = pose.getRotation();
+
+        // Rotate the robot relative speeds onto the field
+        double vx = speeds.vxMetersPerSecond * heading.getCos() - speeds.vyMetersPerSecond * heading.getSin();
+        double vy = speeds.vxMetersPerSecond * heading.getSin() + speeds.vyMetersPerSecond * heading.getCos();
+
+        addSample(timestamp, pose.getX(), pose.getY(), heading.getRadians(), vx, vy, speeds.omegaRadiansPerSecond);
+    }
+
+    /**
+     * Record a sample. Samples must be added in increasing timestamp order, older
+     * ones are ignored.
+     *
+     * @param timestamp the FPGA timestamp of the sample in seconds
+     * @param x         field x position in meters
+     * @param y         field y position in meters
+     * @param theta     field heading in radians
+     * @param vx        field relative x velocity in m/s
+     * @param vy        field relative y velocity in m/s
+     * @param omega     angular velocity in rad/s
+     */
+    public void addSample(double timestamp, double x, double y, double theta, double vx, double vy,
+            double omega) {
+        if (m_size > 0 && timestamp <= m_timestamps[physicalIndex(m_size - 1)]) {
+            return;
+        }
+
+        int index;
+        if (m_size < m_capacity) {
+            index = physicalIndex(m_size);
+            m_size++;
+        } else {
+            // Overwrite the oldest sample
+            index = m_head;
+            m_head = (m_head + 1) % m_capacity;
+        }
+
+        m_timestamps[index] = timestamp;
+        m_x[index] = x;
+        m_y[index] = y;
+        m_theta[index] = theta;
+        m_vx[index] = vx;
+        m_vy[index] = vy;
+        m_omega[index] = omega;
+    }
+
+    /**
+     * Remove all samples, for example after the pose is reset
+     */
+    public void clear() {
+        m_head = 0;
+        m_size = 0;
+    }
+
+    public boolean isEmpty() {
+        return m_size == 0;
+    }
+
+    public double getOldestTimestamp() {
+        return m_size == 0 ? Double.NaN : m_timestamps[m_head];
+    }
+
+    public double getLatestTimestamp() {
+        return m_size == 0 ? Double.NaN : m_timestamps[physicalIndex(m_size - 1)];
+    }
+
+    /**
+     * Look up where the robot was at a timestamp, without allocating. Timestamps
+     * outside of the history are clamped to the oldest or latest sample.
+     *
+     * @param timestamp the FPGA timestamp in seconds
+     * @param out       an array of at least {@link #kSampleSize} to fill, indexed
+     *                  by {@link #kX}, {@link #kY}, etc.
+     * @return false if the history is empty
+     */
+    public boolean sample(double timestamp, double[] out) {
+        if (m_size == 0) {
+            return false;
+        }
+
+        // Binary search for the first sample at or after the timestamp
+        int low = 0;
+        int high = m_size - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (m_timestamps[physicalIndex(mid)] < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        int after = physicalIndex(low);
+        if (low == 0 || m_timestamps[after] <= timestamp) {
+            copySample(after, out);
+            return true;
+        }
+
+        int before = physicalIndex(low - 1);
+        double t = (timestamp - m_timestamps[before]) / (m_timestamps[after] - m_timestamps[before]);
+
+        out[kX] = MathUtil.interpolate(m_x[before], m_x[after], t);
+        out[kY] = MathUtil.interpolate(m_y[before], m_y[after], t);
+        out[kTheta] = MathUtil.angleModulus(
+                m_theta[before] + MathUtil.angleModulus(m_theta[after] - m_theta[before]) * t);
+        out[kVx] = MathUtil.interpolate(m_vx[before], m_vx[after], t);
+        out[kVy] = MathUtil.interpolate(m_vy[before], m_vy[after], t);
+        out[kOmega] = MathUtil.interpolate(m_omega[before], m_omega[after], t);
+        return true;
+    }
+
+    /**
+     * Look up the robot pose at a timestamp. This allocates, use
+     * {@link #sample(double, double[])} in the main loop.
+     *
+     * @param timestamp the FPGA timestamp in seconds
+     * @return the interpolated pose, or empty if there is no history
+     */
+    public Optional<Pose2d> getPose(double timestamp) {
+        double[] sample = new double[kSampleSize];
+        if (!sample(timestamp, sample)) {
+            return Optional.empty();
+        }
+
+        return Optional.of(new Pose2d(sample[kX], sample[kY], new Rotation2d(sample[kTheta])));
+    }
+
+    private void copySample(int index, double[] out) {
+        out[kX] = m_x[index];
+        out[kY] = m_y[index];
+        out[kTheta] = m_theta[index];
+        out[kVx] = m_vx[index];
+        out[kVy] = m_vy[index];
+        out[kOmega] = m_omega[index];
+    }
+
+    // Convert an index from the oldest sample into an array index
+    private int physicalIndex(int index) {
+        return (m_head + index) % m_capacity;
+    }
+}
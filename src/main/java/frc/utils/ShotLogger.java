@@ -0,0 +1,155 @@
+package frc.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import edu.wpi.first.wpilibj.DataLogManager;
+import edu.wpi.first.wpilibj.DriverStation;
+
+/**
+ * Keeps a record of every shot so misses can be turned into aim calibration.
+ * Shots are appended to a binary file in the log directory that grows across
+ * matches, and a hit or miss label can be added afterwards by the drive team
+ * or from match video. {@code frc.tools.ShotRefit} reads the file and refits
+ * the ballistics constants. Writes happen on a background thread.
+ *
+ * <p>
+ * Records are big endian. A shot is the byte {@link #kShotRecord}, the shot id
+ * as a long, a flags byte ({@link #kFlagBlue}, {@link #kFlagAuto}) and then
+ * {@link #kShotFields} floats in the order of {@link Shot}. A label is the byte
+ * {@link #kLabelRecord}, the shot id as a long, and the label ordinal as a byte.
+ */
+public class ShotLogger {
+    public static final String kFileName = "shots.bin";
+
+    public static final byte kShotRecord = 1;
+    public static final byte kLabelRecord = 2;
+    public static final byte kFlagBlue = 1;
+    public static final byte kFlagAuto = 2;
+    public static final int kShotFields = 15;
+
+    public enum Label {
+        kUnlabeled,
+        kHit,
+        kMissedHigh,
+        kMissedLow
+    }
+
+    /**
+     * Everything about the robot when the note left the shooter
+     *
+     * @param matchTime     the match time left in seconds
+     * @param x             field x of the robot in meters
+     * @param y             field y of the robot in meters
+     * @param heading       field heading of the robot in radians
+     * @param velocityX     field x velocity in m/s
+     * @param velocityY     field y velocity in m/s
+     * @param omega         rotation rate in rad/s
+     * @param distance      distance to the speaker target in meters
+     * @param aimDistance   distance that was aimed for, led by the robot velocity
+     * @param pivotSetpoint the pivot setpoint in pivot units
+     * @param pivotPosition the measured pivot position in pivot units
+     * @param flywheelRpm   the measured flywheel speed
+     * @param targetRpm     the flywheel speed that was asked for
+     * @param exitSpeed     the exit speed the solver used in m/s
+     * @param voltage       the battery voltage
+     */
+    public record Shot(float matchTime, float x, float y, float heading, float velocityX, float velocityY,
+            float omega, float distance, float aimDistance, float pivotSetpoint, float pivotPosition,
+            float flywheelRpm, float targetRpm, float exitSpeed, float voltage) {
+    }
+
+    private static final ExecutorService kWriter = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ShotLogger");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final File m_file;
+    private long m_lastShotId = -1;
+    private int m_shotCount = 0;
+
+    /** Create a logger that appends to the dataset in the log directory. */
+    public ShotLogger() {
+        m_file = new File(DataLogManager.getLogDir(), kFileName);
+    }
+
+    /**
+     * Record a shot
+     *
+     * @param shot       the state of the robot at release
+     * @param blue       whether the robot is on the blue alliance
+     * @param autonomous whether the shot was taken in auto
+     */
+    public void logShot(Shot shot, boolean blue, boolean autonomous) {
+        // Wall clock milliseconds are unique across boots and easy to match to video
+        long id = Math.max(System.currentTimeMillis(), m_lastShotId + 1);
+        m_lastShotId = id;
+        m_shotCount++;
+
+        byte flags = (byte) ((blue ? kFlagBlue : 0) | (autonomous ? kFlagAuto : 0));
+        write(out -> {
+            out.writeByte(kShotRecord);
+            out.writeLong(id);
+            out.writeByte(flags);
+            out.writeFloat(shot.matchTime());
+            out.writeFloat(shot.x());
+            out.writeFloat(shot.y());
+            out.writeFloat(shot.heading());
+            out.writeFloat(shot.velocityX());
+            out.writeFloat(shot.velocityY());
+            out.writeFloat(shot.omega());
+            out.writeFloat(shot.distance());
+            out.writeFloat(shot.aimDistance());
+            out.writeFloat(shot.pivotSetpoint());
+            out.writeFloat(shot.pivotPosition());
+            out.writeFloat(shot.flywheelRpm());
+            out.writeFloat(shot.targetRpm());
+            out.writeFloat(shot.exitSpeed());
+            out.writeFloat(shot.voltage());
+        });
+    }
+
+    /**
+     * Label the latest shot. A later label for the same shot replaces this one.
+     *
+     * @param label how the shot went
+     */
+    public void label(Label label) {
+        long id = m_lastShotId;
+        if (id < 0) {
+            return;
+        }
+
+        write(out -> {
+            out.writeByte(kLabelRecord);
+            out.writeLong(id);
+            out.writeByte(label.ordinal());
+        });
+        DataLogManager.log("[shots] labeled shot " + id + " " + label);
+    }
+
+    public int getShotCount() {
+        return m_shotCount;
+    }
+
+    private interface Record {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private void write(Record record) {
+        kWriter.submit(() -> {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(m_file, true)))) {
+                record.write(out);
+            } catch (IOException e) {
+                DriverStation.reportWarning("Failed to write shot to " + m_file + ": " + e.getMessage(), false);
+            }
+        });
+    }
+}
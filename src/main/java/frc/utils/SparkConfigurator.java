@@ -0,0 +1,280 @@
+package frc.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleFunction;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+import com.revrobotics.CANSparkBase;
+import com.revrobotics.CANSparkBase.IdleMode;
+import com.revrobotics.REVLibError;
+import com.revrobotics.SparkPIDController;
+
+import edu.wpi.first.wpilibj.DataLogManager;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+
+/**
+ * Configures a SPARK at boot without the usual pile of blocking calls. Each
+ * parameter is read back from the controller first and only written if it
+ * differs, writes are verified by reading them again and retried if they didn't
+ * take, and {@link #start()} runs the whole thing on a shared pool so the
+ * controllers on the robot are configured at the same time instead of one
+ * after another. Parameters the SPARK can't report are always written.
+ */
+public class SparkConfigurator {
+    // Enough threads to configure a whole swerve drive at once
+    private static final int kThreads = 8;
+    private static final int kMaxAttempts = 3;
+    // SPARK parameters are floats, so only compare to float precision
+    private static final double kTolerance = 1e-6;
+
+    private static final ExecutorService kExecutor = Executors.newFixedThreadPool(kThreads, runnable -> {
+        Thread thread = new Thread(runnable, "SparkConfigurator");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Changes while the robot runs, one thread so they're written in order
+    private static final ExecutorService kUpdater = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "SparkUpdater");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Every configuration started, so boot can wait for all of them
+    private static final List<Future<Double>> m_started = new ArrayList<>();
+
+    private record Parameter(String name, double value, DoubleSupplier getter, DoubleFunction<REVLibError> setter) {
+    }
+
+    private final String m_name;
+    private final CANSparkBase m_spark;
+    private final List<Parameter> m_parameters = new ArrayList<>();
+
+    private int m_written = 0;
+    private int m_skipped = 0;
+    private int m_failed = 0;
+
+    /**
+     * Create a new configurator
+     *
+     * @param name  the name of the device, used in reports
+     * @param spark the SPARK to configure
+     */
+    public SparkConfigurator(String name, CANSparkBase spark) {
+        m_name = name;
+        m_spark = spark;
+    }
+
+    /**
+     * Add a parameter that can be read back from the SPARK
+     *
+     * @param name   the name of the parameter, used in reports
+     * @param value  the desired value
+     * @param getter reads the current value from the SPARK
+     * @param setter writes a value to the SPARK
+     * @return this configurator
+     */
+    public SparkConfigurator set(String name, double value, DoubleSupplier getter, DoubleFunction<REVLibError> setter) {
+        m_parameters.add(new Parameter(name, value, getter, setter));
+        return this;
+    }
+
+    /**
+     * Add a boolean parameter that can be read back from the SPARK
+     *
+     * @param name   the name of the parameter, used in reports
+     * @param value  the desired value
+     * @param getter reads the current value from the SPARK
+     * @param setter writes a value to the SPARK
+     * @return this configurator
+     */
+    public SparkConfigurator set(String name, boolean value, BooleanSupplier getter,
+            DoubleFunction<REVLibError> setter) {
+        return set(name, value ? 1 : 0, () -> getter.getAsBoolean() ? 1 : 0, setter);
+    }
+
+    /**
+     * Add a parameter the SPARK can't report, it is written every time
+     *
+     * @param name   the name of the parameter, used in reports
+     * @param setter writes the value to the SPARK
+     * @return this configurator
+     */
+    public SparkConfigurator always(String name, Supplier<REVLibError> setter) {
+        m_parameters.add(new Parameter(name, Double.NaN, null, value -> setter.get()));
+        return this;
+    }
+
+    public SparkConfigurator idleMode(IdleMode mode) {
+        return set("Idle Mode", mode == IdleMode.kBrake,
+                () -> m_spark.getIdleMode() == IdleMode.kBrake,
+                value -> m_spark.setIdleMode(value > 0.5 ? IdleMode.kBrake : IdleMode.kCoast));
+    }
+
+    public SparkConfigurator inverted(boolean inverted) {
+        return set("Inverted", inverted, m_spark::getInverted, value -> {
+            m_spark.setInverted(value > 0.5);
+            return m_spark.getLastError();
+        });
+    }
+
+    public SparkConfigurator smartCurrentLimit(int limit) {
+        return always("Current Limit", () -> m_spark.setSmartCurrentLimit(limit));
+    }
+
+    /**
+     * Add the gains and output range of the first PID slot
+     *
+     * @param pid the PID controller of this SPARK
+     * @return this configurator
+     */
+    public SparkConfigurator pid(SparkPIDController pid, double p, double i, double d, double ff,
+            double minOutput, double maxOutput) {
+        return set("kP", p, pid::getP, pid::setP)
+                .set("kI", i, pid::getI, pid::setI)
+                .set("kD", d, pid::getD, pid::setD)
+                .set("kFF", ff, pid::getFF, pid::setFF)
+                .set("Min Output", minOutput, pid::getOutputMin, value -> pid.setOutputRange(value, maxOutput))
+                .set("Max Output", maxOutput, pid::getOutputMax, value -> pid.setOutputRange(minOutput, value));
+    }
+
+    /**
+     * Configure the SPARK on the calling thread. Only parameters that differ
+     * from the SPARK's current state are written.
+     *
+     * @return how long the configuration took in seconds
+     */
+    public double apply() {
+        double start = Timer.getFPGATimestamp();
+        m_written = 0;
+        m_skipped = 0;
+        m_failed = 0;
+
+        for (Parameter parameter : m_parameters) {
+            applyParameter(parameter);
+        }
+
+        double elapsed = Timer.getFPGATimestamp() - start;
+        SmartDashboard.putNumber("Boot/" + m_name + " (ms)", elapsed * 1000);
+        DataLogManager.log(String.format("[config] %s: %.0f ms, %d written, %d unchanged, %d failed",
+                m_name, elapsed * 1000, m_written, m_skipped, m_failed));
+        return elapsed;
+    }
+
+    /**
+     * Configure the SPARK on the shared pool
+     *
+     * @return a future that completes with how long the configuration took
+     */
+    public Future<Double> start() {
+        Future<Double> configuration = kExecutor.submit(this::apply);
+        synchronized (m_started) {
+            m_started.add(configuration);
+        }
+        return configuration;
+    }
+
+    /**
+     * Queue the configuration to be written while the robot runs, like tuned
+     * gains. It doesn't hold up the caller or boot, and queued configurations
+     * are written in the order they were submitted.
+     */
+    public void submit() {
+        kUpdater.submit(this::apply);
+    }
+
+    /**
+     * Queue saving the SPARKs' configurations to flash, after any changes
+     * already queued with {@link #submit()}
+     *
+     * @param name   the name of the devices, used in reports
+     * @param sparks the SPARKs to save
+     */
+    public static void burnFlash(String name, CANSparkBase... sparks) {
+        kUpdater.submit(() -> {
+            for (CANSparkBase spark : sparks) {
+                REVLibError error = spark.burnFlash();
+                if (error != REVLibError.kOk) {
+                    DriverStation.reportWarning("Failed to burn flash on " + name + ": " + error, false);
+                    return;
+                }
+            }
+            DataLogManager.log("[config] " + name + ": burned flash");
+        });
+    }
+
+    /**
+     * Wait for every configuration started so far to finish
+     *
+     * @return how long the slowest configuration took in seconds
+     */
+    public static double awaitAll() {
+        List<Future<Double>> started;
+        synchronized (m_started) {
+            started = new ArrayList<>(m_started);
+            m_started.clear();
+        }
+
+        await(started);
+
+        double slowest = 0;
+        for (Future<Double> configuration : started) {
+            try {
+                slowest = Math.max(slowest, configuration.get());
+            } catch (InterruptedException | ExecutionException e) {
+                // Already reported by await()
+            }
+        }
+        return slowest;
+    }
+
+    /**
+     * Wait for configurations started with {@link #start()} to finish
+     *
+     * @param configurations the futures returned by {@link #start()}
+     */
+    public static void await(List<Future<Double>> configurations) {
+        for (Future<Double> configuration : configurations) {
+            try {
+                configuration.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                DriverStation.reportError("SPARK configuration threw: " + e.getCause(), e.getCause().getStackTrace());
+            }
+        }
+    }
+
+    private void applyParameter(Parameter parameter) {
+        if (parameter.getter() != null && matches(parameter)) {
+            m_skipped++;
+            return;
+        }
+
+        for (int attempt = 0; attempt < kMaxAttempts; attempt++) {
+            REVLibError error = parameter.setter().apply(parameter.value());
+            if (error == REVLibError.kOk && (parameter.getter() == null || matches(parameter))) {
+                m_written++;
+                return;
+            }
+        }
+
+        m_failed++;
+        DriverStation.reportWarning("Failed to set " + parameter.name() + " on " + m_name, false);
+    }
+
+    private boolean matches(Parameter parameter) {
+        double current = parameter.getter().getAsDouble();
+        return Math.abs(current - parameter.value()) <= Math.max(Math.abs(parameter.value()) * kTolerance, 1e-9);
+    }
+}
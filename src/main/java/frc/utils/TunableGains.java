@@ -0,0 +1,94 @@
+package frc.utils;
+
+import com.revrobotics.CANSparkBase;
+import com.revrobotics.SparkPIDController;
+
+import edu.wpi.first.math.controller.ProfiledPIDController;
+
+/**
+ * A set of PID gains that can be tuned from the dashboard. Subsystems check
+ * {@link #hasChanged()} once per loop and only push the gains to their
+ * controllers when something was actually changed, so tuning doesn't cost any
+ * CAN traffic the rest of the time. Gains for SPARKs are written off the main
+ * loop.
+ */
+public class TunableGains {
+    private final String m_name;
+    private final TunableNumber m_p;
+    private final TunableNumber m_i;
+    private final TunableNumber m_d;
+    private final TunableNumber m_ff;
+
+    /**
+     * Create a new set of tunable gains
+     *
+     * @param name the name of the controller, used as the dashboard prefix
+     * @param p    the default proportional gain
+     * @param i    the default integral gain
+     * @param d    the default derivative gain
+     * @param ff   the default feedforward gain
+     */
+    public TunableGains(String name, double p, double i, double d, double ff) {
+        m_name = name;
+        m_p = new TunableNumber(name + "/kP", p);
+        m_i = new TunableNumber(name + "/kI", i);
+        m_d = new TunableNumber(name + "/kD", d);
+        m_ff = new TunableNumber(name + "/kFF", ff);
+    }
+
+    /**
+     * Check if any of the gains changed since the last call
+     *
+     * @return true if any gain changed
+     */
+    public boolean hasChanged() {
+        // Check every gain so they all see the change
+        boolean changed = m_p.hasChanged();
+        changed |= m_i.hasChanged();
+        changed |= m_d.hasChanged();
+        changed |= m_ff.hasChanged();
+        return changed;
+    }
+
+    public double getP() {
+        return m_p.get();
+    }
+
+    public double getI() {
+        return m_i.get();
+    }
+
+    public double getD() {
+        return m_d.get();
+    }
+
+    public double getFF() {
+        return m_ff.get();
+    }
+
+    /**
+     * Queue the gains to be pushed to a SPARK controller. Each write waits on the
+     * SPARK, so they're made on {@link SparkConfigurator}'s thread instead of the
+     * main loop.
+     *
+     * @param spark      the SPARK to configure
+     * @param controller the SPARK's PID controller
+     */
+    public void apply(CANSparkBase spark, SparkPIDController controller) {
+        new SparkConfigurator(m_name, spark)
+                .set("kP", getP(), controller::getP, controller::setP)
+                .set("kI", getI(), controller::getI, controller::setI)
+                .set("kD", getD(), controller::getD, controller::setD)
+                .set("kFF", getFF(), controller::getFF, controller::setFF)
+                .submit();
+    }
+
+    /**
+     * Push the gains to a roboRIO controller. It has no feedforward term.
+     *
+     * @param controller the controller to configure
+     */
+    public void apply(ProfiledPIDController controller) {
+        controller.setPID(getP(), getI(), getD());
+    }
+}
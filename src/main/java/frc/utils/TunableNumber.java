@@ -0,0 +1,53 @@
+package frc.utils;
+
+import edu.wpi.first.networktables.DoubleEntry;
+import edu.wpi.first.networktables.NetworkTableInstance;
+
+/**
+ * A number that can be changed from the dashboard while the robot is running.
+ * Values live under the "Tuning" NetworkTables table and start at the default
+ * from the code. Changes are not saved, copy good values back into Constants.
+ */
+public class TunableNumber {
+    private final DoubleEntry m_entry;
+    private final double m_default;
+    private double m_lastValue;
+
+    /**
+     * Create a new tunable number
+     *
+     * @param key          the name of the value under the Tuning table
+     * @param defaultValue the value to start with
+     */
+    public TunableNumber(String key, double defaultValue) {
+        m_default = defaultValue;
+        m_lastValue = defaultValue;
+
+        m_entry = NetworkTableInstance.getDefault().getTable("Tuning").getDoubleTopic(key).getEntry(defaultValue);
+        m_entry.set(defaultValue);
+    }
+
+    /**
+     * Get the current value
+     *
+     * @return the value from the dashboard
+     */
+    public double get() {
+        return m_entry.get(m_default);
+    }
+
+    /**
+     * Check if the value changed since the last time this was called
+     *
+     * @return true if the value changed
+     */
+    public boolean hasChanged() {
+        double value = get();
+        if (value == m_lastValue) {
+            return false;
+        }
+
+        m_lastValue = value;
+        return true;
+    }
+}
@@ -0,0 +1,114 @@
+package frc.robot.subsystems;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.OptionalDouble;
+
+import org.junit.jupiter.api.Test;
+
+import frc.robot.Constants.DriveConstants;
+
+class CollisionDetectorTest {
+    private static final double kPeriod = 0.005;
+    private static final double kEpsilon = 1e-9;
+
+    @Test
+    void smoothDrivingIsNotACollision() {
+        CollisionDetector detector = new CollisionDetector();
+
+        // Ramp up to 0.5 g over a second
+        for (int i = 0; i <= 200; i++) {
+            assertFalse(detector.addSample(i * kPeriod, i * 0.0025, 0));
+        }
+
+        assertEquals(0, detector.getCollisionCount());
+        assertTrue(detector.pollCollision().isEmpty());
+    }
+
+    @Test
+    void suddenChangeIsACollision() {
+        CollisionDetector detector = new CollisionDetector();
+        detector.addSample(0.995, 0.1, 0);
+
+        assertTrue(detector.addSample(1.0, 1.5, 0));
+        assertEquals(1, detector.getCollisionCount());
+        assertEquals(1.4 / kPeriod, detector.getCollisionJerk(), 1e-6);
+
+        OptionalDouble collision = detector.pollCollision();
+        assertTrue(collision.isPresent());
+        assertEquals(1.0, collision.getAsDouble(), kEpsilon);
+
+        // Polling clears it
+        assertTrue(detector.pollCollision().isEmpty());
+    }
+
+    @Test
+    void jerkCombinesBothAxes() {
+        // Neither axis alone is over the threshold, together they are
+        double step = DriveConstants.kCollisionJerkThreshold * 0.75 * kPeriod;
+        CollisionDetector detector = new CollisionDetector();
+        detector.addSample(0, 0, 0);
+
+        assertTrue(detector.addSample(kPeriod, step, step));
+    }
+
+    @Test
+    void holdoffIgnoresTheRestOfAHit() {
+        CollisionDetector detector = new CollisionDetector();
+        detector.addSample(0.995, 0, 0);
+        assertTrue(detector.addSample(1.0, 2, 0));
+
+        // Bouncing inside the holdoff is the same hit
+        detector.addSample(1.195, 2, 0);
+        assertFalse(detector.addSample(1.2, 0, 0));
+
+        // After the holdoff a new hit counts
+        detector.addSample(1.595, 0, 0);
+        assertTrue(detector.addSample(1.6, 2, 0));
+        assertEquals(2, detector.getCollisionCount());
+    }
+
+    @Test
+    void nothingToCompareIsNotACollision() {
+        CollisionDetector detector = new CollisionDetector();
+
+        // The first sample
+        assertFalse(detector.addSample(1, 3, 3));
+
+        // A sample after a gap in the data
+        assertFalse(detector.addSample(1 + DriveConstants.kCollisionMaxSampleGap * 2, 0, 0));
+
+        // A repeated timestamp
+        assertFalse(detector.addSample(1 + DriveConstants.kCollisionMaxSampleGap * 2, 3, 3));
+
+        assertEquals(0, detector.getCollisionCount());
+    }
+
+    @Test
+    void readJitterIsNotACollision() {
+        // The NavX samples every 1/60 s and the notifier picks each sample up
+        // somewhere in its next 5 ms, while the acceleration ramps smoothly
+        double samplePeriod = 1.0 / 60;
+        double step = DriveConstants.kCollisionJerkThreshold * 0.8 * samplePeriod;
+        double[] readDelays = { 0.005, 0, 0.004, 0.001, 0.005, 0 };
+        CollisionDetector detector = new CollisionDetector();
+
+        for (int i = 0; i < readDelays.length; i++) {
+            double sampleTime = 2 + i * samplePeriod;
+            assertFalse(detector.addSample(sampleTime + readDelays[i], sampleTime, i * step, 0));
+        }
+        assertEquals(0, detector.getCollisionCount());
+    }
+
+    @Test
+    void collisionIsReportedAtTheReadTime() {
+        CollisionDetector detector = new CollisionDetector();
+        detector.addSample(10.0, 123.000, 0, 0);
+
+        assertTrue(detector.addSample(10.02, 123.017, 2, 0));
+        assertEquals(2 / 0.017, detector.getCollisionJerk(), 1e-6);
+        assertEquals(10.02, detector.pollCollision().getAsDouble(), kEpsilon);
+    }
+}
@@ -0,0 +1,179 @@
+package frc.robot.subsystems;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModulePosition;
+import edu.wpi.first.wpilibj.simulation.SimHooks;
+import frc.robot.Constants.DriveConstants;
+import frc.robot.subsystems.HeadingEstimator.GyroHealth;
+
+class HeadingEstimatorTest {
+    private static final double kPeriod = 0.02;
+    private static final double kTurnPerLoop = 0.02; // radians
+    private static final double kEpsilon = 1e-6;
+
+    private static final Translation2d[] kModules = {
+        new Translation2d(0.3, 0.3),
+        new Translation2d(0.3, -0.3),
+        new Translation2d(-0.3, 0.3),
+        new Translation2d(-0.3, -0.3)
+    };
+
+    /** A NavX that does whatever the test tells it to. */
+    private static class FakeGyro implements HeadingEstimator.GyroSource {
+        boolean connected = true;
+        boolean updating = true;
+        double heading = 0; // radians, counterclockwise positive like the robot
+        double updateCount = 0;
+
+        @Override
+        public boolean isConnected() {
+            return connected;
+        }
+
+        @Override
+        public double getUpdateCount() {
+            return updateCount;
+        }
+
+        @Override
+        public double getAngle() {
+            // Undo the conversion the estimator applies to NavX angles
+            return (Math.toDegrees(heading) + DriveConstants.kGyroAdjustment)
+                    * (DriveConstants.kGyroReversed ? -1.0 : 1.0);
+        }
+    }
+
+    private final SwerveDriveKinematics m_kinematics = new SwerveDriveKinematics(kModules);
+    private final SwerveModulePosition[] m_positions = new SwerveModulePosition[kModules.length];
+    private FakeGyro m_gyro;
+    private HeadingEstimator m_estimator;
+    private double m_wheelHeading;
+
+    @BeforeAll
+    static void initializeHal() {
+        assertTrue(HAL.initialize(500, 0));
+    }
+
+    @BeforeEach
+    void createEstimator() {
+        SimHooks.pauseTiming();
+
+        for (int i = 0; i < kModules.length; i++) {
+            m_positions[i] = new SwerveModulePosition(0, kModules[i].getAngle().plus(Rotation2d.fromDegrees(90)));
+        }
+        m_wheelHeading = 0;
+        m_gyro = new FakeGyro();
+        m_estimator = new HeadingEstimator(m_gyro, m_kinematics, m_positions, false);
+    }
+
+    @AfterEach
+    void resumeTiming() {
+        SimHooks.resumeTiming();
+    }
+
+    /**
+     * Turn the robot in place for a loop. The wheels always measure the turn,
+     * the gyro only if it is updating.
+     */
+    private void turn(double radians) {
+        m_wheelHeading += radians;
+        for (int i = 0; i < kModules.length; i++) {
+            m_positions[i].distanceMeters += radians * kModules[i].getNorm();
+        }
+
+        if (m_gyro.updating) {
+            m_gyro.heading += radians;
+            m_gyro.updateCount++;
+        }
+
+        m_estimator.readGyro();
+        SimHooks.stepTiming(kPeriod);
+        m_estimator.update(m_positions);
+    }
+
+    private void turn(double radians, int loops) {
+        for (int i = 0; i < loops; i++) {
+            turn(radians);
+        }
+    }
+
+    @Test
+    void healthyGyroIsUsed() {
+        turn(kTurnPerLoop, 10);
+
+        assertEquals(GyroHealth.kHealthy, m_estimator.getHealth());
+        assertEquals(m_gyro.heading, m_estimator.getHeading().getRadians(), kEpsilon);
+        assertEquals(kPeriod, m_estimator.getLatency(), kEpsilon);
+        assertEquals(0, m_estimator.getFaultCount());
+    }
+
+    @Test
+    void disconnectedGyroFallsBackToWheels() {
+        turn(kTurnPerLoop, 5);
+        m_gyro.connected = false;
+        m_gyro.heading += 1; // garbage while disconnected
+        turn(kTurnPerLoop, 5);
+
+        assertEquals(GyroHealth.kDisconnected, m_estimator.getHealth());
+        assertEquals(m_wheelHeading, m_estimator.getHeading().getRadians(), kEpsilon);
+        assertEquals(1, m_estimator.getFaultCount());
+    }
+
+    @Test
+    void staleGyroFallsBackToWheels() {
+        turn(kTurnPerLoop, 5);
+        m_gyro.updating = false;
+
+        // Stopped while the gyro goes stale, a frozen gyro is right until then
+        turn(0, 10);
+        assertEquals(GyroHealth.kStale, m_estimator.getHealth());
+
+        turn(kTurnPerLoop, 5);
+        assertEquals(GyroHealth.kStale, m_estimator.getHealth());
+        assertTrue(m_estimator.getLatency() > DriveConstants.kGyroStaleTimeout);
+        assertEquals(m_wheelHeading, m_estimator.getHeading().getRadians(), kEpsilon);
+        assertEquals(1, m_estimator.getFaultCount());
+    }
+
+    @Test
+    void jumpingGyroIsIgnored() {
+        turn(kTurnPerLoop, 5);
+        m_gyro.heading += DriveConstants.kGyroMaxJump * 3;
+        turn(kTurnPerLoop);
+
+        assertEquals(GyroHealth.kJumped, m_estimator.getHealth());
+        assertEquals(m_wheelHeading, m_estimator.getHeading().getRadians(), kEpsilon);
+        assertEquals(1, m_estimator.getFaultCount());
+    }
+
+    @Test
+    void recoversWithoutTakingTheJump() {
+        turn(kTurnPerLoop, 5);
+        m_gyro.heading += 0.5;
+        turn(kTurnPerLoop);
+        turn(kTurnPerLoop, 5);
+
+        // Back on the gyro, which only contributes its changes since the jump
+        assertEquals(GyroHealth.kHealthy, m_estimator.getHealth());
+        assertEquals(m_wheelHeading, m_estimator.getHeading().getRadians(), kEpsilon);
+
+        m_gyro.connected = false;
+        turn(kTurnPerLoop);
+        m_gyro.connected = true;
+        turn(kTurnPerLoop);
+
+        assertEquals(GyroHealth.kHealthy, m_estimator.getHealth());
+        assertEquals(2, m_estimator.getFaultCount());
+    }
+}
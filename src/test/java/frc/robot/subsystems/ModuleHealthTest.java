@@ -0,0 +1,138 @@
+package frc.robot.subsystems;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import edu.wpi.first.hal.HAL;
+import frc.robot.Constants.ModuleConstants;
+
+class ModuleHealthTest {
+    private static final double kPeriod = 0.02;
+
+    // The SPARKs can only be created once per CAN ID, so every test shares them
+    private static MAXSwerveModule[] s_modules;
+    private static double s_time = 0;
+
+    private int m_failedModule;
+
+    @BeforeAll
+    static void createModules() {
+        assertTrue(HAL.initialize(500, 0));
+        s_modules = DriveSubsystem.createModules();
+    }
+
+    @BeforeEach
+    void resetModules() {
+        for (MAXSwerveModule module : s_modules) {
+            module.injectFault(null, false);
+            module.resetHealth();
+        }
+        m_failedModule = -1;
+    }
+
+    private void run(double seconds, boolean enabled) {
+        int loops = (int) Math.ceil(seconds / kPeriod);
+        for (int i = 0; i < loops; i++) {
+            s_time += kPeriod;
+            m_failedModule = DriveSubsystem.updateFailedModule(s_modules, m_failedModule, s_time, enabled);
+        }
+    }
+
+    private int countFailed() {
+        int failed = 0;
+        for (MAXSwerveModule module : s_modules) {
+            if (module.isFailed()) {
+                failed++;
+            }
+        }
+        return failed;
+    }
+
+    @Test
+    void healthyModulesStayInUse() {
+        run(1, true);
+
+        assertEquals(-1, m_failedModule);
+        assertEquals(0, countFailed());
+    }
+
+    @Test
+    void briefFaultIsIgnored() {
+        s_modules[1].injectFault("CAN", false);
+        run(ModuleConstants.kModuleFaultTime / 2, true);
+        s_modules[1].injectFault(null, false);
+        run(1, true);
+
+        assertEquals(-1, m_failedModule);
+        assertFalse(s_modules[1].isFaulted());
+        assertTrue(s_modules[1].getFaultCount() > 0);
+    }
+
+    @Test
+    void onlyOneModuleFails() {
+        s_modules[1].injectFault("CAN", false);
+        s_modules[2].injectFault("Encoder", false);
+        run(ModuleConstants.kModuleFaultTime + 0.5, true);
+
+        assertEquals(1, m_failedModule);
+        assertEquals(1, countFailed());
+        assertTrue(s_modules[1].isFailed());
+        assertEquals("CAN", s_modules[1].getLastFault());
+
+        // The other faulted module is kept in use
+        assertTrue(s_modules[2].isFaulted());
+        assertFalse(s_modules[2].isFailed());
+    }
+
+    @Test
+    void failedModuleComesBackWhenTheFaultClears() {
+        s_modules[2].injectFault("Encoder", false);
+        run(ModuleConstants.kModuleFaultTime + 0.5, true);
+        assertEquals(2, m_failedModule);
+
+        // Still failed while the fault is there
+        run(ModuleConstants.kModuleRetryTime * 2, true);
+        assertEquals(2, m_failedModule);
+
+        s_modules[2].injectFault(null, false);
+        run(ModuleConstants.kModuleRetryTime + 0.5, true);
+
+        assertEquals(-1, m_failedModule);
+        assertEquals(0, countFailed());
+    }
+
+    @Test
+    void singleTrackingFaultFailsTheModule() {
+        s_modules[3].injectFault("Velocity error", true);
+        run(ModuleConstants.kModuleFaultTime + 0.5, true);
+
+        assertEquals(3, m_failedModule);
+        assertEquals(1, countFailed());
+    }
+
+    @Test
+    void trackingFaultsOnSeveralModulesDontFailAny() {
+        s_modules[0].injectFault("Velocity error", true);
+        s_modules[3].injectFault("Velocity error", true);
+        run(ModuleConstants.kModuleFaultTime * 4, true);
+
+        assertEquals(-1, m_failedModule);
+        assertEquals(0, countFailed());
+        assertTrue(s_modules[0].isTrackingFault());
+        assertTrue(s_modules[3].isTrackingFault());
+    }
+
+    @Test
+    void trackingIsNotCheckedWhileDisabled() {
+        s_modules[0].injectFault("Velocity error", true);
+        run(ModuleConstants.kModuleFaultTime * 4, false);
+
+        assertEquals(-1, m_failedModule);
+        assertFalse(s_modules[0].isFaulted());
+    }
+}
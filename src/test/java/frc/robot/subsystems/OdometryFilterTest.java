@@ -0,0 +1,186 @@
+package frc.robot.subsystems;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModulePosition;
+import frc.robot.Constants.DriveConstants;
+
+class OdometryFilterTest {
+    private static final double kEpsilon = 1e-6;
+    private static final double kPeriod = 0.02;
+    private static final double kSpeed = 3; // m/s
+    private static final double[] kAllTrusted = { 1, 1, 1, 1 };
+
+    private final Translation2d[] m_modules = {
+        new Translation2d(0.3, 0.3),
+        new Translation2d(0.3, -0.3),
+        new Translation2d(-0.3, 0.3),
+        new Translation2d(-0.3, -0.3)
+    };
+
+    private OdometryFilter m_filter;
+
+    @BeforeEach
+    void createFilter() {
+        m_filter = new OdometryFilter(m_modules, positions(0, 0, 0, 0));
+    }
+
+    private static SwerveModulePosition[] positions(double... distances) {
+        SwerveModulePosition[] positions = new SwerveModulePosition[distances.length];
+        for (int i = 0; i < distances.length; i++) {
+            positions[i] = new SwerveModulePosition(distances[i], new Rotation2d());
+        }
+        return positions;
+    }
+
+    @Test
+    void consistentModulesPassThrough() {
+        SwerveModulePosition[] filtered = m_filter.update(positions(0.1, 0.1, 0.1, 0.1), kAllTrusted);
+
+        for (int i = 0; i < 4; i++) {
+            assertFalse(m_filter.isRejected(i));
+            assertEquals(0.1, filtered[i].distanceMeters, kEpsilon);
+        }
+        assertEquals(0, m_filter.getSkid(), kEpsilon);
+    }
+
+    @Test
+    void rotationIsARigidBodyMotion() {
+        double dtheta = 0.01;
+        SwerveModulePosition[] spin = new SwerveModulePosition[4];
+        for (int i = 0; i < 4; i++) {
+            double dx = -dtheta * m_modules[i].getY();
+            double dy = dtheta * m_modules[i].getX();
+            spin[i] = new SwerveModulePosition(Math.hypot(dx, dy), new Rotation2d(dx, dy));
+        }
+
+        m_filter.update(spin, kAllTrusted);
+
+        for (int i = 0; i < 4; i++) {
+            assertFalse(m_filter.isRejected(i));
+            assertEquals(0, m_filter.getResidual(i), kEpsilon);
+        }
+        assertEquals(0, m_filter.getSkid(), kEpsilon);
+    }
+
+    @Test
+    void skiddingModuleIsReplacedByTheFit() {
+        SwerveModulePosition[] filtered = m_filter.update(positions(0.2, 0.1, 0.1, 0.1), kAllTrusted);
+
+        assertTrue(m_filter.isRejected(0));
+        assertEquals(0.1, filtered[0].distanceMeters, kEpsilon);
+        assertEquals(0, filtered[0].angle.getRadians(), kEpsilon);
+        for (int i = 1; i < 4; i++) {
+            assertFalse(m_filter.isRejected(i));
+            assertEquals(0.1, filtered[i].distanceMeters, kEpsilon);
+        }
+        assertTrue(m_filter.getSkid() > DriveConstants.kOdometrySkidReject);
+    }
+
+    @Test
+    void untrustedModuleFollowsTheOthers() {
+        SwerveModulePosition[] filtered = m_filter.update(positions(0.5, 0.1, 0.1, 0.1),
+                new double[] { 0, 1, 1, 1 });
+
+        assertTrue(m_filter.isRejected(0));
+        assertEquals(0.1, filtered[0].distanceMeters, kEpsilon);
+        assertEquals(0, m_filter.getSkid(), kEpsilon);
+
+        // The raw distance is still tracked, so trusting it again only adds new motion
+        filtered = m_filter.update(positions(0.6, 0.2, 0.2, 0.2), kAllTrusted);
+        assertFalse(m_filter.isRejected(0));
+        assertEquals(0.2, filtered[0].distanceMeters, kEpsilon);
+    }
+
+    @Test
+    void tooFewTrustedModulesPassRawDeltas() {
+        SwerveModulePosition[] filtered = m_filter.update(positions(0.1, 0.5, 0.2, 0.3),
+                new double[] { 1, 0, 0, 0 });
+
+        assertEquals(0.1, filtered[0].distanceMeters, kEpsilon);
+        assertEquals(0.5, filtered[1].distanceMeters, kEpsilon);
+        assertEquals(0.2, filtered[2].distanceMeters, kEpsilon);
+        assertEquals(0.3, filtered[3].distanceMeters, kEpsilon);
+        assertEquals(0, m_filter.getSkid(), kEpsilon);
+    }
+
+    /**
+     * Drive straight across a collision where some wheels spin faster than
+     * the ground moves, and integrate the pose from the raw and the filtered
+     * positions the way the pose estimator does.
+     *
+     * @param skid how much each module overreads during the collision
+     * @return the final position error of the raw and the filtered pose
+     */
+    private double[] driveThroughCollision(double... skid) {
+        SwerveDriveKinematics kinematics = new SwerveDriveKinematics(m_modules);
+        double[] raw = new double[4];
+        SwerveModulePosition[] lastRaw = positions(0, 0, 0, 0);
+        SwerveModulePosition[] lastFiltered = positions(0, 0, 0, 0);
+        Pose2d rawPose = new Pose2d();
+        Pose2d filteredPose = new Pose2d();
+
+        int loops = 50;
+        for (int loop = 0; loop < loops; loop++) {
+            boolean colliding = loop >= 20 && loop < 30;
+            for (int i = 0; i < 4; i++) {
+                raw[i] += kSpeed * kPeriod * (colliding ? skid[i] : 1);
+            }
+
+            SwerveModulePosition[] current = positions(raw);
+            SwerveModulePosition[] filtered = m_filter.update(current, kAllTrusted);
+
+            rawPose = rawPose.exp(kinematics.toTwist2d(deltas(lastRaw, current)));
+            filteredPose = filteredPose.exp(kinematics.toTwist2d(deltas(lastFiltered, filtered)));
+            lastRaw = current;
+            lastFiltered = copy(filtered);
+        }
+
+        Pose2d truth = new Pose2d(kSpeed * kPeriod * loops, 0, new Rotation2d());
+        return new double[] {
+            rawPose.getTranslation().getDistance(truth.getTranslation()),
+            filteredPose.getTranslation().getDistance(truth.getTranslation())
+        };
+    }
+
+    private static SwerveModulePosition[] deltas(SwerveModulePosition[] last, SwerveModulePosition[] current) {
+        SwerveModulePosition[] deltas = new SwerveModulePosition[current.length];
+        for (int i = 0; i < current.length; i++) {
+            deltas[i] = new SwerveModulePosition(current[i].distanceMeters - last[i].distanceMeters,
+                    current[i].angle);
+        }
+        return deltas;
+    }
+
+    private static SwerveModulePosition[] copy(SwerveModulePosition[] positions) {
+        SwerveModulePosition[] copy = new SwerveModulePosition[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            copy[i] = new SwerveModulePosition(positions[i].distanceMeters, positions[i].angle);
+        }
+        return copy;
+    }
+
+    @Test
+    void filterReducesPoseErrorFromOneSkiddingModule() {
+        double[] error = driveThroughCollision(2, 1, 1, 1);
+
+        assertTrue(error[1] < 0.01, "Filtered error " + error[1]);
+        assertTrue(error[1] < error[0] / 10, "Raw error " + error[0] + ", filtered error " + error[1]);
+    }
+
+    @Test
+    void filterReducesPoseErrorFromTwoSkiddingModules() {
+        double[] error = driveThroughCollision(2, 1.3, 1, 1);
+
+        assertTrue(error[1] < error[0] / 2, "Raw error " + error[0] + ", filtered error " + error[1]);
+    }
+}
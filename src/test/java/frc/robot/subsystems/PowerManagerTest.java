@@ -0,0 +1,180 @@
+package frc.robot.subsystems;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.simulation.BatterySim;
+import edu.wpi.first.wpilibj.simulation.RoboRioSim;
+import edu.wpi.first.wpilibj.simulation.SimHooks;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import frc.robot.Constants.PowerConstants;
+
+/**
+ * Runs the power manager against {@link BatterySim}. The loads draw what they
+ * want up to the limit the manager gives them, and the battery voltage comes
+ * from their total current, so the manager only sees the battery through its
+ * measurements.
+ */
+class PowerManagerTest {
+    private static final double kPeriod = 0.02;
+
+    /** A motor that wants a fixed current, capped by its limit. */
+    private static class Load {
+        final String name;
+        final int maxLimit;
+        final int minLimit;
+        int priority;
+        double dutyCycle = 0;
+        int limit;
+
+        Load(String name, int maxLimit, int minLimit, int priority) {
+            this.name = name;
+            this.maxLimit = maxLimit;
+            this.minLimit = minLimit;
+            this.priority = priority;
+            limit = maxLimit;
+        }
+
+        // Every load wants more than its normal limit
+        double getMotorCurrent() {
+            return limit;
+        }
+    }
+
+    private PowerManager m_power;
+    private final List<Load> m_loads = new ArrayList<>();
+    private Load m_pivot;
+    private Load m_shooter;
+    private Load m_intake;
+    private final Load[] m_drives = new Load[4];
+
+    @BeforeAll
+    static void initializeHal() {
+        assertTrue(HAL.initialize(500, 0));
+    }
+
+    @BeforeEach
+    void createLoads() {
+        SimHooks.pauseTiming();
+        RoboRioSim.resetData();
+
+        m_power = new PowerManager();
+        m_pivot = addLoad(new Load("Pivot", 40, 20, PowerConstants.kPivotPriority));
+        for (int i = 0; i < m_drives.length; i++) {
+            m_drives[i] = addLoad(new Load("Drive " + i, 60, 30, PowerConstants.kDrivingPriority));
+        }
+        m_shooter = addLoad(new Load("Shooter", 60, 20, PowerConstants.kShooterPriority));
+        m_intake = addLoad(new Load("Intake", 40, 10, PowerConstants.kIntakePriority));
+    }
+
+    @AfterEach
+    void cleanUp() {
+        CommandScheduler.getInstance().unregisterAllSubsystems();
+        SimHooks.resumeTiming();
+    }
+
+    private Load addLoad(Load load) {
+        m_loads.add(load);
+        m_power.register(load.name, load::getMotorCurrent, () -> load.dutyCycle,
+                limit -> load.limit = limit, load.maxLimit, load.minLimit, () -> load.priority);
+        return load;
+    }
+
+    private void setDutyCycle(double dutyCycle) {
+        for (Load load : m_loads) {
+            load.dutyCycle = dutyCycle;
+        }
+    }
+
+    // Supply current of everything on the battery
+    private double getBatteryCurrent() {
+        double current = PowerConstants.kBaseLoad;
+        for (Load load : m_loads) {
+            current += load.getMotorCurrent() * load.dutyCycle;
+        }
+        return current;
+    }
+
+    private void run(double seconds) {
+        int loops = (int) Math.ceil(seconds / kPeriod);
+        for (int i = 0; i < loops; i++) {
+            RoboRioSim.setVInVoltage(BatterySim.calculateDefaultBatteryLoadedVoltage(getBatteryCurrent()));
+            m_power.periodic();
+            SimHooks.stepTiming(kPeriod);
+        }
+    }
+
+    private void assertFullLimits() {
+        for (Load load : m_loads) {
+            assertEquals(load.maxLimit, load.limit, load.name);
+            assertEquals(load.maxLimit, m_power.getAppliedLimit(load.name), load.name);
+        }
+    }
+
+    @Test
+    void lightLoadKeepsFullLimits() {
+        setDutyCycle(0.2);
+        run(1);
+
+        assertFalse(m_power.isBrownoutPredicted());
+        assertFullLimits();
+    }
+
+    @Test
+    void heavyLoadLowersLimitsInPriorityOrder() {
+        setDutyCycle(1);
+        run(0.1);
+
+        // Everything at full current would sag the battery far below brownout
+        assertTrue(m_power.isBrownoutPredicted());
+
+        // The pivot is served first, then the drive, then the rest at their minimums
+        assertEquals(m_pivot.maxLimit, m_pivot.limit);
+        for (Load drive : m_drives) {
+            assertTrue(drive.limit >= drive.minLimit && drive.limit < drive.maxLimit, drive.name);
+        }
+        assertEquals(m_shooter.minLimit, m_shooter.limit);
+        assertEquals(m_intake.minLimit, m_intake.limit);
+
+        // The real battery stays above brownout with the lowered limits
+        run(0.5);
+        assertTrue(RobotController.getBatteryVoltage() > RobotController.getBrownoutVoltage());
+    }
+
+    @Test
+    void spinUpPriorityMovesTheShooterAheadOfTheDrive() {
+        m_shooter.priority = PowerConstants.kShooterSpinUpPriority;
+        setDutyCycle(1);
+        run(0.1);
+
+        assertTrue(m_shooter.limit > m_shooter.minLimit);
+        for (Load drive : m_drives) {
+            assertEquals(drive.minLimit, drive.limit, drive.name);
+        }
+        assertEquals(m_intake.minLimit, m_intake.limit);
+    }
+
+    @Test
+    void limitsComeBackWhenTheLoadDrops() {
+        setDutyCycle(1);
+        run(0.5);
+        assertTrue(m_intake.limit < m_intake.maxLimit);
+
+        setDutyCycle(0.2);
+        run(1);
+
+        assertFalse(m_power.isBrownoutPredicted());
+        assertFullLimits();
+    }
+}
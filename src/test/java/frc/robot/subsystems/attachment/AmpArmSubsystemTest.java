@@ -0,0 +1,82 @@
+package frc.robot.subsystems.attachment;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.wpilibj.simulation.DriverStationSim;
+import edu.wpi.first.wpilibj.simulation.SimHooks;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import frc.robot.Constants.AmpArmConstants;
+import frc.robot.subsystems.attachment.AmpArmSubsystem.AmpArmPosition;
+
+/**
+ * Runs the amp arm against its own arm simulation, which starts on the stowed
+ * hard stop like the robot does.
+ */
+class AmpArmSubsystemTest {
+    private static final double kPeriod = 0.02;
+
+    private static AmpArmSubsystem s_arm;
+
+    // Furthest out the arm got while running
+    private double m_maxAngle = Double.NEGATIVE_INFINITY;
+
+    @BeforeAll
+    static void createArm() {
+        assertTrue(HAL.initialize(500, 0));
+        SimHooks.pauseTiming();
+
+        DriverStationSim.setDsAttached(true);
+        DriverStationSim.setEnabled(true);
+        DriverStationSim.notifyNewData();
+
+        s_arm = new AmpArmSubsystem();
+    }
+
+    @AfterAll
+    static void cleanUp() {
+        DriverStationSim.setEnabled(false);
+        DriverStationSim.notifyNewData();
+        CommandScheduler.getInstance().unregisterAllSubsystems();
+        SimHooks.resumeTiming();
+    }
+
+    private void run(double seconds) {
+        int loops = (int) Math.ceil(seconds / kPeriod);
+        for (int i = 0; i < loops; i++) {
+            s_arm.periodic();
+            s_arm.simulationPeriodic();
+            SimHooks.stepTiming(kPeriod);
+            m_maxAngle = Math.max(m_maxAngle, s_arm.getAngle());
+        }
+    }
+
+    @Test
+    void homesThenDeploysWithinTheSoftLimit() {
+        assertFalse(s_arm.isHomed());
+        assertFalse(s_arm.atGoal());
+
+        // Stalls against the stowed stop well before the homing timeout
+        run(AmpArmConstants.kHomingTimeout / 2);
+        assertTrue(s_arm.isHomed());
+        assertEquals(0, s_arm.getAngle(), 0.01);
+
+        s_arm.setGoal(AmpArmPosition.kDeployed);
+        run(1.5);
+        assertTrue(s_arm.atGoal());
+        assertEquals(AmpArmConstants.kDeployedAngle, s_arm.getAngle(), AmpArmConstants.kTolerance);
+        assertTrue(m_maxAngle <= AmpArmConstants.kSoftLimitAngle, "Reached " + m_maxAngle + " rad");
+
+        s_arm.setGoal(AmpArmPosition.kStowed);
+        assertFalse(s_arm.atGoal());
+        run(1.5);
+        assertTrue(s_arm.atGoal());
+        assertEquals(AmpArmConstants.kStowedAngle, s_arm.getAngle(), AmpArmConstants.kTolerance);
+    }
+}
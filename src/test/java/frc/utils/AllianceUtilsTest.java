@@ -0,0 +1,126 @@
+package frc.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import edu.wpi.first.hal.AllianceStationID;
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.wpilibj.DriverStation.Alliance;
+import edu.wpi.first.wpilibj.simulation.DriverStationSim;
+import frc.robot.Constants.TargetConstants.AimingTarget;
+import frc.robot.Constants.VisionConstants;
+
+class AllianceUtilsTest {
+    private static final double kEpsilon = 1e-9;
+
+    @BeforeAll
+    static void initializeHal() {
+        assertTrue(HAL.initialize(500, 0));
+    }
+
+    @AfterEach
+    void resetAlliance() {
+        setStation(AllianceStationID.Blue1);
+        AllianceUtils.setAlliance(Alliance.Blue);
+    }
+
+    private static void setStation(AllianceStationID station) {
+        DriverStationSim.setAllianceStationId(station);
+        DriverStationSim.notifyNewData();
+    }
+
+    @Test
+    void blueAllianceValues() {
+        AllianceUtils.setAlliance(Alliance.Blue);
+
+        assertSame(Alliance.Blue, AllianceUtils.getAlliance());
+        assertTrue(AllianceUtils.isBlueAlliance());
+        assertFalse(AllianceUtils.isRedAlliance());
+        assertEquals(1, AllianceUtils.getDriverSign());
+        assertEquals(0, AllianceUtils.getForwardHeading().getDegrees(), kEpsilon);
+        assertEquals(AimingTarget.kSpeaker.getTarget(true), AllianceUtils.getSpeakerTarget());
+        assertEquals(AimingTarget.kAmp.getTarget(true), AllianceUtils.getAmpTarget());
+        assertEquals("blue", AllianceUtils.select("blue", "red"));
+        assertEquals(1.0, AllianceUtils.select(1.0, 2.0));
+    }
+
+    @Test
+    void redAllianceValues() {
+        AllianceUtils.setAlliance(Alliance.Red);
+
+        assertSame(Alliance.Red, AllianceUtils.getAlliance());
+        assertFalse(AllianceUtils.isBlueAlliance());
+        assertTrue(AllianceUtils.isRedAlliance());
+        assertEquals(-1, AllianceUtils.getDriverSign());
+        assertEquals(180, Math.abs(AllianceUtils.getForwardHeading().getDegrees()), kEpsilon);
+        assertEquals(AimingTarget.kSpeaker.getTarget(false), AllianceUtils.getTarget(AimingTarget.kSpeaker));
+        assertEquals(AimingTarget.kAmp.getTarget(false), AllianceUtils.getTarget(AimingTarget.kAmp));
+        assertEquals("red", AllianceUtils.select("blue", "red"));
+        assertEquals(2.0, AllianceUtils.select(1.0, 2.0));
+    }
+
+    @Test
+    void refreshPicksUpAnAllianceChange() {
+        setStation(AllianceStationID.Blue1);
+        assertFalse(AllianceUtils.refresh());
+        assertTrue(AllianceUtils.isBlueAlliance());
+
+        // The FMS reassigns the robot mid session
+        setStation(AllianceStationID.Red2);
+        assertTrue(AllianceUtils.refresh());
+        assertSame(Alliance.Red, AllianceUtils.getAlliance());
+        assertEquals(-1, AllianceUtils.getDriverSign());
+        assertEquals(AimingTarget.kSpeaker.getTarget(false), AllianceUtils.getSpeakerTarget());
+
+        // Nothing new to pick up
+        assertFalse(AllianceUtils.refresh());
+
+        setStation(AllianceStationID.Blue3);
+        assertTrue(AllianceUtils.refresh());
+        assertTrue(AllianceUtils.isBlueAlliance());
+        assertEquals(AimingTarget.kSpeaker.getTarget(true), AllianceUtils.getSpeakerTarget());
+    }
+
+    @Test
+    void flipMirrorsAcrossTheField() {
+        double fieldLength = VisionConstants.aprilTagLayout.getFieldLength();
+        Translation2d translation = new Translation2d(1.5, 2.5);
+
+        Translation2d flipped = AllianceUtils.flip(translation);
+        assertEquals(fieldLength - 1.5, flipped.getX(), kEpsilon);
+        assertEquals(2.5, flipped.getY(), kEpsilon);
+
+        Translation2d back = AllianceUtils.flip(flipped);
+        assertEquals(translation.getX(), back.getX(), kEpsilon);
+        assertEquals(translation.getY(), back.getY(), kEpsilon);
+    }
+
+    @Test
+    void flipMirrorsHeading() {
+        Pose2d pose = new Pose2d(2, 3, Rotation2d.fromDegrees(30));
+
+        Pose2d flipped = AllianceUtils.flip(pose);
+        assertEquals(150, flipped.getRotation().getDegrees(), kEpsilon);
+        assertEquals(3, flipped.getY(), kEpsilon);
+    }
+
+    @Test
+    void flipIfRedOnlyFlipsOnRed() {
+        Pose2d pose = new Pose2d(2, 3, Rotation2d.fromDegrees(30));
+
+        AllianceUtils.setAlliance(Alliance.Blue);
+        assertSame(pose, AllianceUtils.flipIfRed(pose));
+
+        AllianceUtils.setAlliance(Alliance.Red);
+        assertEquals(AllianceUtils.flip(pose), AllianceUtils.flipIfRed(pose));
+    }
+}
@@ -0,0 +1,101 @@
+package frc.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import frc.robot.Constants.BallisticsConstants;
+import frc.robot.Constants.NeoMotorConstants;
+import frc.robot.Constants.PivotConstants;
+
+class BallisticSolverTest {
+    private static final double kGravity = 9.81;
+
+    @Test
+    void dragFreeShotMatchesProjectileMotion() {
+        double distance = 3;
+        double exitSpeed = 12;
+        double[] solution = new double[2];
+        BallisticSolver.solve(distance, exitSpeed, 0, solution);
+
+        double angle = solution[0];
+        assertTrue(angle > 0 && angle < Math.PI / 2);
+
+        // Closed form flight from the end of the shooter to the target point
+        double x0 = BallisticsConstants.kShooterLength * Math.cos(angle);
+        double y0 = BallisticsConstants.kPivotHeight + BallisticsConstants.kShooterLength * Math.sin(angle);
+        double time = (distance - BallisticsConstants.kSpeakerTargetSetback - x0) / (exitSpeed * Math.cos(angle));
+        double height = y0 + exitSpeed * Math.sin(angle) * time - kGravity * time * time / 2;
+
+        assertEquals(time, solution[1], 1e-6);
+        assertEquals(BallisticsConstants.kSpeakerTargetHeight, height, 0.02);
+    }
+
+    @Test
+    void dragNeedsASteeperShot() {
+        double[] free = new double[2];
+        double[] dragged = new double[2];
+        BallisticSolver.solve(5, 12, 0, free);
+        BallisticSolver.solve(5, 12, 0.02, dragged);
+
+        assertTrue(dragged[0] > free[0]);
+        assertTrue(dragged[1] > free[1]);
+    }
+
+    @Test
+    void closerShotsAreSteeper() {
+        double[] close = new double[2];
+        double[] far = new double[2];
+        BallisticSolver.solve(1.5, 15, 0.01, close);
+        BallisticSolver.solve(5, 15, 0.01, far);
+
+        assertTrue(close[0] > far[0]);
+        assertTrue(close[1] < far[1]);
+    }
+
+    @Test
+    void unreachableShotIsNaN() {
+        double[] solution = new double[2];
+        BallisticSolver.solve(7, 4, 0.01, solution);
+
+        assertTrue(Double.isNaN(solution[0]));
+        assertTrue(Double.isNaN(solution[1]));
+    }
+
+    @Test
+    void toPivotPositionAppliesTheOffset() {
+        assertEquals(PivotConstants.kPivotHorizontalPos, BallisticSolver.toPivotPosition(0, 0), 1e-9);
+        assertEquals(PivotConstants.kPivotHorizontalPos + 30 / BallisticsConstants.kDegreesPerPivotUnit,
+                BallisticSolver.toPivotPosition(Math.toRadians(30), 0), 1e-9);
+
+        // The launch angle is above the pivot angle by the offset
+        assertEquals(BallisticSolver.toPivotPosition(Math.toRadians(25), 0),
+                BallisticSolver.toPivotPosition(Math.toRadians(30), 5), 1e-9);
+    }
+
+    @Test
+    void exitSpeedFromFlywheelSpeed() {
+        double surfaceSpeed = 6000.0 / 60 * Math.PI * BallisticsConstants.kShooterWheelDiameter;
+
+        assertEquals(surfaceSpeed * 0.5, BallisticSolver.getExitSpeed(6000, 0.5), 1e-9);
+        assertEquals(surfaceSpeed * 0.5, BallisticSolver.getExitSpeed(-6000, 0.5), 1e-9);
+        assertEquals(0, BallisticSolver.getExitSpeed(0, 0.5), 1e-9);
+    }
+
+    @Test
+    void calibrationShotsAreWithinTheDeadzone() {
+        double exitSpeed = BallisticSolver.getExitSpeed(NeoMotorConstants.kVortexFreeSpeedRpm,
+                BallisticsConstants.kExitSpeedEfficiency);
+        double drag = 0.5 * BallisticsConstants.kAirDensity * BallisticsConstants.kNoteDragArea
+                / BallisticsConstants.kNoteMass;
+        double[] solution = new double[2];
+
+        for (double[] shot : BallisticsConstants.kCalibrationShots) {
+            BallisticSolver.solve(shot[0], exitSpeed, drag, solution);
+            double position = BallisticSolver.toPivotPosition(solution[0], BallisticsConstants.kLaunchAngleOffset);
+
+            assertEquals(shot[1], position, PivotConstants.kPositionDeadzone, "Shot from " + shot[0] + " m");
+        }
+    }
+}
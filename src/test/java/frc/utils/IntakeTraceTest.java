@@ -0,0 +1,86 @@
+package frc.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import frc.robot.Constants.UTBIntakerConstants;
+import frc.utils.NoteSignatureDetector.Event;
+
+/**
+ * Replays the intake traces in {@code src/test/resources/intake} through the
+ * detector with the robot's note signature. The traces are in the CSV format
+ * {@code frc.tools.IntakeTraceReplay} reads, {@code time,duty,amps,rpm,note}.
+ */
+class IntakeTraceTest {
+    /** What the detector saw over a trace. */
+    private static class Replay {
+        double firstContact = Double.NaN;
+        double firstJam = Double.NaN;
+        double firstNote = Double.NaN;
+        int contacts;
+        int jams;
+    }
+
+    private Replay replay(String name) throws IOException {
+        NoteSignatureDetector detector = new NoteSignatureDetector(UTBIntakerConstants.kNoteSignature);
+        Replay replay = new Replay();
+
+        try (InputStream stream = getClass().getResourceAsStream("/intake/" + name)) {
+            assertNotNull(stream, name);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.trim().split(",");
+                if (parts.length < 5 || !Character.isDigit(parts[0].charAt(0))) {
+                    continue;
+                }
+
+                double time = Double.parseDouble(parts[0]);
+                Event event = detector.addSample(time, Double.parseDouble(parts[1]),
+                        Double.parseDouble(parts[2]), Double.parseDouble(parts[3]));
+                if (event == Event.kContact && Double.isNaN(replay.firstContact)) {
+                    replay.firstContact = time;
+                } else if (event == Event.kJam && Double.isNaN(replay.firstJam)) {
+                    replay.firstJam = time;
+                }
+                if (Double.parseDouble(parts[4]) > 0 && Double.isNaN(replay.firstNote)) {
+                    replay.firstNote = time;
+                }
+            }
+        }
+
+        replay.contacts = detector.getContactCount();
+        replay.jams = detector.getJamCount();
+        return replay;
+    }
+
+    @Test
+    void contactIsSeenBeforeTheBeamBreak() throws IOException {
+        Replay replay = replay("note.csv");
+
+        assertEquals(1, replay.contacts);
+        assertEquals(0, replay.jams);
+        assertFalse(Double.isNaN(replay.firstNote));
+        assertTrue(replay.firstContact < replay.firstNote,
+                "Contact at " + replay.firstContact + " s, beam break at " + replay.firstNote + " s");
+    }
+
+    @Test
+    void jamIsFlagged() throws IOException {
+        Replay replay = replay("jam.csv");
+
+        assertEquals(1, replay.jams);
+        assertTrue(replay.firstContact < replay.firstJam);
+        assertTrue(Double.isNaN(replay.firstNote));
+    }
+}
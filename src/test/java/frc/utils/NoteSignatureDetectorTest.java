@@ -0,0 +1,136 @@
+package frc.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import frc.utils.NoteSignatureDetector.Event;
+import frc.utils.NoteSignatureDetector.Signature;
+
+class NoteSignatureDetectorTest {
+    private static final double kPeriod = 0.01;
+    private static final Signature kSignature = new Signature(10, 0.15, 0.04, 0.3, 0.1, 0.2, 0.1);
+
+    // Free running rollers
+    private static final double kFreeCurrent = 20;
+    private static final double kFreeSpeed = 5000;
+
+    private NoteSignatureDetector m_detector;
+    private int m_sample;
+
+    @BeforeEach
+    void createDetector() {
+        m_detector = new NoteSignatureDetector(kSignature);
+        m_sample = 0;
+    }
+
+    /**
+     * Feed the same sample for a while
+     *
+     * @return the last event that wasn't kNone, or kNone
+     */
+    private Event feed(double seconds, double output, double current, double speed) {
+        Event last = Event.kNone;
+        int samples = (int) Math.round(seconds / kPeriod);
+        for (int i = 0; i < samples; i++) {
+            Event event = m_detector.addSample(m_sample++ * kPeriod, output, current, speed);
+            if (event != Event.kNone) {
+                last = event;
+            }
+        }
+        return last;
+    }
+
+    private void spinUp() {
+        feed(0.15, 1, 60, 1000); // inrush
+        feed(0.35, 1, kFreeCurrent, kFreeSpeed);
+    }
+
+    @Test
+    void baselineSkipsTheInrush() {
+        feed(0.15, 1, 60, 1000);
+        assertTrue(Double.isNaN(m_detector.getBaselineCurrent()));
+
+        feed(0.35, 1, kFreeCurrent, kFreeSpeed);
+        assertEquals(kFreeCurrent, m_detector.getBaselineCurrent(), 1e-9);
+        assertEquals(kFreeSpeed, m_detector.getBaselineSpeed(), 1e-9);
+        assertEquals(0, m_detector.getContactCount());
+    }
+
+    @Test
+    void baselineFollowsFreeRunningDrift() {
+        spinUp();
+        feed(1, 1, kFreeCurrent + 2, kFreeSpeed - 100);
+
+        assertEquals(kFreeCurrent + 2, m_detector.getBaselineCurrent(), 0.01);
+        assertEquals(kFreeSpeed - 100, m_detector.getBaselineSpeed(), 1);
+    }
+
+    @Test
+    void noteIsContact() {
+        spinUp();
+
+        assertEquals(Event.kContact, feed(0.1, 1, kFreeCurrent + 20, kFreeSpeed * 0.7));
+        assertTrue(m_detector.isContact());
+        assertFalse(m_detector.isJammed());
+        assertEquals(1, m_detector.getContactCount());
+
+        // The baseline doesn't learn the loaded rollers
+        assertEquals(kFreeCurrent, m_detector.getBaselineCurrent(), 1e-9);
+
+        // Passing through ends the contact
+        assertEquals(Event.kNone, feed(0.1, 1, kFreeCurrent, kFreeSpeed));
+        assertFalse(m_detector.isContact());
+        assertEquals(1, m_detector.getContactCount());
+    }
+
+    @Test
+    void briefSpikeIsNotContact() {
+        spinUp();
+
+        feed(0.02, 1, kFreeCurrent + 20, kFreeSpeed * 0.7);
+        feed(0.1, 1, kFreeCurrent, kFreeSpeed);
+        assertEquals(0, m_detector.getContactCount());
+    }
+
+    @Test
+    void currentWithoutSlowingIsNotContact() {
+        spinUp();
+
+        assertEquals(Event.kNone, feed(0.2, 1, kFreeCurrent + 20, kFreeSpeed));
+        assertEquals(0, m_detector.getContactCount());
+    }
+
+    @Test
+    void stalledNoteIsAJam() {
+        spinUp();
+
+        assertEquals(Event.kJam, feed(0.2, 1, kFreeCurrent + 25, kFreeSpeed * 0.1));
+        assertTrue(m_detector.isContact());
+        assertTrue(m_detector.isJammed());
+        assertEquals(1, m_detector.getJamCount());
+
+        // Stays jammed until the rollers are stopped
+        feed(0.1, 1, kFreeCurrent, kFreeSpeed);
+        assertTrue(m_detector.isJammed());
+
+        feed(0.02, 0, 0, 0);
+        assertFalse(m_detector.isJammed());
+        assertFalse(m_detector.isContact());
+        assertEquals(1, m_detector.getJamCount());
+    }
+
+    @Test
+    void stoppingRestartsTheSpinUp() {
+        spinUp();
+        feed(0.1, 0, 0, 0);
+
+        // Inrush after restarting isn't a note
+        assertEquals(Event.kNone, feed(0.15, 1, 60, 1000));
+        assertEquals(0, m_detector.getContactCount());
+        assertEquals(0, m_detector.getJamCount());
+    }
+}
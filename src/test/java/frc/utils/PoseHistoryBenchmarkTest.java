@@ -0,0 +1,95 @@
+package frc.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.interpolation.TimeInterpolatableBuffer;
+import frc.robot.Constants.DriveConstants;
+
+/**
+ * Compares looking up past poses in {@link PoseHistory} with WPILib's
+ * {@link TimeInterpolatableBuffer}, filled the same way the drive fills its
+ * history. The timings are printed rather than asserted since they depend on
+ * the machine running the tests.
+ */
+class PoseHistoryBenchmarkTest {
+    private static final double kPeriod = 0.02;
+    private static final int kWarmupLookups = 200_000;
+    private static final int kLookups = 1_000_000;
+
+    private final PoseHistory m_history = new PoseHistory(DriveConstants.kPoseHistorySize);
+    private final TimeInterpolatableBuffer<Pose2d> m_buffer = TimeInterpolatableBuffer
+            .createBuffer(DriveConstants.kPoseHistorySize * kPeriod);
+    private final double[] m_timestamps = new double[kLookups];
+
+    // Keeps the JIT from removing the lookups
+    private double m_sink = 0;
+
+    PoseHistoryBenchmarkTest() {
+        // Drive an arc, 4 m/s and 1 rad/s
+        for (int i = 0; i < DriveConstants.kPoseHistorySize; i++) {
+            double t = i * kPeriod;
+            Pose2d pose = new Pose2d(Math.sin(t) * 4, (1 - Math.cos(t)) * 4, new Rotation2d(t));
+            m_history.addSample(t, pose.getX(), pose.getY(), t, 4 * Math.cos(t), 4 * Math.sin(t), 1);
+            m_buffer.addSample(t, pose);
+        }
+
+        Random random = new Random(2024);
+        double span = (DriveConstants.kPoseHistorySize - 1) * kPeriod;
+        for (int i = 0; i < kLookups; i++) {
+            m_timestamps[i] = random.nextDouble() * span;
+        }
+    }
+
+    @Test
+    void lookupsAgree() {
+        double[] sample = new double[PoseHistory.kSampleSize];
+        for (int i = 0; i < 1000; i++) {
+            double t = m_timestamps[i];
+            m_history.sample(t, sample);
+            Pose2d expected = m_buffer.getSample(t).get();
+
+            // The buffer interpolates along the arc and the history along the
+            // chord, which differ by less than a millimeter over one loop
+            assertEquals(expected.getX(), sample[PoseHistory.kX], 1e-3);
+            assertEquals(expected.getY(), sample[PoseHistory.kY], 1e-3);
+            assertEquals(expected.getRotation().getRadians(), sample[PoseHistory.kTheta], 1e-6);
+        }
+    }
+
+    @Test
+    void benchmarkLookups() {
+        runPoseHistory(kWarmupLookups);
+        runBuffer(kWarmupLookups);
+
+        long start = System.nanoTime();
+        runPoseHistory(kLookups);
+        double historyNanos = (double) (System.nanoTime() - start) / kLookups;
+
+        start = System.nanoTime();
+        runBuffer(kLookups);
+        double bufferNanos = (double) (System.nanoTime() - start) / kLookups;
+
+        System.out.printf("PoseHistory %.1f ns/lookup, TimeInterpolatableBuffer %.1f ns/lookup (%d samples)%n",
+                historyNanos, bufferNanos, DriveConstants.kPoseHistorySize);
+    }
+
+    private void runPoseHistory(int lookups) {
+        double[] sample = new double[PoseHistory.kSampleSize];
+        for (int i = 0; i < lookups; i++) {
+            m_history.sample(m_timestamps[i], sample);
+            m_sink += sample[PoseHistory.kX];
+        }
+    }
+
+    private void runBuffer(int lookups) {
+        for (int i = 0; i < lookups; i++) {
+            m_sink += m_buffer.getSample(m_timestamps[i]).get().getX();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package frc.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+
+class PoseHistoryTest {
+    private static final double kEpsilon = 1e-9;
+
+    @Test
+    void emptyHistoryHasNoSamples() {
+        PoseHistory history = new PoseHistory(4);
+
+        assertTrue(history.isEmpty());
+        assertFalse(history.sample(1, new double[PoseHistory.kSampleSize]));
+        assertTrue(history.getPose(1).isEmpty());
+        assertTrue(Double.isNaN(history.getOldestTimestamp()));
+        assertTrue(Double.isNaN(history.getLatestTimestamp()));
+    }
+
+    @Test
+    void interpolatesBetweenSamples() {
+        PoseHistory history = new PoseHistory(4);
+        history.addSample(1, 0, 0, 0, 1, 0, 0);
+        history.addSample(2, 2, 4, 1, 3, 2, 1);
+
+        double[] out = new double[PoseHistory.kSampleSize];
+        assertTrue(history.sample(1.25, out));
+        assertEquals(0.5, out[PoseHistory.kX], kEpsilon);
+        assertEquals(1, out[PoseHistory.kY], kEpsilon);
+        assertEquals(0.25, out[PoseHistory.kTheta], kEpsilon);
+        assertEquals(1.5, out[PoseHistory.kVx], kEpsilon);
+        assertEquals(0.5, out[PoseHistory.kVy], kEpsilon);
+        assertEquals(0.25, out[PoseHistory.kOmega], kEpsilon);
+    }
+
+    @Test
+    void rotatesRobotRelativeSpeedsOntoTheField() {
+        PoseHistory history = new PoseHistory(4);
+        history.addSample(1, new Pose2d(1, 2, new Rotation2d(Math.PI / 2)), new ChassisSpeeds(1, 0, 0.5));
+
+        double[] out = new double[PoseHistory.kSampleSize];
+        history.sample(1, out);
+        assertEquals(1, out[PoseHistory.kX], kEpsilon);
+        assertEquals(2, out[PoseHistory.kY], kEpsilon);
+        assertEquals(Math.PI / 2, out[PoseHistory.kTheta], kEpsilon);
+        assertEquals(0, out[PoseHistory.kVx], kEpsilon);
+        assertEquals(1, out[PoseHistory.kVy], kEpsilon);
+        assertEquals(0.5, out[PoseHistory.kOmega], kEpsilon);
+    }
+
+    @Test
+    void exactTimestampReturnsThatSample() {
+        PoseHistory history = new PoseHistory(4);
+        history.addSample(1, 1, 1, 0, 0, 0, 0);
+        history.addSample(2, 2, 2, 0, 0, 0, 0);
+        history.addSample(3, 3, 3, 0, 0, 0, 0);
+
+        double[] out = new double[PoseHistory.kSampleSize];
+        assertTrue(history.sample(2, out));
+        assertEquals(2, out[PoseHistory.kX], kEpsilon);
+        assertEquals(2, out[PoseHistory.kY], kEpsilon);
+    }
+
+    @Test
+    void headingInterpolatesTheShortWayAround() {
+        PoseHistory history = new PoseHistory(4);
+        history.addSample(1, 0, 0, Math.PI - 0.1, 0, 0, 0);
+        history.addSample(2, 0, 0, -Math.PI + 0.1, 0, 0, 0);
+
+        double[] out = new double[PoseHistory.kSampleSize];
+        history.sample(1.5, out);
+        assertEquals(Math.PI, Math.abs(out[PoseHistory.kTheta]), 1e-6);
+    }
+
+    @Test
+    void clampsOutsideOfTheHistory() {
+        PoseHistory history = new PoseHistory(4);
+        history.addSample(1, 1, 0, 0, 0, 0, 0);
+        history.addSample(2, 2, 0, 0, 0, 0, 0);
+
+        double[] out = new double[PoseHistory.kSampleSize];
+        history.sample(0, out);
+        assertEquals(1, out[PoseHistory.kX], kEpsilon);
+        history.sample(5, out);
+        assertEquals(2, out[PoseHistory.kX], kEpsilon);
+    }
+
+    @Test
+    void ignoresOutOfOrderSamples() {
+        PoseHistory history = new PoseHistory(4);
+        history.addSample(2, 2, 0, 0, 0, 0, 0);
+        history.addSample(1, 5, 0, 0, 0, 0, 0);
+        history.addSample(2, 5, 0, 0, 0, 0, 0);
+
+        assertEquals(2, history.getOldestTimestamp(), kEpsilon);
+        assertEquals(2, history.getLatestTimestamp(), kEpsilon);
+        assertEquals(2, history.getPose(2).get().getX(), kEpsilon);
+    }
+
+    @Test
+    void overwritesOldestSampleWhenFull() {
+        PoseHistory history = new PoseHistory(3);
+        for (int i = 1; i <= 5; i++) {
+            history.addSample(i, i * 10, 0, 0, 0, 0, 0);
+        }
+
+        assertEquals(3, history.getOldestTimestamp(), kEpsilon);
+        assertEquals(5, history.getLatestTimestamp(), kEpsilon);
+
+        // Older than the history clamps to the oldest kept sample
+        assertEquals(30, history.getPose(1).get().getX(), kEpsilon);
+        assertEquals(45, history.getPose(4.5).get().getX(), kEpsilon);
+        assertEquals(35, history.getPose(3.5).get().getX(), kEpsilon);
+    }
+
+    @Test
+    void clearEmptiesTheHistory() {
+        PoseHistory history = new PoseHistory(3);
+        history.addSample(1, 1, 0, 0, 0, 0, 0);
+        history.clear();
+
+        assertTrue(history.isEmpty());
+        assertTrue(history.getPose(1).isEmpty());
+
+        // Earlier timestamps are accepted again after clearing
+        history.addSample(0.5, 7, 0, 0, 0, 0, 0);
+        Optional<Pose2d> pose = history.getPose(0.5);
+        assertTrue(pose.isPresent());
+        assertEquals(7, pose.get().getX(), kEpsilon);
+    }
+}
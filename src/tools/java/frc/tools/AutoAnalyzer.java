@@ -0,0 +1,582 @@
+package frc.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import frc.robot.Constants.AutoConstants;
+import frc.robot.Constants.NeoMotorConstants;
+import frc.robot.Constants.PivotConstants;
+import frc.robot.Constants.ShooterConstants;
+
+/**
+ * Offline analysis of the PathPlanner autos. Each auto is walked with timing
+ * models for the paths and named commands to estimate how long it takes, which
+ * steps are on the critical path, and where the robot sits idle waiting on
+ * something like shooter spin up or a note. Adjacent sequential steps that
+ * don't share any mechanisms are flagged as candidates to run in parallel.
+ * Each fixed wait is compared with models of the shooter spin up and pivot
+ * travel to show how much longer it is than the mechanisms it waits for need,
+ * or how much too short.
+ *
+ * <p>
+ * Run with {@code ./gradlew analyzeAutos}, or pass the pathplanner directory
+ * and optionally an auto name.
+ */
+public class AutoAnalyzer {
+    // Extra time after reaching a note before the beam break sees it
+    private static final double kNoteSettleTime = 0.25;
+    // Path samples per bezier segment
+    private static final int kSamplesPerSegment = 100;
+    // Autos longer than this don't finish
+    private static final double kAutoLength = 15.0;
+
+    private enum Kind {
+        kDrive,
+        kIdle,
+        kWaiting,
+        kInstant
+    }
+
+    /**
+     * Timing model of a named command. What it moves comes from
+     * {@link AutoConstants#kNamedCommandMechanisms}, which the robot checks
+     * against the real commands.
+     *
+     * @param duration  how long the command runs, or the time after the note
+     *                  arrives for commands that wait on one
+     * @param untilNote whether the command waits for a note to reach the beam
+     *                  break
+     */
+    private record CommandModel(double duration, boolean untilNote) {
+    }
+
+    // Timing of the commands registered in RobotContainer.registerPathplannerCommands,
+    // anything not listed is instant
+    private static final Map<String, CommandModel> kCommandModels = Map.of(
+            // getStopShootCommand waits 0.2 s before stopping
+            "stopShooter", new CommandModel(0.2, false),
+            "stopFeeders", new CommandModel(0.2, false),
+            "beamBreak", new CommandModel(kNoteSettleTime, true),
+            "intake", new CommandModel(kNoteSettleTime, true));
+
+    // Pivot positions the named commands move to, the custom ones are set in
+    // RobotContainer.registerPathplannerCommands. Stopping the shot returns
+    // the pivot to intake.
+    private static final Map<String, Double> kPivotTargets = Map.of(
+            "pivotW1", 7.7,
+            "pivotW2", 9.27,
+            "pivotW3", 6.95,
+            "pivotSubwoofer", PivotConstants.kSubwooferPos,
+            "pivotIntake", PivotConstants.kIntakePos,
+            "stopShooter", PivotConstants.kIntakePos,
+            "stopContinuousFire", PivotConstants.kIntakePos);
+
+    /**
+     * A step on the critical path
+     *
+     * @param start    when the step starts in seconds
+     * @param duration how long the step takes in seconds
+     * @param kind     what the robot is doing
+     * @param label    a description of the step
+     */
+    private record Segment(double start, double duration, Kind kind, String label) {
+    }
+
+    private record Result(double duration, List<Segment> criticalPath, Set<String> requirements) {
+    }
+
+    private record WaitCheck(double start, String report) {
+    }
+
+    private final ObjectMapper m_mapper = new ObjectMapper();
+    private final File m_pathDirectory;
+    private final Map<String, JsonNode> m_paths = new HashMap<>();
+
+    // Per auto analysis state
+    private double m_noteArrival = 0;
+    private final List<String> m_suggestions = new ArrayList<>();
+    private final List<String> m_warnings = new ArrayList<>();
+    private final List<WaitCheck> m_waits = new ArrayList<>();
+
+    // When the flywheels reach shooting speed, NaN while they are off, and
+    // where the pivot is headed and when it gets there
+    private double m_shooterReady = Double.NaN;
+    private double m_pivotPosition = PivotConstants.kIntakePos;
+    private double m_pivotReady = 0;
+
+    public AutoAnalyzer(File pathplannerDirectory) {
+        m_pathDirectory = new File(pathplannerDirectory, "paths");
+    }
+
+    public static void main(String[] args) throws IOException {
+        File directory = new File(args.length > 0 ? args[0] : "src/main/deploy/pathplanner");
+        String only = args.length > 1 ? args[1] : null;
+
+        File[] autos = new File(directory, "autos").listFiles((dir, name) -> name.endsWith(".auto"));
+        if (autos == null) {
+            System.err.println("No autos found in " + directory);
+            System.exit(1);
+        }
+        Arrays.sort(autos);
+
+        System.out.printf("Shooter spins up in %.2f s, pivot travels %.0f units/s at %.0f units/s^2%n%n",
+                getSpinUpTime(), PivotConstants.kTravelVelocity, PivotConstants.kTravelAcceleration);
+
+        AutoAnalyzer analyzer = new AutoAnalyzer(directory);
+        Map<String, Double> totals = new LinkedHashMap<>();
+        for (File auto : autos) {
+            String name = auto.getName().replace(".auto", "");
+            if (only != null && !only.equals(name)) {
+                continue;
+            }
+            totals.put(name, analyzer.analyze(name, auto));
+        }
+
+        System.out.println("Summary");
+        totals.entrySet().stream()
+                .sorted(Map.Entry.comparingByValue())
+                .forEach(entry -> System.out.printf("  %6.2f s%s  %s%n", entry.getValue(),
+                        entry.getValue() > kAutoLength ? " (too long)" : "", entry.getKey()));
+    }
+
+    /**
+     * Analyze an auto and print the report
+     *
+     * @param name the name of the auto
+     * @param file the .auto file
+     * @return the estimated length of the auto in seconds
+     */
+    public double analyze(String name, File file) throws IOException {
+        m_noteArrival = 0;
+        m_suggestions.clear();
+        m_warnings.clear();
+        m_waits.clear();
+        m_shooterReady = Double.NaN;
+        m_pivotPosition = PivotConstants.kIntakePos;
+        m_pivotReady = 0;
+
+        JsonNode auto = m_mapper.readTree(file);
+        Result result = evaluate(auto.get("command"), 0, 0);
+
+        Map<Kind, Double> byKind = new HashMap<>();
+        Map<String, Double> idleByCause = new LinkedHashMap<>();
+        for (Segment segment : result.criticalPath()) {
+            byKind.merge(segment.kind(), segment.duration(), Double::sum);
+            if (segment.kind() == Kind.kIdle || segment.kind() == Kind.kWaiting) {
+                idleByCause.merge(segment.label(), segment.duration(), Double::sum);
+            }
+        }
+
+        System.out.printf("%s: %.2f s (driving %.2f s, idle %.2f s, waiting on sensors %.2f s)%n", name,
+                result.duration(), byKind.getOrDefault(Kind.kDrive, 0.0), byKind.getOrDefault(Kind.kIdle, 0.0),
+                byKind.getOrDefault(Kind.kWaiting, 0.0));
+
+        System.out.println("  critical path:");
+        for (Segment segment : result.criticalPath()) {
+            if (segment.kind() != Kind.kInstant) {
+                System.out.printf("    %6.2f  +%5.2f  %-8s %s%n", segment.start(), segment.duration(),
+                        segment.kind().name().substring(1).toLowerCase(), segment.label());
+            }
+        }
+
+        if (!idleByCause.isEmpty()) {
+            System.out.println("  idle by cause:");
+            idleByCause.forEach((cause, time) -> System.out.printf("    %5.2f s  %s%n", time, cause));
+        }
+
+        if (!m_waits.isEmpty()) {
+            System.out.println("  fixed waits:");
+            m_waits.stream()
+                    .sorted((a, b) -> Double.compare(a.start(), b.start()))
+                    .forEach(wait -> System.out.printf("    %6.2f  %s%n", wait.start(), wait.report()));
+        }
+
+        if (!m_suggestions.isEmpty()) {
+            System.out.println("  could run in parallel:");
+            m_suggestions.forEach(suggestion -> System.out.println("    " + suggestion));
+        }
+
+        m_warnings.forEach(warning -> System.out.println("  warning: " + warning));
+        System.out.println();
+
+        return result.duration();
+    }
+
+    /**
+     * Estimate the timing of a command from the auto
+     *
+     * @param node          the command node
+     * @param start         when the command starts
+     * @param entryVelocity the robot's speed when the command starts, for paths
+     * @return the duration, critical path, and requirements of the command
+     */
+    private Result evaluate(JsonNode node, double start, double entryVelocity) {
+        JsonNode data = node.get("data");
+        return switch (node.get("type").asText()) {
+            case "sequential" -> evaluateSequential(data.get("commands"), start);
+            case "parallel", "deadline", "race" -> evaluateGroup(node.get("type").asText(), data.get("commands"),
+                    start);
+            case "wait" -> {
+                double time = data.get("waitTime").asDouble();
+                checkWait(start, time);
+                yield new Result(time, List.of(new Segment(start, time, Kind.kIdle, "wait")), Set.of());
+            }
+            case "path" -> evaluatePath(data.get("pathName").asText(), start, entryVelocity);
+            case "named" -> evaluateNamed(data.get("name").asText(), start);
+            default -> {
+                m_warnings.add("unknown command type " + node.get("type"));
+                yield new Result(0, List.of(), Set.of());
+            }
+        };
+    }
+
+    private Result evaluateSequential(JsonNode commands, double start) {
+        double time = start;
+        double velocity = 0;
+        String lastCommand = "start";
+        List<Segment> path = new ArrayList<>();
+        List<Result> results = new ArrayList<>();
+        Set<String> requirements = new HashSet<>();
+
+        for (JsonNode command : commands) {
+            Result result = evaluate(command, time, velocity);
+            results.add(result);
+            requirements.addAll(result.requirements());
+
+            // Waits are time spent for whatever the last command started
+            for (Segment segment : result.criticalPath()) {
+                if (segment.kind() == Kind.kIdle && segment.label().equals("wait")) {
+                    path.add(new Segment(segment.start(), segment.duration(), Kind.kIdle,
+                            "wait after " + lastCommand));
+                } else {
+                    path.add(segment);
+                }
+            }
+
+            String type = command.get("type").asText();
+            if (type.equals("named")) {
+                lastCommand = command.get("data").get("name").asText();
+            } else if (type.equals("path")) {
+                lastCommand = command.get("data").get("pathName").asText();
+            }
+
+            velocity = type.equals("path") ? getPathEndVelocity(command.get("data").get("pathName").asText()) : 0;
+            time += result.duration();
+        }
+
+        findParallelCandidates(commands, results);
+
+        return new Result(time - start, path, requirements);
+    }
+
+    /**
+     * Flag adjacent steps in a sequence that don't depend on each other. Instant
+     * commands between them are skipped since they take no time.
+     */
+    private void findParallelCandidates(JsonNode commands, List<Result> results) {
+        int previous = -1;
+        for (int i = 0; i < results.size(); i++) {
+            if (results.get(i).duration() <= 0) {
+                continue;
+            }
+
+            if (previous >= 0) {
+                Result first = results.get(previous);
+                Result second = results.get(i);
+                String firstType = commands.get(previous).get("type").asText();
+                String secondType = commands.get(i).get("type").asText();
+
+                if (firstType.equals("wait") && secondType.equals("path")) {
+                    // A fixed wait before driving away, often for a shot to clear
+                    m_suggestions.add(String.format(
+                            "%.2f s wait before %s, start driving during it if the shot allows",
+                            first.duration(), describe(commands.get(i))));
+                } else if (!firstType.equals("wait") && !secondType.equals("wait")
+                        && Collections.disjoint(first.requirements(), second.requirements())) {
+                    m_suggestions.add(String.format("%s (%.2f s) and %s (%.2f s) share no mechanisms",
+                            describe(commands.get(previous)), first.duration(), describe(commands.get(i)),
+                            second.duration()));
+                }
+            }
+            previous = i;
+        }
+    }
+
+    private Result evaluateGroup(String type, JsonNode commands, double start) {
+        // Commands waiting on a note need to know when the paths next to them end,
+        // so evaluate the rest of the group first
+        Result[] results = new Result[commands.size()];
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i < commands.size(); i++) {
+                if (waitsOnNote(commands.get(i)) == (pass == 1)) {
+                    results[i] = evaluate(commands.get(i), start, 0);
+                }
+            }
+        }
+
+        Set<String> requirements = new HashSet<>();
+        for (Result result : results) {
+            for (String requirement : result.requirements()) {
+                if (!requirements.add(requirement)) {
+                    m_warnings.add(type + " group has two commands requiring " + requirement);
+                }
+            }
+        }
+
+        Result governing = switch (type) {
+            // The first command ends the group
+            case "deadline" -> results[0];
+            case "race" -> Arrays.stream(results).min((a, b) -> Double.compare(a.duration(), b.duration()))
+                    .orElse(null);
+            default -> Arrays.stream(results).max((a, b) -> Double.compare(a.duration(), b.duration()))
+                    .orElse(null);
+        };
+
+        if (governing == null) {
+            return new Result(0, List.of(), requirements);
+        }
+        return new Result(governing.duration(), governing.criticalPath(), requirements);
+    }
+
+    private boolean waitsOnNote(JsonNode node) {
+        if (node.get("type").asText().equals("named")) {
+            CommandModel model = kCommandModels.get(node.get("data").get("name").asText());
+            return model != null && model.untilNote();
+        }
+
+        JsonNode commands = node.get("data").get("commands");
+        if (commands != null) {
+            for (JsonNode command : commands) {
+                if (waitsOnNote(command)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private Result evaluateNamed(String name, double start) {
+        Set<String> mechanisms = AutoConstants.kNamedCommandMechanisms.get(name);
+        if (mechanisms == null) {
+            m_warnings.add("named command " + name + " isn't registered, assuming instant");
+            return new Result(0, List.of(new Segment(start, 0, Kind.kInstant, name)), Set.of());
+        }
+
+        CommandModel model = kCommandModels.getOrDefault(name, new CommandModel(0, false));
+        if (model.untilNote()) {
+            // Assume the note is at the end of the last path driven
+            double end = Math.max(start, m_noteArrival) + model.duration();
+            return new Result(end - start,
+                    List.of(new Segment(start, end - start, Kind.kWaiting, "waiting on " + name)),
+                    mechanisms);
+        }
+
+        updateMechanisms(name, start + model.duration());
+        Kind kind = model.duration() > 0 ? Kind.kIdle : Kind.kInstant;
+        return new Result(model.duration(), List.of(new Segment(start, model.duration(), kind, name)),
+                mechanisms);
+    }
+
+    // Track the shooter and pivot a named command starts moving
+    private void updateMechanisms(String name, double time) {
+        if (name.equals("startShooter") || name.equals("startContinuousFire")) {
+            if (Double.isNaN(m_shooterReady)) {
+                m_shooterReady = time + getSpinUpTime();
+            }
+        } else if (name.equals("stopContinuousFire")) {
+            m_shooterReady = Double.NaN;
+        }
+
+        Double target = kPivotTargets.get(name);
+        if (target != null) {
+            m_pivotReady = Math.max(time, m_pivotReady) + getPivotTravelTime(target - m_pivotPosition);
+            m_pivotPosition = target;
+        }
+    }
+
+    // Compare a fixed wait with whatever is still moving when it starts
+    private void checkWait(double start, double time) {
+        if (time <= 0) {
+            return;
+        }
+
+        double ready = Double.NEGATIVE_INFINITY;
+        List<String> moving = new ArrayList<>();
+        if (m_shooterReady > start) {
+            ready = m_shooterReady;
+            moving.add("shooter spin up");
+        }
+        if (m_pivotReady > start) {
+            ready = Math.max(ready, m_pivotReady);
+            moving.add("pivot");
+        }
+
+        if (moving.isEmpty()) {
+            m_waits.add(new WaitCheck(start, String.format("%.2f s wait, nothing is moving", time)));
+            return;
+        }
+
+        double slack = start + time - ready;
+        m_waits.add(new WaitCheck(start, String.format("%.2f s wait for %s, %.2f s %s", time,
+                String.join(" and ", moving), Math.abs(slack), slack >= 0 ? "longer than needed" : "too short")));
+    }
+
+    /**
+     * Estimate how long the flywheels take to reach the spin up threshold of
+     * the shot speed from rest, as a first order system from the feedforward
+     * with full voltage applied
+     *
+     * @return the time in seconds, infinite if they never get there
+     */
+    static double getSpinUpTime() {
+        double target = ShooterConstants.kShootSpeed * NeoMotorConstants.kVortexFreeSpeedRpm
+                * ShooterConstants.kSpinUpThreshold;
+        double topSpeed = (12 - ShooterConstants.kS) / ShooterConstants.kV;
+        if (target >= topSpeed) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return -ShooterConstants.kA / ShooterConstants.kV * Math.log(1 - target / topSpeed);
+    }
+
+    /**
+     * Estimate how long the pivot takes to get within the deadzone of a new
+     * position with a trapezoidal profile
+     *
+     * @param distance how far the pivot moves in pivot units
+     * @return the time in seconds
+     */
+    static double getPivotTravelTime(double distance) {
+        double travel = Math.max(Math.abs(distance) - PivotConstants.kPositionDeadzone, 0);
+        double velocity = PivotConstants.kTravelVelocity;
+        double acceleration = PivotConstants.kTravelAcceleration;
+        if (travel < velocity * velocity / acceleration) {
+            // Never reaches full speed
+            return 2 * Math.sqrt(travel / acceleration);
+        }
+        return travel / velocity + velocity / acceleration;
+    }
+
+    private Result evaluatePath(String name, double start, double entryVelocity) {
+        JsonNode path = loadPath(name);
+        if (path == null) {
+            m_warnings.add("missing path " + name);
+            return new Result(0, List.of(), Set.of(AutoConstants.kDrive));
+        }
+
+        double duration = estimatePathTime(path, entryVelocity);
+        m_noteArrival = Math.max(m_noteArrival, start + duration);
+        return new Result(duration, List.of(new Segment(start, duration, Kind.kDrive, name)), Set.of(AutoConstants.kDrive));
+    }
+
+    private JsonNode loadPath(String name) {
+        return m_paths.computeIfAbsent(name, key -> {
+            try {
+                return m_mapper.readTree(new File(m_pathDirectory, key + ".path"));
+            } catch (IOException e) {
+                return null;
+            }
+        });
+    }
+
+    private double getPathEndVelocity(String name) {
+        JsonNode path = loadPath(name);
+        return path == null ? 0 : path.get("goalEndState").get("velocity").asDouble();
+    }
+
+    /**
+     * Estimate how long a path takes with a trapezoidal velocity profile along
+     * the bezier curve, respecting constraint zones
+     */
+    private double estimatePathTime(JsonNode path, double entryVelocity) {
+        JsonNode waypoints = path.get("waypoints");
+        int segments = waypoints.size() - 1;
+        int samples = segments * kSamplesPerSegment + 1;
+
+        double[] distance = new double[samples];
+        double[] maxVelocity = new double[samples];
+        double[] maxAcceleration = new double[samples];
+
+        JsonNode global = path.get("globalConstraints");
+        double lastX = waypoints.get(0).get("anchor").get("x").asDouble();
+        double lastY = waypoints.get(0).get("anchor").get("y").asDouble();
+
+        for (int i = 0; i < samples; i++) {
+            int segment = Math.min(i / kSamplesPerSegment, segments - 1);
+            double t = (i - segment * kSamplesPerSegment) / (double) kSamplesPerSegment;
+
+            JsonNode from = waypoints.get(segment);
+            JsonNode to = waypoints.get(segment + 1);
+            double x = bezier(from.get("anchor").get("x").asDouble(), from.get("nextControl").get("x").asDouble(),
+                    to.get("prevControl").get("x").asDouble(), to.get("anchor").get("x").asDouble(), t);
+            double y = bezier(from.get("anchor").get("y").asDouble(), from.get("nextControl").get("y").asDouble(),
+                    to.get("prevControl").get("y").asDouble(), to.get("anchor").get("y").asDouble(), t);
+
+            distance[i] = (i == 0 ? 0 : distance[i - 1]) + Math.hypot(x - lastX, y - lastY);
+            lastX = x;
+            lastY = y;
+
+            JsonNode constraints = global;
+            double position = segment + t;
+            for (JsonNode zone : path.get("constraintZones")) {
+                if (position >= zone.get("minWaypointRelativePos").asDouble()
+                        && position <= zone.get("maxWaypointRelativePos").asDouble()) {
+                    constraints = zone.get("constraints");
+                }
+            }
+            maxVelocity[i] = constraints.get("maxVelocity").asDouble();
+            maxAcceleration[i] = constraints.get("maxAcceleration").asDouble();
+        }
+
+        double[] velocity = new double[samples];
+        velocity[0] = Math.min(entryVelocity, maxVelocity[0]);
+        for (int i = 1; i < samples; i++) {
+            double ds = distance[i] - distance[i - 1];
+            velocity[i] = Math.min(maxVelocity[i],
+                    Math.sqrt(velocity[i - 1] * velocity[i - 1] + 2 * maxAcceleration[i] * ds));
+        }
+
+        velocity[samples - 1] = Math.min(velocity[samples - 1],
+                path.get("goalEndState").get("velocity").asDouble());
+        for (int i = samples - 2; i >= 0; i--) {
+            double ds = distance[i + 1] - distance[i];
+            velocity[i] = Math.min(velocity[i],
+                    Math.sqrt(velocity[i + 1] * velocity[i + 1] + 2 * maxAcceleration[i] * ds));
+        }
+
+        double time = 0;
+        for (int i = 1; i < samples; i++) {
+            double average = (velocity[i] + velocity[i - 1]) / 2;
+            if (average > 1e-6) {
+                time += (distance[i] - distance[i - 1]) / average;
+            }
+        }
+        return time;
+    }
+
+    private static double bezier(double p0, double p1, double p2, double p3, double t) {
+        double u = 1 - t;
+        return u * u * u * p0 + 3 * u * u * t * p1 + 3 * u * t * t * p2 + t * t * t * p3;
+    }
+
+    private static String describe(JsonNode node) {
+        JsonNode data = node.get("data");
+        return switch (node.get("type").asText()) {
+            case "named" -> data.get("name").asText();
+            case "path" -> "path " + data.get("pathName").asText();
+            case "wait" -> "wait " + data.get("waitTime").asText();
+            default -> node.get("type").asText() + " group";
+        };
+    }
+}
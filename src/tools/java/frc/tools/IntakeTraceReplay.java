@@ -0,0 +1,159 @@
+package frc.tools;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.wpi.first.util.datalog.DataLogReader;
+import edu.wpi.first.util.datalog.DataLogRecord;
+import frc.robot.Constants.UTBIntakerConstants;
+import frc.utils.NoteSignatureDetector;
+import frc.utils.NoteSignatureDetector.Event;
+import frc.utils.NoteSignatureDetector.Signature;
+
+/**
+ * Replays recorded intake traces through {@link NoteSignatureDetector} to tune
+ * the note signature. Each contact and jam is printed with how long before the
+ * beam break saw the note, and contacts that never reached the beam break are
+ * counted as false alarms.
+ *
+ * <p>
+ * Run with {@code ./gradlew replayIntake --args="trace.wpilog"}. The trace is
+ * the robot's log, with the {@code Intake/Trace} and {@code Feeder/Note}
+ * entries, or a CSV of {@code time,duty,amps,rpm} lines from a bench test,
+ * optionally with a fifth column that is 1 while the beam break sees a note.
+ * Any of the signature thresholds can follow the file, in the order of
+ * {@link Signature}, to try them instead of the constants.
+ */
+public class IntakeTraceReplay {
+    // A contact counts for a note if the beam break sees one this soon after
+    private static final double kMaxLeadTime = 1.0;
+
+    private record Sample(double time, double duty, double current, double speed) {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: IntakeTraceReplay <trace.wpilog|trace.csv> [signature thresholds...]");
+            System.exit(1);
+        }
+
+        List<Sample> samples = new ArrayList<>();
+        List<Double> notes = new ArrayList<>();
+        if (args[0].endsWith(".csv")) {
+            readCsv(Path.of(args[0]), samples, notes);
+        } else {
+            readLog(args[0], samples, notes);
+        }
+        if (samples.isEmpty()) {
+            System.err.println("No intake samples in " + args[0]);
+            System.exit(1);
+        }
+
+        Signature signature = getSignature(args);
+        System.out.println(signature);
+        System.out.printf("%d samples, %d notes at the beam break%n%n", samples.size(), notes.size());
+
+        NoteSignatureDetector detector = new NoteSignatureDetector(signature);
+        int matched = 0;
+        int falseAlarms = 0;
+        double totalLead = 0;
+        for (Sample sample : samples) {
+            Event event = detector.addSample(sample.time(), sample.duty(), sample.current(), sample.speed());
+            if (event == Event.kNone) {
+                continue;
+            }
+
+            double lead = getLead(notes, sample.time());
+            System.out.printf("%10.3f  %-7s %5.1f A (baseline %5.1f)  %5.0f RPM (baseline %5.0f)  %s%n",
+                    sample.time(), event == Event.kContact ? "contact" : "jam",
+                    sample.current(), detector.getBaselineCurrent(),
+                    sample.speed(), detector.getBaselineSpeed(),
+                    Double.isNaN(lead) ? "" : String.format("%.0f ms before the beam break", lead * 1000));
+
+            if (event == Event.kContact) {
+                if (Double.isNaN(lead)) {
+                    falseAlarms++;
+                } else {
+                    matched++;
+                    totalLead += lead;
+                }
+            }
+        }
+
+        System.out.println();
+        System.out.printf("%d contacts, %d jams%n", detector.getContactCount(), detector.getJamCount());
+        if (!notes.isEmpty()) {
+            System.out.printf("%d of %d notes seen early, %.0f ms ahead on average, %d false alarms%n",
+                    matched, notes.size(), matched > 0 ? totalLead / matched * 1000 : 0, falseAlarms);
+        }
+    }
+
+    private static Signature getSignature(String[] args) {
+        Signature defaults = UTBIntakerConstants.kNoteSignature;
+        double[] values = {
+                defaults.currentRise(), defaults.speedDrop(), defaults.contactTime(), defaults.jamSpeed(),
+                defaults.jamTime(), defaults.spinUpTime(), defaults.baselineGain() };
+        for (int i = 1; i < args.length && i <= values.length; i++) {
+            values[i - 1] = Double.parseDouble(args[i]);
+        }
+        return new Signature(values[0], values[1], values[2], values[3], values[4], values[5], values[6]);
+    }
+
+    // Time from a contact to the next note at the beam break, NaN if none soon
+    private static double getLead(List<Double> notes, double time) {
+        for (double note : notes) {
+            if (note >= time) {
+                return note - time <= kMaxLeadTime ? note - time : Double.NaN;
+            }
+        }
+        return Double.NaN;
+    }
+
+    private static void readLog(String file, List<Sample> samples, List<Double> notes) throws IOException {
+        DataLogReader reader = new DataLogReader(file);
+        if (!reader.isValid()) {
+            throw new IOException(file + " is not a WPILib data log");
+        }
+
+        int traceEntry = -1;
+        int noteEntry = -1;
+        for (DataLogRecord record : reader) {
+            if (record.isStart()) {
+                DataLogRecord.StartRecordData start = record.getStartData();
+                if (start.name.endsWith("Intake/Trace")) {
+                    traceEntry = start.entry;
+                } else if (start.name.endsWith("Feeder/Note")) {
+                    noteEntry = start.entry;
+                }
+            } else if (record.isControl()) {
+                continue;
+            } else if (record.getEntry() == traceEntry) {
+                double[] trace = record.getDoubleArray();
+                samples.add(new Sample(record.getTimestamp() / 1e6, trace[0], trace[1], trace[2]));
+            } else if (record.getEntry() == noteEntry && record.getBoolean()) {
+                notes.add(record.getTimestamp() / 1e6);
+            }
+        }
+    }
+
+    private static void readCsv(Path file, List<Sample> samples, List<Double> notes) throws IOException {
+        boolean lastNote = false;
+        for (String line : Files.readAllLines(file)) {
+            String[] parts = line.trim().split(",");
+            if (parts.length < 4 || parts[0].isEmpty() || !Character.isDigit(parts[0].charAt(0))) {
+                continue;
+            }
+            samples.add(new Sample(Double.parseDouble(parts[0]), Double.parseDouble(parts[1]),
+                    Double.parseDouble(parts[2]), Double.parseDouble(parts[3])));
+
+            boolean note = parts.length > 4 && Double.parseDouble(parts[4]) > 0;
+            if (note && !lastNote) {
+                notes.add(Double.parseDouble(parts[0]));
+            }
+            lastNote = note;
+        }
+    }
+}
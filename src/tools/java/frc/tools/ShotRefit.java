@@ -0,0 +1,254 @@
+package frc.tools;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import frc.robot.Constants.BallisticsConstants;
+import frc.utils.BallisticSolver;
+import frc.utils.ShotLogger;
+import frc.utils.ShotLogger.Label;
+
+/**
+ * Offline refit of the aim from the shots recorded by {@link ShotLogger}.
+ * Labeled shots are replayed through the ballistic solver while the drag area,
+ * exit speed efficiency and launch angle offset are searched. Hits should land
+ * on the pivot position they were taken at, shots that went high should have
+ * wanted a lower pivot, and shots that went low a higher one. The best
+ * constants and the fit of every shot are printed.
+ *
+ * <p>
+ * Run with {@code ./gradlew refitShots --args="shots.bin [labels.csv]"}. The
+ * optional CSV has lines of {@code id,label} with the label as hit, high or
+ * low, and replaces the labels recorded on the robot, for labeling from match
+ * video.
+ */
+public class ShotRefit {
+    // Pivot units a miss has to be off by before it stops counting against a fit
+    private static final double kMissMargin = 0.5;
+
+    // Search ranges
+    private static final double kMinDragArea = 0;
+    private static final double kMaxDragArea = 0.015;
+    private static final double kDragAreaStep = 0.0005;
+    private static final double kMinEfficiency = 0.3;
+    private static final double kMaxEfficiency = 0.65;
+    private static final double kEfficiencyStep = 0.01;
+    private static final double kMaxAngleOffset = 8; // degrees either way
+    private static final double kAngleOffsetStep = 0.1;
+
+    private static class Shot {
+        long id;
+        boolean auto;
+        float[] fields = new float[ShotLogger.kShotFields];
+        Label label = Label.kUnlabeled;
+
+        double aimDistance() {
+            return fields[8];
+        }
+
+        double pivotPosition() {
+            return fields[10];
+        }
+
+        double flywheelRpm() {
+            return fields[11];
+        }
+    }
+
+    private record Fit(double dragArea, double efficiency, double angleOffset, double loss) {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: ShotRefit <shots.bin> [labels.csv]");
+            System.exit(1);
+        }
+
+        Map<Long, Shot> shots = read(new File(args[0]));
+        if (args.length > 1) {
+            readLabels(new File(args[1]), shots);
+        }
+
+        List<Shot> labeled = new ArrayList<>();
+        int[] counts = new int[Label.values().length];
+        for (Shot shot : shots.values()) {
+            counts[shot.label.ordinal()]++;
+            if (shot.label != Label.kUnlabeled && shot.flywheelRpm() > 0) {
+                labeled.add(shot);
+            }
+        }
+        System.out.printf("%d shots: %d hit, %d high, %d low, %d unlabeled%n", shots.size(),
+                counts[Label.kHit.ordinal()], counts[Label.kMissedHigh.ordinal()],
+                counts[Label.kMissedLow.ordinal()], counts[Label.kUnlabeled.ordinal()]);
+        if (labeled.isEmpty()) {
+            System.err.println("No labeled shots to fit");
+            System.exit(1);
+        }
+
+        Fit current = evaluate(labeled, BallisticsConstants.kNoteDragArea, BallisticsConstants.kExitSpeedEfficiency,
+                BallisticsConstants.kLaunchAngleOffset);
+        Fit best = search(labeled);
+
+        System.out.println();
+        System.out.printf("%-22s %10s %10s%n", "", "current", "refit");
+        System.out.printf("%-22s %10.4f %10.4f%n", "kNoteDragArea", current.dragArea(), best.dragArea());
+        System.out.printf("%-22s %10.2f %10.2f%n", "kExitSpeedEfficiency", current.efficiency(),
+                best.efficiency());
+        System.out.printf("%-22s %10.1f %10.1f%n", "kLaunchAngleOffset", current.angleOffset(),
+                best.angleOffset());
+        System.out.printf("%-22s %10.3f %10.3f%n", "loss per shot", current.loss() / labeled.size(),
+                best.loss() / labeled.size());
+
+        System.out.println();
+        System.out.printf("%-15s %5s %6s %7s %7s %7s %7s%n", "shot", "mode", "label", "dist", "pivot", "now",
+                "refit");
+        for (Shot shot : labeled) {
+            System.out.printf("%-15d %5s %6s %7.2f %7.2f %7.2f %7.2f%n", shot.id, shot.auto ? "auto" : "tele",
+                    switch (shot.label) {
+                        case kHit -> "hit";
+                        case kMissedHigh -> "high";
+                        case kMissedLow -> "low";
+                        default -> "";
+                    },
+                    shot.aimDistance(), shot.pivotPosition(),
+                    predict(shot, current.dragArea(), current.efficiency(), current.angleOffset()),
+                    predict(shot, best.dragArea(), best.efficiency(), best.angleOffset()));
+        }
+    }
+
+    private static Map<Long, Shot> read(File file) throws IOException {
+        Map<Long, Shot> shots = new LinkedHashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                byte type;
+                try {
+                    type = in.readByte();
+                } catch (EOFException e) {
+                    break;
+                }
+
+                if (type == ShotLogger.kShotRecord) {
+                    Shot shot = new Shot();
+                    shot.id = in.readLong();
+                    byte flags = in.readByte();
+                    shot.auto = (flags & ShotLogger.kFlagAuto) != 0;
+                    for (int i = 0; i < ShotLogger.kShotFields; i++) {
+                        shot.fields[i] = in.readFloat();
+                    }
+                    shots.put(shot.id, shot);
+                } else if (type == ShotLogger.kLabelRecord) {
+                    long id = in.readLong();
+                    int label = in.readByte();
+                    Shot shot = shots.get(id);
+                    if (shot != null && label >= 0 && label < Label.values().length) {
+                        shot.label = Label.values()[label];
+                    }
+                } else {
+                    // A record cut off by a brownout, nothing after it can be trusted
+                    System.err.println("Unknown record type " + type + ", stopping");
+                    break;
+                }
+            }
+        } catch (EOFException e) {
+            System.err.println("Last record is incomplete, skipping it");
+        }
+        return shots;
+    }
+
+    private static void readLabels(File file, Map<Long, Shot> shots) throws IOException {
+        for (String line : Files.readAllLines(file.toPath())) {
+            String[] parts = line.trim().split(",");
+            if (parts.length < 2 || parts[0].isEmpty() || !Character.isDigit(parts[0].charAt(0))) {
+                continue;
+            }
+
+            Shot shot = shots.get(Long.parseLong(parts[0].trim()));
+            if (shot == null) {
+                System.err.println("No shot " + parts[0] + " in the dataset");
+                continue;
+            }
+            shot.label = switch (parts[1].trim().toLowerCase()) {
+                case "hit" -> Label.kHit;
+                case "high" -> Label.kMissedHigh;
+                case "low" -> Label.kMissedLow;
+                default -> Label.kUnlabeled;
+            };
+        }
+    }
+
+    private static Fit search(List<Shot> shots) {
+        Fit best = null;
+        double[] launchAngles = new double[shots.size()];
+        double[] solution = new double[2];
+
+        for (double dragArea = kMinDragArea; dragArea <= kMaxDragArea + 1e-9; dragArea += kDragAreaStep) {
+            double drag = 0.5 * BallisticsConstants.kAirDensity * dragArea / BallisticsConstants.kNoteMass;
+            for (double efficiency = kMinEfficiency; efficiency <= kMaxEfficiency + 1e-9;
+                    efficiency += kEfficiencyStep) {
+                // The offset only shifts the pivot position, so each flight is solved once
+                for (int i = 0; i < shots.size(); i++) {
+                    BallisticSolver.solve(shots.get(i).aimDistance(),
+                            BallisticSolver.getExitSpeed(shots.get(i).flywheelRpm(), efficiency), drag, solution);
+                    launchAngles[i] = solution[0];
+                }
+
+                for (double offset = -kMaxAngleOffset; offset <= kMaxAngleOffset + 1e-9;
+                        offset += kAngleOffsetStep) {
+                    double loss = 0;
+                    for (int i = 0; i < shots.size(); i++) {
+                        loss += loss(shots.get(i), BallisticSolver.toPivotPosition(launchAngles[i], offset));
+                    }
+                    if (best == null || loss < best.loss()) {
+                        best = new Fit(dragArea, efficiency, offset, loss);
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    private static Fit evaluate(List<Shot> shots, double dragArea, double efficiency, double angleOffset) {
+        double loss = 0;
+        for (Shot shot : shots) {
+            loss += loss(shot, predict(shot, dragArea, efficiency, angleOffset));
+        }
+        return new Fit(dragArea, efficiency, angleOffset, loss);
+    }
+
+    /**
+     * How badly a predicted pivot position disagrees with how the shot went
+     */
+    private static double loss(Shot shot, double predicted) {
+        double actual = shot.pivotPosition();
+        if (Double.isNaN(predicted)) {
+            // The fit says this shot can't be made, but it was taken
+            return 100;
+        }
+
+        double error = switch (shot.label) {
+            case kHit -> predicted - actual;
+            // Too high, the right position is lower than what was used
+            case kMissedHigh -> Math.max(0, predicted - actual + kMissMargin);
+            case kMissedLow -> Math.max(0, actual - predicted + kMissMargin);
+            default -> 0;
+        };
+        return error * error;
+    }
+
+    private static double predict(Shot shot, double dragArea, double efficiency, double angleOffset) {
+        double drag = 0.5 * BallisticsConstants.kAirDensity * dragArea / BallisticsConstants.kNoteMass;
+        double[] solution = new double[2];
+        BallisticSolver.solve(shot.aimDistance(), BallisticSolver.getExitSpeed(shot.flywheelRpm(), efficiency), drag,
+                solution);
+        return BallisticSolver.toPivotPosition(solution[0], angleOffset);
+    }
+}